@@ -19,6 +19,18 @@ public class Constants {
     public static final int DIR_LEFT = -1;
     public static final int DIR_RIGHT = 1;
 
+    //The moves a player (or a bot) can make, as recorded in move sequences
+    public static final int MOVE_LEFT = 0;
+    public static final int MOVE_RIGHT = 1;
+    public static final int MOVE_DOWN = 2;
+    public static final int MOVE_ROTATE_CW = 3;
+    public static final int MOVE_ROTATE_CCW = 4;
+    public static final int MOVE_HARD_DROP = 5;
+
+    //Speed of the computer player: one move every AUTO_PLAY_DELAY milliseconds
+    public static final int AUTO_PLAY_DELAY = 50;
+    public static final int AUTO_PLAY_MOVES_PER_TICK = 1;
+
     //Starting position of all Tetris shapes is the top center of board
     public static final int START_POS_X = 4;
     //The y coordinate starting shapePosition for pieces will always be 0
@@ -30,6 +42,29 @@ public class Constants {
     //Used to set the initial delay in Timer class
     public final static int ONE_SECOND = 1000;
 
+    //The following Constants define the default gravity curve (see TetrisGravity):
+    //Delay between two rows of fall at level 0 (in milliseconds)
+    public static final int BASE_FALL_DELAY = 2000;
+    //Number of levels it takes for the fall speed to double
+    public static final int LEVELS_PER_SPEED_DOUBLING = 3;
+    //Number of lines to clear before advancing to the next level
+    public static final int LINES_PER_LEVEL = 10;
+    //Timer never fires faster than roughly once per frame (60 frames per second)
+    public static final int FRAME_DELAY = 16;
+
+    //Positions of the board features within a feature vector (see TetrisBoard)
+    public static final int FEATURE_AGGREGATE_HEIGHT = 0;
+    public static final int FEATURE_MAX_HEIGHT = 1;
+    public static final int FEATURE_HOLES = 2;
+    public static final int FEATURE_BUMPINESS = 3;
+    public static final int FEATURE_ROW_TRANSITIONS = 4;
+    public static final int FEATURE_WELL_SUM = 5;
+    public static final int NUM_FEATURES = 6;
+
+    //File the results of finished games are kept in (see TetrisScoreStore),
+    //unless the system property tetris.scores says otherwise
+    public static final String SCORE_FILE = "tetris-scores.dat";
+
     //All of the folling are Constants requried for the TetrisGridView:
     public static final int NUM_ROWS = 18;
     public static final int NUM_COLS = 10;
@@ -0,0 +1,80 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.Timer;
+
+/**
+ * TetrisAutoPlayer lets a TetrisBot play the game on screen. It runs its
+ * own SWING timer and, every time the timer fires, asks the bot for the
+ * best placement of the falling shape and feeds the moves that get there
+ * to the controller, exactly as if they had been typed on the keyboard.
+ * (The controller's events then get the view to repaint.)
+ *
+ * The bot plans again on every tick, from wherever the shape is at that
+ * moment, so the auto player never gets out of step with the game, even
+ * when gravity moves or locks the shape in between two ticks.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisAutoPlayer implements ActionListener {
+
+    private TetrisController controller;
+    private TetrisModel model;
+    private TetrisBot bot;
+    private Timer timer;
+
+    //How many moves to make every time the timer fires
+    //(Integer.MAX_VALUE places a whole shape per tick)
+    private int movesPerTick;
+
+    public TetrisAutoPlayer(TetrisController controller, TetrisModel model, int delay, int movesPerTick) {
+        this.controller = controller;
+        this.model = model;
+        this.movesPerTick = movesPerTick;
+        bot = new TetrisBot(new TetrisEvaluator());
+        timer = new Timer(delay, this);
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    public boolean isRunning() {
+        return timer.isRunning();
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        if (controller.isGameEnded()) {
+            stop();
+            return;
+        }
+        Cell location = model.getShapeLocation();
+        TetrisPlacement placement = bot.findBestPlacement(model.getBoard(), model.getFallingShape(),
+                location.getX(), location.getY());
+        if (placement == null) {
+            //Nowhere to go, let the shape lock where it is
+            controller.hardDrop();
+        } else {
+            int numMoves = Math.min(movesPerTick, placement.getNumMoves());
+            for (int i = 0; i < numMoves; i++) {
+                applyMove(placement.getMove(i));
+            }
+        }
+    }
+
+    /* Delegates a move to the corresponding controller method */
+    private void applyMove(int move) {
+        switch (move) {
+            case Constants.MOVE_LEFT: controller.moveLeft(); break;
+            case Constants.MOVE_RIGHT: controller.moveRight(); break;
+            case Constants.MOVE_DOWN: controller.moveDown(); break;
+            case Constants.MOVE_ROTATE_CW: controller.rotateCW(); break;
+            case Constants.MOVE_ROTATE_CCW: controller.rotateCCW(); break;
+            default: controller.hardDrop();
+        }
+    }
+}
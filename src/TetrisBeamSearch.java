@@ -0,0 +1,432 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * TetrisBeamSearch is a computer player that looks ahead. Instead of only
+ * placing the falling shape as well as possible (like TetrisBot does), it
+ * also considers the next shapes in the piece queue: every placement of the
+ * current shape is followed by every placement of the next shape, and so on.
+ *
+ * To keep this from exploding, only the best "beam width" boards survive at
+ * each step of the lookahead. Expanding the surviving boards is split over
+ * a ForkJoinPool, with every board being scored on a scratch board that is
+ * borrowed from a TetrisBoardPool. Only the boards that survive are copied.
+ *
+ * Different placements often leave exactly the same board behind (ex: two
+ * shapes placed in either order). Such duplicates are recognized by their
+ * Zobrist hash, through a TetrisTranspositionTable, and only the best one
+ * is kept in the beam, leaving room in the beam for boards that differ.
+ *
+ * A search can be given a time budget: when the budget runs out the search
+ * stops looking further ahead and answers with the best placement found so
+ * far. In deterministic mode the time budget is ignored, so the same board
+ * and shapes always give the same answer, no matter how fast the machine is
+ * or how the threads are scheduled (useful for reproducible benchmarks).
+ *
+ * A search can be used on boards of any size, one search at a time.
+ *
+ * Usage: java TetrisBeamSearch [numShapes]
+ * plays games on two board sizes with one search, checking that every game
+ * is played the same as with a search of its own.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisBeamSearch {
+
+    //Below this many boards, expanding is not worth splitting further
+    private static final int BOARDS_PER_TASK = 4;
+
+    //Size of the table used to spot duplicate boards (2^16 entries)
+    private static final int TABLE_LOG2_SIZE = 16;
+
+    //Mixed into a board's hash so that the same board at different steps has different keys
+    private static final long STEP_KEY = 0x9E3779B97F4A7C15L;
+
+    private final TetrisEvaluator evaluator;
+    private final int lookahead;
+    private final int beamWidth;
+    private final long timeBudgetNanos;
+    private final boolean deterministic;
+    private final ForkJoinPool pool;
+
+    //Boards are borrowed from here (made again whenever a board of another size is searched)
+    private TetrisBoardPool boardPool;
+
+    //Boards already in a beam of the current search
+    private final TetrisTranspositionTable seenBoards = new TetrisTranspositionTable(TABLE_LOG2_SIZE);
+
+    //Scratch space of the worker threads, one per thread
+    private final ThreadLocal<TetrisPlacementFinder> finders = new ThreadLocal<TetrisPlacementFinder>() {
+        @Override
+        protected TetrisPlacementFinder initialValue() {
+            return new TetrisPlacementFinder();
+        }
+    };
+
+    /**
+     * @param evaluator: scores the boards
+     * @param lookahead: how many shapes of the piece queue to look at after the falling shape
+     * @param beamWidth: how many boards survive each step of the lookahead
+     * @param timeBudgetMillis: how long a search may take (ignored in deterministic mode)
+     * @param deterministic: true to always search to the full lookahead
+     * @param pool: the threads to expand boards on
+     */
+    public TetrisBeamSearch(TetrisEvaluator evaluator, int lookahead, int beamWidth,
+                            long timeBudgetMillis, boolean deterministic, ForkJoinPool pool) {
+        this.evaluator = evaluator;
+        this.lookahead = lookahead;
+        this.beamWidth = beamWidth;
+        this.timeBudgetNanos = timeBudgetMillis * 1000000L;
+        this.deterministic = deterministic;
+        this.pool = pool;
+    }
+
+    /**
+     * Finds the best placement for the falling shape, taking the upcoming
+     * shapes into account
+     *
+     * @param board: the locked cells of the game
+     * @param shape: the falling shape
+     * @param x: x coordinate of the falling shape's location
+     * @param y: y coordinate of the falling shape's location
+     * @param nextShapes: the upcoming shapes (only the first lookahead ones are used)
+     * @return the best placement, or null if the shape can't be placed anywhere
+     */
+    public TetrisPlacement findBestPlacement(TetrisBoard board, TetrisShape shape, int x, int y,
+                                             TetrisShape[] nextShapes) {
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        seenBoards.newSearch();
+        if (boardPool == null || boardPool.getNumRows() != board.getNumRows()
+                || boardPool.getNumCols() != board.getNumCols()) {
+            boardPool = new TetrisBoardPool(board.getNumRows(), board.getNumCols());
+        }
+
+        //The first step places the falling shape from where it is now.
+        //(The game's own board is never released into the pool)
+        Beam roots = new Beam(1);
+        roots.boards[0] = board;
+        roots.lines[0] = 0;
+        roots.rootIndex[0] = 0;
+        roots.size = 1;
+
+        TetrisPlacementFinder rootFinder = new TetrisPlacementFinder();
+        int numRoots = rootFinder.findPlacements(board, shape, x, y);
+        if (numRoots == 0) {
+            return null;
+        }
+        Beam beam = expand(roots, new TetrisShape[] {shape}, x, y, 0, Long.MAX_VALUE);
+        //The roots keep the placement of the falling shape each beam board started from
+        TetrisShape[] rootShapes = new TetrisShape[numRoots];
+        int[] rootX = new int[numRoots];
+        int[] rootY = new int[numRoots];
+        for (int i = 0; i < numRoots; i++) {
+            rootShapes[i] = rootFinder.getShape(i);
+            rootX[i] = rootFinder.getX(i);
+            rootY[i] = rootFinder.getY(i);
+        }
+
+        //The shapes of the queue start at the top center of the board
+        int startX = TetrisConfig.getStartX(board.getNumCols());
+        int depth = Math.min(lookahead, nextShapes.length);
+        for (int step = 0; step < depth && beam.size > 0; step++) {
+            if (!deterministic && System.nanoTime() > deadline) {
+                break;
+            }
+            Beam next = expand(beam, new TetrisShape[] {nextShapes[step]}, startX,
+                    Constants.START_POS_Y, step + 1, deterministic ? Long.MAX_VALUE : deadline);
+            if (next == null || next.size == 0) {
+                //Out of time, or every branch ended the game: stick with the last complete step
+                if (next != null) {
+                    next.release(boardPool);
+                }
+                break;
+            }
+            beam.release(boardPool);
+            beam = next;
+        }
+
+        //The best board of the deepest step decides which placement to make now.
+        //If no board got through the first step, fall back to the first placement found
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        if (beam.size > 0) {
+            best = beam.rootIndex[0];
+            bestScore = beam.scores[0];
+        }
+        beam.release(boardPool);
+
+        int[] moves = TetrisPlacementFinder.computeMoves(shape, x, rootShapes[best], rootX[best]);
+        return new TetrisPlacement(rootShapes[best], rootX[best], rootY[best], bestScore, moves);
+    }
+
+    /**
+     * Places a shape in every possible way on every board of a beam and
+     * keeps the best beamWidth resulting boards.
+     *
+     * @param beam: the boards to expand
+     * @param shape: the shape to place on them (in an array so tasks can share it)
+     * @param x: x coordinate the shape starts at
+     * @param y: y coordinate the shape starts at
+     * @param step: 0 when placing the falling shape (each child becomes its own root),
+     *            then 1, 2, ... for the shapes of the queue
+     * @param deadline: System.nanoTime() after which to give up
+     * @return the next beam, sorted best first, or null if the deadline passed
+     */
+    private Beam expand(Beam beam, TetrisShape[] shape, int x, int y, int step, long deadline) {
+        int maxChildren = 4 * (beam.boards[0].getNumCols() + 4);
+        Candidates candidates = new Candidates(beam.size, maxChildren);
+
+        ExpandTask task = new ExpandTask(beam, candidates, shape[0], x, y, 0, beam.size, deadline);
+        if (beam.size <= BOARDS_PER_TASK) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        if (candidates.timedOut) {
+            return null;
+        }
+
+        //Rank every child of every board, best first. Ties go to the child found first,
+        //which keeps the outcome independent of thread scheduling.
+        Integer[] order = candidates.order();
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byScore = Double.compare(candidates.scores[b], candidates.scores[a]);
+                return (byScore != 0) ? byScore : Integer.compare(a, b);
+            }
+        });
+
+        Beam next = new Beam(Math.min(beamWidth, order.length));
+        int size = 0;
+        for (int i = 0; i < order.length && size < next.boards.length; i++) {
+            int child = order[i];
+            int parent = child / maxChildren;
+
+            //Skip boards that are already in the beam (they were reached in a better way)
+            long key = candidates.hashes[child] ^ (step * STEP_KEY);
+            if (seenBoards.isFromCurrentSearch(seenBoards.get(key))) {
+                continue;
+            }
+            seenBoards.put(key, candidates.scores[child], step, 0);
+
+            //Redo the winning placement on a board from the pool
+            TetrisBoard board = boardPool.copyOf(beam.boards[parent]);
+            TetrisShape placed = candidates.shapes[child];
+            int placedY = candidates.ys[child];
+            board.place(placed, candidates.xs[child], placedY);
+            int lines = board.clearFullRows(placedY, placedY + placed.getShapeMatrix().length - 1);
+
+            next.boards[size] = board;
+            next.lines[size] = beam.lines[parent] + lines;
+            next.scores[size] = candidates.scores[child];
+            next.rootIndex[size] = (step == 0) ? child % maxChildren : beam.rootIndex[parent];
+            size++;
+        }
+        next.size = size;
+        return next;
+    }
+
+    /**
+     * Plays one shape of a headless game, looking ahead in the engine's piece queue
+     *
+     * @param engine: the game to play
+     * @return false if the game is over
+     */
+    public boolean playShape(TetrisEngine engine) {
+        if (engine.isGameOver()) {
+            return false;
+        }
+        TetrisShape[] nextShapes = new TetrisShape[lookahead];
+        engine.getPieceQueue().peek(nextShapes);
+        TetrisPlacement placement = findBestPlacement(engine.getBoard(), engine.getFallingShape(),
+                engine.getShapeX(), engine.getShapeY(), nextShapes);
+        if (placement == null) {
+            engine.hardDrop();
+            return !engine.isGameOver();
+        }
+        for (int i = 0; i < placement.getNumMoves(); i++) {
+            engine.applyMove(placement.getMove(i));
+        }
+        return !engine.isGameOver();
+    }
+
+    /**
+     * Expands a range of the boards of a beam, splitting the range in half
+     * until it is small enough to do directly.
+     */
+    @SuppressWarnings("serial")
+    private class ExpandTask extends RecursiveAction {
+        private final Beam beam;
+        private final Candidates candidates;
+        private final TetrisShape shape;
+        private final int x;
+        private final int y;
+        private final int from;
+        private final int to;
+        private final long deadline;
+
+        ExpandTask(Beam beam, Candidates candidates, TetrisShape shape, int x, int y,
+                   int from, int to, long deadline) {
+            this.beam = beam;
+            this.candidates = candidates;
+            this.shape = shape;
+            this.x = x;
+            this.y = y;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BOARDS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ExpandTask(beam, candidates, shape, x, y, from, middle, deadline),
+                        new ExpandTask(beam, candidates, shape, x, y, middle, to, deadline));
+                return;
+            }
+            TetrisPlacementFinder finder = finders.get();
+            TetrisBoard scratch = boardPool.acquire();
+            for (int parent = from; parent < to; parent++) {
+                if (System.nanoTime() > deadline) {
+                    candidates.timedOut = true;
+                    break;
+                }
+                TetrisBoard board = beam.boards[parent];
+                //A shape that can't even appear means this branch has lost the game
+                if (board.collides(shape, x, y)) {
+                    continue;
+                }
+                int numPlacements = finder.findPlacements(board, shape, x, y);
+                int base = parent * candidates.maxChildren;
+                for (int i = 0; i < numPlacements; i++) {
+                    TetrisShape placed = finder.getShape(i);
+                    int placedY = finder.getY(i);
+                    scratch.copyFrom(board);
+                    scratch.place(placed, finder.getX(i), placedY);
+                    int lines = scratch.clearFullRows(placedY, placedY + placed.getShapeMatrix().length - 1);
+
+                    candidates.shapes[base + i] = placed;
+                    candidates.xs[base + i] = finder.getX(i);
+                    candidates.ys[base + i] = placedY;
+                    candidates.scores[base + i] = evaluator.evaluate(scratch, beam.lines[parent] + lines);
+                    candidates.hashes[base + i] = scratch.getHash();
+                }
+                candidates.counts[parent] = numPlacements;
+            }
+            boardPool.release(scratch);
+        }
+    }
+
+    public static void main(String[] args) {
+        int numShapes = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        int[][] sizes = {{Constants.NUM_ROWS, Constants.NUM_COLS}, {24, 14}};
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        //One search shared by a game of every size, and a search of its own for a copy of every game
+        TetrisBeamSearch shared = new TetrisBeamSearch(new TetrisEvaluator(), 2, 16, 0, true, pool);
+        TetrisEngine[] sharedGames = new TetrisEngine[sizes.length];
+        TetrisEngine[] ownGames = new TetrisEngine[sizes.length];
+        TetrisBeamSearch[] ownSearches = new TetrisBeamSearch[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            sharedGames[i] = new TetrisEngine(sizes[i][0], sizes[i][1], i);
+            ownGames[i] = new TetrisEngine(sizes[i][0], sizes[i][1], i);
+            ownSearches[i] = new TetrisBeamSearch(new TetrisEvaluator(), 2, 16, 0, true, pool);
+        }
+
+        //The shared search goes back and forth between the sizes, a shape at a time
+        for (int shape = 0; shape < numShapes; shape++) {
+            for (int i = 0; i < sizes.length; i++) {
+                if (sharedGames[i].isGameOver()) {
+                    continue;
+                }
+                shared.playShape(sharedGames[i]);
+                ownSearches[i].playShape(ownGames[i]);
+                TetrisBoard board = sharedGames[i].getBoard();
+                boolean same = sharedGames[i].getNumLinesCleared() == ownGames[i].getNumLinesCleared();
+                for (int row = 0; row < board.getNumRows() && same; row++) {
+                    same = board.getRow(row) == ownGames[i].getBoard().getRow(row);
+                }
+                if (!same) {
+                    System.out.println("The " + sizes[i][1] + "x" + sizes[i][0] + " game differs after "
+                            + (shape + 1) + " shapes");
+                    return;
+                }
+            }
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            System.out.println(sizes[i][1] + "x" + sizes[i][0] + ": " + sharedGames[i].getNumShapesLocked()
+                    + " shapes, " + sharedGames[i].getNumLinesCleared() + " lines, same as with its own search");
+        }
+    }
+
+    /** The boards that survive one step of the lookahead, best first */
+    private static class Beam {
+        final TetrisBoard[] boards;
+        final int[] lines;
+        final double[] scores;
+        //Which placement of the falling shape each board descends from
+        final int[] rootIndex;
+        int size;
+
+        Beam(int capacity) {
+            boards = new TetrisBoard[capacity];
+            lines = new int[capacity];
+            scores = new double[capacity];
+            rootIndex = new int[capacity];
+        }
+
+        /* Gives the boards back to the pool */
+        void release(TetrisBoardPool pool) {
+            for (int i = 0; i < size; i++) {
+                pool.release(boards[i]);
+                boards[i] = null;
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * Every child of every board of a beam. Each board writes its children
+     * into its own slice of the arrays, so tasks never share an index.
+     */
+    private static class Candidates {
+        final int maxChildren;
+        final int[] counts;
+        final TetrisShape[] shapes;
+        final int[] xs;
+        final int[] ys;
+        final double[] scores;
+        final long[] hashes;
+        volatile boolean timedOut = false;
+
+        Candidates(int numBoards, int maxChildren) {
+            this.maxChildren = maxChildren;
+            counts = new int[numBoards];
+            shapes = new TetrisShape[numBoards * maxChildren];
+            xs = new int[numBoards * maxChildren];
+            ys = new int[numBoards * maxChildren];
+            scores = new double[numBoards * maxChildren];
+            hashes = new long[numBoards * maxChildren];
+        }
+
+        /* Indices of all the children that were actually found */
+        Integer[] order() {
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            Integer[] order = new Integer[total];
+            int index = 0;
+            for (int parent = 0; parent < counts.length; parent++) {
+                for (int i = 0; i < counts[parent]; i++) {
+                    order[index++] = parent * maxChildren + i;
+                }
+            }
+            return order;
+        }
+    }
+}
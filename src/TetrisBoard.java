@@ -0,0 +1,672 @@
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * TetrisBoard is a compact mirror of the locked cells of the game.
+ *
+ * Every row of the board is packed into the bits of a long (bit x is set
+ * when the cell in column x of that row is locked), and the top of every
+ * column is kept up to date as cells are locked and rows are removed.
+ * The HashSet of Cells in TetrisModel remains the source of the colors
+ * that get rendered; this class exists so that questions about the shape
+ * of the stack (is a row full? where would this shape land?) can be
+ * answered without creating and hashing Cell objects.
+ *
+ * Coordinates follow the rest of the game: x is the column (0 on the left)
+ * and y is the row (0 at the top of the board).
+ *
+ * On top of the column heights, the board also maintains the features that
+ * describe the shape of the stack (holes, bumpiness, row transitions and
+ * wells). They are updated incrementally whenever a cell is locked or a row
+ * is removed, touching only the affected columns and rows, so evaluating a
+ * board never requires rescanning every cell. The features can be read one
+ * by one or as a feature vector indexed by the FEATURE_ constants in Constants.
+ *
+ * The board also keeps a Zobrist hash of its locked cells (see TetrisZobrist),
+ * so two boards can be compared, or a board looked up in a table, without
+ * going over their cells. equals and hashCode are based on the locked cells.
+ *
+ * NOTE: The row transition count uses bit tricks that need two spare bits,
+ * so a board can be at most 62 columns wide. The Zobrist keys grow with the
+ * number of rows, so boards are also kept to at most 256 rows (see fits).
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisBoard {
+
+    private final int numRows;
+    private final int numCols;
+
+    //One bit mask per row, bit x is set if column x of that row is locked
+    private final long[] rows;
+
+    //For every column, the y coordinate of its highest locked cell
+    //(numRows if the column is completely empty)
+    private final int[] columnTops;
+
+    //Bit mask of a completely filled row
+    private final long fullRow;
+
+    //For every column, the number of empty cells below its highest locked cell
+    private final int[] columnHoles;
+
+    //For every row, the number of times filled and empty cells alternate
+    //along it (the walls on both sides count as filled)
+    private final int[] rowTransitions;
+
+    //For every column, how deep it sits below both of its neighbours
+    //(the walls count as being as high as the board)
+    private final int[] wellDepths;
+
+    //Zobrist hash of the locked cells, and the keys it is made of
+    private final TetrisZobrist zobrist;
+    private long hash;
+
+    //Running totals of the features above
+    private int aggregateHeight;
+    private int totalHoles;
+    private int bumpiness;
+    private int totalRowTransitions;
+    private int wellSum;
+
+    //Largest board a TetrisBoard can be made for
+    public static final int MAX_COLS = Long.SIZE - 2;
+    public static final int MAX_ROWS = 256;
+
+    public TetrisBoard(int numRows, int numCols) {
+        if (!fits(numRows, numCols)) {
+            throw new IllegalArgumentException("Board can be at most " + MAX_COLS + " columns wide and "
+                    + MAX_ROWS + " rows tall");
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        rows = new long[numRows];
+        columnTops = new int[numCols];
+        columnHoles = new int[numCols];
+        rowTransitions = new int[numRows];
+        wellDepths = new int[numCols];
+        fullRow = (1L << numCols) - 1;
+        zobrist = TetrisZobrist.forSize(numRows, numCols);
+        clear();
+    }
+
+    /**
+     * Checks whether a board of the given size can be made
+     *
+     * @param numRows: number of rows of the board
+     * @param numCols: number of columns of the board
+     * @return true if the board is at most MAX_COLS wide and MAX_ROWS tall
+     */
+    public static boolean fits(int numRows, int numCols) {
+        return numCols <= MAX_COLS && numRows <= MAX_ROWS;
+    }
+
+    /**
+     * Copy constructor, creates an independent board
+     * with the same locked cells as the board passed in
+     *
+     * @param other: the board to copy
+     */
+    public TetrisBoard(TetrisBoard other) {
+        this(other.numRows, other.numCols);
+        copyFrom(other);
+    }
+
+    /**
+     * Overwrites the content of this board with the content of another
+     * board of the same size (without allocating anything)
+     *
+     * @param other: the board to copy from
+     */
+    public void copyFrom(TetrisBoard other) {
+        System.arraycopy(other.rows, 0, rows, 0, numRows);
+        System.arraycopy(other.columnTops, 0, columnTops, 0, numCols);
+        System.arraycopy(other.columnHoles, 0, columnHoles, 0, numCols);
+        System.arraycopy(other.rowTransitions, 0, rowTransitions, 0, numRows);
+        System.arraycopy(other.wellDepths, 0, wellDepths, 0, numCols);
+        aggregateHeight = other.aggregateHeight;
+        totalHoles = other.totalHoles;
+        bumpiness = other.bumpiness;
+        totalRowTransitions = other.totalRowTransitions;
+        wellSum = other.wellSum;
+        hash = other.hash;
+    }
+
+    /** Empties the board */
+    public void clear() {
+        for (int row = 0; row < numRows; row++) {
+            rows[row] = 0L;
+            rowTransitions[row] = countRowTransitions(0L);
+        }
+        for (int column = 0; column < numCols; column++) {
+            columnTops[column] = numRows;
+            columnHoles[column] = 0;
+        }
+        aggregateHeight = 0;
+        totalHoles = 0;
+        hash = 0L;
+        totalRowTransitions = numRows * countRowTransitions(0L);
+        updateSurface();
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * Getter for the bit mask of a row
+     *
+     * @param row: the row
+     * @return the bits of the row (bit x set if column x is locked)
+     */
+    public long getRow(int row) {
+        return rows[row];
+    }
+
+    /**
+     * @return true if the cell at (x, y) is locked
+     */
+    public boolean isFilled(int x, int y) {
+        return (rows[y] & (1L << x)) != 0;
+    }
+
+    /**
+     * Locks the cell at (x, y) and raises the top of its column if needed
+     */
+    public void fill(int x, int y) {
+        long bit = 1L << x;
+        if ((rows[y] & bit) != 0) {
+            return; //already locked, nothing changes
+        }
+        rows[y] |= bit;
+        hash ^= zobrist.cellKey(x, y);
+
+        //Only the transitions of this one row can change
+        int transitions = countRowTransitions(rows[y]);
+        totalRowTransitions += transitions - rowTransitions[y];
+        rowTransitions[y] = transitions;
+
+        int top = columnTops[x];
+        if (y > top) {
+            //The cell was a hole, and now it is filled
+            columnHoles[x]--;
+            totalHoles--;
+            return;
+        }
+        //The cell is the new top of its column: every empty cell
+        //between it and the old top is now covered (a hole)
+        int newHoles = top - y - 1;
+        columnHoles[x] += newHoles;
+        totalHoles += newHoles;
+
+        //The column got taller, so only it and its neighbours' surface features change
+        aggregateHeight += top - y;
+        int oldBumpiness = localBumpiness(x);
+        int oldWells = localWellSum(x);
+        columnTops[x] = y;
+        bumpiness += localBumpiness(x) - oldBumpiness;
+        for (int column = Math.max(0, x - 1); column <= Math.min(numCols - 1, x + 1); column++) {
+            wellDepths[column] = computeWellDepth(column);
+        }
+        wellSum += localWellSum(x) - oldWells;
+    }
+
+    /**
+     * Getter for the top of a column
+     *
+     * @param column: the column
+     * @return y coordinate of the highest locked cell in the column
+     * (or the number of rows if the column is empty)
+     */
+    public int getColumnTop(int column) {
+        return columnTops[column];
+    }
+
+    /**
+     * Getter for the height of the stack in a column
+     *
+     * @param column: the column
+     * @return number of rows between the floor and the highest locked cell
+     */
+    public int getColumnHeight(int column) {
+        return numRows - columnTops[column];
+    }
+
+    /**
+     * Getter for the number of holes in a column
+     *
+     * @param column: the column
+     * @return number of empty cells below the highest locked cell of the column
+     */
+    public int getColumnHoles(int column) {
+        return columnHoles[column];
+    }
+
+    /**
+     * Getter for the depth of the well in a column
+     *
+     * @param column: the column
+     * @return how many rows the column sits below the lower of its neighbours
+     */
+    public int getWellDepth(int column) {
+        return wellDepths[column];
+    }
+
+    /**
+     * Getter for the number of transitions along a row
+     *
+     * @param row: the row
+     * @return how many times filled and empty cells alternate along the row
+     */
+    public int getRowTransitions(int row) {
+        return rowTransitions[row];
+    }
+
+    /** @return sum of the heights of all the columns */
+    public int getAggregateHeight() {
+        return aggregateHeight;
+    }
+
+    /** @return height of the tallest column */
+    public int getMaxHeight() {
+        int highestTop = numRows;
+        for (int column = 0; column < numCols; column++) {
+            highestTop = Math.min(highestTop, columnTops[column]);
+        }
+        return numRows - highestTop;
+    }
+
+    /** @return total number of holes on the board */
+    public int getHoles() {
+        return totalHoles;
+    }
+
+    /** @return sum of the height differences between neighbouring columns */
+    public int getBumpiness() {
+        return bumpiness;
+    }
+
+    /** @return total number of transitions along all the rows */
+    public int getTotalRowTransitions() {
+        return totalRowTransitions;
+    }
+
+    /** @return sum over all wells of 1 + 2 + ... + depth */
+    public int getWellSum() {
+        return wellSum;
+    }
+
+    /**
+     * Copies the features of the board into an array, without allocating.
+     * The array is indexed by the FEATURE_ constants in Constants.
+     *
+     * @param features: array of at least Constants.NUM_FEATURES entries
+     */
+    public void getFeatures(double[] features) {
+        features[Constants.FEATURE_AGGREGATE_HEIGHT] = aggregateHeight;
+        features[Constants.FEATURE_MAX_HEIGHT] = getMaxHeight();
+        features[Constants.FEATURE_HOLES] = totalHoles;
+        features[Constants.FEATURE_BUMPINESS] = bumpiness;
+        features[Constants.FEATURE_ROW_TRANSITIONS] = totalRowTransitions;
+        features[Constants.FEATURE_WELL_SUM] = wellSum;
+    }
+
+    /**
+     * Getter for the feature vector of the board. The array returned is a
+     * copy, so changing it has no effect on the board.
+     *
+     * @return the features, indexed by the FEATURE_ constants in Constants
+     */
+    public double[] getFeatureVector() {
+        double[] features = new double[Constants.NUM_FEATURES];
+        getFeatures(features);
+        return features;
+    }
+
+    /** @return number of locked cells on the board */
+    public int getNumFilledCells() {
+        int count = 0;
+        for (int row = highestRow(); row < numRows; row++) {
+            count += Long.bitCount(rows[row]);
+        }
+        return count;
+    }
+
+    /* The highest row that has a locked cell (or numRows if the board is empty) */
+    private int highestRow() {
+        return numRows - getMaxHeight();
+    }
+
+    /**
+     * Builds a board out of a set of locked cells
+     * (ex: the pre-filled layouts used for testing)
+     *
+     * @param cells: the locked cells
+     * @param numRows: number of rows of the board
+     * @param numCols: number of columns of the board
+     * @return a board with exactly those cells locked
+     */
+    public static TetrisBoard fromCells(Set<Cell> cells, int numRows, int numCols) {
+        TetrisBoard board = new TetrisBoard(numRows, numCols);
+        for (Cell c : cells) {
+            board.fill(c.getX(), c.getY());
+        }
+        return board;
+    }
+
+    /**
+     * Replaces every locked cell of the board with the given rows
+     *
+     * @param masks: the bit mask of every row, from the top down
+     */
+    public void setRows(long[] masks) {
+        clear();
+        for (int row = 0; row < numRows; row++) {
+            long mask = masks[row] & fullRow;
+            while (mask != 0L) {
+                fill(Long.numberOfTrailingZeros(mask), row);
+                mask &= mask - 1;
+            }
+        }
+    }
+
+    /**
+     * Pushes every row up by one and adds a row at the bottom
+     * (ex: a garbage row sent by an opponent)
+     *
+     * @param mask: bit mask of the new bottom row
+     * @return false if the top row had locked cells, which were pushed off the board
+     */
+    public boolean addRowAtBottom(long mask) {
+        boolean fits = rows[0] == 0L;
+        long[] shifted = new long[numRows];
+        System.arraycopy(rows, 1, shifted, 0, numRows - 1);
+        shifted[numRows - 1] = mask;
+        setRows(shifted);
+        return fits;
+    }
+
+    /**
+     * Getter for the Zobrist hash of the locked cells
+     *
+     * @return a hash that is equal for boards with the same locked cells
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Two boards are equal if they have the same size and the same locked
+     * cells. The hashes are compared first, so unequal boards are almost
+     * always told apart without looking at a single row.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TetrisBoard board = (TetrisBoard) o;
+
+        if (hash != board.hash || numRows != board.numRows || numCols != board.numCols) return false;
+        return Arrays.equals(rows, board.rows);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /** @return true if every cell of the row is locked */
+    public boolean isRowFull(int row) {
+        return rows[row] == fullRow;
+    }
+
+    /** @return true if no cell of the row is locked */
+    public boolean isRowEmpty(int row) {
+        return rows[row] == 0L;
+    }
+
+    /**
+     * Deletes a row and shifts every row above it down by one,
+     * just like removing a row of locked cells does on the board.
+     *
+     * @param row: the row to be removed
+     */
+    public void removeRow(int row) {
+        long removed = rows[row];
+
+        //Every row above the removed one changes position, so their keys change
+        hash ^= zobrist.rowKey(row, removed);
+        for (int above = 0; above < row; above++) {
+            if (rows[above] != 0L) {
+                hash ^= zobrist.rowKey(above, rows[above]) ^ zobrist.rowKey(above + 1, rows[above]);
+            }
+        }
+        System.arraycopy(rows, 0, rows, 1, row);
+        rows[0] = 0L;
+
+        //Transitions of the other rows move along with them
+        totalRowTransitions -= rowTransitions[row];
+        System.arraycopy(rowTransitions, 0, rowTransitions, 1, row);
+        rowTransitions[0] = countRowTransitions(0L);
+        totalRowTransitions += rowTransitions[0];
+
+        for (int column = 0; column < numCols; column++) {
+            int top = columnTops[column];
+            if (top < row) {
+                //Everything above the removed row moved down by one
+                columnTops[column]++;
+                aggregateHeight--;
+                if ((removed & (1L << column)) == 0) {
+                    //The removed cell was a hole
+                    columnHoles[column]--;
+                    totalHoles--;
+                }
+            } else if (top == row) {
+                //The top of the column was removed, look for the next locked cell below it.
+                //The empty cells in between are no longer covered.
+                int newTop = findTop(column, row + 1);
+                int uncovered = newTop - row - 1;
+                columnHoles[column] -= uncovered;
+                totalHoles -= uncovered;
+                aggregateHeight -= newTop - top;
+                columnTops[column] = newTop;
+            }
+        }
+        //Every column may have changed height, recompute the surface features
+        updateSurface();
+    }
+
+    /**
+     * Counts how many times filled and empty cells alternate along a row,
+     * treating the walls on both sides of the board as filled.
+     *
+     * @param row: the bit mask of the row
+     * @return number of transitions in the row
+     */
+    private int countRowTransitions(long row) {
+        //Put a filled wall bit on both sides of the row
+        long walled = (row << 1) | 1L | (1L << (numCols + 1));
+        //Every pair of neighbouring bits that differ is one transition
+        long differences = (walled ^ (walled >>> 1)) & ((1L << (numCols + 1)) - 1);
+        return Long.bitCount(differences);
+    }
+
+    /** Height difference between a column and both of its neighbours */
+    private int localBumpiness(int x) {
+        int sum = 0;
+        if (x > 0) {
+            sum += Math.abs(columnTops[x] - columnTops[x - 1]);
+        }
+        if (x < numCols - 1) {
+            sum += Math.abs(columnTops[x] - columnTops[x + 1]);
+        }
+        return sum;
+    }
+
+    /** Well sum of a column and both of its neighbours */
+    private int localWellSum(int x) {
+        int sum = 0;
+        for (int column = Math.max(0, x - 1); column <= Math.min(numCols - 1, x + 1); column++) {
+            sum += wellWeight(wellDepths[column]);
+        }
+        return sum;
+    }
+
+    /**
+     * A well of depth d contributes 1 + 2 + ... + d to the well sum,
+     * since deep wells are much harder to fill than shallow ones
+     */
+    private static int wellWeight(int depth) {
+        return depth * (depth + 1) / 2;
+    }
+
+    /** How deep a column sits below the lower of its two neighbours */
+    private int computeWellDepth(int x) {
+        int leftHeight = (x == 0) ? numRows : getColumnHeight(x - 1);
+        int rightHeight = (x == numCols - 1) ? numRows : getColumnHeight(x + 1);
+        return Math.max(0, Math.min(leftHeight, rightHeight) - getColumnHeight(x));
+    }
+
+    /* Recomputes bumpiness and wells from the column heights, O(number of columns) */
+    private void updateSurface() {
+        bumpiness = 0;
+        wellSum = 0;
+        for (int column = 0; column < numCols; column++) {
+            if (column > 0) {
+                bumpiness += Math.abs(columnTops[column] - columnTops[column - 1]);
+            }
+            wellDepths[column] = computeWellDepth(column);
+            wellSum += wellWeight(wellDepths[column]);
+        }
+    }
+
+    /**
+     * Finds the highest locked cell of a column, starting at a given row
+     *
+     * @return y coordinate of that cell, or the number of rows if there is none
+     */
+    private int findTop(int column, int fromRow) {
+        long bit = 1L << column;
+        for (int row = fromRow; row < numRows; row++) {
+            if ((rows[row] & bit) != 0) {
+                return row;
+            }
+        }
+        return numRows;
+    }
+
+    /**
+     * Checks whether a shape placed at (x, y) would collide with a locked
+     * cell or stick out of the left, right, bottom or top of the board.
+     *
+     * @param shape: the shape
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's location
+     * @return true if the shape does not fit at that location
+     */
+    public boolean collides(TetrisShape shape, int x, int y) {
+        //Check the left and right walls once, using the shape's outermost filled columns
+        if (x + shape.getMinColumn() < 0 || x + shape.getMaxColumn() >= numCols) {
+            return true;
+        }
+        long[] rowMasks = shape.getRowMasks();
+        for (int j = 0; j < rowMasks.length; j++) {
+            if (rowMasks[j] == 0) {
+                continue;
+            }
+            int row = y + j;
+            if (row < 0 || row >= numRows || (rows[row] & shift(rowMasks[j], x)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Locks every cell of a shape placed at (x, y) onto the board
+     *
+     * @param shape: the shape that landed
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's location
+     */
+    public void place(TetrisShape shape, int x, int y) {
+        int[][] shapeMatrix = shape.getShapeMatrix();
+        for (int j = 0; j < shapeMatrix.length; j++) {
+            for (int i = 0; i < shapeMatrix[j].length; i++) {
+                if (shapeMatrix[j][i] == 1) {
+                    fill(x + i, y + j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every full row between two rows (inclusive). Rows are
+     * checked from the top down, so removing a row (which shifts the rows
+     * above it) never moves a row that still has to be checked.
+     *
+     * @param fromRow: first row to check
+     * @param toRow: last row to check
+     * @return number of rows removed
+     */
+    public int clearFullRows(int fromRow, int toRow) {
+        int cleared = 0;
+        for (int row = Math.max(0, fromRow); row <= Math.min(numRows - 1, toRow); row++) {
+            if (isRowFull(row)) {
+                removeRow(row);
+                cleared++;
+            }
+        }
+        return cleared;
+    }
+
+    /* Moves the bits of a shape's row mask over to column x */
+    private static long shift(long mask, int x) {
+        return (x >= 0) ? mask << x : mask >>> -x;
+    }
+
+    /**
+     * Computes the y coordinate a shape would land at if it was dropped
+     * straight down from (x, y).
+     *
+     * As long as the shape is above the stack in every column it covers, the
+     * landing spot follows directly from the column tops, which makes this
+     * O(width of the shape). Only a shape that has been tucked under an
+     * overhang falls back to stepping down one row at a time.
+     *
+     * @param shape: the shape that is falling
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's (valid) location
+     * @return the y coordinate of the location where the shape lands
+     */
+    public int getLandingY(TetrisShape shape, int x, int y) {
+        int[] columnBottoms = shape.getColumnBottoms();
+        int distance = numRows;
+        for (int i = 0; i < columnBottoms.length; i++) {
+            if (columnBottoms[i] < 0) {
+                continue; //no cells of the shape in this column
+            }
+            int bottom = y + columnBottoms[i];
+            int top = columnTops[x + i];
+            if (bottom >= top) {
+                //Shape is under the surface of this column, heights are not enough
+                return stepDown(shape, x, y);
+            }
+            distance = Math.min(distance, top - bottom - 1);
+        }
+        return y + distance;
+    }
+
+    /** Moves the shape down one row at a time until it can't go any further */
+    private int stepDown(TetrisShape shape, int x, int y) {
+        while (!collides(shape, x, y + 1)) {
+            y++;
+        }
+        return y;
+    }
+}
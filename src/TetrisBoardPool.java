@@ -0,0 +1,69 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * TetrisBoardPool keeps boards that are no longer needed so they can be
+ * handed out again instead of allocating new ones. Searches that copy the
+ * board for every branch they explore go through a pool, since most of
+ * those copies only live for a fraction of a millisecond.
+ *
+ * The pool can be shared between threads. Boards handed out by the pool
+ * always have the size the pool was created with.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisBoardPool {
+
+    private final int numRows;
+    private final int numCols;
+    private final ConcurrentLinkedQueue<TetrisBoard> freeBoards = new ConcurrentLinkedQueue<>();
+
+    public TetrisBoardPool(int numRows, int numCols) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * Hands out a board that holds a copy of the board passed in
+     *
+     * @param source: the board to copy
+     * @return a board from the pool (or a new one if the pool is empty)
+     */
+    public TetrisBoard copyOf(TetrisBoard source) {
+        TetrisBoard board = freeBoards.poll();
+        if (board == null) {
+            return new TetrisBoard(source);
+        }
+        board.copyFrom(source);
+        return board;
+    }
+
+    /**
+     * Hands out a board with unspecified content (for use as scratch space)
+     *
+     * @return a board from the pool (or a new one if the pool is empty)
+     */
+    public TetrisBoard acquire() {
+        TetrisBoard board = freeBoards.poll();
+        return (board != null) ? board : new TetrisBoard(numRows, numCols);
+    }
+
+    /**
+     * Gives a board back to the pool. The board must not be used
+     * by the caller after this.
+     *
+     * @param board: the board that is no longer needed
+     */
+    public void release(TetrisBoard board) {
+        if (board != null) {
+            freeBoards.offer(board);
+        }
+    }
+}
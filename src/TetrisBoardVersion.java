@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+/**
+ * TetrisBoardVersion is the state of a game right after a shape locked (and
+ * its full rows were cleared): the colors of the locked cells, the score,
+ * the shape that comes in next and how far into the piece queue it is. The
+ * model keeps one version per locked shape so the game can be stepped back
+ * and forth through, and undone.
+ *
+ * Versions never change, which lets them share rows: a version only keeps
+ * its stack as a list of the rows that have locked cells, from the top of
+ * the stack down, and the rows below the lowest row a shape changed are not
+ * copied but shared with the version before. Keeping a version per shape
+ * costs the few rows near the top of the stack that the shape touched,
+ * however long the game gets.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisBoardVersion {
+
+    /* A row that has locked cells, and the next such row below it */
+    private static class Row {
+        private final int row;
+        private final byte[] colors;
+        private final Row below;
+
+        private Row(int row, byte[] colors, Row below) {
+            this.row = row;
+            this.colors = colors;
+            this.below = below;
+        }
+    }
+
+    private final int numRows;
+    private final int numCols;
+
+    //The highest row with locked cells (null for an empty board)
+    private final Row top;
+
+    private final int numLinesCleared;
+    private final int numTetrisCleared;
+    private final int shapeId;
+    private final int numShapesTaken;
+
+    private TetrisBoardVersion(int numRows, int numCols, Row top, int numLinesCleared,
+                               int numTetrisCleared, int shapeId, int numShapesTaken) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.top = top;
+        this.numLinesCleared = numLinesCleared;
+        this.numTetrisCleared = numTetrisCleared;
+        this.shapeId = shapeId;
+        this.numShapesTaken = numShapesTaken;
+    }
+
+    /**
+     * Creates the version of a game that has just started
+     *
+     * @param numRows: number of rows of the board
+     * @param numCols: number of columns of the board
+     * @param shapeId: id of the first shape (see TetrisShapeFactory)
+     * @return a version with an empty board
+     */
+    public static TetrisBoardVersion createEmpty(int numRows, int numCols, int shapeId) {
+        return new TetrisBoardVersion(numRows, numCols, null, 0, 0, shapeId, 1);
+    }
+
+    /**
+     * Creates the version that follows this one, from the grid of the game.
+     * Only the rows of the grid from lowestChangedRow up are read; the rows
+     * below it are shared with this version.
+     *
+     * @param grid: the locked cells of the game now
+     * @param lowestChangedRow: the lowest row that has changed since this version
+     *                        (a row a cell was locked in or that was removed)
+     * @param numLinesCleared: lines cleared so far
+     * @param numTetrisCleared: Tetrises cleared so far
+     * @param shapeId: id of the shape that comes in next
+     * @param numShapesTaken: shapes taken out of the piece queue so far (the next one included)
+     * @return the next version
+     */
+    public TetrisBoardVersion next(TetrisGrid grid, int lowestChangedRow, int numLinesCleared,
+                                   int numTetrisCleared, int shapeId, int numShapesTaken) {
+        Row shared = top;
+        while (shared != null && shared.row <= lowestChangedRow) {
+            shared = shared.below;
+        }
+        //Build the changed rows from the bottom up, on top of the shared ones
+        Row newTop = shared;
+        for (int row = Math.min(lowestChangedRow, numRows - 1); row >= grid.getTopRow(); row--) {
+            if (grid.isRowEmpty(row)) {
+                continue;
+            }
+            byte[] colors = new byte[numCols];
+            for (int column = 0; column < numCols; column++) {
+                colors[column] = (byte) grid.getColor(column, row);
+            }
+            newTop = new Row(row, colors, newTop);
+        }
+        return new TetrisBoardVersion(numRows, numCols, newTop, numLinesCleared, numTetrisCleared, shapeId,
+                numShapesTaken);
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * @return the highest row that has a locked cell (numRows if the board is empty)
+     */
+    public int getTopRow() {
+        return (top == null) ? numRows : top.row;
+    }
+
+    /**
+     * Gets the colors of every row. The arrays are shared with other
+     * versions and must not be modified.
+     *
+     * @param rows: filled with the colors of every row (the colors of the grid,
+     *            0 for empty, as unsigned bytes), or null for a row that is empty
+     */
+    public void getRows(byte[][] rows) {
+        Arrays.fill(rows, null);
+        for (Row row = top; row != null; row = row.below) {
+            rows[row.row] = row.colors;
+        }
+    }
+
+    public int getNumLinesCleared() {
+        return numLinesCleared;
+    }
+
+    public int getNumTetrisCleared() {
+        return numTetrisCleared;
+    }
+
+    /**
+     * @return id of the shape that comes in next (see TetrisShapeFactory)
+     */
+    public int getShapeId() {
+        return shapeId;
+    }
+
+    /**
+     * @return number of shapes taken out of the piece queue, the one that comes in next included
+     */
+    public int getNumShapesTaken() {
+        return numShapesTaken;
+    }
+}
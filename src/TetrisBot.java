@@ -0,0 +1,154 @@
+/**
+ * TetrisBot is a computer player. For the shape that is currently falling
+ * it enumerates every placement it can reach (using a TetrisPlacementFinder),
+ * scores the board each placement leaves behind with a TetrisEvaluator and
+ * picks the best one.
+ *
+ * A bot can also be told to consider tucks and spins. It then enumerates
+ * placements with a TetrisFinesseSolver instead, which finds every spot
+ * the shape can reach along with the shortest sequence of inputs to it,
+ * so the bot plays with realistic input counts.
+ *
+ * All of this works directly on TetrisBoard bit masks: each
+ * candidate is tried on a reused scratch board, so evaluating a placement
+ * allocates nothing.
+ *
+ * NOTE: A bot keeps a scratch board, so one bot should only be used by one
+ * thread at a time. The evaluator can be shared.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisBot {
+
+    private TetrisEvaluator evaluator;
+
+    //Board that candidate placements are tried out on
+    private TetrisBoard scratch;
+
+    //Lists the placements that can be reached
+    private TetrisPlacementFinder finder = new TetrisPlacementFinder();
+
+    //Lists every reachable placement, tucks and spins included (null if not wanted)
+    private TetrisFinesseSolver solver;
+    private boolean allowTucks;
+
+    //Total number of placements scored by this bot (for throughput statistics)
+    private long numPlacementsEvaluated = 0;
+
+    public TetrisBot(TetrisEvaluator evaluator) {
+        this(evaluator, false);
+    }
+
+    /**
+     * @param evaluator: scores the boards
+     * @param allowTucks: true to also consider placements that need tucks or spins
+     */
+    public TetrisBot(TetrisEvaluator evaluator, boolean allowTucks) {
+        this.evaluator = evaluator;
+        this.allowTucks = allowTucks;
+    }
+
+    /**
+     * Finds the best placement for a falling shape
+     *
+     * @param board: the locked cells of the game
+     * @param shape: the falling shape
+     * @param x: x coordinate of the falling shape's location
+     * @param y: y coordinate of the falling shape's location
+     * @return the best placement, or null if the shape can't be placed anywhere
+     */
+    public TetrisPlacement findBestPlacement(TetrisBoard board, TetrisShape shape, int x, int y) {
+        if (scratch == null || scratch.getNumRows() != board.getNumRows()
+                || scratch.getNumCols() != board.getNumCols()) {
+            scratch = new TetrisBoard(board.getNumRows(), board.getNumCols());
+        }
+        if (allowTucks) {
+            return findBestReachablePlacement(board, shape, x, y);
+        }
+
+        int numPlacements = finder.findPlacements(board, shape, x, y);
+        int best = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numPlacements; i++) {
+            double score = scorePlacement(board, finder.getShape(i), finder.getX(i), finder.getY(i));
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+
+        if (best < 0) {
+            return null;
+        }
+        int[] moves = TetrisPlacementFinder.computeMoves(shape, x, finder.getShape(best), finder.getX(best));
+        return new TetrisPlacement(finder.getShape(best), finder.getX(best), finder.getY(best), bestScore, moves);
+    }
+
+    /* Same as findBestPlacement, but over every placement the finesse solver can reach */
+    private TetrisPlacement findBestReachablePlacement(TetrisBoard board, TetrisShape shape, int x, int y) {
+        if (solver == null) {
+            solver = new TetrisFinesseSolver(board.getNumRows(), board.getNumCols(), false);
+        }
+        int numPlacements = solver.search(board, shape, x, y);
+        int best = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numPlacements; i++) {
+            double score = scorePlacement(board, solver.getShape(i), solver.getX(i), solver.getY(i));
+            //Between equally good placements, prefer the one that takes fewer inputs
+            if (score > bestScore || (score == bestScore && solver.getCost(i) < solver.getCost(best))) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        return new TetrisPlacement(solver.getShape(best), solver.getX(best), solver.getY(best), bestScore,
+                solver.getPath(best));
+    }
+
+    /**
+     * Scores the board that results from locking a shape at (x, y)
+     *
+     * @return the evaluator's score for the resulting board
+     */
+    public double scorePlacement(TetrisBoard board, TetrisShape shape, int x, int y) {
+        scratch.copyFrom(board);
+        scratch.place(shape, x, y);
+        int linesCleared = scratch.clearFullRows(y, y + shape.getShapeMatrix().length - 1);
+        numPlacementsEvaluated++;
+        return evaluator.evaluate(scratch, linesCleared);
+    }
+
+    /**
+     * Plays one shape of a headless game: finds the best placement
+     * for the engine's falling shape and makes the moves to get there
+     *
+     * @param engine: the game to play
+     * @return false if the game is over (or there was nowhere to place the shape)
+     */
+    public boolean playShape(TetrisEngine engine) {
+        if (engine.isGameOver()) {
+            return false;
+        }
+        TetrisPlacement placement = findBestPlacement(engine.getBoard(), engine.getFallingShape(),
+                engine.getShapeX(), engine.getShapeY());
+        if (placement == null) {
+            //Nowhere to go, let the shape lock where it is
+            engine.hardDrop();
+            return !engine.isGameOver();
+        }
+        for (int i = 0; i < placement.getNumMoves(); i++) {
+            engine.applyMove(placement.getMove(i));
+        }
+        return !engine.isGameOver();
+    }
+
+    public TetrisEvaluator getEvaluator() {
+        return evaluator;
+    }
+
+    public long getNumPlacementsEvaluated() {
+        return numPlacementsEvaluated;
+    }
+}
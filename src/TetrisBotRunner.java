@@ -0,0 +1,71 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * TetrisBotRunner plays a batch of headless games with a TetrisBot and
+ * prints the results. It is meant for demos, QA runs and calibrating
+ * difficulty without opening a window.
+ *
+ * Usage: java TetrisBotRunner [numGames] [seed] [maxShapesPerGame] [lookahead] [beamWidth] [scoreFile]
+ *
+ * With a lookahead greater than 0, the games are played by a deterministic
+ * TetrisBeamSearch over the piece queue instead of the one shape TetrisBot,
+ * so the results of a batch can be compared from one machine to another.
+ *
+ * Every game uses its own seed (seed, seed + 1, ...) so any single game
+ * of a batch can be replayed on its own. If a score file is given, the
+ * result of every game is appended to it (see TetrisScoreStore).
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisBotRunner {
+
+    public static void main(String[] args) throws IOException {
+        int numGames = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 0L;
+        int maxShapes = (args.length > 2) ? Integer.parseInt(args[2]) : 100000;
+        int lookahead = (args.length > 3) ? Integer.parseInt(args[3]) : 0;
+        int beamWidth = (args.length > 4) ? Integer.parseInt(args[4]) : 32;
+        TetrisScoreStore scoreStore = (args.length > 5) ? new TetrisScoreStore(Paths.get(args[5])) : null;
+
+        TetrisBot bot = new TetrisBot(new TetrisEvaluator());
+        TetrisBeamSearch search = new TetrisBeamSearch(new TetrisEvaluator(), lookahead, beamWidth,
+                0, true, ForkJoinPool.commonPool());
+        long totalLines = 0;
+        long totalShapes = 0;
+        long start = System.nanoTime();
+
+        for (int game = 0; game < numGames; game++) {
+            long gameStart = System.currentTimeMillis();
+            TetrisEngine engine = new TetrisEngine(seed + game);
+            while (engine.getNumShapesLocked() < maxShapes
+                    && (lookahead > 0 ? search.playShape(engine) : bot.playShape(engine))) {
+                //keep playing until the game is lost or the shape limit is reached
+            }
+            System.out.println("Game " + game + " (seed " + (seed + game) + "): "
+                    + engine.getNumLinesCleared() + " lines, "
+                    + engine.getNumTetrisCleared() + " Tetris, "
+                    + engine.getNumShapesLocked() + " shapes"
+                    + (engine.isGameOver() ? "" : " (stopped)"));
+            if (scoreStore != null) {
+                scoreStore.append(new TetrisScoreRecord(seed + game, TetrisScoreRecord.NO_LEVEL,
+                        engine.getNumLinesCleared(), engine.getNumTetrisCleared(),
+                        System.currentTimeMillis() - gameStart, System.currentTimeMillis(),
+                        TetrisScoreRecord.NO_REPLAY));
+            }
+            totalLines += engine.getNumLinesCleared();
+            totalShapes += engine.getNumShapesLocked();
+        }
+
+        if (scoreStore != null) {
+            scoreStore.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("Total: " + totalLines + " lines, " + totalShapes + " shapes in "
+                + String.format("%.2f", seconds) + " s ("
+                + String.format("%.0f", totalShapes / seconds) + " shapes/s"
+                + (lookahead > 0 ? "" : ", " + String.format("%.0f", bot.getNumPlacementsEvaluated() / seconds)
+                + " placements/s") + ")");
+    }
+}
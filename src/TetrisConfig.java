@@ -0,0 +1,114 @@
+/**
+ * TetrisConfig holds the size of the board and of its cells on screen,
+ * chosen when a game is created instead of being fixed in Constants.
+ * Constants.NUM_ROWS, NUM_COLS and CELL_SIZE are the defaults.
+ *
+ * The size can be set when starting the application, ex:
+ *   java -Dtetris.rows=200 -Dtetris.cols=100 -Dtetris.cellSize=4 TetrisGUIApplication
+ *
+ * TetrisConfig is immutable.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisConfig {
+
+    //Smallest and largest boards that can be played on. Boards need at least
+    //MIN_COLS columns for the I shape (4 wide) to spawn inside them at getStartX
+    public static final int MIN_ROWS = 4;
+    public static final int MIN_COLS = 6;
+    public static final int MAX_ROWS = 100000;
+    public static final int MAX_COLS = 1000;
+
+    private final int numRows;
+    private final int numCols;
+    private final int cellSize;
+
+    /**
+     * @param numRows: number of rows of the board
+     * @param numCols: number of columns of the board
+     * @param cellSize: width and height of a cell on screen, in pixels
+     */
+    public TetrisConfig(int numRows, int numCols, int cellSize) {
+        if (numRows < MIN_ROWS || numRows > MAX_ROWS || numCols < MIN_COLS || numCols > MAX_COLS) {
+            throw new IllegalArgumentException("Board size must be between " + MIN_COLS + "x" + MIN_ROWS
+                    + " and " + MAX_COLS + "x" + MAX_ROWS + ": " + numCols + "x" + numRows);
+        }
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("Cell size must be at least 1 pixel: " + cellSize);
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @return the classic board, as defined in Constants
+     */
+    public static TetrisConfig getDefault() {
+        return new TetrisConfig(Constants.NUM_ROWS, Constants.NUM_COLS, Constants.CELL_SIZE);
+    }
+
+    /**
+     * Reads the size from the system properties tetris.rows, tetris.cols and
+     * tetris.cellSize, using the defaults for the ones that are not set
+     *
+     * @return the configured size
+     */
+    public static TetrisConfig fromSystemProperties() {
+        return new TetrisConfig(Integer.getInteger("tetris.rows", Constants.NUM_ROWS),
+                Integer.getInteger("tetris.cols", Constants.NUM_COLS),
+                Integer.getInteger("tetris.cellSize", Constants.CELL_SIZE));
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Getter for the x coordinate shapes start at: the top center of the
+     * board (Constants.START_POS_X on the classic board)
+     *
+     * @return x coordinate of the starting location
+     */
+    public int getStartX() {
+        return getStartX(numCols);
+    }
+
+    /**
+     * Getter for the x coordinate shapes start at on a board of any width
+     * (ex: the board of a TetrisEngine)
+     *
+     * @param numCols: number of columns of the board
+     * @return x coordinate of the starting location
+     */
+    public static int getStartX(int numCols) {
+        return Constants.START_POS_X + (numCols - Constants.NUM_COLS) / 2;
+    }
+
+    /**
+     * @return width of the grid on screen, in pixels
+     */
+    public int getGridWidth() {
+        return numCols * cellSize;
+    }
+
+    /**
+     * @return height of the grid on screen, in pixels
+     */
+    public int getGridHeight() {
+        return numRows * cellSize;
+    }
+
+    @Override
+    public String toString() {
+        return numCols + "x" + numRows;
+    }
+}
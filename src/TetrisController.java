@@ -1,7 +1,7 @@
-import java.awt.Color;
-import java.util.Iterator;
+import java.io.IOException;
 import java.util.Set;
-import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * TetrisController serves as the controller for Tetris.
@@ -9,7 +9,9 @@ import java.util.HashSet;
  * The controller contains the central loop that runs as the game is in progress,
  * and keeps evaluating user input until game is lost or user presses quit.
  *
- * It contains instances of TetrisLogic and TetrisView, in order to communicate between them.
+ * It contains an instance of TetrisModel, and tells the view what happened through a
+ * TetrisEventBuffer (lines cleared, Tetris, level, game over, piece moved or locked)
+ * that the view drains once a frame, so the controller doesn't depend on Swing.
  * It receives input from the user, delegates that input to the corresponding method (moveDown(),
  * drop(), moveHorizontal(), rotateCW() etc).
  * (ex: an input of ACTION_DOWN will result in moveDown() being invoked)
@@ -22,18 +24,87 @@ import java.util.HashSet;
 
 public class TetrisController {
 
-    private TetrisView view;
+    //Finesse searches run on this thread so they never hold up a lock, however big the board
+    //(one thread for the whole application: the searches of a game are made in order)
+    private static final ExecutorService FINESSE_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TetrisFinesse");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private TetrisEventBuffer events;
     private TetrisModel model;
-    private TetrisTimer timer;
+    private TetrisTimer timer;  //null for a headless controller
+
+    private TetrisGravity gravity;
 
     private boolean gameOverFlag = false;
 
+    //Left/right/rotate inputs made for the falling shape, and the solver that
+    //finds the fewest inputs that were needed (for finesse statistics, only
+    //used on FINESSE_EXECUTOR)
+    private int inputsThisShape = 0;
+    private TetrisFinesseSolver finesseSolver;
+
+    //Log of every event of the game, for analytics (null for none)
+    private TetrisEventLog eventLog;
+
 
-    public TetrisController(TetrisModel model, TetrisView view, int level) {
+    public TetrisController(TetrisModel model, TetrisEventBuffer events, int level) {
+        this(model, events, level, false);
+    }
+
+    /**
+     * @param model: the game
+     * @param events: where the controller publishes what happened
+     * @param level: level of difficulty
+     * @param headless: true for a controller that only plays by the rules, moved by the caller
+     *                (ex: TetrisDifferentialFuzzer): no timer makes the shape fall, and no finesse
+     *                statistics are kept
+     */
+    public TetrisController(TetrisModel model, TetrisEventBuffer events, int level, boolean headless) {
         this.model = model;
-        this.view = view;
-        //Pass in the currently selected level to timer
-        timer = new TetrisTimer(this, level);
+        this.events = events;
+        //The currently selected level decides where on the gravity curve the game starts
+        gravity = TetrisGravity.forDifficulty(level);
+        if (!headless) {
+            timer = new TetrisTimer(this, gravity, model.getConfig().getNumRows());
+        }
+        //Soft drops and hard drops are free when measuring finesse
+        //(only measured on boards small enough to have a TetrisBoard)
+        if (model.getBoard() != null && !headless) {
+            TetrisConfig config = model.getConfig();
+            finesseSolver = new TetrisFinesseSolver(config.getNumRows(), config.getNumCols(), true);
+        }
+        events.publishLevel(gravity.getLevel(model.getNumLinesCleared()));
+    }
+
+    /**
+     * Sets the log every event of the game is written to, starting with the
+     * shape that is falling now. The log stays open when the game is over, as
+     * the game can be undone and go on; it is closed by closeEventLog once the
+     * game is left.
+     *
+     * @param eventLog: the log (null for none)
+     */
+    public void setEventLog(TetrisEventLog eventLog) {
+        this.eventLog = eventLog;
+        logShape(TetrisEventLog.SPAWN, 0);
+    }
+
+    /* Logs an event about the falling shape, at its current location */
+    private void logShape(int type, int value) {
+        if (eventLog != null) {
+            Cell location = model.getShapeLocation();
+            eventLog.log(type, model.getFallingShape(), location.getX(), location.getY(), value);
+        }
+    }
+
+    /* Logs an event that isn't about a shape */
+    private void logEvent(int type, int value) {
+        if (eventLog != null) {
+            eventLog.log(type, -1, 0, 0, 0, value);
+        }
     }
 
     /**
@@ -48,26 +119,10 @@ public class TetrisController {
      * @return true if desired move is valid, else false
      */
     private boolean isValidMove(Cell nextLocation) {
-
-        //Get all the cells that occupy the hypothetical move
-        Set<Cell> nextPotentialCells = TetrisUtil.computeFilledCells
-                (model.getFallingShape(), nextLocation);
-
         //Evaluation of validity involves checking for collision with locked cells
-        if (TetrisUtil.intersects(nextPotentialCells, model.getLockedCells())) {
-            return false;
-        }
-
-        //Evaluation of validity ALSO involves checking that the next move will not
-        //go out of bounds of the board
-        for (Cell c : nextPotentialCells) {
-            if (c.getX() < 0 || c.getX() > (Constants.NUM_COLS - 1) ||
-                    c.getY() > (Constants.NUM_ROWS - 1)) {
-                return false;
-            }
-        }
-        //Else, the desired move is valid
-        return true;
+        //and checking that the next move will not go out of bounds of the board.
+        //The grid does both a row at a time, with the size of the board it was made for
+        return !model.getGrid().collides(model.getFallingShape(), nextLocation.getX(), nextLocation.getY());
     }
 
     /**
@@ -78,17 +133,16 @@ public class TetrisController {
      * @return true if shape was able to move down (valid move),
      * false if shape was unable to move down (invalid move)
      */
-    public void moveDown() {
+    public boolean moveDown() {
         //If game is over, exit to prevent any further vertical movement
         if (gameOverFlag)
-            return;
+            return false;
         else {
             //Or, check game status, and if game over, proceed with the end game events
             if (isGameOver()) {
                 gameOverFlag = true;
                 endGame();
-                view.repaint();
-                return;
+                return false;
             }
         }
         //If execution reaches this point, it means that game is still in progress
@@ -102,15 +156,23 @@ public class TetrisController {
             //move is valid so update shape's location to the new location
             //no longer a hypothetical location
             model.setShapeLocation(nextLocation);
+            events.publish(TetrisEventBuffer.PIECE_MOVED);
+            logShape(TetrisEventLog.MOVE, Constants.MOVE_DOWN);
+            return true;
         } else {
             Set<Cell> shapeCells = TetrisUtil.computeFilledCells
                     (model.getFallingShape(), shapeLocation);
+            recordFinesse(shapeLocation);
+            logShape(TetrisEventLog.LOCK, 0);
+
             //Shape has landed, so add shape's cells to locked cells
             model.addToLockedCells(shapeCells);
+            events.publish(TetrisEventBuffer.PIECE_LOCKED);
             TetrisUtil.playLanding();
 
             //Create the next shape
             model.createNewShape();
+            logShape(TetrisEventLog.SPAWN, 0);
 
             //Check row status: are any rows complete? and if so, how many?
             int numRowsCleared = clearRows();
@@ -121,10 +183,71 @@ public class TetrisController {
                 //Line clear and Tetris clear sound effects are the same
                 TetrisUtil.playLineClear();
                 model.incrementTetrisCleared();
-                view.displayTetrisCleared();
+                events.publish(TetrisEventBuffer.TETRIS);
+            }
+
+            //Clearing lines may have advanced the level, so speed up the running timer
+            if (numRowsCleared > 0) {
+                logEvent(TetrisEventLog.CLEAR, numRowsCleared);
+                if (timer != null) {
+                    timer.updateSpeed(model.getNumLinesCleared());
+                }
+                events.publishLevel(gravity.getLevel(model.getNumLinesCleared()));
             }
+
+            //Keep the game as it is now in the history, to be able to go back to it
+            model.recordVersion();
         }
-        view.repaint();
+        events.publish(TetrisEventBuffer.PIECE_MOVED);
+        return false;
+    }
+
+    /**
+     * Drops the shape straight down to where it lands and locks it there.
+     * The landing spot is read from the model (computed from the column
+     * heights) so the shape does not have to be moved down one row at a time.
+     */
+    public void hardDrop() {
+        if (gameOverFlag)
+            return;
+        model.setShapeLocation(model.getGhostLocation());
+        logShape(TetrisEventLog.MOVE, Constants.MOVE_HARD_DROP);
+
+        //Shape can't move down any further, so this locks it in place
+        moveDown();
+    }
+
+    /**
+     * Compares the inputs made for the shape that is landing with the fewest
+     * inputs that would have brought it from the spawn position to the same
+     * spot, and records the result in the model. Only a copy of the board is
+     * made here; the search runs on FINESSE_EXECUTOR and publishes
+     * FINESSE_RECORDED once the result is in the model.
+     *
+     * @param landedLocation: where the shape landed
+     */
+    private void recordFinesse(Cell landedLocation) {
+        if (finesseSolver == null) {
+            return;
+        }
+        TetrisShape shape = model.getFallingShape();
+        int inputs = inputsThisShape;
+        int x = landedLocation.getX();
+        int y = landedLocation.getY();
+        int startX = model.getConfig().getStartX();
+        //The board as the shape found it (it isn't locked in yet)
+        TetrisBoard board = new TetrisBoard(model.getBoard());
+        inputsThisShape = 0;
+
+        FINESSE_EXECUTOR.execute(() -> {
+            TetrisShape spawned = TetrisShapeFactory.getShape(shape.getShapeId(), 0);
+            finesseSolver.search(board, spawned, startX, Constants.START_POS_Y);
+            int fewestInputs = finesseSolver.getCost(shape, x, y);
+            if (fewestInputs >= 0) {
+                model.recordShapeInputs(inputs, fewestInputs);
+                events.publish(TetrisEventBuffer.FINESSE_RECORDED);
+            }
+        });
     }
 
     /**
@@ -132,6 +255,7 @@ public class TetrisController {
      * (that is, in response to a key event)
      */
     public void moveLeft() {
+        inputsThisShape++;
         moveHorizontal(Constants.DIR_LEFT);
     }
 
@@ -140,6 +264,7 @@ public class TetrisController {
      * (that is, in response to a key event)
      */
     public void moveRight() {
+        inputsThisShape++;
         moveHorizontal(Constants.DIR_RIGHT);
     }
 
@@ -157,6 +282,8 @@ public class TetrisController {
         Cell nextLocation = new Cell(shapeLocation.getX() + direction, shapeLocation.getY());
         if (isValidMove(nextLocation)) {
             model.setShapeLocation(nextLocation);
+            events.publish(TetrisEventBuffer.PIECE_MOVED);
+            logShape(TetrisEventLog.MOVE, (direction == Constants.DIR_LEFT) ? Constants.MOVE_LEFT : Constants.MOVE_RIGHT);
         }
     }
 
@@ -165,11 +292,16 @@ public class TetrisController {
      * the controller (that is, in response to a key event)
      */
     public void rotateCW() {
+        inputsThisShape++;
         model.rotateCW();
-        //If the rotation was not in fact a valid move (ex: out of bounds), undo rotation
-        if (!isValidMove(model.getShapeLocation())) {
+        //If the rotation was not in fact a valid move (ex: out of bounds), try kicking
+        //the shape into place, and if nothing fits, undo rotation
+        if (!kickRotatedShape(true)) {
             //To undo a CW rotation, you would rotate the shape CCW
             model.rotateCCW();
+        } else {
+            events.publish(TetrisEventBuffer.PIECE_MOVED);
+            logShape(TetrisEventLog.ROTATE, Constants.MOVE_ROTATE_CW);
         }
     }
 
@@ -178,14 +310,46 @@ public class TetrisController {
      * the controller (that is, in response to a key event)
      */
     public void rotateCCW() {
+        inputsThisShape++;
         model.rotateCCW();
-        //If the rotation was not in fact a valid move (ex: out of bounds), undo rotation
-        if (!isValidMove(model.getShapeLocation())) {
+        //If the rotation was not in fact a valid move (ex: out of bounds), try kicking
+        //the shape into place, and if nothing fits, undo rotation
+        if (!kickRotatedShape(false)) {
             //To undo a CCW rotation, you would rotate the shape CW
             model.rotateCW();
+        } else {
+            events.publish(TetrisEventBuffer.PIECE_MOVED);
+            logShape(TetrisEventLog.ROTATE, Constants.MOVE_ROTATE_CCW);
         }
     }
 
+    /**
+     * Tries the SRS wall kicks of a rotation that was just made, in order,
+     * and moves the shape to the first offset where it fits
+     * (see TetrisShapeFactory.getKicks)
+     *
+     * @param clockwise: direction of the rotation that was made
+     * @return true if the rotated shape fits somewhere, false if the rotation has to be undone
+     */
+    private boolean kickRotatedShape(boolean clockwise) {
+        TetrisShape rotated = model.getFallingShape();
+        //The kicks belong to the rotation the shape was in before rotating
+        int rotation = (rotated.getRotation() + (clockwise ? 3 : 1)) % 4;
+        int[] kicks = TetrisShapeFactory.getKicks(rotated.getShapeId(), rotation, clockwise);
+        Cell shapeLocation = model.getShapeLocation();
+        for (int i = 0; i < kicks.length; i += 2) {
+            int x = shapeLocation.getX() + kicks[i];
+            int y = shapeLocation.getY() + kicks[i + 1];
+            if (!model.getGrid().collides(rotated, x, y)) {
+                if (i > 0) {
+                    model.setShapeLocation(new Cell(x, y));
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Method evaluates whether a row contains
      * any clocked cells and returns true is so.
@@ -202,12 +366,8 @@ public class TetrisController {
      * false if a row is completely empty
      */
     private boolean doesRowHaveAnyLockedCells(int row) {
-        for (int column = 0; column < Constants.NUM_COLS; column++) {
-            Cell cell = new Cell(column, row);
-            if (model.getLockedCells().contains(cell))
-                return true;
-        }
-        return false;
+        //The grid keeps a count for each row, so no need to look up every cell
+        return !model.getGrid().isRowEmpty(row);
     }
 
     /**
@@ -219,14 +379,7 @@ public class TetrisController {
      * @return true is a row is completed/full, else false
      */
     private boolean isRowFilled(int row) {
-        for (int column = 0; column < Constants.NUM_COLS; column++) {
-            Cell cell = new Cell(column, row);
-
-            //Return false as soon as an empty cell is encountered
-            if (!model.getLockedCells().contains(cell))
-                return false;
-        }
-        return true;
+        return model.getGrid().isRowFull(row);
     }
 
     /**
@@ -239,7 +392,7 @@ public class TetrisController {
      */
     private int clearRows() {
         int numRowsCleared = 0;
-        for (int row = (Constants.NUM_ROWS - 1); row >= 0; row--) {
+        for (int row = (model.getConfig().getNumRows() - 1); row >= 0; row--) {
 
             //If you come across an empty row, can just exit method
             if (!doesRowHaveAnyLockedCells(row)) {
@@ -248,7 +401,7 @@ public class TetrisController {
             if (isRowFilled(row)) {
                 removeRow(row);
                 model.incrementLinesCleared();
-                view.displayLinesCleared();
+                events.publish(TetrisEventBuffer.LINES_CLEARED);
                 //Adding 1 to clearRows() each time keeps track
                 //of any lines cleared simultaneously
                 numRowsCleared = clearRows() + 1;
@@ -267,35 +420,8 @@ public class TetrisController {
      * @param row: the row of cells to be removed
      */
     private void removeRow(int row) {
-        for (int column = 0; column < Constants.NUM_COLS; column++) {
-            Cell cell = new Cell(column, row);
-            //Remove the row of cells from lockedCell set
-            //as they are no longer part of the board
-            model.getLockedCells().remove(cell);
-        }
-
-        /* Objective: Once a line has been removed, all the cells
-        above must be shifted down. However, since Cell is an
-        immutable object, in order to 'change' the state of
-        the cells above, the cells above are be removed,
-        and new cells are created with the updated y coordinate */
-
-        Iterator<Cell> i = model.getLockedCells().iterator();
-        Set<Cell> removedCells = new HashSet<>();
-        while (i.hasNext()) {
-            Cell c = i.next();
-            if (c.getY() < row) {
-                i.remove();
-                removedCells.add(c);
-            }
-        }
-        for (Cell c : removedCells) {
-            Color cellColor = c.getColor();
-            //Add the removed cells (which are technically new
-            //Cell objects) back to lockedCells but with updated
-            //y coordinates (shifted down)
-            model.getLockedCells().add((new Cell(c.getX(), c.getY() + 1, cellColor)));
-        }
+        //The model removes the row and shifts the cells above it down
+        model.removeRow(row);
         TetrisUtil.playLineClear();
     }
 
@@ -308,17 +434,16 @@ public class TetrisController {
      * @return true if game is over, or false if game is not over
      */
     private boolean isGameOver() {
-        Set<Cell> shapeCells = TetrisUtil.computeFilledCells
-                (model.getFallingShape(), model.getShapeLocation());
-
-        if (TetrisUtil.intersects(shapeCells, model.getLockedCells())) {
+        Cell shapeLocation = model.getShapeLocation();
+        if (model.getGrid().collides(model.getFallingShape(), shapeLocation.getX(), shapeLocation.getY())) {
+            Set<Cell> shapeCells = TetrisUtil.computeFilledCells(model.getFallingShape(), shapeLocation);
 
             //Add current shape to locked cells because it cannot move down at all
             model.addToLockedCells(shapeCells);
 
             //To show user that shape is locked now because it
             //landed even before it could moveDown -> game over
-            view.repaint();
+            events.publish(TetrisEventBuffer.PIECE_LOCKED);
             return true;
         } else
             return false;
@@ -333,13 +458,66 @@ public class TetrisController {
      */
     private void endGame() {
         stopTimer();
-        view.displayGameOverMessage();
+        events.publish(TetrisEventBuffer.GAME_OVER);
+        logEvent(TetrisEventLog.GAME_OVER, model.getNumLinesCleared());
         TetrisUtil.playGameOver();
     }
 
+    /**
+     * Getter for the game over flag
+     *
+     * @return true once the game has been lost
+     */
+    public boolean isGameEnded() {
+        return gameOverFlag;
+    }
+
     /* Stops the timer */
     public void stopTimer() {
-        timer.stop();
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    /* Starts the stopped timer again (after its initial delay) */
+    public void startTimer() {
+        if (timer != null && !gameOverFlag) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Undoes the game back to one of the versions in the model's history
+     * and goes on playing from there, even if the game was over
+     *
+     * @param index: number of the version (see TetrisModel.getVersion)
+     */
+    public void restoreVersion(int index) {
+        model.restoreVersion(index);
+        gameOverFlag = false;
+        inputsThisShape = 0;
+        events.publish(TetrisEventBuffer.LINES_CLEARED | TetrisEventBuffer.TETRIS | TetrisEventBuffer.PIECE_MOVED);
+        events.publishLevel(gravity.getLevel(model.getNumLinesCleared()));
+        logShape(TetrisEventLog.SPAWN, 0);
+        if (timer != null) {
+            timer.updateSpeed(model.getNumLinesCleared());
+            timer.start();
+        }
+    }
+
+    /**
+     * Closes the event log, if any (when the game is left for a new one, or the application is closed)
+     */
+    public void closeEventLog() {
+        if (eventLog == null) {
+            return;
+        }
+        try {
+            eventLog.close();
+        } catch (IOException e) {
+            System.err.println("Could not write the event log: " + e.getMessage());
+        }
+        eventLog = null;
     }
 
     /**
@@ -350,25 +528,12 @@ public class TetrisController {
      * Note: This method is no longer being invoked
      */
     private void testMethod() {
-        model.getLockedCells().add(new Cell(0, 17));
-        model.getLockedCells().add(new Cell(1, 17));
-        model.getLockedCells().add(new Cell(2, 17));
-        model.getLockedCells().add(new Cell(3, 17));
-        model.getLockedCells().add(new Cell(4, 17));
-        model.getLockedCells().add(new Cell(5, 17));
-        model.getLockedCells().add(new Cell(6, 17));
-        model.getLockedCells().add(new Cell(7, 17));
-        model.getLockedCells().add(new Cell(8, 17));
-
-        model.getLockedCells().add(new Cell(0, 16));
-        model.getLockedCells().add(new Cell(1, 16));
-        model.getLockedCells().add(new Cell(2, 16));
-        model.getLockedCells().add(new Cell(3, 16));
-        model.getLockedCells().add(new Cell(4, 16));
-        model.getLockedCells().add(new Cell(5, 16));
-        model.getLockedCells().add(new Cell(6, 16));
-        model.getLockedCells().add(new Cell(7, 16));
-        model.getLockedCells().add(new Cell(8, 16));
+        //Fill the bottom two rows, except for the last column
+        int numRows = model.getConfig().getNumRows();
+        for (int row = numRows - 2; row < numRows; row++) {
+            for (int column = 0; column < model.getConfig().getNumCols() - 1; column++) {
+                model.addToLockedCells(new Cell(column, row));
+            }
+        }
     }
-}
-
+}
\ No newline at end of file
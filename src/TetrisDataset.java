@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TetrisDataset is a file of training samples for machine learning, one
+ * sample per shape placed: the locked cells the shape found, the shape and
+ * the one after it, where the shape was placed, the reward for it and the
+ * game it was placed in.
+ *
+ * The file is made for training jobs to memory map: every field of every
+ * sample has a fixed width, and each field is stored as a column of its own
+ * (all the boards, then all the rewards, ...), little endian, so any column
+ * can be read as a plain array (ex: with numpy.memmap).
+ *
+ * File format:
+ *   header (64 bytes): magic (int), version (int), number of rows (int), number of
+ *                      columns (int), capacity (long), number of samples (long)
+ *   columns, each holding capacity values, in this order:
+ *     board:    the locked cells, a row at a time from the top, each row in
+ *               (numCols + 7) / 8 bytes with column c at bit c; padded to a multiple of 4 bytes
+ *     reward:   lines cleared by the placement (float)
+ *     y:        y coordinate the shape was placed at (short)
+ *     x:        x coordinate the shape was placed at (byte)
+ *     rotation: rotation of the placed shape (byte)
+ *     shape:    id of the placed shape, see TetrisShapeFactory (byte)
+ *     next:     id of the shape after it (byte)
+ *     done:     1 if the placement ended the game, otherwise 0 (byte)
+ *     game:     id of the game the sample is from (int)
+ *
+ * A dataset is created with a fixed capacity. Samples can be written from
+ * several threads at once: each sample is given its own slot by reserve.
+ * The samples of a game are in the order its shapes were placed, but games
+ * written at the same time are interleaved, so an episode is read back by
+ * taking the samples of its game id in slot order.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisDataset implements AutoCloseable {
+
+    private static final int MAGIC = 0x54445331;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+
+    //Columns
+    private static final int BOARD = 0;
+    private static final int REWARD = 1;
+    private static final int Y = 2;
+    private static final int X = 3;
+    private static final int ROTATION = 4;
+    private static final int SHAPE = 5;
+    private static final int NEXT = 6;
+    private static final int DONE = 7;
+    private static final int GAME = 8;
+    private static final int NUM_COLUMNS = 9;
+
+    //Columns are mapped in pieces of at most this many bytes
+    private static final long MAX_MAP_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final boolean writable;
+    private final int numRows;
+    private final int numCols;
+    private final int rowBytes;
+    private final long capacity;
+    private final AtomicLong numSamples;
+
+    //Width of every column, and its pieces: maps[column][i] holds samples i << mapShift and up
+    private final int[] widths = new int[NUM_COLUMNS];
+    private final int mapShift;
+    private final long mapMask;
+    private final MappedByteBuffer[][] maps;
+
+    /* Maps the columns of a file whose header has been read or written */
+    private TetrisDataset(FileChannel channel, boolean writable, int numRows, int numCols,
+                          long capacity, long numSamples) throws IOException {
+        this.channel = channel;
+        this.writable = writable;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.capacity = capacity;
+        this.numSamples = new AtomicLong(numSamples);
+        rowBytes = (numCols + 7) / 8;
+
+        widths[BOARD] = (rowBytes * numRows + 3) & ~3;
+        widths[REWARD] = Float.BYTES;
+        widths[Y] = Short.BYTES;
+        for (int column = X; column <= DONE; column++) {
+            widths[column] = 1;
+        }
+        widths[GAME] = Integer.BYTES;
+
+        //Pieces hold a power of 2 samples, so finding a sample's piece is a shift
+        mapShift = 63 - Long.numberOfLeadingZeros(MAX_MAP_SIZE / widths[BOARD]);
+        mapMask = (1L << mapShift) - 1;
+        int numMaps = (int) ((capacity + mapMask) >> mapShift);
+        maps = new MappedByteBuffer[NUM_COLUMNS][numMaps];
+        long offset = HEADER_SIZE;
+        for (int column = 0; column < NUM_COLUMNS; column++) {
+            for (int i = 0; i < numMaps; i++) {
+                long first = (long) i << mapShift;
+                long count = Math.min(capacity - first, 1L << mapShift);
+                maps[column][i] = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                        offset + first * widths[column], count * widths[column]);
+                maps[column][i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            offset += capacity * widths[column];
+        }
+    }
+
+    /**
+     * Creates a dataset to write samples to (replacing the file if it exists)
+     *
+     * @param file: the dataset file
+     * @param numRows: number of rows of the boards
+     * @param numCols: number of columns of the boards
+     * @param capacity: number of samples the file holds
+     * @return the dataset, with no samples yet
+     */
+    public static TetrisDataset create(Path file, int numRows, int numCols, long capacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeHeader(channel, numRows, numCols, capacity, 0);
+            return new TetrisDataset(channel, true, numRows, numCols, capacity, 0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a dataset to read its samples
+     *
+     * @param file: the dataset file
+     * @return the dataset
+     */
+    public static TetrisDataset open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a Tetris dataset: unknown header");
+            }
+            int numRows = header.getInt();
+            int numCols = header.getInt();
+            long capacity = header.getLong();
+            long numSamples = header.getLong();
+            return new TetrisDataset(channel, false, numRows, numCols, capacity, numSamples);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, int numRows, int numCols, long capacity,
+                                    long numSamples) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(numRows).putInt(numCols)
+                .putLong(capacity).putLong(numSamples).position(HEADER_SIZE);
+        header.flip();
+        channel.write(header, 0);
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of samples in the dataset (or reserved so far, while writing)
+     */
+    public long getNumSamples() {
+        return Math.min(numSamples.get(), capacity);
+    }
+
+    /**
+     * Reserves the slot of the next sample. Thread safe.
+     *
+     * @return the slot, or -1 if the dataset is full
+     */
+    public long reserve() {
+        long sample = numSamples.getAndIncrement();
+        return (sample < capacity) ? sample : -1;
+    }
+
+    /* The piece of a column that holds a sample, and where the sample is within it */
+    private MappedByteBuffer map(int column, long sample) {
+        return maps[column][(int) (sample >> mapShift)];
+    }
+
+    private int index(int column, long sample) {
+        return (int) (sample & mapMask) * widths[column];
+    }
+
+    /**
+     * Writes a sample into a slot reserved with reserve
+     *
+     * @param sample: the slot
+     * @param rows: the bit masks of the board's rows (see TetrisBoard.getRow)
+     * @param shapeId: id of the placed shape
+     * @param nextShapeId: id of the shape after it
+     * @param rotation: rotation of the placed shape
+     * @param x: x coordinate the shape was placed at
+     * @param y: y coordinate the shape was placed at
+     * @param reward: reward for the placement
+     * @param done: true if the placement ended the game
+     * @param gameId: id of the game the sample is from
+     */
+    public void write(long sample, long[] rows, int shapeId, int nextShapeId, int rotation, int x, int y,
+                      float reward, boolean done, int gameId) {
+        MappedByteBuffer board = map(BOARD, sample);
+        int position = index(BOARD, sample);
+        for (int row = 0; row < numRows; row++) {
+            long mask = rows[row];
+            for (int i = 0; i < rowBytes; i++) {
+                board.put(position++, (byte) mask);
+                mask >>>= 8;
+            }
+        }
+        map(REWARD, sample).putFloat(index(REWARD, sample), reward);
+        map(Y, sample).putShort(index(Y, sample), (short) y);
+        map(X, sample).put(index(X, sample), (byte) x);
+        map(ROTATION, sample).put(index(ROTATION, sample), (byte) rotation);
+        map(SHAPE, sample).put(index(SHAPE, sample), (byte) shapeId);
+        map(NEXT, sample).put(index(NEXT, sample), (byte) nextShapeId);
+        map(DONE, sample).put(index(DONE, sample), (byte) (done ? 1 : 0));
+        map(GAME, sample).putInt(index(GAME, sample), gameId);
+    }
+
+    /**
+     * Reads a row of a sample's board
+     *
+     * @param sample: the sample
+     * @param row: the row
+     * @return bit mask of the row's locked cells (as TetrisBoard.getRow)
+     */
+    public long getRow(long sample, int row) {
+        MappedByteBuffer board = map(BOARD, sample);
+        int position = index(BOARD, sample) + row * rowBytes;
+        long mask = 0;
+        for (int i = 0; i < rowBytes; i++) {
+            mask |= (board.get(position + i) & 0xFFL) << (8 * i);
+        }
+        return mask;
+    }
+
+    public float getReward(long sample) {
+        return map(REWARD, sample).getFloat(index(REWARD, sample));
+    }
+
+    public int getY(long sample) {
+        return map(Y, sample).getShort(index(Y, sample));
+    }
+
+    public int getX(long sample) {
+        return map(X, sample).get(index(X, sample));
+    }
+
+    public int getRotation(long sample) {
+        return map(ROTATION, sample).get(index(ROTATION, sample));
+    }
+
+    public int getShapeId(long sample) {
+        return map(SHAPE, sample).get(index(SHAPE, sample));
+    }
+
+    public int getNextShapeId(long sample) {
+        return map(NEXT, sample).get(index(NEXT, sample));
+    }
+
+    public boolean isDone(long sample) {
+        return map(DONE, sample).get(index(DONE, sample)) != 0;
+    }
+
+    public int getGameId(long sample) {
+        return map(GAME, sample).getInt(index(GAME, sample));
+    }
+
+    /**
+     * Writes the number of samples into the header (if the dataset was
+     * created for writing) and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (writable) {
+            for (MappedByteBuffer[] column : maps) {
+                for (MappedByteBuffer map : column) {
+                    map.force();
+                }
+            }
+            writeHeader(channel, numRows, numCols, capacity, getNumSamples());
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TetrisDatasetGenerator fills a TetrisDataset with samples from headless
+ * games, either played by a TetrisBot or replayed from a TetrisReplayArchive.
+ *
+ * It listens to the engine a game is played on: once the rows cleared by a
+ * shape are gone, it copies the bit masks of the board's rows (see
+ * TetrisBoard.getRow) for the next shape, and writes them out along with
+ * that shape's placement as soon as the shape locks. Nothing but the row
+ * masks is ever copied, and samples go straight into the memory mapped file.
+ *
+ * A generator is used by one thread; several generators can fill the same
+ * dataset at once. Every sample is tagged with the id of its game, as the
+ * samples of games written at the same time are interleaved in the file.
+ *
+ * Usage: java TetrisDatasetGenerator file capacity bot [seed] [maxShapesPerGame] [numThreads]
+ *        java TetrisDatasetGenerator file capacity archiveFile [numThreads]
+ *        java TetrisDatasetGenerator file check [maxShapesPerGame]
+ * Bot games are played on the board size set by the tetris.rows and tetris.cols
+ * system properties; replays fill the dataset at the board size of the first replay.
+ * Game ids are the seed offset of bot games and the index of replays in the archive.
+ * check writes two bot games at once and checks that each reads back in order.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisDatasetGenerator implements TetrisEngineListener {
+
+    private final TetrisDataset dataset;
+
+    //The game being sampled, and the board, shape and next shape of the sample being made
+    private TetrisEngine engine;
+    private int gameId;
+    private final long[] rows;
+    private int shapeId;
+    private int nextShapeId;
+    private int numLinesCleared;
+
+    //Where the shape locked (null until it does)
+    private TetrisShape lockedShape;
+    private int lockedX;
+    private int lockedY;
+
+    private boolean full = false;
+
+    public TetrisDatasetGenerator(TetrisDataset dataset) {
+        this.dataset = dataset;
+        rows = new long[dataset.getNumRows()];
+    }
+
+    /**
+     * Plays a game with a bot, writing a sample for every shape placed
+     *
+     * @param bot: the bot
+     * @param seed: seed of the game's piece sequence
+     * @param maxShapes: the game is stopped after this many shapes
+     * @param gameId: id the game's samples are tagged with
+     * @return false once the dataset is full
+     */
+    public boolean playGame(TetrisBot bot, long seed, int maxShapes, int gameId) {
+        TetrisEngine game = new TetrisEngine(dataset.getNumRows(), dataset.getNumCols(), seed);
+        startGame(game, gameId);
+        while (!full && game.getNumShapesLocked() < maxShapes && bot.playShape(game)) {
+            //keep playing until the game is lost, the shape limit is reached or the dataset is full
+        }
+        game.setListener(null);
+        return !full;
+    }
+
+    /**
+     * Replays a game, writing a sample for every shape placed. A game played
+     * on a board of another size than the dataset's is skipped.
+     *
+     * @param replay: the game
+     * @param gameId: id the game's samples are tagged with
+     * @return false once the dataset is full
+     */
+    public boolean replayGame(TetrisReplay replay, int gameId) {
+        if (replay.getNumRows() != dataset.getNumRows() || replay.getNumCols() != dataset.getNumCols()) {
+            return !full;
+        }
+        TetrisEngine game = replay.createEngine();
+        startGame(game, gameId);
+        for (int i = 0; i < replay.getNumMoves() && !full && !game.isGameOver(); i++) {
+            game.applyMove(replay.getMove(i));
+        }
+        game.setListener(null);
+        return !full;
+    }
+
+    private void startGame(TetrisEngine game, int id) {
+        engine = game;
+        gameId = id;
+        numLinesCleared = 0;
+        lockedShape = null;
+        takeBoard();
+        game.setListener(this);
+    }
+
+    /* Copies the board, the falling shape and the next shape for the next sample */
+    private void takeBoard() {
+        TetrisBoard board = engine.getBoard();
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = board.getRow(row);
+        }
+        shapeId = engine.getFallingShape().getShapeId();
+        nextShapeId = engine.getPieceQueue().peek(0).getShapeId();
+    }
+
+    /* Writes the sample of the shape that just locked */
+    private void writeSample(int linesCleared, boolean done) {
+        if (lockedShape == null || full) {
+            return;
+        }
+        long sample = dataset.reserve();
+        if (sample < 0) {
+            full = true;
+            return;
+        }
+        dataset.write(sample, rows, shapeId, nextShapeId, lockedShape.getRotation(), lockedX, lockedY,
+                linesCleared, done, gameId);
+        lockedShape = null;
+    }
+
+    @Override
+    public void pieceMoved(TetrisShape shape, int x, int y) {
+    }
+
+    @Override
+    public void shapeLocked(TetrisShape shape, int x, int y) {
+        lockedShape = shape;
+        lockedX = x;
+        lockedY = y;
+    }
+
+    @Override
+    public void rowCleared(int row) {
+    }
+
+    @Override
+    public void garbageAdded(int count, int holeColumn) {
+    }
+
+    @Override
+    public void scoreChanged(int linesCleared, int tetrisCleared, int shapesLocked) {
+        //The rows are cleared by now, so the board is as the next shape finds it
+        writeSample(linesCleared - numLinesCleared, false);
+        numLinesCleared = linesCleared;
+        takeBoard();
+    }
+
+    @Override
+    public void gameOver() {
+        writeSample(0, true);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args[1].equals("check")) {
+            check(Paths.get(args[0]), (args.length > 2) ? Integer.parseInt(args[2]) : 2000);
+            return;
+        }
+        long capacity = Long.parseLong(args[1]);
+        boolean bot = args[2].equals("bot");
+        long seed = (bot && args.length > 3) ? Long.parseLong(args[3]) : 0L;
+        int maxShapes = (bot && args.length > 4) ? Integer.parseInt(args[4]) : 10000;
+        int threadsArg = bot ? 5 : 3;
+        int numThreads = (args.length > threadsArg) ? Integer.parseInt(args[threadsArg])
+                : Runtime.getRuntime().availableProcessors();
+
+        TetrisReplayArchive archive = bot ? null : new TetrisReplayArchive(Paths.get(args[2]));
+        TetrisConfig config = TetrisConfig.fromSystemProperties();
+        int numRows = (archive != null && archive.getNumReplays() > 0) ? archive.getNumRows(0) : config.getNumRows();
+        int numCols = (archive != null && archive.getNumReplays() > 0) ? archive.getNumCols(0) : config.getNumCols();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        long start = System.nanoTime();
+        try (TetrisDataset dataset = TetrisDataset.create(Paths.get(args[0]), numRows, numCols, capacity)) {
+            //Every thread takes the next game (a seed or a replay) until the dataset is full
+            AtomicInteger nextGame = new AtomicInteger();
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                workers.add(executor.submit(() -> {
+                    TetrisDatasetGenerator generator = new TetrisDatasetGenerator(dataset);
+                    TetrisBot player = new TetrisBot(new TetrisEvaluator());
+                    while (true) {
+                        int game = nextGame.getAndIncrement();
+                        if (bot ? !generator.playGame(player, seed + game, maxShapes, game)
+                                : game >= archive.getNumReplays()
+                                || !generator.replayGame(archive.getReplay(game), game)) {
+                            return;
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Wrote %d samples in %.2f s (%.0f samples/s)",
+                    dataset.getNumSamples(), seconds, dataset.getNumSamples() / seconds));
+        } finally {
+            executor.shutdown();
+            if (archive != null) {
+                archive.close();
+            }
+        }
+    }
+
+    /**
+     * Writes two bot games into a dataset at the same time, then checks that
+     * the samples of each game, taken by game id in slot order, are the same
+     * as the samples of that game written on its own
+     *
+     * @param file: the dataset file (replaced)
+     * @param maxShapes: the games are stopped after this many shapes
+     */
+    private static void check(Path file, int maxShapes) throws IOException, InterruptedException,
+            ExecutionException {
+        TetrisConfig config = TetrisConfig.fromSystemProperties();
+        int numRows = config.getNumRows();
+        int numCols = config.getNumCols();
+        int numGames = 2;
+        ExecutorService executor = Executors.newFixedThreadPool(numGames);
+        try (TetrisDataset dataset = TetrisDataset.create(file, numRows, numCols, (long) numGames * maxShapes)) {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < numGames; i++) {
+                int game = i;
+                workers.add(executor.submit(() -> new TetrisDatasetGenerator(dataset)
+                        .playGame(new TetrisBot(new TetrisEvaluator()), game, maxShapes, game)));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Path aloneFile = Files.createTempFile("TetrisDataset", ".bin");
+        try (TetrisDataset dataset = TetrisDataset.open(file)) {
+            //How often the file goes from one game to the other, to show the games were interleaved
+            int numSwitches = 0;
+            for (long sample = 1; sample < dataset.getNumSamples(); sample++) {
+                numSwitches += (dataset.getGameId(sample) != dataset.getGameId(sample - 1)) ? 1 : 0;
+            }
+            System.out.println(dataset.getNumSamples() + " samples, " + numSwitches + " switches between games");
+
+            for (int game = 0; game < numGames; game++) {
+                try (TetrisDataset alone = TetrisDataset.create(aloneFile, numRows, numCols, maxShapes)) {
+                    new TetrisDatasetGenerator(alone).playGame(new TetrisBot(new TetrisEvaluator()), game,
+                            maxShapes, game);
+                    String difference = compareEpisode(dataset, alone, game);
+                    System.out.println("Game " + game + ": " + alone.getNumSamples() + " samples, "
+                            + ((difference == null) ? "read back in order" : difference));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(aloneFile);
+        }
+    }
+
+    /* Compares the samples of a game in a dataset with the same game written alone */
+    private static String compareEpisode(TetrisDataset dataset, TetrisDataset alone, int gameId) {
+        long step = 0;
+        for (long sample = 0; sample < dataset.getNumSamples(); sample++) {
+            if (dataset.getGameId(sample) != gameId) {
+                continue;
+            }
+            if (step >= alone.getNumSamples()) {
+                return "more samples than the game has";
+            }
+            boolean same = dataset.getShapeId(sample) == alone.getShapeId(step)
+                    && dataset.getNextShapeId(sample) == alone.getNextShapeId(step)
+                    && dataset.getRotation(sample) == alone.getRotation(step)
+                    && dataset.getX(sample) == alone.getX(step) && dataset.getY(sample) == alone.getY(step)
+                    && dataset.getReward(sample) == alone.getReward(step)
+                    && dataset.isDone(sample) == alone.isDone(step);
+            for (int row = 0; row < dataset.getNumRows() && same; row++) {
+                same = dataset.getRow(sample, row) == alone.getRow(step, row);
+            }
+            if (!same) {
+                return "sample " + sample + " differs from step " + step;
+            }
+            step++;
+        }
+        return (step == alone.getNumSamples()) ? null : "only " + step + " samples";
+    }
+}
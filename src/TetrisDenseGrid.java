@@ -0,0 +1,126 @@
+/**
+ * TetrisDenseGrid stores every row of the board, each as the bits of one
+ * or more longs (64 columns per long), plus one byte per cell for its
+ * color. Checking whether a row is full or empty only looks at a count
+ * kept for every row.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisDenseGrid implements TetrisGrid {
+
+    private final int numRows;
+    private final int numCols;
+    private final int wordsPerRow;
+
+    //Bits of every row, row after row (wordsPerRow longs per row)
+    private final long[] bits;
+
+    //Color of every cell, row after row (0 if empty)
+    private final byte[] colors;
+
+    //Number of locked cells in every row
+    private final int[] rowCounts;
+
+    private int topRow;
+    private int numFilledCells;
+
+    public TetrisDenseGrid(int numRows, int numCols) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        wordsPerRow = (numCols + Long.SIZE - 1) / Long.SIZE;
+        bits = new long[numRows * wordsPerRow];
+        colors = new byte[numRows * numCols];
+        rowCounts = new int[numRows];
+        topRow = numRows;
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumCols() {
+        return numCols;
+    }
+
+    @Override
+    public boolean isFilled(int x, int y) {
+        return (bits[y * wordsPerRow + x / Long.SIZE] & (1L << (x % Long.SIZE))) != 0;
+    }
+
+    @Override
+    public int getColor(int x, int y) {
+        return colors[y * numCols + x] & 0xFF;
+    }
+
+    @Override
+    public void fill(int x, int y, int color) {
+        colors[y * numCols + x] = (byte) color;
+        int word = y * wordsPerRow + x / Long.SIZE;
+        if ((bits[word] & (1L << (x % Long.SIZE))) == 0) {
+            bits[word] |= 1L << (x % Long.SIZE);
+            rowCounts[y]++;
+            numFilledCells++;
+            topRow = Math.min(topRow, y);
+        }
+    }
+
+    @Override
+    public boolean isRowFull(int row) {
+        return rowCounts[row] == numCols;
+    }
+
+    @Override
+    public boolean isRowEmpty(int row) {
+        return rowCounts[row] == 0;
+    }
+
+    @Override
+    public void removeRow(int row) {
+        numFilledCells -= rowCounts[row];
+
+        //Only the rows from the top of the stack down to the removed row move
+        int from = Math.min(topRow, row);
+        System.arraycopy(bits, from * wordsPerRow, bits, (from + 1) * wordsPerRow, (row - from) * wordsPerRow);
+        System.arraycopy(colors, from * numCols, colors, (from + 1) * numCols, (row - from) * numCols);
+        System.arraycopy(rowCounts, from, rowCounts, from + 1, row - from);
+        for (int i = from * wordsPerRow; i < (from + 1) * wordsPerRow; i++) {
+            bits[i] = 0L;
+        }
+        for (int i = from * numCols; i < (from + 1) * numCols; i++) {
+            colors[i] = 0;
+        }
+        rowCounts[from] = 0;
+
+        //The top moved down with the rest, unless the removed row was the top
+        while (topRow < numRows && rowCounts[topRow] == 0) {
+            topRow++;
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int row = topRow; row < numRows; row++) {
+            for (int i = row * wordsPerRow; i < (row + 1) * wordsPerRow; i++) {
+                bits[i] = 0L;
+            }
+            for (int i = row * numCols; i < (row + 1) * numCols; i++) {
+                colors[i] = 0;
+            }
+            rowCounts[row] = 0;
+        }
+        topRow = numRows;
+        numFilledCells = 0;
+    }
+
+    @Override
+    public int getTopRow() {
+        return topRow;
+    }
+
+    @Override
+    public int getNumFilledCells() {
+        return numFilledCells;
+    }
+}
@@ -0,0 +1,322 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * TetrisDifferentialFuzzer checks that a headless engine (any TetrisRules,
+ * TetrisEngine unless given otherwise) and the game itself (TetrisController
+ * and TetrisModel) play by exactly the same rules as TetrisReferenceGame,
+ * the frozen HashSet of Cells version of the rules, quirks of clearRows and
+ * isGameOver included. The reference shares no rules code with either of
+ * them, so a bug in the code they share (TetrisGrid, TetrisBoard, the shapes
+ * and kick tables of TetrisShapeFactory, TetrisPieceQueue) shows up too.
+ *
+ * It makes random sequences of moves and plays each of them, move for move,
+ * on the reference, on an engine and on a headless controller (no timer, no
+ * sounds), all given the same seed. After every move the whole state of the
+ * engine and of the game is compared with the reference's: the locked cells
+ * (in the engine's board, in the model's grid and in its TetrisBoard), the
+ * falling shape, its rotation and location, the score and whether the game
+ * is over. A sequence ends when its moves run out or the game is over.
+ *
+ * When they differ, the sequence is shrunk to the shortest it can be made by
+ * leaving out moves (fewer and fewer at a time) while they still differ, and
+ * printed as a reproducer.
+ *
+ * Usage: java TetrisDifferentialFuzzer [numSequences] [seed] [movesPerSequence] [numThreads]
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisDifferentialFuzzer {
+
+    //How often each move is made (out of 100): mostly sideways moves and rotations,
+    //with enough drops for the stack to build up and rows to be cleared
+    private static final int[] MOVE_WEIGHTS = {25, 25, 20, 12, 12, 6};
+
+    private static final String[] MOVE_NAMES = {"left", "right", "down", "rotateCW", "rotateCCW", "hardDrop"};
+
+    //Creates the engine under test, from the seed of its piece sequence
+    private final LongFunction<? extends TetrisRules> engineFactory;
+
+    /**
+     * @param engineFactory: creates the engine under test from the seed of its
+     *                     piece sequence (on a classic board, like the game)
+     */
+    public TetrisDifferentialFuzzer(LongFunction<? extends TetrisRules> engineFactory) {
+        this.engineFactory = engineFactory;
+    }
+
+    /**
+     * Makes a random sequence of moves
+     *
+     * @param random: where the moves come from
+     * @param length: number of moves
+     * @return the moves (MOVE_ constants of Constants)
+     */
+    public static int[] randomMoves(Random random, int length) {
+        int[] moves = new int[length];
+        for (int i = 0; i < length; i++) {
+            int roll = random.nextInt(100);
+            int move = 0;
+            while (roll >= MOVE_WEIGHTS[move]) {
+                roll -= MOVE_WEIGHTS[move];
+                move++;
+            }
+            moves[i] = move;
+        }
+        return moves;
+    }
+
+    /**
+     * Plays a sequence of moves on the reference, the engine and the game, comparing them after every move
+     *
+     * @param seed: seed of the games' piece sequence
+     * @param moves: the moves
+     * @param mismatch: if not null, mismatch[0] is set to what differed
+     * @return number of moves made before the games differed (0 if they
+     * differ from the start), or -1 if they never did
+     */
+    public int findMismatch(long seed, int[] moves, String[] mismatch) {
+        String[] difference = new String[1];
+        int step = play(seed, moves, difference);
+        if (difference[0] == null) {
+            return -1;
+        }
+        if (mismatch != null) {
+            mismatch[0] = difference[0];
+        }
+        return step;
+    }
+
+    /**
+     * Plays a sequence of moves on the reference, the engine and the game until they differ
+     *
+     * @param seed: seed of the games' piece sequence
+     * @param moves: the moves
+     * @param mismatch: mismatch[0] is set to what differed (null if nothing did)
+     * @return number of moves made
+     */
+    private int play(long seed, int[] moves, String[] mismatch) {
+        TetrisReferenceGame reference = new TetrisReferenceGame(seed);
+        TetrisRules engine = engineFactory.apply(seed);
+        TetrisModel model = new TetrisModel(TetrisConfig.getDefault(), seed);
+        TetrisController controller = new TetrisController(model, new TetrisEventBuffer(), Constants.EASY_LEVEL,
+                true);
+
+        String difference = compare(reference, engine, model, controller);
+        int step = 0;
+        while (difference == null && step < moves.length && !reference.isGameOver()) {
+            reference.applyMove(moves[step]);
+            engine.applyMove(moves[step]);
+            applyMove(controller, moves[step]);
+            step++;
+            difference = compare(reference, engine, model, controller);
+        }
+        mismatch[0] = difference;
+        return step;
+    }
+
+    /* Makes a move on the game, through the controller the way the view does */
+    private static void applyMove(TetrisController controller, int move) {
+        switch (move) {
+            case Constants.MOVE_LEFT: controller.moveLeft(); break;
+            case Constants.MOVE_RIGHT: controller.moveRight(); break;
+            case Constants.MOVE_DOWN: controller.moveDown(); break;
+            case Constants.MOVE_ROTATE_CW: controller.rotateCW(); break;
+            case Constants.MOVE_ROTATE_CCW: controller.rotateCCW(); break;
+            case Constants.MOVE_HARD_DROP: controller.hardDrop(); break;
+            default: throw new IllegalArgumentException("Unknown move: " + move);
+        }
+    }
+
+    /**
+     * Compares the whole state of the engine and of the game with the reference's
+     *
+     * @return what differs (prefixed by "engine" or "game"), or null if nothing does
+     */
+    private static String compare(TetrisReferenceGame reference, TetrisRules engine, TetrisModel model,
+                                  TetrisController controller) {
+        String difference = compareShape(reference, engine.isGameOver(), engine.getNumLinesCleared(),
+                engine.getNumTetrisCleared(), engine.getFallingShape(), engine.getShapeX(), engine.getShapeY());
+        if (difference == null) {
+            difference = compareCells(reference, engine.getBoard(), "board");
+        }
+        if (difference != null) {
+            return "engine " + difference;
+        }
+
+        Cell location = model.getShapeLocation();
+        difference = compareShape(reference, controller.isGameEnded(), model.getNumLinesCleared(),
+                model.getNumTetrisCleared(), model.getFallingShape(), location.getX(), location.getY());
+        if (difference == null) {
+            difference = compareCells(reference, model.getBoard(), "board");
+        }
+        if (difference == null) {
+            TetrisGrid grid = model.getGrid();
+            int numFilled = 0;
+            for (int row = 0; row < reference.getNumRows() && difference == null; row++) {
+                for (int column = 0; column < reference.getNumCols(); column++) {
+                    if (grid.isFilled(column, row) != reference.isFilled(column, row)) {
+                        difference = "cell (" + column + ", " + row + ") of the grid: " + reference.isFilled(column, row)
+                                + " vs " + grid.isFilled(column, row);
+                        break;
+                    }
+                    numFilled += grid.isFilled(column, row) ? 1 : 0;
+                }
+            }
+            if (difference == null && numFilled != reference.getNumLockedCells()) {
+                difference = "locked cells in the grid: " + reference.getNumLockedCells() + " vs " + numFilled;
+            }
+        }
+        return (difference == null) ? null : "game " + difference;
+    }
+
+    /* Compares the score, the game over flag and the falling shape with the reference's */
+    private static String compareShape(TetrisReferenceGame reference, boolean gameOver, int lines, int tetris,
+                                       TetrisShape shape, int x, int y) {
+        if (gameOver != reference.isGameOver()) {
+            return "game over: " + reference.isGameOver() + " vs " + gameOver;
+        }
+        if (lines != reference.getNumLinesCleared()) {
+            return "lines cleared: " + reference.getNumLinesCleared() + " vs " + lines;
+        }
+        if (tetris != reference.getNumTetrisCleared()) {
+            return "Tetris cleared: " + reference.getNumTetrisCleared() + " vs " + tetris;
+        }
+        if (shape.getShapeId() != reference.getShapeId() || shape.getRotation() != reference.getRotation()
+                || !Arrays.deepEquals(shape.getShapeMatrix(), reference.getShapeMatrix())) {
+            return "falling shape: " + reference.getShapeId() + "/" + reference.getRotation() + " vs "
+                    + shape.getShapeId() + "/" + shape.getRotation();
+        }
+        Cell location = reference.getShapeLocation();
+        if (location.getX() != x || location.getY() != y) {
+            return "shape location: (" + location.getX() + ", " + location.getY() + ") vs (" + x + ", " + y + ")";
+        }
+        return null;
+    }
+
+    /* Compares the locked cells of a board with the reference's (cells off the board included) */
+    private static String compareCells(TetrisReferenceGame reference, TetrisBoard board, String name) {
+        if (board.getNumRows() != reference.getNumRows() || board.getNumCols() != reference.getNumCols()) {
+            return name + " size: " + reference.getNumCols() + "x" + reference.getNumRows() + " vs "
+                    + board.getNumCols() + "x" + board.getNumRows();
+        }
+        int numFilled = 0;
+        for (int row = 0; row < board.getNumRows(); row++) {
+            for (int column = 0; column < board.getNumCols(); column++) {
+                if (board.isFilled(column, row) != reference.isFilled(column, row)) {
+                    return "cell (" + column + ", " + row + ") of the " + name + ": " + reference.isFilled(column, row)
+                            + " vs " + board.isFilled(column, row);
+                }
+                numFilled += board.isFilled(column, row) ? 1 : 0;
+            }
+        }
+        if (numFilled != reference.getNumLockedCells()) {
+            return "locked cells in the " + name + ": " + reference.getNumLockedCells() + " vs " + numFilled;
+        }
+        return null;
+    }
+
+    /**
+     * Shrinks a sequence the games differ on: leaves out moves, from half of
+     * them at a time down to one at a time, for as long as they still differ
+     *
+     * @param seed: seed of the games
+     * @param moves: a sequence the games differ on
+     * @return the shortest sequence found that the games still differ on
+     */
+    public int[] shrink(long seed, int[] moves) {
+        int step = findMismatch(seed, moves, null);
+        if (step < 0) {
+            throw new IllegalArgumentException("The games do not differ on this sequence");
+        }
+        //The moves after the games differ don't matter
+        moves = Arrays.copyOf(moves, step);
+        for (int chunk = Math.max(1, moves.length / 2); chunk >= 1; chunk /= 2) {
+            int start = 0;
+            while (start + chunk <= moves.length) {
+                int[] candidate = new int[moves.length - chunk];
+                System.arraycopy(moves, 0, candidate, 0, start);
+                System.arraycopy(moves, start + chunk, candidate, start, moves.length - start - chunk);
+                int candidateStep = findMismatch(seed, candidate, null);
+                if (candidateStep >= 0) {
+                    moves = Arrays.copyOf(candidate, candidateStep);
+                } else {
+                    start += chunk;
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * @return the moves, by name
+     */
+    public static String toString(int[] moves) {
+        StringBuilder out = new StringBuilder();
+        for (int move : moves) {
+            out.append((out.length() == 0) ? "" : " ").append(MOVE_NAMES[move]);
+        }
+        return out.toString();
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int numSequences = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 0L;
+        int movesPerSequence = (args.length > 2) ? Integer.parseInt(args[2]) : 2000;
+        int numThreads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        TetrisUtil.setSoundEnabled(false);
+        TetrisDifferentialFuzzer fuzzer = new TetrisDifferentialFuzzer(TetrisEngine::new);
+        AtomicInteger nextSequence = new AtomicInteger();
+        AtomicLong numSteps = new AtomicLong();
+        AtomicInteger firstFailure = new AtomicInteger(-1);
+        long start = System.nanoTime();
+
+        //Every thread takes the next sequence until they are all played or one fails
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            workers.add(executor.submit(() -> {
+                String[] mismatch = new String[1];
+                int sequence;
+                while (firstFailure.get() < 0 && (sequence = nextSequence.getAndIncrement()) < numSequences) {
+                    int[] moves = randomMoves(new Random(seed + sequence), movesPerSequence);
+                    numSteps.addAndGet(fuzzer.play(seed + sequence, moves, mismatch));
+                    if (mismatch[0] != null) {
+                        firstFailure.compareAndSet(-1, sequence);
+                    }
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%d moves in %.2f s (%.0f moves/min)", numSteps.get(), seconds,
+                numSteps.get() * 60 / seconds));
+        if (firstFailure.get() < 0) {
+            System.out.println("No difference in " + Math.min(nextSequence.get(), numSequences) + " sequences");
+            return;
+        }
+
+        long failedSeed = seed + firstFailure.get();
+        int[] moves = fuzzer.shrink(failedSeed, randomMoves(new Random(failedSeed), movesPerSequence));
+        String[] mismatch = new String[1];
+        fuzzer.findMismatch(failedSeed, moves, mismatch);
+        System.out.println("Difference with seed " + failedSeed + " after " + moves.length + " moves: " + mismatch[0]
+                + " (reference vs engine or game)");
+        System.out.println("Moves: " + toString(moves));
+        System.exit(1);
+    }
+}
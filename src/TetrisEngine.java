@@ -0,0 +1,297 @@
+/**
+ * TetrisEngine is a headless version of the game: no view, no timer and
+ * no sounds, just the rules. It is what bots, batch runs and tools use to
+ * play many games quickly.
+ *
+ * The engine plays by exactly the same rules as TetrisController (the same
+ * spawn location, the same collision and game over checks, lines and
+ * Tetrises counted the same way) but keeps the board as a TetrisBoard only,
+ * without any Cell objects. The shapes come from a seeded TetrisPieceQueue,
+ * so the same seed and the same moves always give the same game, and the
+ * upcoming shapes can be looked at ahead of time.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisEngine implements TetrisRules {
+
+    private TetrisBoard board;
+    private TetrisPieceQueue queue;
+
+    //Where shapes start on this board (the top center)
+    private final int startX;
+
+    //Shape currently in play and its location on the board
+    private TetrisShape fallingShape;
+    private int shapeX;
+    private int shapeY;
+
+    //To maintain the score
+    private int numLinesCleared = 0;
+    private int numTetrisCleared = 0;
+    private int numShapesLocked = 0;
+
+    private boolean gameOverFlag = false;
+
+    //Zobrist key of the falling shape at its current location (see getStateHash)
+    private TetrisZobrist zobrist;
+    private long pieceKey;
+
+    //Told about every change to the game (null if nobody is listening)
+    private TetrisEngineListener listener;
+
+    public TetrisEngine(long seed) {
+        this(TetrisConfig.getDefault(), seed);
+    }
+
+    public TetrisEngine(TetrisConfig config, long seed) {
+        this(config.getNumRows(), config.getNumCols(), seed);
+    }
+
+    public TetrisEngine(int numRows, int numCols, long seed) {
+        board = new TetrisBoard(numRows, numCols);
+        startX = TetrisConfig.getStartX(numCols);
+        queue = new TetrisPieceQueue(seed);
+        zobrist = TetrisZobrist.forSize(numRows, numCols);
+        createNewShape();
+    }
+
+    /* Creates a new random shape at the top center of the board */
+    private void createNewShape() {
+        fallingShape = queue.next();
+        shapeX = startX;
+        shapeY = Constants.START_POS_Y;
+        updatePieceKey();
+    }
+
+    /* Keeps the key of the falling shape in step with every move */
+    private void updatePieceKey() {
+        pieceKey = zobrist.pieceKey(fallingShape, shapeX, shapeY);
+        if (listener != null) {
+            listener.pieceMoved(fallingShape, shapeX, shapeY);
+        }
+    }
+
+    /**
+     * Sets the listener told about every change to the game
+     *
+     * @param listener: the listener (null for none)
+     */
+    public void setListener(TetrisEngineListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void applyMove(int move) {
+        switch (move) {
+            case Constants.MOVE_LEFT: moveLeft(); break;
+            case Constants.MOVE_RIGHT: moveRight(); break;
+            case Constants.MOVE_DOWN: moveDown(); break;
+            case Constants.MOVE_ROTATE_CW: rotateCW(); break;
+            case Constants.MOVE_ROTATE_CCW: rotateCCW(); break;
+            case Constants.MOVE_HARD_DROP: hardDrop(); break;
+            default: throw new IllegalArgumentException("Unknown move: " + move);
+        }
+    }
+
+    /**
+     * Moves the shape down one row, or locks it if it can't move down.
+     * Mirrors TetrisController.moveDown, including the game over check
+     * being done before the move.
+     *
+     * @return true if the shape moved down, false if it was locked
+     * (or if the game is over)
+     */
+    public boolean moveDown() {
+        if (gameOverFlag)
+            return false;
+
+        //A shape that overlaps the stack before moving at all means game over
+        if (board.collides(fallingShape, shapeX, shapeY)) {
+            gameOverFlag = true;
+            board.place(fallingShape, shapeX, shapeY);
+            if (listener != null) {
+                listener.shapeLocked(fallingShape, shapeX, shapeY);
+                listener.gameOver();
+            }
+            return false;
+        }
+
+        if (!board.collides(fallingShape, shapeX, shapeY + 1)) {
+            shapeY++;
+            updatePieceKey();
+            return true;
+        }
+
+        //Shape has landed, lock it and bring in the next shape
+        board.place(fallingShape, shapeX, shapeY);
+        if (listener != null) {
+            listener.shapeLocked(fallingShape, shapeX, shapeY);
+        }
+        int lockedRows = fallingShape.getShapeMatrix().length;
+        int lockedY = shapeY;
+        numShapesLocked++;
+        createNewShape();
+
+        //Only the rows the shape landed in can have been completed
+        if (listener != null) {
+            for (int row = Math.max(0, lockedY); row < Math.min(lockedY + lockedRows, board.getNumRows()); row++) {
+                if (board.isRowFull(row)) {
+                    listener.rowCleared(row);
+                }
+            }
+        }
+        int numRowsCleared = board.clearFullRows(lockedY, lockedY + lockedRows - 1);
+        numLinesCleared += numRowsCleared;
+        if (numRowsCleared == Constants.TETRIS) {
+            numTetrisCleared++;
+        }
+        if (listener != null) {
+            listener.scoreChanged(numLinesCleared, numTetrisCleared, numShapesLocked);
+        }
+        return false;
+    }
+
+    /** Drops the shape straight down to where it lands and locks it there */
+    public void hardDrop() {
+        if (gameOverFlag)
+            return;
+        shapeY = board.getLandingY(fallingShape, shapeX, shapeY);
+        updatePieceKey();
+        moveDown();
+    }
+
+    public void moveLeft() {
+        moveHorizontal(Constants.DIR_LEFT);
+    }
+
+    public void moveRight() {
+        moveHorizontal(Constants.DIR_RIGHT);
+    }
+
+    private void moveHorizontal(int direction) {
+        if (!board.collides(fallingShape, shapeX + direction, shapeY)) {
+            shapeX += direction;
+            updatePieceKey();
+        }
+    }
+
+    public void rotateCW() {
+        rotate(fallingShape.rotateCW(), true);
+    }
+
+    public void rotateCCW() {
+        rotate(fallingShape.rotateCCW(), false);
+    }
+
+    /**
+     * Tries the wall kicks of the rotation in order (see TetrisShapeFactory.getKicks)
+     * and keeps the rotated shape at the first offset where it fits. The rotation
+     * is dropped if it fits nowhere.
+     *
+     * @param rotated: the falling shape, rotated
+     * @param clockwise: direction of the rotation
+     */
+    private void rotate(TetrisShape rotated, boolean clockwise) {
+        int[] kicks = TetrisShapeFactory.getKicks(fallingShape.getShapeId(), fallingShape.getRotation(), clockwise);
+        for (int i = 0; i < kicks.length; i += 2) {
+            if (!board.collides(rotated, shapeX + kicks[i], shapeY + kicks[i + 1])) {
+                fallingShape = rotated;
+                shapeX += kicks[i];
+                shapeY += kicks[i + 1];
+                updatePieceKey();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds garbage rows (full except for one hole) at the bottom of the
+     * board, pushing the stack up. The game is over if the stack is pushed
+     * off the top of the board.
+     *
+     * @param count: number of rows to add
+     * @param holeColumn: the column left empty in every row
+     */
+    public void addGarbageRows(int count, int holeColumn) {
+        long garbage = ((1L << board.getNumCols()) - 1) & ~(1L << holeColumn);
+        int added = 0;
+        while (added < count && !gameOverFlag) {
+            if (!board.addRowAtBottom(garbage)) {
+                gameOverFlag = true;
+            }
+            added++;
+        }
+        if (listener != null && added > 0) {
+            listener.garbageAdded(added, holeColumn);
+            if (gameOverFlag) {
+                listener.gameOver();
+            }
+        }
+    }
+
+    @Override
+    public TetrisBoard getBoard() {
+        return board;
+    }
+
+    @Override
+    public TetrisShape getFallingShape() {
+        return fallingShape;
+    }
+
+    /**
+     * Getter for the queue of upcoming shapes (for looking ahead)
+     *
+     * @return the queue the next shapes will be taken from
+     */
+    public TetrisPieceQueue getPieceQueue() {
+        return queue;
+    }
+
+    /**
+     * @return x coordinate shapes start at on this engine's board
+     */
+    public int getStartX() {
+        return startX;
+    }
+
+    @Override
+    public int getShapeX() {
+        return shapeX;
+    }
+
+    @Override
+    public int getShapeY() {
+        return shapeY;
+    }
+
+    @Override
+    public int getNumLinesCleared() {
+        return numLinesCleared;
+    }
+
+    @Override
+    public int getNumTetrisCleared() {
+        return numTetrisCleared;
+    }
+
+    public int getNumShapesLocked() {
+        return numShapesLocked;
+    }
+
+    /**
+     * Getter for the Zobrist hash of the whole state of the game: the locked
+     * cells plus the falling shape, its rotation and its location. Equal
+     * states reached through different moves have equal hashes.
+     *
+     * @return hash of the current state
+     */
+    public long getStateHash() {
+        return board.getHash() ^ pieceKey;
+    }
+
+    @Override
+    public boolean isGameOver() {
+        return gameOverFlag;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * TetrisEngineListener is told about every change a TetrisEngine makes to
+ * its game, in the order the changes happen. Replaying the calls onto a
+ * board that started out the same gives back the exact same board.
+ *
+ * @author Sabirah Shuaybi
+ */
+public interface TetrisEngineListener {
+
+    /**
+     * The falling shape moved, rotated, or a new shape came in
+     *
+     * @param shape: the falling shape (in its current rotation)
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's location
+     */
+    void pieceMoved(TetrisShape shape, int x, int y);
+
+    /**
+     * A shape was locked into the board
+     *
+     * @param shape: the shape that was locked
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's location
+     */
+    void shapeLocked(TetrisShape shape, int x, int y);
+
+    /**
+     * A full row was removed and the rows above it shifted down. Rows
+     * cleared by the same shape are reported from the top down.
+     *
+     * @param row: the row that was removed
+     */
+    void rowCleared(int row);
+
+    /**
+     * Garbage rows were added at the bottom of the board
+     *
+     * @param count: number of rows added
+     * @param holeColumn: the column left empty in every row
+     */
+    void garbageAdded(int count, int holeColumn);
+
+    /**
+     * The score changed (after a shape locked)
+     *
+     * @param linesCleared: total number of lines cleared
+     * @param tetrisCleared: total number of Tetrises cleared
+     * @param shapesLocked: total number of shapes locked
+     */
+    void scoreChanged(int linesCleared, int tetrisCleared, int shapesLocked);
+
+    /** The game is over */
+    void gameOver();
+}
@@ -0,0 +1,71 @@
+/**
+ * TetrisEvaluator scores a board: the higher the score, the better the
+ * board is for the player. The score is a weighted sum of the features
+ * that TetrisBoard maintains (holes, bumpiness, ...) plus a weight for the
+ * number of lines the placement cleared.
+ *
+ * The weights are indexed by the FEATURE_ constants in Constants, with one
+ * extra weight at LINES_CLEARED. They can be tuned (see the default
+ * weights below for a reasonable starting point).
+ *
+ * Note: TetrisEvaluator is an immutable object, so one evaluator can be
+ * shared by any number of bots and threads.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisEvaluator {
+
+    //Position of the weight for the number of lines cleared
+    public static final int LINES_CLEARED = Constants.NUM_FEATURES;
+    public static final int NUM_WEIGHTS = Constants.NUM_FEATURES + 1;
+
+    //Hand picked weights that play a decent game
+    private static final double[] DEFAULT_WEIGHTS = {
+            -0.51,  //aggregate height
+            -0.5,   //max height
+            -7.9,   //holes
+            -0.18,  //bumpiness
+            -3.2,   //row transitions
+            -0.5,   //well sum
+            3.4     //lines cleared
+    };
+
+    private final double[] weights;
+
+    public TetrisEvaluator() {
+        this(DEFAULT_WEIGHTS);
+    }
+
+    public TetrisEvaluator(double[] weights) {
+        if (weights.length != NUM_WEIGHTS) {
+            throw new IllegalArgumentException("Expected " + NUM_WEIGHTS + " weights, got " + weights.length);
+        }
+        this.weights = weights.clone();
+    }
+
+    /**
+     * Getter for the weights
+     *
+     * @return a copy of the weights of this evaluator
+     */
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Scores a board that a shape has just been placed on
+     *
+     * @param board: the board after placing the shape (and clearing rows)
+     * @param linesCleared: how many rows the placement cleared
+     * @return the score of the board, higher is better
+     */
+    public double evaluate(TetrisBoard board, int linesCleared) {
+        return weights[Constants.FEATURE_AGGREGATE_HEIGHT] * board.getAggregateHeight()
+                + weights[Constants.FEATURE_MAX_HEIGHT] * board.getMaxHeight()
+                + weights[Constants.FEATURE_HOLES] * board.getHoles()
+                + weights[Constants.FEATURE_BUMPINESS] * board.getBumpiness()
+                + weights[Constants.FEATURE_ROW_TRANSITIONS] * board.getTotalRowTransitions()
+                + weights[Constants.FEATURE_WELL_SUM] * board.getWellSum()
+                + weights[LINES_CLEARED] * linesCleared;
+    }
+}
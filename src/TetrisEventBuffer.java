@@ -0,0 +1,73 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TetrisEventBuffer carries game events from the controller to whatever
+ * shows the game (ex: TetrisView), without the controller knowing about it.
+ *
+ * The controller publishes events as they happen; they are kept as bits of
+ * a single int, so publishing the same event several times before anyone
+ * looks (ex: LINES_CLEARED for every row of a Tetris) costs nothing more
+ * than publishing it once. The view drains the buffer once a frame and
+ * updates its labels and repaints once, however many events came in.
+ *
+ * Events can be published from any thread.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisEventBuffer {
+
+    //The events, one bit each
+    public static final int PIECE_MOVED = 1;
+    public static final int PIECE_LOCKED = 1 << 1;
+    public static final int LINES_CLEARED = 1 << 2;
+    public static final int TETRIS = 1 << 3;
+    public static final int LEVEL_CHANGED = 1 << 4;
+    public static final int GAME_OVER = 1 << 5;
+    public static final int FINESSE_RECORDED = 1 << 6;
+
+    //Events published since the buffer was last drained
+    private final AtomicInteger pending = new AtomicInteger();
+
+    //Level given with the last LEVEL_CHANGED event
+    private volatile int level;
+
+    /**
+     * Adds an event to the buffer
+     *
+     * @param event: one of the events above (or several, or'ed together)
+     */
+    public void publish(int event) {
+        //Nothing to write if the event is already waiting
+        if ((pending.get() & event) != event) {
+            pending.getAndAccumulate(event, (a, b) -> a | b);
+        }
+    }
+
+    /**
+     * Publishes a LEVEL_CHANGED event
+     *
+     * @param level: the level reached
+     */
+    public void publishLevel(int level) {
+        this.level = level;
+        publish(LEVEL_CHANGED);
+    }
+
+    /**
+     * Takes all the events published since the last call out of the buffer
+     *
+     * @return the events, or'ed together (0 if there were none)
+     */
+    public int drain() {
+        return (pending.get() == 0) ? 0 : pending.getAndSet(0);
+    }
+
+    /**
+     * Getter for the level given with the last LEVEL_CHANGED event
+     *
+     * @return the level
+     */
+    public int getLevel() {
+        return level;
+    }
+}
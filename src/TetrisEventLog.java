@@ -0,0 +1,304 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TetrisEventLog writes every event of one game (a shape spawning, moving,
+ * rotating, locking, rows being cleared and the game ending) to a file,
+ * for analysts to study how players place their shapes.
+ *
+ * Logging an event only packs it into a long and puts it in a bounded ring
+ * buffer; a background thread takes the events out of the buffer and writes
+ * them to the file. The game never waits for the disk: if the writer falls
+ * so far behind that the buffer is full, new events are dropped and counted,
+ * and the count is written at the end of the log.
+ *
+ * File format (all numbers after the header are varints, see below):
+ *   header:  magic (int), version (int), seed (long), start time in ms since the epoch (long)
+ *   events:  type (byte), then the milliseconds since the previous event,
+ *            shape id + 1 (0 for a shape not from TetrisShapeFactory), rotation,
+ *            x and y (zigzag encoded, they can be negative) and a value that
+ *            depends on the type (the move made, the number of rows cleared, ...)
+ *   trailer: END (byte), number of events dropped
+ * A log that doesn't end with the trailer was cut short (ex: by a crash).
+ *
+ * Events must be logged from a single thread (the game's thread).
+ * main prints a log as CSV.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisEventLog implements AutoCloseable {
+
+    //Types of events (value logged with each, in parentheses)
+    public static final int SPAWN = 0;      //(0)
+    public static final int MOVE = 1;       //(the move, Constants.MOVE_LEFT, MOVE_RIGHT, MOVE_DOWN or MOVE_HARD_DROP)
+    public static final int ROTATE = 2;     //(Constants.MOVE_ROTATE_CW or MOVE_ROTATE_CCW)
+    public static final int LOCK = 3;       //(0)
+    public static final int CLEAR = 4;      //(number of rows cleared at once)
+    public static final int GAME_OVER = 5;  //(total number of lines cleared)
+    private static final int END = 6;
+
+    private static final String[] TYPE_NAMES = {"spawn", "move", "rotate", "lock", "clear", "game over"};
+
+    private static final int MAGIC = 0x54454C47;
+    private static final int VERSION = 1;
+
+    //Number of events the ring buffer holds, unless given otherwise
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    //How long the writer sleeps when there is nothing to write
+    private static final long WRITER_IDLE_NANOS = 2000000L;
+
+    //Layout of an event packed in a long: type, shape, rotation, x, y and value
+    private static final int SHAPE_SHIFT = 3;
+    private static final int ROTATION_SHIFT = 7;
+    private static final int X_SHIFT = 9;
+    private static final int Y_SHIFT = 25;
+    private static final int VALUE_SHIFT = 45;
+    private static final int MAX_VALUE = (1 << 19) - 1;
+
+    //Ring buffer: for every event, its time (ms since the log started) and the packed event.
+    //The game only moves tail forward and the writer only moves head forward
+    private final long[] times;
+    private final long[] events;
+    private final int mask;
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private long numDropped = 0;
+
+    private final FileChannel channel;
+    private final long startNanos = System.nanoTime();
+    private final Thread writer;
+    private volatile boolean closing = false;
+    private IOException writeError;
+
+    public TetrisEventLog(Path file, long seed) throws IOException {
+        this(file, seed, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates the log file, writes its header and starts the writer thread
+     *
+     * @param file: the log file (replaced if it exists)
+     * @param seed: seed of the game's piece sequence
+     * @param capacity: number of events the buffer holds (rounded up to a power of 2)
+     */
+    public TetrisEventLog(Path file, long seed, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        times = new long[size];
+        events = new long[size];
+        mask = size - 1;
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(24);
+        header.putInt(MAGIC).putInt(VERSION).putLong(seed).putLong(System.currentTimeMillis()).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+
+        writer = new Thread(this::writeEvents, "tetris-event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Logs an event about a shape
+     *
+     * @param type: type of the event (SPAWN, MOVE, ...)
+     * @param shape: the shape
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's location
+     * @param value: value logged with the event (see the types)
+     */
+    public void log(int type, TetrisShape shape, int x, int y, int value) {
+        log(type, shape.getShapeId(), shape.getRotation(), x, y, value);
+    }
+
+    /**
+     * Logs an event. Never blocks: the event is dropped if the buffer is full.
+     *
+     * @param type: type of the event (SPAWN, MOVE, ...)
+     * @param shapeId: id of the shape (-1 for none)
+     * @param rotation: rotation of the shape
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's location
+     * @param value: value logged with the event (see the types), at most 524287
+     */
+    public void log(int type, int shapeId, int rotation, int x, int y, int value) {
+        long t = tail;
+        if (t - head == events.length) {
+            numDropped++;
+            return;
+        }
+        int slot = (int) (t & mask);
+        times[slot] = (System.nanoTime() - startNanos) / 1000000L;
+        events[slot] = type
+                | (long) ((shapeId + 1) & 0xF) << SHAPE_SHIFT
+                | (long) (rotation & 0x3) << ROTATION_SHIFT
+                | (long) (x & 0xFFFF) << X_SHIFT
+                | (long) (y & 0xFFFFF) << Y_SHIFT
+                | (long) Math.min(value, MAX_VALUE) << VALUE_SHIFT;
+        //Publish the event to the writer
+        tail = t + 1;
+    }
+
+    /**
+     * @return number of events dropped because the buffer was full
+     */
+    public long getNumDropped() {
+        return numDropped;
+    }
+
+    /* Runs on the writer thread: moves events from the buffer to the file until the log is closed */
+    private void writeEvents() {
+        ByteBuffer out = ByteBuffer.allocate(1 << 16);
+        long lastTime = 0;
+        try {
+            while (true) {
+                boolean closed = closing;
+                long h = head;
+                long t = tail;
+                if (h == t) {
+                    if (closed) {
+                        break;
+                    }
+                    LockSupport.parkNanos(WRITER_IDLE_NANOS);
+                    continue;
+                }
+                for (; h < t; h++) {
+                    //An event takes less than 32 bytes
+                    if (out.remaining() < 32) {
+                        flush(out);
+                    }
+                    int slot = (int) (h & mask);
+                    long event = events[slot];
+                    long time = times[slot];
+                    out.put((byte) (event & 0x7));
+                    putVarLong(out, time - lastTime);
+                    lastTime = time;
+                    putVarLong(out, (event >>> SHAPE_SHIFT) & 0xF);
+                    putVarLong(out, (event >>> ROTATION_SHIFT) & 0x3);
+                    putVarLong(out, zigzag((short) (event >>> X_SHIFT)));
+                    putVarLong(out, zigzag(((int) (event >>> Y_SHIFT) << 12) >> 12));
+                    putVarLong(out, event >>> VALUE_SHIFT);
+                }
+                //Free the slots for the game
+                head = h;
+                flush(out);
+            }
+            out.put((byte) END);
+            putVarLong(out, numDropped);
+            flush(out);
+        } catch (IOException e) {
+            writeError = e;
+        }
+    }
+
+    /* Writes out whatever is in the buffer */
+    private void flush(ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static long zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Writes the events still in the buffer and the trailer, then closes the
+     * file. Waits for the writer thread to finish.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    /* Reads a varint, throws EOFException at the end of the stream */
+    private static long getVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int unzigzag(long n) {
+        return (int) (n >>> 1) ^ -(int) (n & 1);
+    }
+
+    /**
+     * Prints an event log as CSV: time (ms since the game started), event,
+     * shape id, rotation, x, y and value.
+     *
+     * Usage: java TetrisEventLog file
+     */
+    public static void main(String[] args) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(args[0]))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an event log: unknown header");
+            }
+            long seed = in.readLong();
+            long startTime = in.readLong();
+            System.out.println("# seed " + seed + ", started at " + startTime);
+            System.out.println("time,event,shape,rotation,x,y,value");
+            long time = 0;
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    throw new EOFException();
+                }
+                if (type == END) {
+                    System.out.println("# " + getVarLong(in) + " events dropped");
+                    return;
+                }
+                time += getVarLong(in);
+                int shapeId = (int) getVarLong(in) - 1;
+                int rotation = (int) getVarLong(in);
+                int x = unzigzag(getVarLong(in));
+                int y = unzigzag(getVarLong(in));
+                long value = getVarLong(in);
+                System.out.println(time + "," + TYPE_NAMES[type] + "," + shapeId + "," + rotation + ","
+                        + x + "," + y + "," + value);
+            }
+        } catch (EOFException e) {
+            System.out.println("# log cut short");
+        }
+    }
+}
@@ -0,0 +1,410 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TetrisFinesseSolver finds out where a falling shape can go and the
+ * shortest sequence of inputs (left, right, down, rotate, hard drop) that
+ * gets it there. Unlike TetrisPlacementFinder, which only slides a shape
+ * along the top and drops it, this explores every (x, y, rotation) state
+ * the shape can reach with a breadth first search, so placements that need
+ * a tuck (sliding under an overhang) or a spin (rotating into a slot) are
+ * found too, along with the fewest key presses needed.
+ *
+ * The states and the sideways and down moves between them only depend on
+ * the shape and the size of the board, so they are built once per shape and
+ * board size and shared (the "move graph"). Rotations are worked out during
+ * the search, since where a rotated shape ends up depends on the board: the
+ * SRS wall kicks are tried in the same order as TetrisController and
+ * TetrisEngine try them (see TetrisShapeFactory.getKicks).
+ *
+ * Every input costs 1, except that soft drops and the final hard drop can
+ * be made free. With free drops, the cost of a placement is the number of
+ * left/right/rotate presses, which is how finesse is usually measured for
+ * human players (who can let gravity do the falling).
+ *
+ * NOTE: A solver keeps the results of the last search, so one solver
+ * should only be used by one thread at a time.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisFinesseSolver {
+
+    //The inputs explored by the search (indices into the move graph)
+    private static final int[] MOVES = {Constants.MOVE_LEFT, Constants.MOVE_RIGHT, Constants.MOVE_DOWN,
+            Constants.MOVE_ROTATE_CW, Constants.MOVE_ROTATE_CCW};
+
+    //The sideways and down moves, which have their edges in the move graph
+    private static final int NUM_TRANSLATIONS = 3;
+
+    //Shapes can sit up to one matrix width outside of the board on the left
+    //(and, when kicked up, above the top of the board)
+    private static final int MAX_SHAPE_SIZE = 4;
+
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    //Move graphs, one per shape and board size
+    private static final ConcurrentHashMap<Long, MoveGraph> graphs = new ConcurrentHashMap<>();
+
+    private final int numRows;
+    private final int numCols;
+    private final int numStates;
+    private final int downCost;
+    private final int dropCost;
+
+    //Results of the last search, indexed by state
+    private MoveGraph graph;
+    private TetrisBoard board;
+    private final int[] distance;
+    private final int[] parent;
+    private final byte[] parentMove;
+    //For placements (resting states of the canonical rotation): best cost and the state it is dropped from
+    private final int[] placementCost;
+    private final int[] placementFrom;
+    private final int[] placements;
+    private int numPlacements;
+
+    //Work queue of the search (a deque, since free moves go to the front)
+    private final int[] queue;
+
+    /**
+     * @param numRows: rows of the boards that will be searched
+     * @param numCols: columns of the boards that will be searched
+     * @param freeDrops: true to make soft drops and the hard drop cost nothing
+     */
+    public TetrisFinesseSolver(int numRows, int numCols, boolean freeDrops) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.numStates = 4 * (numCols + MAX_SHAPE_SIZE) * (numRows + MAX_SHAPE_SIZE);
+        this.downCost = freeDrops ? 0 : 1;
+        this.dropCost = freeDrops ? 0 : 1;
+        distance = new int[numStates];
+        parent = new int[numStates];
+        parentMove = new byte[numStates];
+        placementCost = new int[numStates];
+        placementFrom = new int[numStates];
+        placements = new int[numStates];
+        //A state can be queued again when a free move improves it, so leave room for that
+        queue = new int[4 * numStates];
+    }
+
+    /**
+     * Explores every state a shape can reach from its current location
+     *
+     * @param board: the locked cells
+     * @param shape: the falling shape (in its current rotation)
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's location
+     * @return the number of distinct placements that can be reached
+     */
+    public int search(TetrisBoard board, TetrisShape shape, int x, int y) {
+        this.board = board;
+        graph = getGraph(shape.getShapeId(), numRows, numCols);
+        for (int i = 0; i < numStates; i++) {
+            distance[i] = UNREACHED;
+            placementCost[i] = UNREACHED;
+        }
+        numPlacements = 0;
+
+        int start = graph.index(shape.getRotation(), x, y);
+        if (start < 0 || board.collides(shape, x, y)) {
+            return 0;
+        }
+        distance[start] = 0;
+        parent[start] = -1;
+
+        //0-1 breadth first search: free moves are explored before paid ones
+        int capacity = queue.length;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        while (head != tail) {
+            int state = queue[head];
+            head = (head + 1) % capacity;
+
+            for (int m = 0; m < MOVES.length; m++) {
+                int next = (m < NUM_TRANSLATIONS) ? graph.next[m][state]
+                        : rotate(state, MOVES[m] == Constants.MOVE_ROTATE_CW);
+                if (next < 0 || !fits(next)) {
+                    continue;
+                }
+                int cost = (MOVES[m] == Constants.MOVE_DOWN) ? downCost : 1;
+                if (distance[state] + cost >= distance[next]) {
+                    continue;
+                }
+                distance[next] = distance[state] + cost;
+                parent[next] = state;
+                parentMove[next] = (byte) MOVES[m];
+                if (cost == 0) {
+                    head = (head - 1 + capacity) % capacity;
+                    queue[head] = next;
+                } else {
+                    queue[tail] = next;
+                    tail = (tail + 1) % capacity;
+                }
+            }
+        }
+
+        //Every reached state can be hard dropped onto a placement
+        for (int state = 0; state < numStates; state++) {
+            if (distance[state] == UNREACHED) {
+                continue;
+            }
+            TetrisShape rotated = graph.shapes[graph.rotation(state)];
+            int landingY = board.getLandingY(rotated, graph.x(state), graph.y(state));
+            int placement = graph.canonical(graph.index(graph.rotation(state), graph.x(state), landingY));
+            int cost = distance[state] + dropCost;
+            if (placementCost[placement] == UNREACHED) {
+                placements[numPlacements++] = placement;
+            }
+            if (cost < placementCost[placement]) {
+                placementCost[placement] = cost;
+                placementFrom[placement] = state;
+            }
+        }
+        return numPlacements;
+    }
+
+    /* Checks a state against the board (states off the board never get here) */
+    private boolean fits(int state) {
+        return !board.collides(graph.shapes[graph.rotation(state)], graph.x(state), graph.y(state));
+    }
+
+    /**
+     * Rotates the shape of a state, trying the wall kicks of the rotation in order
+     *
+     * @param state: the state to rotate from
+     * @param clockwise: direction of the rotation
+     * @return the state at the first kick where the rotated shape fits, or -1 if it fits nowhere
+     */
+    private int rotate(int state, boolean clockwise) {
+        int rotation = graph.rotation(state);
+        int rotated = (rotation + (clockwise ? 1 : 3)) % 4;
+        int x = graph.x(state);
+        int y = graph.y(state);
+        int[] kicks = TetrisShapeFactory.getKicks(graph.shapeId, rotation, clockwise);
+        for (int i = 0; i < kicks.length; i += 2) {
+            //Every location a shape fits at is in the grid of states
+            int kicked = graph.index(rotated, x + kicks[i], y + kicks[i + 1]);
+            if (kicked >= 0 && fits(kicked)) {
+                return kicked;
+            }
+        }
+        return -1;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getNumPlacements() {
+        return numPlacements;
+    }
+
+    /** @return the shape (in the rotation it lands in) of a placement found */
+    public TetrisShape getShape(int index) {
+        return graph.shapes[graph.rotation(placements[index])];
+    }
+
+    /** @return the x coordinate of a placement found */
+    public int getX(int index) {
+        return graph.x(placements[index]);
+    }
+
+    /** @return the y coordinate of a placement found */
+    public int getY(int index) {
+        return graph.y(placements[index]);
+    }
+
+    /** @return the fewest inputs needed to reach a placement found */
+    public int getCost(int index) {
+        return placementCost[placements[index]];
+    }
+
+    /**
+     * Finds the fewest inputs needed to lock a shape at a location,
+     * according to the last search
+     *
+     * @param shape: the shape, in the rotation it was locked in
+     * @param x: x coordinate it was locked at
+     * @param y: y coordinate it was locked at
+     * @return the number of inputs, or -1 if the placement can't be reached
+     */
+    public int getCost(TetrisShape shape, int x, int y) {
+        int placement = findPlacement(shape, x, y);
+        return (placement < 0) ? -1 : placementCost[placement];
+    }
+
+    /**
+     * Builds the shortest sequence of inputs to a placement found
+     *
+     * @param index: which placement
+     * @return the moves (MOVE_ constants in Constants), ending with a hard drop
+     */
+    public int[] getPath(int index) {
+        int from = placementFrom[placements[index]];
+        int length = 1;
+        for (int state = from; parent[state] >= 0; state = parent[state]) {
+            length++;
+        }
+        int[] path = new int[length];
+        path[length - 1] = Constants.MOVE_HARD_DROP;
+        int position = length - 2;
+        for (int state = from; parent[state] >= 0; state = parent[state]) {
+            path[position--] = parentMove[state];
+        }
+        return path;
+    }
+
+    /**
+     * A tuck is a placement that can only be reached by sliding or rotating
+     * the shape after it has already moved down (ex: under an overhang)
+     *
+     * @param index: which placement
+     * @return true if the shortest path to the placement is a tuck
+     */
+    public boolean isTuck(int index) {
+        boolean movedDown = false;
+        int[] path = getPath(index);
+        for (int move : path) {
+            if (move == Constants.MOVE_DOWN) {
+                movedDown = true;
+            } else if (movedDown && move != Constants.MOVE_HARD_DROP) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A spin is a placement where the last input before locking is a
+     * rotation, and the rotated shape is stuck: it can't move left, right
+     * or up anymore (ex: a T rotated into a T shaped slot)
+     *
+     * @param index: which placement
+     * @return true if the shortest path to the placement ends with a spin
+     */
+    public boolean isSpin(int index) {
+        int placement = placements[index];
+        int from = placementFrom[placement];
+        int lastMove = parentMove[from];
+        if (parent[from] < 0 || (lastMove != Constants.MOVE_ROTATE_CW && lastMove != Constants.MOVE_ROTATE_CCW)) {
+            return false;
+        }
+        TetrisShape shape = graph.shapes[graph.rotation(from)];
+        int x = graph.x(from);
+        int y = graph.y(from);
+        return board.collides(shape, x, y + 1)
+                && board.collides(shape, x - 1, y)
+                && board.collides(shape, x + 1, y)
+                && (y == 0 || board.collides(shape, x, y - 1));
+    }
+
+    /* Finds the placement of the last search with the same cells as a locked shape */
+    private int findPlacement(TetrisShape shape, int x, int y) {
+        if (graph == null || shape.getShapeId() != graph.shapeId) {
+            return -1;
+        }
+        int state = graph.index(shape.getRotation(), x, y);
+        if (state < 0) {
+            return -1;
+        }
+        int placement = graph.canonical(state);
+        return (placementCost[placement] == UNREACHED) ? -1 : placement;
+    }
+
+    /* Gets (or builds) the move graph of a shape for a board size */
+    private static MoveGraph getGraph(int shapeId, int numRows, int numCols) {
+        Long key = ((long) shapeId << 48) | ((long) numRows << 24) | numCols;
+        MoveGraph graph = graphs.get(key);
+        if (graph == null) {
+            graphs.putIfAbsent(key, new MoveGraph(shapeId, numRows, numCols));
+            graph = graphs.get(key);
+        }
+        return graph;
+    }
+
+    /**
+     * All the (rotation, x, y) states of one shape on a board size, and for
+     * every state and every sideways or down move, the state the move leads
+     * to (or -1 if it leads off the grid of states). States are numbered
+     * rotation by rotation, then column by column, then row by row.
+     */
+    private static class MoveGraph {
+        final int shapeId;
+        final int height;
+        final int width;
+        final TetrisShape[] shapes = new TetrisShape[4];
+        final int[][] next;
+        //How far x and y move when a rotation is swapped for its canonical rotation
+        final int[] canonicalRotation = new int[4];
+        final int[] canonicalShiftX = new int[4];
+        final int[] canonicalShiftY = new int[4];
+
+        MoveGraph(int shapeId, int numRows, int numCols) {
+            this.shapeId = shapeId;
+            this.height = numRows + MAX_SHAPE_SIZE;
+            this.width = numCols + MAX_SHAPE_SIZE;
+            for (int rotation = 0; rotation < 4; rotation++) {
+                shapes[rotation] = TetrisShapeFactory.getShape(shapeId, rotation);
+            }
+            for (int rotation = 0; rotation < 4; rotation++) {
+                int canonical = TetrisShapeFactory.getCanonicalRotation(shapeId, rotation);
+                canonicalRotation[rotation] = canonical;
+                canonicalShiftX[rotation] = shapes[rotation].getMinColumn() - shapes[canonical].getMinColumn();
+                canonicalShiftY[rotation] = minRow(shapes[rotation]) - minRow(shapes[canonical]);
+            }
+
+            int numStates = 4 * width * height;
+            next = new int[NUM_TRANSLATIONS][numStates];
+            for (int state = 0; state < numStates; state++) {
+                int rotation = rotation(state);
+                int x = x(state);
+                int y = y(state);
+                next[0][state] = index(rotation, x - 1, y);
+                next[1][state] = index(rotation, x + 1, y);
+                next[2][state] = index(rotation, x, y + 1);
+            }
+        }
+
+        /* State number of a rotation and location, or -1 if it is off the grid of states */
+        int index(int rotation, int x, int y) {
+            int column = x + MAX_SHAPE_SIZE;
+            int row = y + MAX_SHAPE_SIZE;
+            if (column < 0 || column >= width || row < 0 || row >= height) {
+                return -1;
+            }
+            return (rotation * width + column) * height + row;
+        }
+
+        int rotation(int state) {
+            return state / (width * height);
+        }
+
+        int x(int state) {
+            return (state / height) % width - MAX_SHAPE_SIZE;
+        }
+
+        int y(int state) {
+            return state % height - MAX_SHAPE_SIZE;
+        }
+
+        /* The state of the canonical rotation that covers the same cells */
+        int canonical(int state) {
+            int rotation = rotation(state);
+            return index(canonicalRotation[rotation], x(state) + canonicalShiftX[rotation],
+                    y(state) + canonicalShiftY[rotation]);
+        }
+
+        private static int minRow(TetrisShape shape) {
+            long[] masks = shape.getRowMasks();
+            int row = 0;
+            while (masks[row] == 0) {
+                row++;
+            }
+            return row;
+        }
+    }
+}
@@ -1,3 +1,8 @@
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import javax.swing.*;
 
 /**
@@ -27,11 +32,46 @@ public class TetrisGUIApplication {
 
     private JFrame mainFrame;
     private TetrisView currentView;
+    private TetrisController currentController;
+
+    //Size of the board, read from the system properties (see TetrisConfig)
+    private TetrisConfig config;
+
+    //Where the results of finished games are kept (null if the file can't be opened)
+    private TetrisScoreStore scoreStore;
 
     public TetrisGUIApplication() {
+        config = TetrisConfig.fromSystemProperties();
+        try {
+            scoreStore = new TetrisScoreStore(Paths.get(System.getProperty("tetris.scores", Constants.SCORE_FILE)));
+        } catch (IOException e) {
+            System.err.println("High scores will not be saved: " + e.getMessage());
+        }
         mainFrame = createFrame();
     }
 
+    /**
+     * Saves the result of a game that has just ended in the score store
+     *
+     * @param model: the model of the game
+     * @param level: the level the game was played at
+     * @param durationMillis: how long the game lasted, in milliseconds
+     */
+    public void recordGame(TetrisModel model, int level, long durationMillis) {
+        if (scoreStore == null) {
+            return;
+        }
+        try {
+            scoreStore.append(new TetrisScoreRecord(model.getSeed(), level, model.getNumLinesCleared(),
+                    model.getNumTetrisCleared(), durationMillis, System.currentTimeMillis(),
+                    TetrisScoreRecord.NO_REPLAY));
+            //Games on screen end rarely, so each result is synced right away
+            scoreStore.sync();
+        } catch (IOException e) {
+            System.err.println("Could not save the result of the game: " + e.getMessage());
+        }
+    }
+
     /**
      * Creates and renders the JFrame for the application
      *
@@ -40,12 +80,23 @@ public class TetrisGUIApplication {
     private JFrame createFrame() {
         JFrame guiFrame = new JFrame("Tetris Application");
 
-        //Set size
-        guiFrame.setSize(Constants.FRAME_WIDTH, Constants.FRAME_HEIGHT);
+        //Set size, leaving the same room around the grid as on the classic board
+        guiFrame.setSize(config.getGridWidth() + (Constants.FRAME_WIDTH - Constants.HORIZONTAL_LINE_LENGTH),
+                config.getGridHeight() + (Constants.FRAME_HEIGHT - Constants.VERTICAL_LINE_LENGTH));
 
         //Exit normally on closing the window
         guiFrame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
 
+        //Finish the event log of the game being played (it is kept open after game over)
+        guiFrame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (currentController != null) {
+                    currentController.closeEventLog();
+                }
+            }
+        });
+
         //Show/render frame
         guiFrame.setVisible(true);
 
@@ -60,11 +111,22 @@ public class TetrisGUIApplication {
      *              Note: Selecting a different level means starting a new game
      */
     public void createNewGame(int level) {
-        TetrisModel model = new TetrisModel();
+        TetrisModel model = new TetrisModel(config);
         TetrisView view =  new TetrisView(model, level, this);
-        TetrisController controller = new TetrisController(model, view, level);
+        TetrisController controller = new TetrisController(model, view.getEventBuffer(), level);
         view.setController(controller);
 
+        //Log every event of the game if a directory for the logs is given
+        String eventLogDir = System.getProperty("tetris.eventLogDir");
+        if (eventLogDir != null) {
+            Path file = Paths.get(eventLogDir, "game-" + System.currentTimeMillis() + "-" + model.getSeed() + ".log");
+            try {
+                controller.setEventLog(new TetrisEventLog(file, model.getSeed()));
+            } catch (IOException e) {
+                System.err.println("Events of the game will not be logged: " + e.getMessage());
+            }
+        }
+
         //If there is an existing view, remove it
         if (currentView != null) {
             mainFrame.remove(currentView);
@@ -73,6 +135,7 @@ public class TetrisGUIApplication {
         mainFrame.setVisible(true);
         //reset the currentView to the renewed instance of TetrisView
         currentView = view;
+        currentController = controller;
     }
 
     public static void main (String[] args) {
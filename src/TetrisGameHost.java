@@ -0,0 +1,199 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TetrisGameHost runs many independent games in one program (tournaments,
+ * bot ladders, classroom sessions). Each game is a TetrisHostedGame with its
+ * own engine, its own seeded shapes and its own fall speed.
+ *
+ * Instead of a Swing component tree and a timer per game, all games share a
+ * small pool of threads. The games are split into shards, and every shard is
+ * ticked once a frame (every Constants.FRAME_DELAY milliseconds) by the
+ * pool, with the shards' ticks spread out over the frame. A game that is
+ * waiting costs one tick call per frame and about a kilobyte of memory.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisGameHost {
+
+    private final ScheduledExecutorService scheduler;
+    private final List<Set<TetrisHostedGame>> shards;
+
+    //Every game of the host, by id
+    private final Map<Integer, TetrisHostedGame> games = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    //The gravity curves are the same for every game of a difficulty, so they are shared
+    private final TetrisGravity[] gravities = {
+            TetrisGravity.forDifficulty(Constants.EASY_LEVEL),
+            TetrisGravity.forDifficulty(Constants.MEDIUM_LEVEL),
+            TetrisGravity.forDifficulty(Constants.HARD_LEVEL)
+    };
+
+    //Host time is measured in milliseconds from this point
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * @param numThreads: number of threads ticking the games
+     * @param numShards: number of groups the games are split into (at least numThreads,
+     * so the work of a frame can be spread over all the threads)
+     */
+    public TetrisGameHost(int numThreads, int numShards) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "TetrisGameHost-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        scheduler = Executors.newScheduledThreadPool(numThreads, factory);
+
+        shards = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            Set<TetrisHostedGame> shard = ConcurrentHashMap.newKeySet();
+            shards.add(shard);
+            //Spread the shards over the frame so they don't all tick at once
+            long offset = (long) Constants.FRAME_DELAY * 1000 * i / numShards;
+            scheduler.scheduleAtFixedRate(() -> tickShard(shard), offset,
+                    Constants.FRAME_DELAY * 1000L, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /* Advances every game of a shard to the current time */
+    private void tickShard(Set<TetrisHostedGame> shard) {
+        long now = getTime();
+        for (TetrisHostedGame game : shard) {
+            try {
+                game.tick(now);
+            } catch (RuntimeException e) {
+                //A broken game is ended and dropped, so it doesn't stop the rest of its shard
+                System.err.println("Game " + game.getId() + " was stopped: " + e);
+                game.stop();
+                removeGame(game.getId());
+            }
+        }
+    }
+
+    /**
+     * Getter for the host time
+     *
+     * @return milliseconds since the host was created
+     */
+    public long getTime() {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    /**
+     * Starts a new game
+     *
+     * @param seed: seed of the game's shapes
+     * @param difficulty: EASY_LEVEL, MEDIUM_LEVEL or HARD_LEVEL
+     * @return the game, already running
+     */
+    public TetrisHostedGame addGame(long seed, int difficulty) {
+        TetrisHostedGame game = new TetrisHostedGame(nextId.getAndIncrement(), seed,
+                gravities[difficulty], getTime());
+        games.put(game.getId(), game);
+        shards.get(game.getId() % shards.size()).add(game);
+        return game;
+    }
+
+    /**
+     * @param id: id of a game
+     * @return the game, or null if there is no such game
+     */
+    public TetrisHostedGame getGame(int id) {
+        return games.get(id);
+    }
+
+    /**
+     * Stops a game and forgets it
+     *
+     * @param id: id of the game
+     * @return the game that was removed, or null if there is no such game
+     */
+    public TetrisHostedGame removeGame(int id) {
+        TetrisHostedGame game = games.remove(id);
+        if (game != null) {
+            shards.get(id % shards.size()).remove(game);
+        }
+        return game;
+    }
+
+    public int getNumGames() {
+        return games.size();
+    }
+
+    /**
+     * Getter for all the games of the host
+     *
+     * @return the games, by id (changes as games are added and removed)
+     */
+    public Map<Integer, TetrisHostedGame> getGames() {
+        return games;
+    }
+
+    /** Stops ticking the games */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Hosts a number of games with random moves for a while and prints how
+     * they did, along with the memory used per game.
+     *
+     * Usage: java TetrisGameHost [numGames] [seconds] [numThreads]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int numGames = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        int numThreads = (args.length > 2) ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long memoryBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        TetrisGameHost host = new TetrisGameHost(numThreads, numThreads * 4);
+        for (int i = 0; i < numGames; i++) {
+            host.addGame(i, i % 3);
+        }
+        System.gc();
+        long memoryAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.println(numGames + " games, about " + (memoryAfter - memoryBefore) / numGames
+                + " bytes per game");
+
+        //A "player" making one random move in a random game every so often
+        Random random = new Random(0);
+        long end = System.currentTimeMillis() + seconds * 1000L;
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < 1000; i++) {
+                TetrisHostedGame game = host.getGame(random.nextInt(numGames));
+                if (game != null) {
+                    game.submitMove(random.nextInt(Constants.MOVE_HARD_DROP));
+                }
+            }
+            Thread.sleep(Constants.FRAME_DELAY);
+        }
+        host.shutdown();
+
+        long lines = 0;
+        long shapes = 0;
+        int gamesOver = 0;
+        for (TetrisHostedGame game : host.getGames().values()) {
+            lines += game.getNumLinesCleared();
+            shapes += game.getNumShapesLocked();
+            gamesOver += game.isGameOver() ? 1 : 0;
+        }
+        System.out.println("After " + seconds + " s: " + shapes + " shapes locked, " + lines
+                + " lines, " + gamesOver + " games over");
+    }
+}
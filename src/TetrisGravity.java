@@ -0,0 +1,111 @@
+/**
+ * TetrisGravity describes how fast shapes fall as the game progresses.
+ *
+ * The level of the game is derived from the number of lines the player
+ * has cleared, and each level maps onto a point of a continuous gravity
+ * curve: every level multiplies the fall delay by a constant decay factor,
+ * so the game keeps getting faster instead of stopping at a fixed speed.
+ *
+ * A swing timer cannot usefully fire faster than about once per frame,
+ * so once the curve drops below the frame delay the timer stays at the
+ * frame delay and the shape is moved down several rows per tick instead
+ * (up to the full height of the board, ie. "20G").
+ *
+ * NOTE: TetrisGravity is an immutable object; the curve is configured
+ * once through the constructor and only queried afterwards.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisGravity {
+
+    //Delay (in milliseconds) between two rows of fall at level 0
+    private final int baseDelay;
+
+    //Factor the delay is multiplied by for every level gained
+    private final double decay;
+
+    //Smallest delay the timer is allowed to run at
+    private final int frameDelay;
+
+    //How many lines have to be cleared to advance to the next level
+    private final int linesPerLevel;
+
+    //Level the game starts at (before any line has been cleared)
+    private final int startLevel;
+
+    public TetrisGravity(int baseDelay, double decay, int frameDelay, int linesPerLevel, int startLevel) {
+        this.baseDelay = baseDelay;
+        this.decay = decay;
+        this.frameDelay = frameDelay;
+        this.linesPerLevel = linesPerLevel;
+        this.startLevel = startLevel;
+    }
+
+    /**
+     * Creates the default gravity curve for one of the three levels of
+     * difficulty. The difficulty only decides the starting point on the
+     * curve, so that an untouched game falls exactly as fast as before
+     * (2000, 1000 and 500 milliseconds per row).
+     *
+     * @param difficulty: EASY_LEVEL, MEDIUM_LEVEL or HARD_LEVEL
+     * @return the gravity curve for that difficulty
+     */
+    public static TetrisGravity forDifficulty(int difficulty) {
+        int startLevel;
+        switch (difficulty) {
+            case Constants.HARD_LEVEL: startLevel = 2 * Constants.LEVELS_PER_SPEED_DOUBLING; break;
+            case Constants.MEDIUM_LEVEL: startLevel = Constants.LEVELS_PER_SPEED_DOUBLING; break;
+            default: startLevel = 0;
+        }
+        //The speed doubles every LEVELS_PER_SPEED_DOUBLING levels
+        double decay = Math.pow(0.5, 1.0 / Constants.LEVELS_PER_SPEED_DOUBLING);
+        return new TetrisGravity(Constants.BASE_FALL_DELAY, decay, Constants.FRAME_DELAY,
+                Constants.LINES_PER_LEVEL, startLevel);
+    }
+
+    /**
+     * Computes the level reached after clearing a number of lines
+     *
+     * @param linesCleared: total number of lines cleared so far
+     * @return the current level
+     */
+    public int getLevel(int linesCleared) {
+        return startLevel + linesCleared / linesPerLevel;
+    }
+
+    /**
+     * Exact (unrounded) delay between two rows of fall at a level
+     *
+     * @param level: the level
+     * @return delay in milliseconds, possibly smaller than a frame
+     */
+    public double getRowDelay(int level) {
+        return baseDelay * Math.pow(decay, level);
+    }
+
+    /**
+     * Determines how frequently the timer should fire at a level.
+     * Never goes below the frame delay.
+     *
+     * @param level: the level
+     * @return the timer delay in milliseconds
+     */
+    public int getTimerDelay(int level) {
+        return (int) Math.max(frameDelay, Math.round(getRowDelay(level)));
+    }
+
+    /**
+     * Determines how many rows the shape falls every time the timer fires.
+     * This is 1 until the curve drops below the frame delay, after which
+     * it grows so that the overall fall speed keeps following the curve.
+     *
+     * @param level: the level
+     * @param numRows: number of rows of the board
+     * @return number of rows to move down per timer tick
+     */
+    public int getRowsPerTick(int level, int numRows) {
+        int rows = (int) Math.round(getTimerDelay(level) / getRowDelay(level));
+        //Falling more than the height of the board in one tick is the same as an instant drop
+        return Math.max(1, Math.min(rows, numRows));
+    }
+}
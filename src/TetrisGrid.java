@@ -0,0 +1,133 @@
+/**
+ * TetrisGrid holds the locked cells of a board of any size (up to the
+ * limits of TetrisConfig), along with the color of every cell. Colors are
+ * kept as small numbers (1 to 255, 0 meaning empty) that the owner of the
+ * grid maps to actual colors.
+ *
+ * There are two ways of storing the cells, picked by create:
+ *  1) TetrisDenseGrid packs every row into bits of longs, which suits boards
+ *     that are wide or get filled up.
+ *  2) TetrisSparseGrid only stores the rows that have locked cells, which
+ *     suits very tall boards that stay mostly empty.
+ *
+ * Unlike TetrisBoard, a grid keeps no board features, only what the game
+ * itself needs: collisions, full rows and removing rows.
+ *
+ * @author Sabirah Shuaybi
+ */
+public interface TetrisGrid {
+
+    //Largest number of cells a dense grid is made for
+    int DENSE_MAX_CELLS = 1 << 20;
+
+    /**
+     * Creates an empty grid, dense unless the board is taller than it is
+     * wide and a dense grid would hold more than DENSE_MAX_CELLS cells
+     *
+     * @param numRows: number of rows of the board
+     * @param numCols: number of columns of the board
+     * @return the grid
+     */
+    static TetrisGrid create(int numRows, int numCols) {
+        if (numRows > numCols && (long) numRows * numCols > DENSE_MAX_CELLS) {
+            return new TetrisSparseGrid(numRows, numCols);
+        }
+        return new TetrisDenseGrid(numRows, numCols);
+    }
+
+    int getNumRows();
+
+    int getNumCols();
+
+    /**
+     * @return true if the cell at (x, y) is locked
+     */
+    boolean isFilled(int x, int y);
+
+    /**
+     * @return the color of the cell at (x, y), 0 if it is empty
+     */
+    int getColor(int x, int y);
+
+    /**
+     * Locks the cell at (x, y)
+     *
+     * @param x: column of the cell
+     * @param y: row of the cell
+     * @param color: color of the cell (1 to 255)
+     */
+    void fill(int x, int y, int color);
+
+    boolean isRowFull(int row);
+
+    boolean isRowEmpty(int row);
+
+    /**
+     * Deletes a row and shifts every row above it down by one
+     *
+     * @param row: the row to be removed
+     */
+    void removeRow(int row);
+
+    /** Empties the grid */
+    void clear();
+
+    /**
+     * @return the highest row that has a locked cell (numRows if the grid is empty)
+     */
+    int getTopRow();
+
+    /**
+     * @return number of locked cells
+     */
+    int getNumFilledCells();
+
+    /**
+     * Checks whether a shape placed at (x, y) would collide with a locked
+     * cell or stick out of the left, right, bottom or top of the board.
+     *
+     * @param shape: the shape
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's location
+     * @return true if the shape does not fit at that location
+     */
+    default boolean collides(TetrisShape shape, int x, int y) {
+        if (x + shape.getMinColumn() < 0 || x + shape.getMaxColumn() >= getNumCols()) {
+            return true;
+        }
+        long[] rowMasks = shape.getRowMasks();
+        for (int j = 0; j < rowMasks.length; j++) {
+            int row = y + j;
+            if (rowMasks[j] == 0) {
+                continue;
+            }
+            if (row < 0 || row >= getNumRows()) {
+                return true;
+            }
+            for (long mask = rowMasks[j]; mask != 0; mask &= mask - 1) {
+                if (isFilled(x + Long.numberOfTrailingZeros(mask), row)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the y coordinate a shape would land at if it was dropped
+     * straight down from (x, y). The empty rows above the stack are skipped
+     * in one step, so this stays cheap on very tall boards.
+     *
+     * @param shape: the shape that is falling
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's (valid) location
+     * @return the y coordinate of the location where the shape lands
+     */
+    default int getLandingY(TetrisShape shape, int x, int y) {
+        int landingY = Math.max(y, getTopRow() - shape.getShapeMatrix().length);
+        while (!collides(shape, x, landingY + 1)) {
+            landingY++;
+        }
+        return landingY;
+    }
+}
@@ -1,7 +1,16 @@
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import javax.swing.JComponent;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 
 
 /**
@@ -11,81 +20,294 @@ import java.awt.Color;
  * 2)Rendering the board based on the state of each
  * location/cell on board (falling, locked or empty) and its
  * corresponding color.
+ * 3)Outlining the ghost piece, where the falling shape will land.
+ *
+ * The size of the grid comes from the model's TetrisConfig. Locked cells are
+ * read from the model's grid a row at a time, starting at the top of the stack
+ * and only for the rows that are on screen, so large boards stay cheap to paint.
+ *
+ * The grid is scaled to fill the component, and is painted in device pixels
+ * (taking the HiDPI scale of the screen into account) so cells stay sharp at
+ * any size. The grid lines and one image per cell color are drawn once for
+ * the current cell size and then copied onto the screen every frame; they are
+ * only drawn again when the cell size changes (ex: the window is resized).
+ *
+ * Instead of the game being played, the view can show a version of the game
+ * from the model's history (when the player steps back through the game).
  *
  * @author Sabirah Shuaybi
  */
 public class TetrisGridView extends JComponent {
 
+    //Grid lines are left out when cells are smaller than this (in pixels)
+    private static final int MIN_GRID_LINES_CELL_SIZE = 4;
+
     private TetrisModel model;
 
+    //Size of a cell and top left corner of the grid, in device pixels
+    //(0 until the first paint)
+    private int cellSize = 0;
+    private int originX;
+    private int originY;
+
+    //The grid lines, and the images of locked and ghost cells of every color,
+    //all drawn for the current cell size
+    private BufferedImage background;
+    private Map<Color, BufferedImage> cellImages = new HashMap<>();
+    private Map<Color, BufferedImage> ghostImages = new HashMap<>();
+
+    //Version of the game shown instead of the game being played (null for none),
+    //and the rows of the version
+    private TetrisBoardVersion shownVersion;
+    private byte[][] shownRows;
+
     public TetrisGridView(TetrisModel model) {
         this.model = model;
     }
 
+    /**
+     * Shows a version of the game from the model's history instead of the
+     * game being played
+     *
+     * @param version: the version (null to show the game being played again)
+     */
+    public void setShownVersion(TetrisBoardVersion version) {
+        shownVersion = version;
+        repaint();
+    }
+
+    /**
+     * The preferred size shows every cell at the cell size of the config
+     */
+    @Override
+    public Dimension getPreferredSize() {
+        TetrisConfig config = model.getConfig();
+        return new Dimension(config.getGridWidth() + 2*Constants.START_LOC,
+                config.getGridHeight() + 2*Constants.START_LOC);
+    }
+
     @Override
     public void paintComponent(Graphics g) {
-        createHorizontalGridLines
-                (g, 0, Constants.START_LOC, Constants.START_LOC, Constants.START_LOC +
-                        Constants.HORIZONTAL_LINE_LENGTH, Constants.START_LOC);
-        createVerticalGridLines
-                (g, 0, Constants.START_LOC, Constants.START_LOC, Constants.START_LOC,
-                        Constants.START_LOC + Constants.VERTICAL_LINE_LENGTH);
-        renderBoard(g);
+        Graphics2D g2 = (Graphics2D) g.create();
+
+        //Paint in device pixels: keep the translation of the component but leave out
+        //the HiDPI scale, which is applied to the size of the cells instead
+        AffineTransform transform = g2.getTransform();
+        double scaleX = transform.getScaleX();
+        double scaleY = transform.getScaleY();
+        g2.setTransform(AffineTransform.getTranslateInstance(transform.getTranslateX(), transform.getTranslateY()));
+        updateLayout((int) (getWidth()*scaleX), (int) (getHeight()*scaleY), Math.min(scaleX, scaleY));
+
+        g2.drawImage(getBackgroundImage(), originX, originY, null);
+        renderBoard(g2);
+        g2.dispose();
+    }
+
+    /**
+     * Fits the grid into the component: picks the largest whole cell size that
+     * leaves a margin of START_LOC around the grid, and centers the grid
+     * horizontally. The cached images are thrown away if the cell size changed.
+     *
+     * @param width: width of the component, in device pixels
+     * @param height: height of the component, in device pixels
+     * @param scale: number of device pixels per pixel of the component
+     */
+    private void updateLayout(int width, int height, double scale) {
+        TetrisConfig config = model.getConfig();
+        int margin = (int) Math.round(Constants.START_LOC*scale);
+        int size = Math.max(1, Math.min((width - 2*margin) / config.getNumCols(),
+                (height - 2*margin) / config.getNumRows()));
+        if (size != cellSize) {
+            cellSize = size;
+            background = null;
+            cellImages.clear();
+            ghostImages.clear();
+        }
+        originX = Math.max(0, (width - config.getNumCols()*cellSize) / 2);
+        originY = margin;
+    }
+
+    /* Creates an image that is fast to copy onto this component's screen */
+    private BufferedImage createImage(int width, int height, int transparency) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc != null) {
+            return gc.createCompatibleImage(width, height, transparency);
+        }
+        return new BufferedImage(width, height, (transparency == Transparency.OPAQUE)
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /* The grid lines (see through between them), drawn the first time they are needed */
+    private BufferedImage getBackgroundImage() {
+        if (background == null) {
+            TetrisConfig config = model.getConfig();
+            background = createImage(config.getNumCols()*cellSize + 1, config.getNumRows()*cellSize + 1,
+                    Transparency.BITMASK);
+            Graphics2D g = background.createGraphics();
+            if (cellSize >= MIN_GRID_LINES_CELL_SIZE) {
+                g.setColor((getForeground() != null) ? getForeground() : Color.BLACK);
+                drawGridLines(g, 0, 0, cellSize, config.getNumRows(), config.getNumCols());
+            }
+            g.dispose();
+        }
+        return background;
+    }
+
+    /* The image of a locked cell of the given color (with its border) */
+    private BufferedImage getCellImage(Color color) {
+        BufferedImage image = cellImages.get(color);
+        if (image == null) {
+            image = createImage(cellSize + 1, cellSize + 1, Transparency.OPAQUE);
+            Graphics2D g = image.createGraphics();
+            drawCell(g, 0, 0, 0, 0, cellSize, color);
+            g.dispose();
+            cellImages.put(color, image);
+        }
+        return image;
+    }
+
+    /* The image of a ghost cell of the given color (an outline, see through inside) */
+    private BufferedImage getGhostImage(Color color) {
+        BufferedImage image = ghostImages.get(color);
+        if (image == null) {
+            image = createImage(cellSize + 1, cellSize + 1, Transparency.BITMASK);
+            Graphics2D g = image.createGraphics();
+            g.setColor(color);
+            g.drawRect(1, 1, cellSize - 2, cellSize - 2);
+            g.dispose();
+            ghostImages.put(color, image);
+        }
+        return image;
+    }
+
+    /**
+     * Draws the horizontal and vertical grid lines of a grid
+     * (also used by the views that draw several grids, ex: TetrisSpectatorWall)
+     * @param g: graphics object
+     * @param originX: x coordinate of the top left corner of the grid
+     * @param originY: y coordinate of the top left corner of the grid
+     * @param cellSize: width and height of a cell
+     * @param numRows: number of rows of the grid
+     * @param numCols: number of columns of the grid
+     */
+    public static void drawGridLines(Graphics g, int originX, int originY, int cellSize, int numRows, int numCols) {
+        createHorizontalGridLines(g, numRows, 0, originX, originY, originX + numCols*cellSize, originY, cellSize);
+        createVerticalGridLines(g, numCols, 0, originX, originY, originX, originY + numRows*cellSize, cellSize);
     }
 
     /**
      * A recursive method that draws all the horizontal grid lines of the grid
      * @param g: graphics object
+     * @param numRows: number of rows of the grid
      * @param numLinesDrawn: the total number of horizontal lines on the grid
      * @param x1: x coordinate of the first line's start point
      * @param y1: y coordinate of the first line's start point
      * @param x2: x coordinate of the first line's end point
      * @param y2: y coordinate of the first line's end pint
+     * @param cellSize: distance between two lines
      */
-    private void createHorizontalGridLines(Graphics g, int numLinesDrawn, int x1, int y1, int x2, int y2) {
-        if(numLinesDrawn > Constants.NUM_ROWS) {
+    private static void createHorizontalGridLines(Graphics g, int numRows, int numLinesDrawn,
+                                                  int x1, int y1, int x2, int y2, int cellSize) {
+        if(numLinesDrawn > numRows) {
             return;  //base case - all horizontal lines have been drawn
         }
         g.drawLine(x1, y1, x2, y2);
-        createHorizontalGridLines(g, numLinesDrawn+1, x1, y1+Constants.CELL_SIZE, x2, y2+Constants.CELL_SIZE);
+        createHorizontalGridLines(g, numRows, numLinesDrawn+1, x1, y1+cellSize, x2, y2+cellSize, cellSize);
     }
 
     /**
      * A recursive method that draws all the vertical grid lines of the grid
      * @param g: graphics object
+     * @param numCols: number of columns of the grid
      * @param numLinesDrawn: the total number of vertical lines on the grid
      * @param x1: x coordinate of the first line's start point
      * @param y1: y coordinate of the first line's start point
      * @param x2: x coordinate of the first line's end point
      * @param y2: y coordinate of the first line's end pint
+     * @param cellSize: distance between two lines
      */
-    private void createVerticalGridLines(Graphics g, int numLinesDrawn, int x1, int y1, int x2, int y2) {
-        if(numLinesDrawn > Constants.NUM_COLS) {
+    private static void createVerticalGridLines(Graphics g, int numCols, int numLinesDrawn,
+                                                int x1, int y1, int x2, int y2, int cellSize) {
+        if(numLinesDrawn > numCols) {
             return; //base case - all vertical lines have been drawn
         }
         g.drawLine(x1, y1, x2, y2);
-        createVerticalGridLines(g, numLinesDrawn+1, x1+Constants.CELL_SIZE, y1, x2+Constants.CELL_SIZE, y2);
+        createVerticalGridLines(g, numCols, numLinesDrawn+1, x1+cellSize, y1, x2+cellSize, y2, cellSize);
     }
 
     /**
      * This method is responsible for transforming a cell's logical location
      * into an absolute location on the grid view and deriving the cell's color
      * (The cell's color originates from the shape it was part of)
-     * It then draws this square block into place on the grid/board with a
-     * black border for definition/aesthetic purposes
+     * It then copies the image of a block of that color (with a black border
+     * for definition/aesthetic purposes) into place on the grid/board
      */
     private void drawCell(Graphics g, Cell cell) {
+        drawCellImage(g, cell.getX(), cell.getY(), getCellImage(cell.getColor()));
+    }
+
+    /* Copies the image of a cell to the cell's location on the grid */
+    private void drawCellImage(Graphics g, int column, int row, BufferedImage image) {
+        g.drawImage(image, originX + column*cellSize, originY + row*cellSize, null);
+    }
+
+    /**
+     * Draws a square block at a cell's location on a grid, with a black border
+     * @param g: graphics object
+     * @param column: column of the cell
+     * @param row: row of the cell
+     * @param originX: x coordinate of the top left corner of the grid
+     * @param originY: y coordinate of the top left corner of the grid
+     * @param cellSize: width and height of a cell
+     * @param color: color of the cell
+     */
+    public static void drawCell(Graphics g, int column, int row, int originX, int originY, int cellSize, Color color) {
         //Compute the absolute x and y coordinates on the physical grid
-        int x = (cell.getX()*Constants.CELL_SIZE) + Constants.START_LOC;
-        int y = (cell.getY()*Constants.CELL_SIZE) + Constants.START_LOC;
+        int x = (column*cellSize) + originX;
+        int y = (row*cellSize) + originY;
 
-        g.setColor(cell.getColor());
+        g.setColor(color);
 
-        g.fillRect(x, y, Constants.CELL_SIZE, Constants.CELL_SIZE);
+        g.fillRect(x, y, cellSize, cellSize);
 
         //Create a black border around cell (to better define it)
         g.setColor(Color.BLACK);
-        g.drawRect(x, y, Constants.CELL_SIZE, Constants.CELL_SIZE);
+        g.drawRect(x, y, cellSize, cellSize);
+    }
+
+    /**
+     * Draws a board kept as a TetrisBoard (bit masks, without colors) along
+     * with its falling shape. Locked cells are all drawn in the same color.
+     * @param g: graphics object
+     * @param board: the locked cells
+     * @param shape: the falling shape (null for none)
+     * @param shapeX: x coordinate of the falling shape's location
+     * @param shapeY: y coordinate of the falling shape's location
+     * @param originX: x coordinate of the top left corner of the grid
+     * @param originY: y coordinate of the top left corner of the grid
+     * @param cellSize: width and height of a cell
+     * @param lockedColor: color of the locked cells
+     */
+    public static void drawBoard(Graphics g, TetrisBoard board, TetrisShape shape, int shapeX, int shapeY,
+                                 int originX, int originY, int cellSize, Color lockedColor) {
+        for (int row = 0; row < board.getNumRows(); row++) {
+            long mask = board.getRow(row);
+            while (mask != 0L) {
+                drawCell(g, Long.numberOfTrailingZeros(mask), row, originX, originY, cellSize, lockedColor);
+                mask &= mask - 1;
+            }
+        }
+        if (shape == null) {
+            return;
+        }
+        int[][] matrix = shape.getShapeMatrix();
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                if (matrix[i][j] != 0 && shapeY + i >= 0) {
+                    drawCell(g, shapeX + j, shapeY + i, originX, originY, cellSize, shape.getShapeColor());
+                }
+            }
+        }
     }
 
     /**
@@ -93,7 +315,10 @@ public class TetrisGridView extends JComponent {
      * locked set as well as the cells belonging to the currently falling shape.
      */
     private void renderBoard(Graphics g) {
-        Set<Cell> lockedCells = model.getLockedCells();
+        if (shownVersion != null) {
+            renderVersion(g);
+            return;
+        }
 
         //Determine where the falling shape cells are and store these cells in a hash set
         TetrisShape fallingShape = model.getFallingShape();
@@ -101,8 +326,13 @@ public class TetrisGridView extends JComponent {
         Set<Cell> tetrisPieceCells = TetrisUtil.computeFilledCells(fallingShape, shapeLocation);
 
         //Render all locked cells onto the board
-        for(Cell c: lockedCells) {
-            drawCell(g, c);
+        renderLockedCells(g);
+
+        //Render the ghost piece underneath the falling shape
+        //(The model caches the ghost cells, so this costs no extra work per frame)
+        BufferedImage ghostImage = getGhostImage(fallingShape.getShapeColor());
+        for(Cell c: model.getGhostCells()) {
+            drawCellImage(g, c.getX(), c.getY(), ghostImage);
         }
 
         //Render the shape cells onto the board
@@ -110,5 +340,59 @@ public class TetrisGridView extends JComponent {
             drawCell(g, c);
         }
     }
-}
 
+    /**
+     * Paints the version of the game being shown: its locked cells,
+     * and its next shape at the top of the board
+     */
+    private void renderVersion(Graphics g) {
+        TetrisConfig config = model.getConfig();
+        if (shownRows == null || shownRows.length != config.getNumRows()) {
+            shownRows = new byte[config.getNumRows()][];
+        }
+        shownVersion.getRows(shownRows);
+        for (int row = shownVersion.getTopRow(); row < shownRows.length; row++) {
+            if (shownRows[row] == null) {
+                continue;
+            }
+            for (int column = 0; column < shownRows[row].length; column++) {
+                int color = shownRows[row][column] & 0xFF;
+                if (color != 0) {
+                    drawCellImage(g, column, row, getCellImage(model.getColor(color)));
+                }
+            }
+        }
+        TetrisShape nextShape = TetrisShapeFactory.getShape(shownVersion.getShapeId(), 0);
+        Cell spawnLocation = new Cell(config.getStartX(), Constants.START_POS_Y);
+        for (Cell c : TetrisUtil.computeFilledCells(nextShape, spawnLocation)) {
+            if (c.getY() >= 0) {
+                drawCell(g, c);
+            }
+        }
+    }
+
+    /**
+     * Paints the locked cells of the rows that are both part of the stack
+     * and inside the area being repainted, skipping the empty rows
+     */
+    private void renderLockedCells(Graphics g) {
+        TetrisGrid grid = model.getGrid();
+        int firstRow = grid.getTopRow();
+        int lastRow = grid.getNumRows() - 1;
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            firstRow = Math.max(firstRow, (clip.y - originY) / cellSize - 1);
+            lastRow = Math.min(lastRow, (clip.y + clip.height - originY) / cellSize);
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            if (grid.isRowEmpty(row)) {
+                continue;
+            }
+            for (int column = 0; column < grid.getNumCols(); column++) {
+                if (grid.isFilled(column, row)) {
+                    drawCellImage(g, column, row, getCellImage(model.getCellColor(column, row)));
+                }
+            }
+        }
+    }
+}
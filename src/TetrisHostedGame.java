@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * TetrisHostedGame is one game running inside a TetrisGameHost: a
+ * TetrisEngine (with its own seeded piece queue), the gravity curve of its
+ * level of difficulty and the time its shape is next due to fall.
+ *
+ * A hosted game has no thread and no timer of its own. The host calls tick
+ * on every frame and the game catches up with whatever is due: the moves
+ * that were submitted since the last frame are made, then the shape falls
+ * if its delay has passed. This keeps an idle game down to its board and a
+ * few fields.
+ *
+ * Moves can be submitted and the score read from any thread.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisHostedGame {
+
+    //Moves that were submitted but not made yet, more are dropped until the next tick
+    private static final int MAX_PENDING_MOVES = 16;
+
+    private final int id;
+    private final TetrisEngine engine;
+    private final TetrisGravity gravity;
+
+    //Level the game is at, and the fall speed of that level
+    private int level;
+    private int fallDelay;
+    private int rowsPerFall;
+
+    //Time (in milliseconds of host time) the shape falls next
+    private long nextFallTime;
+
+    private boolean paused = false;
+
+    //Set when the host stops the game for good (ex: after an error)
+    private boolean stopped = false;
+
+    //Moves submitted since the last tick, created with the first move
+    private int[] pendingMoves;
+    private int numPendingMoves = 0;
+
+    //For every number of lines a shape cleared at once (1 to 4), how many shapes
+    //did so since the last call to drainLineClears
+    private final int[] lineClears = new int[Constants.TETRIS + 1];
+
+    //Writes the game's changes for spectators (null if nobody is watching)
+    private TetrisSpectatorWriter spectator;
+
+    /**
+     * @param id: number of the game within its host
+     * @param seed: seed of the game's shapes
+     * @param gravity: the fall speed curve of the game
+     * @param startTime: host time the game starts at
+     */
+    public TetrisHostedGame(int id, long seed, TetrisGravity gravity, long startTime) {
+        this(id, TetrisConfig.getDefault(), seed, gravity, startTime);
+    }
+
+    /**
+     * @param id: number of the game within its host
+     * @param config: size of the game's board
+     * @param seed: seed of the game's shapes
+     * @param gravity: the fall speed curve of the game
+     * @param startTime: host time the game starts at
+     */
+    public TetrisHostedGame(int id, TetrisConfig config, long seed, TetrisGravity gravity, long startTime) {
+        this.id = id;
+        this.engine = new TetrisEngine(config, seed);
+        this.gravity = gravity;
+        updateSpeed();
+
+        //Delay the first fall by one second, like TetrisTimer
+        nextFallTime = startTime + Constants.ONE_SECOND;
+    }
+
+    /* Looks up the fall speed for the level reached */
+    private void updateSpeed() {
+        level = gravity.getLevel(engine.getNumLinesCleared());
+        fallDelay = gravity.getTimerDelay(level);
+        rowsPerFall = gravity.getRowsPerTick(level, engine.getBoard().getNumRows());
+    }
+
+    /**
+     * Queues a move to be made on the next tick
+     *
+     * @param move: one of the MOVE_ constants defined in Constants
+     * @return false if the move was dropped (too many moves waiting, or the game is over)
+     */
+    public synchronized boolean submitMove(int move) {
+        if (engine.isGameOver() || numPendingMoves == MAX_PENDING_MOVES) {
+            return false;
+        }
+        if (pendingMoves == null) {
+            pendingMoves = new int[MAX_PENDING_MOVES];
+        }
+        pendingMoves[numPendingMoves++] = move;
+        return true;
+    }
+
+    /**
+     * Advances the game to the given host time: makes the moves that were
+     * submitted, then lets the shape fall if it is due
+     *
+     * @param now: current host time in milliseconds
+     */
+    public synchronized void tick(long now) {
+        if (stopped) {
+            return;
+        }
+        if (paused || engine.isGameOver()) {
+            //Changes made from outside the tick (ex: garbage) still have to be sent
+            flushSpectator();
+            return;
+        }
+        int lines = engine.getNumLinesCleared();
+        for (int i = 0; i < numPendingMoves; i++) {
+            int linesBefore = engine.getNumLinesCleared();
+            engine.applyMove(pendingMoves[i]);
+            countLineClear(linesBefore);
+        }
+        numPendingMoves = 0;
+
+        if (now >= nextFallTime) {
+            for (int row = 0; row < rowsPerFall && moveDown(); row++) {
+                //keep falling until the rows of this tick are used up or the shape locks
+            }
+            nextFallTime = now + fallDelay;
+        }
+        if (engine.getNumLinesCleared() != lines) {
+            updateSpeed();
+        }
+        flushSpectator();
+    }
+
+    /* Lets the shape fall one row, counting the lines it clears if it locks */
+    private boolean moveDown() {
+        int linesBefore = engine.getNumLinesCleared();
+        boolean moved = engine.moveDown();
+        countLineClear(linesBefore);
+        return moved;
+    }
+
+    /* Counts the lines cleared by the move just made (a move locks one shape at most) */
+    private void countLineClear(int linesBefore) {
+        int cleared = engine.getNumLinesCleared() - linesBefore;
+        if (cleared > 0) {
+            lineClears[Math.min(cleared, Constants.TETRIS)]++;
+        }
+    }
+
+    /**
+     * Takes the line clears made since the last call: every shape that
+     * cleared lines counts once, however many other shapes locked in the
+     * same tick
+     *
+     * @param counts: filled with, for every number of lines cleared at once
+     *              (index 1 to Constants.TETRIS), the number of shapes that did so
+     */
+    public synchronized void drainLineClears(int[] counts) {
+        System.arraycopy(lineClears, 0, counts, 0, lineClears.length);
+        Arrays.fill(lineClears, 0);
+    }
+
+    /* Sends the spectator the changes of the tick */
+    private void flushSpectator() {
+        if (spectator != null) {
+            try {
+                spectator.endTick();
+            } catch (IOException e) {
+                //The spectator went away, the game goes on without them
+                engine.setListener(null);
+                spectator = null;
+            }
+        }
+    }
+
+    /**
+     * Sets where the game's changes are streamed to for spectators,
+     * starting with a keyframe of the game as it is now
+     *
+     * @param spectator: the writer of the stream (null to stop streaming)
+     */
+    public synchronized void setSpectator(TetrisSpectatorWriter spectator) throws IOException {
+        engine.setListener(null);
+        this.spectator = spectator;
+        if (spectator != null) {
+            spectator.attach(engine);
+        }
+    }
+
+    /**
+     * Stops (or restarts) the shape from falling and moves from being made.
+     *
+     * @param paused: true to pause the game
+     * @param now: current host time in milliseconds
+     */
+    public synchronized void setPaused(boolean paused, long now) {
+        if (this.paused && !paused) {
+            nextFallTime = now + fallDelay;
+        }
+        this.paused = paused;
+    }
+
+    /**
+     * Ends the game for good, whatever state it is in: it isn't ticked or
+     * streamed anymore and counts as over
+     */
+    public synchronized void stop() {
+        stopped = true;
+        numPendingMoves = 0;
+        engine.setListener(null);
+        spectator = null;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Getter for the engine of the game. It is changed by the host's
+     * threads, so it must only be read inside a block synchronized on
+     * this game.
+     *
+     * @return the engine the game is played on
+     */
+    public TetrisEngine getEngine() {
+        return engine;
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    public synchronized int getNumLinesCleared() {
+        return engine.getNumLinesCleared();
+    }
+
+    public synchronized int getNumTetrisCleared() {
+        return engine.getNumTetrisCleared();
+    }
+
+    public synchronized int getNumShapesLocked() {
+        return engine.getNumShapesLocked();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized boolean isGameOver() {
+        return stopped || engine.isGameOver();
+    }
+}
@@ -1,4 +1,10 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -11,47 +17,124 @@ import java.util.Set;
  * explanation of what lockedCells are and how and why HashSets are used to simulate
  * a board rather than a using a separate board class.
  *
+ * The locked cells are stored in a TetrisGrid sized from the TetrisConfig of the
+ * game (a classic 10x18 board or boards as large as 1000 columns wide), along with
+ * their colors. The set of locked cells is built from the grid when it is asked for.
+ * On boards that are small enough, the model also keeps a TetrisBoard (bit masks,
+ * column heights and board features) in sync with the grid for the bots and the
+ * finesse statistics. For this reason, locked cells should only be changed through
+ * the model's methods.
+ *
+ * Every locked shape also adds a TetrisBoardVersion to the model's history,
+ * so the game can be stepped back through and undone.
+ *
  * @author Sabirah Shuaybi
  */
 
 public class TetrisModel {
 
-    //The collection of all cells that are locked/occupied
+    //Size of the board
+    private TetrisConfig config;
+
+    //Seed of the sequence of shapes
+    private long seed;
+
+    //All cells that are locked/occupied, and their colors
+    private TetrisGrid grid;
+
+    //The colors of the locked cells, the grid keeps their position in this list (plus one)
+    private List<Color> colors = new ArrayList<>();
+    private Map<Color, Integer> colorIndexes = new HashMap<>();
+
+    //The set of locked cells, built from the grid (null until it is asked for)
     private Set<Cell> lockedCells;
 
     //Shape currently in play/action
     private TetrisShape fallingShape;
 
+    //The shapes that will fall next
+    private TetrisPieceQueue pieceQueue;
+
     //Current location of the shape in action
     private Cell shapeLocation;
 
+    //Mirror of the grid that answers questions about the shape of the stack
+    //(null if the board is too large for a TetrisBoard)
+    private TetrisBoard board;
+
+    //Where the falling shape would land if dropped (null until it is needed)
+    private Cell ghostLocation;
+    private Set<Cell> ghostCells;
+
     //To maintain the score
     private int numLinesCleared = 0;
     private int numTetrisCleared = 0;
 
+    //To measure finesse: inputs made beyond the fewest that were needed
+    private int numShapesLocked = 0;
+    private int numFinesseFaults = 0;
+
+    //A version of the game for every shape locked, oldest first (see TetrisBoardVersion),
+    //and the lowest row changed since the last one (-1 for none)
+    private List<TetrisBoardVersion> versions = new ArrayList<>();
+    private int lowestChangedRow = -1;
+
     public TetrisModel() {
-        lockedCells =  new HashSet<>();
+        this(TetrisConfig.getDefault());
+    }
+
+    public TetrisModel(TetrisConfig config) {
+        this(config, new Random().nextLong());
+    }
+
+    /**
+     * @param config: size of the board
+     * @param seed: seed of the sequence of shapes (the same seed always gives the same shapes)
+     */
+    public TetrisModel(TetrisConfig config, long seed) {
+        this.config = config;
+        this.seed = seed;
+        grid = TetrisGrid.create(config.getNumRows(), config.getNumCols());
+        if (TetrisBoard.fits(config.getNumRows(), config.getNumCols())) {
+            board = new TetrisBoard(config.getNumRows(), config.getNumCols());
+        }
+        pieceQueue = new TetrisPieceQueue(seed);
         createNewShape();
+        versions.add(TetrisBoardVersion.createEmpty(config.getNumRows(), config.getNumCols(),
+                fallingShape.getShapeId()));
     }
 
     /**
-     * Creates a new random shape
+     * Creates a new random shape (the next one in the piece queue)
      */
     public void createNewShape() {
-        fallingShape = TetrisShapeFactory.getRandom();
+        fallingShape = pieceQueue.next();
 
         //The falling shape's location will initially be set to
         //the default start position (top center)
         //this location will keep updating as shape navigates across the board
-        shapeLocation = new Cell(Constants.START_POS_X, Constants.START_POS_Y);
+        shapeLocation = new Cell(config.getStartX(), Constants.START_POS_Y);
+        invalidateGhost();
     }
 
     /**
-     * Getter for lockedCells (hashset)
+     * Getter for lockedCells (hashset), built from the grid.
+     * The set must not be modified, and it is rebuilt after the locked cells
+     * change, so on large boards the grid should be read instead.
      *
      * @return the set of locked cells (set of filled spaces on board)
      */
     public Set<Cell> getLockedCells() {
+        if (lockedCells == null) {
+            lockedCells = new HashSet<>();
+            for (int row = grid.getTopRow(); row < grid.getNumRows(); row++) {
+                for (int column = 0; column < grid.getNumCols() && !grid.isRowEmpty(row); column++) {
+                    if (grid.isFilled(column, row)) {
+                        lockedCells.add(new Cell(column, row, getCellColor(column, row)));
+                    }
+                }
+            }
+        }
         return lockedCells;
     }
 
@@ -62,7 +145,13 @@ public class TetrisModel {
      * @param lockedCells: the set of locked cells
      */
     public void setLockedCells(Set<Cell> lockedCells) {
-        this.lockedCells = lockedCells;
+        //Rebuild the grid and the board from scratch to match the new set
+        grid.clear();
+        if (board != null) {
+            board.clear();
+        }
+        lowestChangedRow = config.getNumRows() - 1;
+        addToLockedCells(lockedCells);
     }
 
     /**
@@ -72,7 +161,180 @@ public class TetrisModel {
      * @param shapeCells: the cells (ie. locations) of falling shape
      */
     public void addToLockedCells(Set<Cell> shapeCells) {
-        lockedCells.addAll(shapeCells);
+        for (Cell c : shapeCells) {
+            addToLockedCells(c);
+        }
+    }
+
+    /**
+     * Adds a single cell into the set of locked cells
+     *
+     * @param cell: the cell to lock onto the board
+     */
+    public void addToLockedCells(Cell cell) {
+        //Cells above the top of the board can't be locked
+        if (cell.getY() < 0) {
+            return;
+        }
+        grid.fill(cell.getX(), cell.getY(), getColorIndex(cell.getColor()));
+        if (board != null) {
+            board.fill(cell.getX(), cell.getY());
+        }
+        lowestChangedRow = Math.max(lowestChangedRow, cell.getY());
+        lockedCells = null;
+        invalidateGhost();
+    }
+
+    /* The number a color is kept as in the grid */
+    private int getColorIndex(Color color) {
+        Integer index = colorIndexes.get(color);
+        if (index == null) {
+            if (colors.size() == 255) {
+                throw new IllegalStateException("Too many different cell colors");
+            }
+            colors.add(color);
+            index = colors.size();
+            colorIndexes.put(color, index);
+        }
+        return index;
+    }
+
+    /**
+     * Getter for the color of a locked cell
+     *
+     * @param x: column of the cell
+     * @param y: row of the cell
+     * @return the color of the cell, or null if it is empty
+     */
+    public Color getCellColor(int x, int y) {
+        return getColor(grid.getColor(x, y));
+    }
+
+    /**
+     * Getter for a color as it is kept in the grid
+     *
+     * @param colorIndex: the number the grid keeps (1 to 255)
+     * @return the color, or null for 0 (an empty cell)
+     */
+    public Color getColor(int colorIndex) {
+        return (colorIndex == 0) ? null : colors.get(colorIndex - 1);
+    }
+
+    /**
+     * Deletes a row of locked cells and shifts all
+     * the locked cells above it down by one row.
+     *
+     * @param row: the row of cells to be removed
+     */
+    public void removeRow(int row) {
+        grid.removeRow(row);
+        if (board != null) {
+            board.removeRow(row);
+        }
+        lowestChangedRow = Math.max(lowestChangedRow, row);
+        lockedCells = null;
+        invalidateGhost();
+    }
+
+    /**
+     * Adds a version of the game as it is now to the history: to be called
+     * once a shape has locked, its full rows are cleared and the next shape
+     * has come in. Only the rows changed since the last version are copied.
+     */
+    public void recordVersion() {
+        TetrisBoardVersion last = versions.get(versions.size() - 1);
+        versions.add(last.next(grid, lowestChangedRow, numLinesCleared, numTetrisCleared,
+                fallingShape.getShapeId(), pieceQueue.getNumTaken()));
+        lowestChangedRow = -1;
+    }
+
+    /**
+     * @return number of versions in the history (the first one is the start of the game)
+     */
+    public int getNumVersions() {
+        return versions.size();
+    }
+
+    /**
+     * @param index: number of the version (0 for the start of the game)
+     * @return the version
+     */
+    public TetrisBoardVersion getVersion(int index) {
+        return versions.get(index);
+    }
+
+    /**
+     * Takes the game back to one of its versions: the locked cells and
+     * the score are those of the version, and its next shape comes in at the
+     * top of the board, followed by the same shapes as the first time. The
+     * versions after it are dropped from the history. The finesse statistics
+     * are not taken back.
+     *
+     * @param index: number of the version
+     */
+    public void restoreVersion(int index) {
+        TetrisBoardVersion version = versions.get(index);
+        versions.subList(index + 1, versions.size()).clear();
+
+        grid.clear();
+        if (board != null) {
+            board.clear();
+        }
+        byte[][] rows = new byte[config.getNumRows()][];
+        version.getRows(rows);
+        for (int row = version.getTopRow(); row < rows.length; row++) {
+            if (rows[row] == null) {
+                continue;
+            }
+            for (int column = 0; column < rows[row].length; column++) {
+                if (rows[row][column] != 0) {
+                    grid.fill(column, row, rows[row][column] & 0xFF);
+                    if (board != null) {
+                        board.fill(column, row);
+                    }
+                }
+            }
+        }
+        lowestChangedRow = -1;
+        lockedCells = null;
+
+        numLinesCleared = version.getNumLinesCleared();
+        numTetrisCleared = version.getNumTetrisCleared();
+        //The piece queue is dealt again from the seed, up to the version's next shape
+        pieceQueue = new TetrisPieceQueue(seed);
+        for (int i = 1; i < version.getNumShapesTaken(); i++) {
+            pieceQueue.next();
+        }
+        createNewShape();
+    }
+
+    /**
+     * Getter for the board that mirrors the locked cells.
+     * The board must not be modified directly, only through the model.
+     *
+     * @return the bit mask/column height view of the locked cells
+     * (null if the board is too large, see TetrisBoard.fits)
+     */
+    public TetrisBoard getBoard() {
+        return board;
+    }
+
+    /**
+     * Getter for the grid of locked cells.
+     * The grid must not be modified directly, only through the model.
+     *
+     * @return the locked cells and their colors
+     */
+    public TetrisGrid getGrid() {
+        return grid;
+    }
+
+    public TetrisConfig getConfig() {
+        return config;
+    }
+
+    public long getSeed() {
+        return seed;
     }
 
     /**
@@ -84,6 +346,15 @@ public class TetrisModel {
         return fallingShape;
     }
 
+    /**
+     * Getter for the queue of upcoming shapes
+     *
+     * @return the queue the next shapes will be taken from
+     */
+    public TetrisPieceQueue getPieceQueue() {
+        return pieceQueue;
+    }
+
     /**
      * Reads and returns user input (for processing)
      *
@@ -92,6 +363,7 @@ public class TetrisModel {
      */
     public void setFallingShape(TetrisShape fallingShape) {
         this.fallingShape = fallingShape;
+        invalidateGhost();
     }
     /**
      * Getter for the focal Cell that denotes the location of
@@ -115,17 +387,76 @@ public class TetrisModel {
      * @param shapeLocation:
      */
     public void setShapeLocation(Cell shapeLocation) {
+        //Moving straight down does not change where the shape lands
+        if (this.shapeLocation.getX() != shapeLocation.getX()) {
+            invalidateGhost();
+        }
         this.shapeLocation = shapeLocation;
     }
 
+    /**
+     * Getter for the location where the falling shape would land if it was
+     * dropped straight down (the location of the 'ghost' piece).
+     *
+     * The location is computed from the column heights of the board (or from
+     * the top row of the grid on boards too large for a TetrisBoard) the
+     * first time it is asked for and then reused until the shape moves
+     * sideways, rotates or the locked cells change.
+     *
+     * @return landing location of the falling shape
+     */
+    public Cell getGhostLocation() {
+        if (ghostLocation == null) {
+            int landingY = (board != null)
+                    ? board.getLandingY(fallingShape, shapeLocation.getX(), shapeLocation.getY())
+                    : grid.getLandingY(fallingShape, shapeLocation.getX(), shapeLocation.getY());
+            ghostLocation = new Cell(shapeLocation.getX(), landingY);
+        }
+        return ghostLocation;
+    }
+
+    /**
+     * Getter for the cells the falling shape would occupy once landed
+     *
+     * @return the cells of the ghost piece
+     */
+    public Set<Cell> getGhostCells() {
+        if (ghostCells == null) {
+            ghostCells = TetrisUtil.computeFilledCells(fallingShape, getGhostLocation());
+        }
+        return ghostCells;
+    }
+
+    /**
+     * Getter for the Zobrist hash of the state of the game (the locked cells
+     * plus the falling shape and its location), see TetrisZobrist
+     *
+     * @return hash of the current state (0 if the board is too large to be hashed)
+     */
+    public long getStateHash() {
+        if (board == null) {
+            return 0L;
+        }
+        TetrisZobrist zobrist = TetrisZobrist.forSize(board.getNumRows(), board.getNumCols());
+        return board.getHash() ^ zobrist.pieceKey(fallingShape, shapeLocation.getX(), shapeLocation.getY());
+    }
+
+    /* Forgets the cached landing location (it will be recomputed when needed) */
+    private void invalidateGhost() {
+        ghostLocation = null;
+        ghostCells = null;
+    }
+
     /** Rotates the currently falling shape clockwise */
     public void rotateCW() {
         fallingShape = fallingShape.rotateCW();
+        invalidateGhost();
     }
 
     /** Rotates the currently falling shape counter-clockwise */
     public void rotateCCW() {
         fallingShape = fallingShape.rotateCCW();
+        invalidateGhost();
     }
 
     /** Increments the number of lines cleared by player */
@@ -138,6 +469,36 @@ public class TetrisModel {
         numTetrisCleared++;
     }
 
+    /**
+     * Records the inputs the player made for a shape that just locked.
+     * Called from the controller's finesse thread, hence synchronized.
+     *
+     * @param inputs: left/right/rotate inputs the player made for the shape
+     * @param fewestInputs: the fewest inputs that would have reached the same spot
+     */
+    public synchronized void recordShapeInputs(int inputs, int fewestInputs) {
+        numShapesLocked++;
+        numFinesseFaults += Math.max(0, inputs - fewestInputs);
+    }
+
+    /**
+     * Getter for numShapesLocked
+     *
+     * @return number of shapes that have landed (and had their inputs recorded)
+     */
+    public synchronized int getNumShapesLocked() {
+        return numShapesLocked;
+    }
+
+    /**
+     * Getter for numFinesseFaults
+     *
+     * @return total number of inputs made beyond the fewest needed
+     */
+    public synchronized int getNumFinesseFaults() {
+        return numFinesseFaults;
+    }
+
     /**
      * Getter for numLinesCleared
      *
@@ -0,0 +1,98 @@
+import java.util.Random;
+
+/**
+ * TetrisPieceQueue hands out the shapes of a game in order and lets the
+ * player (or a bot) look ahead at the shapes that are coming next.
+ *
+ * The shapes are drawn from the TetrisShapeFactory with the queue's own
+ * random number generator, so a queue created with a seed always produces
+ * the same sequence. Shapes are only drawn when they are first needed,
+ * so peeking ahead never changes the sequence.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisPieceQueue {
+
+    private Random random;
+
+    //Circular buffer of the shapes that have been drawn but not taken yet
+    private TetrisShape[] upcoming;
+    private int head = 0;
+    private int size = 0;
+
+    //Number of shapes taken out of the queue so far
+    private int numTaken = 0;
+
+    public TetrisPieceQueue() {
+        this(new Random());
+    }
+
+    public TetrisPieceQueue(long seed) {
+        this(new Random(seed));
+    }
+
+    private TetrisPieceQueue(Random random) {
+        this.random = random;
+        upcoming = new TetrisShape[8];
+    }
+
+    /**
+     * Takes the next shape out of the queue
+     *
+     * @return the next shape of the game
+     */
+    public TetrisShape next() {
+        TetrisShape shape = peek(0);
+        upcoming[head] = null;
+        head = (head + 1) % upcoming.length;
+        size--;
+        numTaken++;
+        return shape;
+    }
+
+    /**
+     * @return number of shapes taken out of the queue so far (a queue created
+     * with the same seed gives the same shapes after taking as many)
+     */
+    public int getNumTaken() {
+        return numTaken;
+    }
+
+    /**
+     * Looks at a shape that is coming up without taking it
+     *
+     * @param index: 0 for the next shape, 1 for the one after it, etc.
+     * @return the shape at that position of the queue
+     */
+    public TetrisShape peek(int index) {
+        while (size <= index) {
+            if (size == upcoming.length) {
+                grow();
+            }
+            upcoming[(head + size) % upcoming.length] = TetrisShapeFactory.getRandom(random);
+            size++;
+        }
+        return upcoming[(head + index) % upcoming.length];
+    }
+
+    /**
+     * Fills an array with the upcoming shapes
+     *
+     * @param shapes: the array to fill, one shape per entry
+     */
+    public void peek(TetrisShape[] shapes) {
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = peek(i);
+        }
+    }
+
+    /* Doubles the capacity of the buffer, keeping the shapes in order */
+    private void grow() {
+        TetrisShape[] bigger = new TetrisShape[upcoming.length * 2];
+        for (int i = 0; i < size; i++) {
+            bigger[i] = upcoming[(head + i) % upcoming.length];
+        }
+        upcoming = bigger;
+        head = 0;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * TetrisPlacement describes where a bot has decided to put a shape:
+ * the rotation of the shape, the location it lands at, how good the
+ * resulting board is, and the moves that get the shape there.
+ *
+ * NOTE: TetrisPlacement is an immutable object.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisPlacement {
+
+    private final TetrisShape shape;
+    private final int x;
+    private final int y;
+    private final double score;
+    private final int[] moves;
+
+    public TetrisPlacement(TetrisShape shape, int x, int y, double score, int[] moves) {
+        this.shape = shape;
+        this.x = x;
+        this.y = y;
+        this.score = score;
+        this.moves = moves;
+    }
+
+    /** @return the shape, rotated the way it is placed */
+    public TetrisShape getShape() {
+        return shape;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    /** @return the y coordinate the shape lands at */
+    public int getY() {
+        return y;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Getter for the moves that bring the shape to this placement
+     *
+     * @return copy of the moves (MOVE_ constants in Constants)
+     */
+    public int[] getMoves() {
+        return moves.clone();
+    }
+
+    /** @return number of moves in the sequence */
+    public int getNumMoves() {
+        return moves.length;
+    }
+
+    /** @return the move at a position of the sequence */
+    public int getMove(int index) {
+        return moves[index];
+    }
+
+    @Override
+    public String toString() {
+        return "TetrisPlacement{" +
+                "rotation=" + shape.getRotation() +
+                ", x=" + x +
+                ", y=" + y +
+                ", score=" + score +
+                '}';
+    }
+}
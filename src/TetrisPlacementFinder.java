@@ -0,0 +1,136 @@
+/**
+ * TetrisPlacementFinder lists every placement a falling shape can reach:
+ * every rotation the shape can turn into where it is, then every column
+ * the rotated shape can slide to, then straight down to where it lands.
+ *
+ * The placements are written into arrays owned by the finder, which are
+ * reused from one call to the next, so finding placements allocates
+ * nothing. Read them back with getShape/getX/getY before the next call.
+ *
+ * NOTE: Because of the reused arrays, one finder should only be used by
+ * one thread at a time.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisPlacementFinder {
+
+    //The placements found by the last call to findPlacements
+    private TetrisShape[] shapes = new TetrisShape[0];
+    private int[] xs = new int[0];
+    private int[] ys = new int[0];
+    private int numPlacements = 0;
+
+    //Which of the 4 rotations can be reached by the shape being placed
+    private boolean[] reachable = new boolean[4];
+
+    /**
+     * Finds every reachable placement of a falling shape
+     *
+     * @param board: the locked cells of the game
+     * @param shape: the falling shape
+     * @param x: x coordinate of the falling shape's location
+     * @param y: y coordinate of the falling shape's location
+     * @return the number of placements found
+     */
+    public int findPlacements(TetrisBoard board, TetrisShape shape, int x, int y) {
+        //A shape can't be placed further than one matrix width outside of the board
+        int capacity = 4 * (board.getNumCols() + 4);
+        if (shapes.length < capacity) {
+            shapes = new TetrisShape[capacity];
+            xs = new int[capacity];
+            ys = new int[capacity];
+        }
+        numPlacements = 0;
+
+        int shapeId = shape.getShapeId();
+        int current = shape.getRotation();
+
+        //Rotations are done the way a player would: one clockwise turn, two
+        //clockwise turns, or one counter clock-wise turn, and every
+        //intermediate rotation has to fit as well
+        boolean cwFits = !board.collides(shape.rotateCW(), x, y);
+        boolean cw2Fits = cwFits && !board.collides(shape.rotateCW().rotateCW(), x, y);
+        boolean ccwFits = !board.collides(shape.rotateCCW(), x, y);
+        reachable[current] = true;
+        reachable[(current + 1) % 4] = cwFits;
+        reachable[(current + 2) % 4] = cw2Fits;
+        reachable[(current + 3) % 4] = ccwFits;
+
+        for (int rotation = 0; rotation < 4; rotation++) {
+            if (!reachable[rotation]) {
+                continue;
+            }
+            //Skip rotations that only repeat the outline of an earlier reachable rotation
+            int canonical = TetrisShapeFactory.getCanonicalRotation(shapeId, rotation);
+            if (canonical != rotation && reachable[canonical]) {
+                continue;
+            }
+            TetrisShape rotated = TetrisShapeFactory.getShape(shapeId, rotation);
+
+            //Find how far the rotated shape can slide in both directions
+            int minX = x;
+            while (!board.collides(rotated, minX - 1, y)) {
+                minX--;
+            }
+            int maxX = x;
+            while (!board.collides(rotated, maxX + 1, y)) {
+                maxX++;
+            }
+
+            for (int targetX = minX; targetX <= maxX; targetX++) {
+                shapes[numPlacements] = rotated;
+                xs[numPlacements] = targetX;
+                ys[numPlacements] = board.getLandingY(rotated, targetX, y);
+                numPlacements++;
+            }
+        }
+        return numPlacements;
+    }
+
+    public int getNumPlacements() {
+        return numPlacements;
+    }
+
+    /** @return the rotated shape of a placement found */
+    public TetrisShape getShape(int index) {
+        return shapes[index];
+    }
+
+    /** @return the x coordinate of a placement found */
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    /** @return the y coordinate the shape lands at for a placement found */
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Builds the sequence of moves that brings a shape from its current
+     * rotation and column to a target rotation and column, then drops it
+     *
+     * @param from: the shape in its current rotation
+     * @param fromX: the current x coordinate of the shape
+     * @param to: the shape in its target rotation
+     * @param toX: the target x coordinate
+     * @return the moves (MOVE_ constants in Constants)
+     */
+    public static int[] computeMoves(TetrisShape from, int fromX, TetrisShape to, int toX) {
+        int turns = (to.getRotation() - from.getRotation() + 4) % 4;
+        int numRotations = (turns == 3) ? 1 : turns;
+        int numShifts = Math.abs(toX - fromX);
+
+        int[] moves = new int[numRotations + numShifts + 1];
+        int index = 0;
+        for (int i = 0; i < numRotations; i++) {
+            moves[index++] = (turns == 3) ? Constants.MOVE_ROTATE_CCW : Constants.MOVE_ROTATE_CW;
+        }
+        int shift = (toX < fromX) ? Constants.MOVE_LEFT : Constants.MOVE_RIGHT;
+        for (int i = 0; i < numShifts; i++) {
+            moves[index++] = shift;
+        }
+        moves[index] = Constants.MOVE_HARD_DROP;
+        return moves;
+    }
+}
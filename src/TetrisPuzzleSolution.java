@@ -0,0 +1,52 @@
+/**
+ * TetrisPuzzleSolution is the answer of the TetrisPuzzleSolver: where to
+ * put each shape of the sequence, and what that achieves.
+ *
+ * NOTE: TetrisPuzzleSolution is an immutable object.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisPuzzleSolution {
+
+    private final TetrisPlacement[] placements;
+    private final int linesCleared;
+    private final boolean perfectClear;
+
+    public TetrisPuzzleSolution(TetrisPlacement[] placements, int linesCleared, boolean perfectClear) {
+        this.placements = placements.clone();
+        this.linesCleared = linesCleared;
+        this.perfectClear = perfectClear;
+    }
+
+    /** @return number of shapes the solution places */
+    public int getNumPlacements() {
+        return placements.length;
+    }
+
+    /**
+     * @param index: which shape of the sequence
+     * @return where that shape goes (with the moves to get it there from the spawn position)
+     */
+    public TetrisPlacement getPlacement(int index) {
+        return placements[index];
+    }
+
+    public int getLinesCleared() {
+        return linesCleared;
+    }
+
+    /** @return true if the board is completely empty after the last placement */
+    public boolean isPerfectClear() {
+        return perfectClear;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("TetrisPuzzleSolution{lines=" + linesCleared
+                + ", perfectClear=" + perfectClear);
+        for (TetrisPlacement placement : placements) {
+            text.append(", ").append(placement);
+        }
+        return text.append('}').toString();
+    }
+}
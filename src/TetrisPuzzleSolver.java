@@ -0,0 +1,415 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TetrisPuzzleSolver answers puzzles: given a board that has already been
+ * filled in some way (such as the layouts in TetrisController.testMethod)
+ * and a known sequence of shapes, it finds how to place the shapes to
+ *  1) clear the board completely (a perfect clear), or
+ *  2) clear as many lines as possible.
+ *
+ * The search tries every placement of every shape in order (shapes are
+ * slid along the top and dropped, see TetrisPlacementFinder), working on
+ * TetrisBoard bit masks only. Boards that can no longer lead anywhere are
+ * pruned: a perfect clear needs enough shapes left to fill every row up to
+ * the target height, and no line count can beat the best one found so far
+ * once there aren't enough cells left to complete more rows. Boards that
+ * were already searched are remembered in a TetrisTranspositionTable, so
+ * the same board reached by placing shapes differently is not searched
+ * twice. The first levels of the search are split over a ForkJoinPool,
+ * one subtree per task.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisPuzzleSolver {
+
+    //Size of the table of searched boards (2^20 entries)
+    private static final int TABLE_LOG2_SIZE = 20;
+
+    //Mixed into a board's hash, so the same board with a different number of
+    //shapes left (or a different target height) gets a different key
+    private static final long DEPTH_KEY = 0x9E3779B97F4A7C15L;
+    private static final long HEIGHT_KEY = 0xC2B2AE3D27D4EB4FL;
+
+    //Mixed into the key of every board of a puzzle, from its shapes and goal,
+    //so boards of different puzzles never share an entry of the table
+    private static final long PIECE_KEY = 0xFF51AFD7ED558CCDL;
+    private static final long PERFECT_CLEAR_KEY = 0xC4CEB9FE1A85EC53L;
+
+    private final ForkJoinPool pool;
+    private final int splitDepth;
+    private final TetrisTranspositionTable table = new TetrisTranspositionTable(TABLE_LOG2_SIZE);
+
+    //State of the puzzle being solved
+    private TetrisShape[] pieces;
+    private boolean perfectClearMode;
+    private long puzzleKey;
+    //Where the shapes spawn on the puzzle's board
+    private int startX;
+    private volatile boolean solved;
+    private final AtomicInteger bestLines = new AtomicInteger();
+    private int[] bestPath;
+    private int bestPathLength;
+    private final Object bestLock = new Object();
+
+    /**
+     * @param pool: the threads to search subtrees on
+     * @param splitDepth: how many shapes deep the search is split into separate tasks
+     */
+    public TetrisPuzzleSolver(ForkJoinPool pool, int splitDepth) {
+        this.pool = pool;
+        this.splitDepth = splitDepth;
+    }
+
+    /**
+     * Searches for a way to clear the board completely
+     *
+     * @param board: the board to clear (not changed)
+     * @param pieces: the shapes that will come, in order (not all of them have to be used)
+     * @return the placements that clear the board, or null if there is no way to do it
+     */
+    public synchronized TetrisPuzzleSolution solvePerfectClear(TetrisBoard board, TetrisShape[] pieces) {
+        start(board, pieces, true);
+        int numCols = board.getNumCols();
+        int filled = board.getNumFilledCells();
+
+        //Try the lowest possible clear first: every row up to the height has to be filled,
+        //with a whole number of shapes (4 cells each)
+        for (int height = Math.max(1, board.getMaxHeight()); height <= board.getNumRows(); height++) {
+            int needed = height * numCols - filled;
+            if (needed > 4 * pieces.length) {
+                break;
+            }
+            if (needed % 4 != 0) {
+                continue;
+            }
+            pool.invoke(new SearchTask(new TetrisBoard(board), 0, 0, height, new int[pieces.length]));
+            if (solved) {
+                return buildSolution(board, height, true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches for the placements that clear the most lines
+     *
+     * @param board: the starting board (not changed)
+     * @param pieces: the shapes that will come, in order
+     * @return the best placements found (every shape is placed, unless the game is lost first)
+     */
+    public synchronized TetrisPuzzleSolution solveMaxLines(TetrisBoard board, TetrisShape[] pieces) {
+        start(board, pieces, false);
+        pool.invoke(new SearchTask(new TetrisBoard(board), 0, 0, board.getNumRows(), new int[pieces.length]));
+        return buildSolution(board, bestLines.get(), false);
+    }
+
+    /* Resets the state for a new puzzle */
+    private void start(TetrisBoard board, TetrisShape[] pieces, boolean perfectClearMode) {
+        this.pieces = pieces.clone();
+        startX = TetrisConfig.getStartX(board.getNumCols());
+        this.perfectClearMode = perfectClearMode;
+        puzzleKey = perfectClearMode ? PERFECT_CLEAR_KEY : 0L;
+        for (TetrisShape piece : pieces) {
+            puzzleKey = (puzzleKey ^ (piece.getShapeId() + 1)) * PIECE_KEY;
+            puzzleKey ^= puzzleKey >>> 32;
+        }
+        solved = false;
+        bestLines.set(-1);
+        bestPath = null;
+        bestPathLength = 0;
+        table.newSearch();
+    }
+
+    /* Records a finished sequence of placements if it beats the best one so far */
+    private void offer(int[] path, int length, int lines) {
+        synchronized (bestLock) {
+            if (solved || lines <= bestLines.get() && bestPath != null) {
+                return;
+            }
+            bestPath = path.clone();
+            bestPathLength = length;
+            bestLines.set(lines);
+            if (perfectClearMode) {
+                solved = true;
+            }
+        }
+    }
+
+    /* Replays the best path to produce placements with the moves to make them */
+    private TetrisPuzzleSolution buildSolution(TetrisBoard board, int lines, boolean perfectClear) {
+        if (bestPath == null) {
+            return null;
+        }
+        TetrisPlacement[] placements = new TetrisPlacement[bestPathLength];
+        for (int depth = 0; depth < bestPathLength; depth++) {
+            int code = bestPath[depth];
+            TetrisShape spawned = TetrisShapeFactory.getShape(pieces[depth].getShapeId(), 0);
+            TetrisShape placed = TetrisShapeFactory.getShape(pieces[depth].getShapeId(), code >>> 16);
+            int x = ((code >>> 8) & 0xFF) - 4;
+            int y = code & 0xFF;
+            int[] moves = TetrisPlacementFinder.computeMoves(spawned, startX, placed, x);
+            placements[depth] = new TetrisPlacement(placed, x, y, 0, moves);
+        }
+        return new TetrisPuzzleSolution(placements, lines, perfectClear);
+    }
+
+    /* Packs a placement into an int: rotation, x (shifted to be positive) and y */
+    private static int encode(TetrisShape shape, int x, int y) {
+        return (shape.getRotation() << 16) | ((x + 4) << 8) | y;
+    }
+
+    /* The row of the highest filled space of a shape's matrix */
+    private static int topRow(TetrisShape shape) {
+        long[] masks = shape.getRowMasks();
+        int row = 0;
+        while (masks[row] == 0) {
+            row++;
+        }
+        return row;
+    }
+
+    /**
+     * Searches the subtree below one board. Near the root, every placement
+     * becomes its own task; deeper down the search continues in this task
+     * with boards and placement lists reused for every depth.
+     */
+    @SuppressWarnings("serial")
+    private class SearchTask extends RecursiveAction {
+        private final TetrisBoard board;
+        private final int depth;
+        private final int lines;
+        private final int height;
+        private final int[] path;
+
+        //Scratch space for the sequential part of the search, one entry per depth
+        private TetrisBoard[] boards;
+        private TetrisPlacementFinder[] finders;
+
+        /**
+         * @param board: the board to search from (owned by the task)
+         * @param depth: number of shapes already placed
+         * @param lines: lines cleared so far
+         * @param height: rows that a perfect clear still has to clear
+         * @param path: placements made so far (owned by the task)
+         */
+        SearchTask(TetrisBoard board, int depth, int lines, int height, int[] path) {
+            this.board = board;
+            this.depth = depth;
+            this.lines = lines;
+            this.height = height;
+            this.path = path;
+        }
+
+        @Override
+        protected void compute() {
+            if (depth >= splitDepth || depth >= pieces.length) {
+                boards = new TetrisBoard[pieces.length + 1];
+                finders = new TetrisPlacementFinder[pieces.length];
+                for (int i = depth + 1; i <= pieces.length; i++) {
+                    boards[i] = new TetrisBoard(board.getNumRows(), board.getNumCols());
+                }
+                for (int i = depth; i < pieces.length; i++) {
+                    finders[i] = new TetrisPlacementFinder();
+                }
+                search(board, depth, lines, height);
+                return;
+            }
+            if (isDeadEnd(board, depth, lines, height)) {
+                return;
+            }
+            //Split: one task per placement of this shape
+            TetrisShape shape = TetrisShapeFactory.getShape(pieces[depth].getShapeId(), 0);
+            TetrisPlacementFinder finder = new TetrisPlacementFinder();
+            int numPlacements = finder.findPlacements(board, shape, startX, Constants.START_POS_Y);
+            List<SearchTask> tasks = new ArrayList<>();
+            for (int i = 0; i < numPlacements; i++) {
+                TetrisShape placed = finder.getShape(i);
+                int y = finder.getY(i);
+                if (!fitsHeight(board, placed, y, height)) {
+                    continue;
+                }
+                TetrisBoard child = new TetrisBoard(board);
+                child.place(placed, finder.getX(i), y);
+                int cleared = child.clearFullRows(y, y + placed.getShapeMatrix().length - 1);
+                int[] childPath = path.clone();
+                childPath[depth] = encode(placed, finder.getX(i), y);
+                tasks.add(new SearchTask(child, depth + 1, lines + cleared, height - cleared, childPath));
+            }
+            invokeAll(tasks);
+        }
+
+        /**
+         * Depth first search below a board
+         *
+         * @return true if the search can stop (a perfect clear was found)
+         */
+        private boolean search(TetrisBoard current, int depth, int lines, int height) {
+            if (solved) {
+                return true;
+            }
+            if (isDeadEnd(current, depth, lines, height)) {
+                return false;
+            }
+            long key = current.getHash() ^ (depth * DEPTH_KEY) ^ (height * HEIGHT_KEY) ^ puzzleKey;
+            long known = table.get(key);
+            if (table.isFromCurrentSearch(known)) {
+                //For a perfect clear: this board was already proven hopeless.
+                //For lines: this board can't add more than the stored number of lines.
+                if (perfectClearMode || lines + (int) TetrisTranspositionTable.getScore(known) <= bestLines.get()) {
+                    return false;
+                }
+            }
+
+            TetrisShape shape = TetrisShapeFactory.getShape(pieces[depth].getShapeId(), 0);
+            TetrisPlacementFinder finder = finders[depth];
+            int numPlacements = finder.findPlacements(current, shape, startX, Constants.START_POS_Y);
+            //For lines, placements that clear something are tried first, so good
+            //answers are found early and prune the rest of the search
+            int passes = perfectClearMode ? 1 : 2;
+            for (int pass = 0; pass < passes; pass++) {
+                for (int i = 0; i < numPlacements; i++) {
+                    TetrisShape placed = finder.getShape(i);
+                    int y = finder.getY(i);
+                    if (!fitsHeight(current, placed, y, height)) {
+                        continue;
+                    }
+                    TetrisBoard child = boards[depth + 1];
+                    child.copyFrom(current);
+                    child.place(placed, finder.getX(i), y);
+                    int cleared = child.clearFullRows(y, y + placed.getShapeMatrix().length - 1);
+                    if (passes == 2 && (cleared > 0) != (pass == 0)) {
+                        continue;
+                    }
+                    path[depth] = encode(placed, finder.getX(i), y);
+                    if (search(child, depth + 1, lines + cleared, height - cleared)) {
+                        return true;
+                    }
+                }
+            }
+            if (solved) {
+                return true;
+            }
+            //Nothing below this board did better than the best so far,
+            //so the best so far bounds what it can add
+            table.put(key, bestLines.get() - lines, pieces.length - depth, 0);
+            return false;
+        }
+
+        /**
+         * Checks whether a board is finished (all shapes placed, game lost, or a
+         * perfect clear) and whether it can still lead anywhere better
+         *
+         * @return true if there is no point searching below the board
+         */
+        private boolean isDeadEnd(TetrisBoard current, int depth, int lines, int height) {
+            int remaining = pieces.length - depth;
+            if (perfectClearMode) {
+                if (current.getMaxHeight() == 0 && depth > 0) {
+                    offer(path, depth, lines);
+                    return true;
+                }
+                //Every row up to the height has to be filled with the shapes that are left
+                int needed = height * current.getNumCols() - current.getNumFilledCells();
+                return remaining == 0 || needed > 4 * remaining || needed < 0
+                        || !canSplitEvenly(current, height);
+            }
+            TetrisShape next = (remaining > 0) ? TetrisShapeFactory.getShape(pieces[depth].getShapeId(), 0) : null;
+            if (remaining == 0 || current.collides(next, startX, Constants.START_POS_Y)) {
+                offer(path, depth, lines);
+                return true;
+            }
+            return lines + maxMoreLines(current, remaining) <= bestLines.get();
+        }
+
+        /* The most rows that the remaining shapes could complete, filling the fullest rows first */
+        private int maxMoreLines(TetrisBoard current, int remaining) {
+            int numCols = current.getNumCols();
+            int[] rowsWithGaps = new int[numCols + 1];
+            for (int row = current.getNumRows() - 1; row >= 0; row--) {
+                rowsWithGaps[numCols - Long.bitCount(current.getRow(row))]++;
+            }
+            int cells = 4 * remaining;
+            int count = 0;
+            for (int gaps = 1; gaps <= numCols; gaps++) {
+                int rows = Math.min(rowsWithGaps[gaps], cells / gaps);
+                count += rows;
+                cells -= rows * gaps;
+                if (rows < rowsWithGaps[gaps]) {
+                    break;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Checks the rows being cleared: wherever a column is already full
+         * from the top of those rows down, the empty spaces on each side of
+         * it have to be filled separately, so each side needs a multiple of 4
+         */
+        private boolean canSplitEvenly(TetrisBoard current, int height) {
+            int numRows = current.getNumRows();
+            long fullColumns = -1L;
+            for (int row = numRows - height; row < numRows; row++) {
+                fullColumns &= current.getRow(row);
+            }
+            int empty = 0;
+            for (int column = 0; column < current.getNumCols(); column++) {
+                if ((fullColumns & (1L << column)) != 0) {
+                    if (empty % 4 != 0) {
+                        return false;
+                    }
+                    empty = 0;
+                    continue;
+                }
+                for (int row = numRows - height; row < numRows; row++) {
+                    if (!current.isFilled(column, row)) {
+                        empty++;
+                    }
+                }
+            }
+            return empty % 4 == 0;
+        }
+
+        /* For a perfect clear, nothing may be placed above the rows being cleared */
+        private boolean fitsHeight(TetrisBoard current, TetrisShape placed, int y, int height) {
+            return !perfectClearMode || y + topRow(placed) >= current.getNumRows() - height;
+        }
+    }
+
+    /**
+     * Solves the layout used by TetrisController.testMethod (the bottom two
+     * rows filled except for the rightmost column) for a sequence of shapes,
+     * on the board size set by the tetris.rows and tetris.cols system properties.
+     *
+     * Usage: java TetrisPuzzleSolver [shapes, ex: IOTLJSZ]
+     */
+    public static void main(String[] args) {
+        String letters = (args.length > 0) ? args[0] : "IOJLTSZ";
+        TetrisShape[] pieces = new TetrisShape[letters.length()];
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = TetrisShapeFactory.getShape("IOTLJSZ".indexOf(letters.charAt(i)), 0);
+        }
+
+        TetrisConfig config = TetrisConfig.fromSystemProperties();
+        TetrisBoard board = new TetrisBoard(config.getNumRows(), config.getNumCols());
+        for (int row = config.getNumRows() - 2; row < config.getNumRows(); row++) {
+            for (int column = 0; column < config.getNumCols() - 1; column++) {
+                board.fill(column, row);
+            }
+        }
+
+        TetrisPuzzleSolver solver = new TetrisPuzzleSolver(ForkJoinPool.commonPool(), 1);
+        long start = System.nanoTime();
+        TetrisPuzzleSolution perfectClear = solver.solvePerfectClear(board, pieces);
+        System.out.println("Perfect clear: " + perfectClear + " ("
+                + (System.nanoTime() - start) / 1000000 + " ms)");
+
+        start = System.nanoTime();
+        TetrisPuzzleSolution maxLines = solver.solveMaxLines(board, pieces);
+        System.out.println("Max lines: " + maxLines + " (" + (System.nanoTime() - start) / 1000000 + " ms)");
+    }
+}
@@ -0,0 +1,359 @@
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * TetrisReferenceGame is a frozen copy of the rules of the game as it was
+ * first written: the locked cells in a HashSet of Cells, the falling shape
+ * as a matrix that is turned by rotating the whole matrix, and the original
+ * isValidMove, clearRows, removeRow and isGameOver, quirks included. It is
+ * what TetrisDifferentialFuzzer checks faster engines against.
+ *
+ * It shares no rules code with the rest of the game (not TetrisGrid, not
+ * TetrisBoard, not the shapes or kick tables of TetrisShapeFactory, not
+ * TetrisPieceQueue), so a bug in that shared code shows up as a difference
+ * instead of being made on both sides. It must not be changed to follow a
+ * change of the rules' code; only a deliberate change of the rules goes in
+ * here, and is written out again from scratch.
+ *
+ * The rules added to the game since it was first written are written out
+ * here the plain way:
+ *  -the shapes come from java.util.Random seeded with the game's seed
+ *  -a hard drop moves the shape down for as long as the move is valid, then
+ *   makes a normal move down (which locks it)
+ *  -a rotation that doesn't fit tries the SRS wall kicks in order; kicks
+ *   can push a shape up, so a shape must also stay below the top of the board
+ *
+ * It plays on the classic 10x18 board only, with no view, timer or sounds.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisReferenceGame {
+
+    private static final int NUM_ROWS = 18;
+    private static final int NUM_COLS = 10;
+    private static final int START_POS_X = 4;
+    private static final int START_POS_Y = 0;
+    private static final int NUM_SHAPES = 7;
+    private static final int I_SHAPE = 0;
+    private static final int O_SHAPE = 1;
+
+    //The spawn orientation of every shape, by id: I, O, T, L, J, S, Z
+    private static final int[][][] SHAPES = {
+            {{1, 1, 1, 1}, {0, 0, 0, 0}, {0, 0, 0, 0}, {0, 0, 0, 0}},
+            {{1, 1}, {1, 1}},
+            {{0, 1, 0}, {1, 1, 1}, {0, 0, 0}},
+            {{1, 0, 0}, {1, 0, 0}, {1, 1, 0}},
+            {{0, 1, 0}, {0, 1, 0}, {1, 1, 0}},
+            {{0, 1, 1}, {1, 1, 0}, {0, 0, 0}},
+            {{1, 1, 0}, {0, 1, 1}, {0, 0, 0}}
+    };
+
+    //SRS offsets of the rotation states 0, R, 2 and L, as 5 (x, y) pairs with y going up
+    private static final int[][] JLSTZ_OFFSETS = {
+            {0, 0, 0, 0, 0, 0, 0, 0, 0, 0},
+            {0, 0, 1, 0, 1, -1, 0, 2, 1, 2},
+            {0, 0, 0, 0, 0, 0, 0, 0, 0, 0},
+            {0, 0, -1, 0, -1, -1, 0, 2, -1, 2}};
+    private static final int[][] I_OFFSETS = {
+            {0, 0, -1, 0, 2, 0, -1, 0, 2, 0},
+            {-1, 0, 0, 0, 0, 0, 0, 1, 0, -2},
+            {-1, 1, 1, 1, -2, 1, 1, 0, -2, 0},
+            {0, 1, 0, 1, 0, 1, 0, -1, 0, 2}};
+
+    private final Random random;
+
+    //The collection of all cells that are locked/occupied
+    private final Set<Cell> lockedCells = new HashSet<>();
+
+    //Shape currently in play: its id, number of clockwise rotations and matrix
+    private int shapeId;
+    private int rotation;
+    private int[][] shapeMatrix;
+
+    //Current location of the shape in action
+    private Cell shapeLocation;
+
+    //To maintain the score
+    private int numLinesCleared = 0;
+    private int numTetrisCleared = 0;
+
+    private boolean gameOverFlag = false;
+
+    /**
+     * @param seed: seed of the game's shapes
+     */
+    public TetrisReferenceGame(long seed) {
+        random = new Random(seed);
+        createNewShape();
+    }
+
+    /* Picks the next shape and puts it at the start position (top center) */
+    private void createNewShape() {
+        shapeId = random.nextInt(NUM_SHAPES);
+        rotation = 0;
+        shapeMatrix = SHAPES[shapeId];
+        shapeLocation = new Cell(START_POS_X, START_POS_Y);
+    }
+
+    /**
+     * Performs one of the MOVE_ constants defined in Constants
+     *
+     * @param move: the move to make
+     */
+    public void applyMove(int move) {
+        switch (move) {
+            case Constants.MOVE_LEFT: moveHorizontal(-1); break;
+            case Constants.MOVE_RIGHT: moveHorizontal(1); break;
+            case Constants.MOVE_DOWN: moveDown(); break;
+            case Constants.MOVE_ROTATE_CW: rotate(true); break;
+            case Constants.MOVE_ROTATE_CCW: rotate(false); break;
+            case Constants.MOVE_HARD_DROP: hardDrop(); break;
+            default: throw new IllegalArgumentException("Unknown move: " + move);
+        }
+    }
+
+    /* Translates a shape matrix into the cells it covers at a location */
+    private static Set<Cell> computeFilledCells(int[][] matrix, Cell position) {
+        Set<Cell> filledCells = new HashSet<>();
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                if (matrix[j][i] == 1) {
+                    filledCells.add(new Cell(i + position.getX(), j + position.getY()));
+                }
+            }
+        }
+        return filledCells;
+    }
+
+    /* True if any cell of set1 is in set2 */
+    private static boolean intersects(Set<Cell> set1, Set<Cell> set2) {
+        for (Cell c : set1) {
+            if (set2.contains(c))
+                return true;
+        }
+        return false;
+    }
+
+    /* Turns a matrix a quarter turn clockwise */
+    private static int[][] rotate2DMatrix(int[][] matrix) {
+        final int x = matrix.length;
+        final int y = matrix[0].length;
+        int[][] rotated = new int[x][y];
+        for (int row = 0; row < x; row++) {
+            for (int col = 0; col < y; col++) {
+                rotated[col][x - 1 - row] = matrix[row][col];
+            }
+        }
+        return rotated;
+    }
+
+    /* A shape fits at a location if it hits no locked cell and stays on the board */
+    private boolean isValidMove(int[][] matrix, Cell nextLocation) {
+        Set<Cell> nextPotentialCells = computeFilledCells(matrix, nextLocation);
+        if (intersects(nextPotentialCells, lockedCells)) {
+            return false;
+        }
+        for (Cell c : nextPotentialCells) {
+            //The top of the board only matters since kicks can push a shape up
+            if (c.getX() < 0 || c.getX() > (NUM_COLS - 1) || c.getY() > (NUM_ROWS - 1) || c.getY() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Moves the shape down one row, or locks it (checking for game over first) */
+    private void moveDown() {
+        if (gameOverFlag)
+            return;
+        if (checkGameOver()) {
+            gameOverFlag = true;
+            return;
+        }
+        Cell nextLocation = new Cell(shapeLocation.getX(), shapeLocation.getY() + 1);
+        if (isValidMove(shapeMatrix, nextLocation)) {
+            shapeLocation = nextLocation;
+        } else {
+            lockedCells.addAll(computeFilledCells(shapeMatrix, shapeLocation));
+            createNewShape();
+            if (clearRows() == Constants.TETRIS) {
+                numTetrisCleared++;
+            }
+        }
+    }
+
+    /* Moves the shape down for as long as it can go, then locks it */
+    private void hardDrop() {
+        if (gameOverFlag)
+            return;
+        Cell nextLocation = new Cell(shapeLocation.getX(), shapeLocation.getY() + 1);
+        while (isValidMove(shapeMatrix, nextLocation)) {
+            shapeLocation = nextLocation;
+            nextLocation = new Cell(shapeLocation.getX(), shapeLocation.getY() + 1);
+        }
+        moveDown();
+    }
+
+    private void moveHorizontal(int direction) {
+        Cell nextLocation = new Cell(shapeLocation.getX() + direction, shapeLocation.getY());
+        if (isValidMove(shapeMatrix, nextLocation)) {
+            shapeLocation = nextLocation;
+        }
+    }
+
+    /* Rotates the shape, kicking it to the first SRS test offset where it fits */
+    private void rotate(boolean clockwise) {
+        int[][] rotated = rotate2DMatrix(shapeMatrix);
+        if (!clockwise) {
+            rotated = rotate2DMatrix(rotate2DMatrix(rotated));
+        }
+        int newRotation = (rotation + (clockwise ? 1 : 3)) % 4;
+        int numTests = (shapeId == O_SHAPE) ? 1 : 5;
+        int[][] offsets = (shapeId == I_SHAPE) ? I_OFFSETS : JLSTZ_OFFSETS;
+        for (int test = 0; test < numTests; test++) {
+            int dx = 0;
+            int dy = 0;
+            if (shapeId != O_SHAPE) {
+                //Tests are relative to the first one, the matrix turns around its own center
+                dx = (offsets[rotation][2 * test] - offsets[newRotation][2 * test])
+                        - (offsets[rotation][0] - offsets[newRotation][0]);
+                dy = -((offsets[rotation][2 * test + 1] - offsets[newRotation][2 * test + 1])
+                        - (offsets[rotation][1] - offsets[newRotation][1]));
+            }
+            Cell kicked = new Cell(shapeLocation.getX() + dx, shapeLocation.getY() + dy);
+            if (isValidMove(rotated, kicked)) {
+                shapeMatrix = rotated;
+                rotation = newRotation;
+                shapeLocation = kicked;
+                return;
+            }
+        }
+    }
+
+    /* True if a row has at least one locked cell */
+    private boolean doesRowHaveAnyLockedCells(int row) {
+        for (int column = 0; column < NUM_COLS; column++) {
+            if (lockedCells.contains(new Cell(column, row)))
+                return true;
+        }
+        return false;
+    }
+
+    /* True if every cell of a row is locked */
+    private boolean isRowFilled(int row) {
+        for (int column = 0; column < NUM_COLS; column++) {
+            if (!lockedCells.contains(new Cell(column, row)))
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Clears the full rows from the bottom up, stopping at the first empty row,
+     * and returns how many were cleared at once
+     */
+    private int clearRows() {
+        int numRowsCleared = 0;
+        for (int row = (NUM_ROWS - 1); row >= 0; row--) {
+            if (!doesRowHaveAnyLockedCells(row)) {
+                return numRowsCleared;
+            }
+            if (isRowFilled(row)) {
+                removeRow(row);
+                numLinesCleared++;
+                numRowsCleared = clearRows() + 1;
+            }
+        }
+        return numRowsCleared;
+    }
+
+    /* Deletes a row of cells and shifts the cells above it down */
+    private void removeRow(int row) {
+        for (int column = 0; column < NUM_COLS; column++) {
+            lockedCells.remove(new Cell(column, row));
+        }
+        Iterator<Cell> i = lockedCells.iterator();
+        Set<Cell> removedCells = new HashSet<>();
+        while (i.hasNext()) {
+            Cell c = i.next();
+            if (c.getY() < row) {
+                i.remove();
+                removedCells.add(c);
+            }
+        }
+        for (Cell c : removedCells) {
+            lockedCells.add(new Cell(c.getX(), c.getY() + 1));
+        }
+    }
+
+    /* The game is over when a new shape overlaps the locked cells before moving at all */
+    private boolean checkGameOver() {
+        Set<Cell> shapeCells = computeFilledCells(shapeMatrix, shapeLocation);
+        if (intersects(shapeCells, lockedCells)) {
+            //The shape is locked where it is, as it cannot move down at all
+            lockedCells.addAll(shapeCells);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param x: column
+     * @param y: row
+     * @return true if the cell is locked
+     */
+    public boolean isFilled(int x, int y) {
+        return lockedCells.contains(new Cell(x, y));
+    }
+
+    /**
+     * @return number of locked cells (including any outside the board)
+     */
+    public int getNumLockedCells() {
+        return lockedCells.size();
+    }
+
+    public int getShapeId() {
+        return shapeId;
+    }
+
+    public int getRotation() {
+        return rotation;
+    }
+
+    /**
+     * Getter for the matrix of the falling shape, in its current rotation.
+     * The matrix is shared and must not be modified.
+     *
+     * @return the shape matrix
+     */
+    public int[][] getShapeMatrix() {
+        return shapeMatrix;
+    }
+
+    public Cell getShapeLocation() {
+        return shapeLocation;
+    }
+
+    public int getNumRows() {
+        return NUM_ROWS;
+    }
+
+    public int getNumCols() {
+        return NUM_COLS;
+    }
+
+    public int getNumLinesCleared() {
+        return numLinesCleared;
+    }
+
+    public int getNumTetrisCleared() {
+        return numTetrisCleared;
+    }
+
+    public boolean isGameOver() {
+        return gameOverFlag;
+    }
+}
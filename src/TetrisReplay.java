@@ -0,0 +1,131 @@
+/**
+ * TetrisReplay is everything needed to play a headless game (TetrisEngine)
+ * again, move for move: the size of its board, the seed and generator of its
+ * piece sequence and the moves that were made (the MOVE_ constants of Constants), along with
+ * a summary of how it went for looking games up (see TetrisReplayArchive).
+ *
+ * The moves are packed two to a byte.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisReplay {
+
+    //Piece generators: the only one so far is TetrisPieceQueue's uniform random draw
+    public static final int GENERATOR_UNIFORM = 0;
+
+    private final long gameId;
+    private final long seed;
+    private final int generatorId;
+    private final int numRows;
+    private final int numCols;
+    private final byte[] packedMoves;
+    private final int numMoves;
+    private final int numLinesCleared;
+    private final int numTetrisCleared;
+    private final long date;
+
+    /**
+     * @param gameId: id of the game
+     * @param seed: seed of the game's piece sequence
+     * @param generatorId: the piece generator (GENERATOR_UNIFORM)
+     * @param numRows: number of rows of the game's board
+     * @param numCols: number of columns of the game's board
+     * @param packedMoves: the moves, two to a byte (low 4 bits first)
+     * @param numMoves: number of moves
+     * @param numLinesCleared: lines cleared in the game
+     * @param numTetrisCleared: Tetrises cleared in the game
+     * @param date: when the game was played (milliseconds since the epoch)
+     */
+    public TetrisReplay(long gameId, long seed, int generatorId, int numRows, int numCols, byte[] packedMoves,
+                        int numMoves, int numLinesCleared, int numTetrisCleared, long date) {
+        this.gameId = gameId;
+        this.seed = seed;
+        this.generatorId = generatorId;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.packedMoves = packedMoves;
+        this.numMoves = numMoves;
+        this.numLinesCleared = numLinesCleared;
+        this.numTetrisCleared = numTetrisCleared;
+        this.date = date;
+    }
+
+    public long getGameId() {
+        return gameId;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getGeneratorId() {
+        return generatorId;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getNumMoves() {
+        return numMoves;
+    }
+
+    /**
+     * @param i: index of the move
+     * @return the move (one of the MOVE_ constants)
+     */
+    public int getMove(int i) {
+        return (packedMoves[i >> 1] >> ((i & 1) << 2)) & 0xF;
+    }
+
+    /**
+     * Getter for the moves as they are stored, two to a byte.
+     * The array must not be modified.
+     *
+     * @return the packed moves
+     */
+    public byte[] getPackedMoves() {
+        return packedMoves;
+    }
+
+    public int getNumLinesCleared() {
+        return numLinesCleared;
+    }
+
+    public int getNumTetrisCleared() {
+        return numTetrisCleared;
+    }
+
+    public long getDate() {
+        return date;
+    }
+
+    /**
+     * Creates the engine the game was played on, before any move was made
+     *
+     * @return a new engine
+     */
+    public TetrisEngine createEngine() {
+        if (generatorId != GENERATOR_UNIFORM) {
+            throw new IllegalStateException("Unknown piece generator: " + generatorId);
+        }
+        return new TetrisEngine(numRows, numCols, seed);
+    }
+
+    /**
+     * Plays the whole game again
+     *
+     * @return the engine, as it was at the end of the game
+     */
+    public TetrisEngine replay() {
+        TetrisEngine engine = createEngine();
+        for (int i = 0; i < numMoves; i++) {
+            engine.applyMove(getMove(i));
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TetrisReplayAnalytics replays the games of a TetrisReplayArchive on
+ * headless engines, on several threads at once, and adds up their stats
+ * (see TetrisReplayStats).
+ *
+ * The replays are read from the archive a batch at a time as the threads
+ * need them, so only the games being replayed are ever in memory. Every
+ * thread adds up stats of its own and they are only put together at the end.
+ *
+ * Finesse faults are only measured if asked for, as they take a search for
+ * every shape (see TetrisReplayStats).
+ *
+ * Usage: java TetrisReplayAnalytics file [minTetris] [numThreads] [finesse]
+ *        java TetrisReplayAnalytics file bench [numGames] [numThreads]
+ * The bench command fills the archive up to numGames bot games (on the
+ * board size set by the tetris.rows and tetris.cols system properties),
+ * then times replaying them on 1 and on numThreads threads, without and
+ * with finesse.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisReplayAnalytics {
+
+    //Number of replays a thread takes at a time
+    private static final int BATCH_SIZE = 256;
+
+    //Shapes a bot game of the bench command is cut off at (about a minute of play)
+    private static final int BENCH_SHAPES_PER_GAME = 200;
+
+    /**
+     * Replays games of an archive and adds up their stats
+     *
+     * @param archive: the archive
+     * @param replays: numbers of the replays to analyze (null for all of them)
+     * @param numThreads: number of threads replaying the games
+     * @param measureFinesse: true to measure finesse faults as well (much slower)
+     * @return the stats of the games
+     */
+    public static TetrisReplayStats analyze(TetrisReplayArchive archive, int[] replays, int numThreads,
+                                            boolean measureFinesse)
+            throws InterruptedException, ExecutionException {
+        int numReplays = (replays == null) ? archive.getNumReplays() : replays.length;
+        AtomicInteger nextBatch = new AtomicInteger();
+        Callable<TetrisReplayStats> worker = () -> {
+            TetrisReplayStats stats = new TetrisReplayStats(measureFinesse);
+            TetrisReplay[] batch = new TetrisReplay[BATCH_SIZE];
+            int start;
+            while ((start = nextBatch.getAndAdd(BATCH_SIZE)) < numReplays) {
+                int end = Math.min(start + BATCH_SIZE, numReplays);
+                for (int i = start; i < end; i++) {
+                    batch[i - start] = archive.getReplay((replays == null) ? i : replays[i]);
+                }
+                for (int i = start; i < end; i++) {
+                    stats.addGame(batch[i - start]);
+                    batch[i - start] = null;
+                }
+            }
+            return stats;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<TetrisReplayStats>> results = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                results.add(executor.submit(worker));
+            }
+            TetrisReplayStats total = new TetrisReplayStats(measureFinesse);
+            for (Future<TetrisReplayStats> result : results) {
+                total.add(result.get());
+            }
+            return total;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Fills an archive up to a number of bot games, then times replaying
+     * them and prints how many games a minute were replayed
+     *
+     * @param archive: the archive
+     * @param numGames: number of games to replay
+     * @param numThreads: most threads to replay them on
+     */
+    private static void bench(TetrisReplayArchive archive, int numGames, int numThreads)
+            throws IOException, InterruptedException, ExecutionException {
+        TetrisConfig config = TetrisConfig.fromSystemProperties();
+        TetrisBot bot = new TetrisBot(new TetrisEvaluator());
+        List<TetrisReplay> batch = new ArrayList<>();
+        for (long game = archive.getNumReplays(); game < numGames; game++) {
+            TetrisReplayRecorder recorder = new TetrisReplayRecorder(config, game);
+            while (recorder.getEngine().getNumShapesLocked() < BENCH_SHAPES_PER_GAME && recorder.playShape(bot)) {
+                //keep playing until the game is lost or the shape limit is reached
+            }
+            batch.add(recorder.toReplay(game, System.currentTimeMillis()));
+        }
+        archive.append(batch);
+
+        int[] replays = new int[numGames];
+        for (int i = 0; i < numGames; i++) {
+            replays[i] = i;
+        }
+        //Once to warm up, then timed
+        analyze(archive, replays, numThreads, false);
+        for (boolean measureFinesse : new boolean[]{false, true}) {
+            for (int threads : new int[]{1, numThreads}) {
+                //Finesse is much slower, a tenth of the games is enough to time it
+                int[] timed = measureFinesse ? Arrays.copyOf(replays, Math.max(1, numGames / 10)) : replays;
+                long start = System.nanoTime();
+                TetrisReplayStats stats = analyze(archive, timed, threads, measureFinesse);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(String.format("%s, %d threads: %d games (%d shapes) in %.2f s, %.0f games/min",
+                        measureFinesse ? "With finesse" : "Without finesse", threads, stats.getNumGames(),
+                        stats.getNumShapes(), seconds, stats.getNumGames() * 60 / seconds));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length > 1 && args[1].equals("bench")) {
+            int numGames = (args.length > 2) ? Integer.parseInt(args[2]) : 20000;
+            int numThreads = (args.length > 3) ? Integer.parseInt(args[3])
+                    : Runtime.getRuntime().availableProcessors();
+            try (TetrisReplayArchive archive = new TetrisReplayArchive(Paths.get(args[0]))) {
+                bench(archive, numGames, numThreads);
+            }
+            return;
+        }
+        int minTetris = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+        int numThreads = (args.length > 2) ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        boolean measureFinesse = args.length > 3 && args[3].equals("finesse");
+
+        try (TetrisReplayArchive archive = new TetrisReplayArchive(Paths.get(args[0]))) {
+            long start = System.nanoTime();
+            int[] replays = (minTetris > 0) ? archive.select(i -> archive.getNumTetrisCleared(i) >= minTetris) : null;
+            TetrisReplayStats stats = analyze(archive, replays, numThreads, measureFinesse);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(stats);
+            System.out.println(String.format("Replayed in %.2f s on %d threads (%.0f games/min)",
+                    seconds, numThreads, stats.getNumGames() * 60 / seconds));
+        }
+    }
+}
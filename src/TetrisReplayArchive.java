@@ -0,0 +1,541 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * TetrisReplayArchive packs any number of TetrisReplays into one file, with
+ * an index to find them by game id, score and date.
+ *
+ * Replays are added in batches. A batch is written at the end of the file:
+ * the moves of its replays, then an index of the batch (one fixed size entry
+ * per replay), then a footer that points at the index and at the footer of
+ * the batch before. Nothing already in the file is ever rewritten except for
+ * the pointer to the newest footer in the header, which is only updated once
+ * the batch is safely on the disk; a batch cut short by a crash is simply
+ * not part of the archive (and is overwritten by the next batch).
+ *
+ * The file is read through memory mappings, and queries (see select) only
+ * read the index entries, never the moves, so asking for "every game with
+ * 4 Tetrises or more" over millions of games stays cheap. Every batch also
+ * keeps its replays sorted by game id, by lines cleared and by date, so
+ * findGame, findByLines and findByDate binary search each batch instead of
+ * reading all of its entries.
+ *
+ * File format (big endian):
+ *   header:  magic (int), version (int), offset of the newest footer (long, 0 if empty)
+ *   batch:   moves of every replay, two to a byte
+ *            index: for every replay, game id, seed, date, offset of its moves (longs),
+ *                   number of moves, lines, Tetrises, generator id, rows, columns (ints)
+ *            orders: the replays of the batch (their number within the batch, ints) sorted
+ *                    by game id, then sorted by lines cleared, then sorted by date
+ *            footer: offset of the previous footer (long), offset of the index (long),
+ *                    number of replays (int), footer magic (int)
+ *
+ * All methods are thread safe.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisReplayArchive implements AutoCloseable {
+
+    private static final int MAGIC = 0x54525041;
+    private static final int FOOTER_MAGIC = 0x54524658;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 16;
+    private static final int FOOTER_SIZE = 24;
+    private static final int ENTRY_SIZE = 4 * Long.BYTES + 6 * Integer.BYTES;
+
+    //Where the fields are within an index entry
+    private static final int ENTRY_GAME_ID = 0;
+    private static final int ENTRY_SEED = 8;
+    private static final int ENTRY_DATE = 16;
+    private static final int ENTRY_OFFSET = 24;
+    private static final int ENTRY_NUM_MOVES = 32;
+    private static final int ENTRY_LINES = 36;
+    private static final int ENTRY_TETRIS = 40;
+    private static final int ENTRY_GENERATOR = 44;
+    private static final int ENTRY_ROWS = 48;
+    private static final int ENTRY_COLS = 52;
+
+    //The orders every batch is sorted in, after its index, and the index entry field each is sorted by
+    private static final int ORDER_GAME_ID = 0;
+    private static final int ORDER_LINES = 1;
+    private static final int ORDER_DATE = 2;
+    private static final int NUM_ORDERS = 3;
+    private static final int[] ORDER_FIELDS = {ENTRY_GAME_ID, ENTRY_LINES, ENTRY_DATE};
+
+    //The file is mapped in chunks that overlap a little, so that any index
+    //entry can be read from a single chunk
+    private static final long MAP_CHUNK = 1L << 30;
+    private static final int MAP_OVERLAP = 1 << 16;
+
+    private final FileChannel channel;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+    //End of the newest footer: everything after it is left over from a batch cut short
+    private long end;
+    private long lastFooter;
+
+    //For every batch, oldest first: where its index is and the number of its first replay
+    private long[] batchIndexOffsets = new long[0];
+    private int[] batchFirstReplays = new int[0];
+    private int numReplays = 0;
+
+    /**
+     * Opens an archive (creating it if needed)
+     *
+     * @param file: the archive file
+     */
+    public TetrisReplayArchive(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            load();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /* Reads the header and the chain of footers, and maps the file */
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() < HEADER_SIZE) {
+            header.putInt(MAGIC).putInt(VERSION).putLong(0L).flip();
+            channel.write(header, 0);
+            channel.force(true);
+            end = HEADER_SIZE;
+            return;
+        }
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a replay archive: unknown header");
+        }
+        lastFooter = header.getLong();
+        end = (lastFooter == 0) ? HEADER_SIZE : lastFooter + FOOTER_SIZE;
+
+        //Follow the footers from the newest batch back to the oldest
+        List<long[]> batches = new ArrayList<>();
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+        for (long offset = lastFooter; offset != 0; ) {
+            footer.clear();
+            channel.read(footer, offset);
+            footer.flip();
+            long previous = footer.getLong();
+            long indexOffset = footer.getLong();
+            int count = footer.getInt();
+            if (footer.getInt() != FOOTER_MAGIC) {
+                throw new IOException("Damaged replay archive: bad footer at " + offset);
+            }
+            batches.add(new long[]{indexOffset, count});
+            offset = previous;
+        }
+        batchIndexOffsets = new long[batches.size()];
+        batchFirstReplays = new int[batches.size()];
+        for (int i = 0; i < batches.size(); i++) {
+            long[] batch = batches.get(batches.size() - 1 - i);
+            batchIndexOffsets[i] = batch[0];
+            batchFirstReplays[i] = numReplays;
+            numReplays += (int) batch[1];
+        }
+        map();
+    }
+
+    /* Maps the file, up to the end of the newest footer */
+    private void map() throws IOException {
+        int numChunks = (int) ((end + MAP_CHUNK - 1) / MAP_CHUNK);
+        chunks = new MappedByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            long start = i * MAP_CHUNK;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(end - start, MAP_CHUNK + MAP_OVERLAP));
+        }
+    }
+
+    /* Reads a long or an int at a position of the file, from the chunk it starts in */
+    private long getLong(long position) {
+        return chunks[(int) (position / MAP_CHUNK)].getLong((int) (position % MAP_CHUNK));
+    }
+
+    private int getInt(long position) {
+        return chunks[(int) (position / MAP_CHUNK)].getInt((int) (position % MAP_CHUNK));
+    }
+
+    /* Copies bytes of the file, which may be spread over several chunks */
+    private void read(long position, byte[] destination) {
+        int done = 0;
+        while (done < destination.length) {
+            MappedByteBuffer chunk = chunks[(int) (position / MAP_CHUNK)];
+            int start = (int) (position % MAP_CHUNK);
+            int length = (int) Math.min(destination.length - done, MAP_CHUNK - start);
+            chunk.get(start, destination, done, length);
+            done += length;
+            position += length;
+        }
+    }
+
+    /* Position of a replay's index entry in the file */
+    private long entryPosition(int replay) {
+        if (replay < 0 || replay >= numReplays) {
+            throw new IndexOutOfBoundsException("No replay " + replay + " in an archive of " + numReplays);
+        }
+        int batch = Arrays.binarySearch(batchFirstReplays, replay);
+        if (batch < 0) {
+            batch = -batch - 2;
+        }
+        //Replays that follow an empty batch share its first replay number, so skip to the last such batch
+        while (batch + 1 < batchFirstReplays.length && batchFirstReplays[batch + 1] == replay) {
+            batch++;
+        }
+        return batchIndexOffsets[batch] + (long) (replay - batchFirstReplays[batch]) * ENTRY_SIZE;
+    }
+
+    /* Number of replays in a batch */
+    private int batchSize(int batch) {
+        int next = (batch + 1 < batchFirstReplays.length) ? batchFirstReplays[batch + 1] : numReplays;
+        return next - batchFirstReplays[batch];
+    }
+
+    /* Value of the field an order is sorted by, in an index entry */
+    private long getOrderKey(long entry, int order) {
+        if (order == ORDER_LINES) {
+            return getInt(entry + ENTRY_LINES);
+        }
+        return getLong(entry + ORDER_FIELDS[order]);
+    }
+
+    /* Index entry of the replay at a rank of one of a batch's orders */
+    private long orderedEntry(int batch, int order, int rank) {
+        int size = batchSize(batch);
+        long orders = batchIndexOffsets[batch] + (long) size * ENTRY_SIZE;
+        int replay = getInt(orders + ((long) order * size + rank) * Integer.BYTES);
+        return batchIndexOffsets[batch] + (long) replay * ENTRY_SIZE;
+    }
+
+    /* First rank of a batch's order whose key is key or more (the size of the batch if there is none) */
+    private int lowerBound(int batch, int order, long key) {
+        int low = 0;
+        int high = batchSize(batch);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getOrderKey(orderedEntry(batch, order, middle), order) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /* Number of the replay of an index entry within the batch */
+    private int replayOf(int batch, long entry) {
+        return batchFirstReplays[batch] + (int) ((entry - batchIndexOffsets[batch]) / ENTRY_SIZE);
+    }
+
+    /**
+     * Adds a batch of replays to the end of the archive and syncs it to the disk
+     *
+     * @param replays: the replays to add
+     */
+    public synchronized void append(List<TetrisReplay> replays) throws IOException {
+        //Drop whatever a batch cut short left behind
+        channel.truncate(end);
+        long position = end;
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long[] offsets = new long[replays.size()];
+        for (int i = 0; i < replays.size(); i++) {
+            byte[] moves = replays.get(i).getPackedMoves();
+            int length = (replays.get(i).getNumMoves() + 1) >> 1;
+            offsets[i] = position + buffer.position();
+            for (int done = 0; done < length; ) {
+                int n = Math.min(buffer.remaining(), length - done);
+                buffer.put(moves, done, n);
+                done += n;
+                if (!buffer.hasRemaining()) {
+                    position += write(buffer, position);
+                }
+            }
+        }
+        long indexOffset = position + buffer.position();
+        for (int i = 0; i < replays.size(); i++) {
+            if (buffer.remaining() < ENTRY_SIZE) {
+                position += write(buffer, position);
+            }
+            TetrisReplay replay = replays.get(i);
+            buffer.putLong(replay.getGameId()).putLong(replay.getSeed()).putLong(replay.getDate())
+                    .putLong(offsets[i]).putInt(replay.getNumMoves()).putInt(replay.getNumLinesCleared())
+                    .putInt(replay.getNumTetrisCleared()).putInt(replay.getGeneratorId())
+                    .putInt(replay.getNumRows()).putInt(replay.getNumCols());
+        }
+        for (int order = 0; order < NUM_ORDERS; order++) {
+            for (int replay : sortBatch(replays, order)) {
+                if (buffer.remaining() < Integer.BYTES) {
+                    position += write(buffer, position);
+                }
+                buffer.putInt(replay);
+            }
+        }
+        if (buffer.remaining() < FOOTER_SIZE) {
+            position += write(buffer, position);
+        }
+        long footerOffset = position + buffer.position();
+        buffer.putLong(lastFooter).putLong(indexOffset).putInt(replays.size()).putInt(FOOTER_MAGIC);
+        position += write(buffer, position);
+        channel.force(false);
+
+        //The batch is on the disk, now make it part of the archive
+        ByteBuffer pointer = ByteBuffer.allocate(Long.BYTES);
+        pointer.putLong(footerOffset).flip();
+        channel.write(pointer, 8);
+        channel.force(false);
+
+        lastFooter = footerOffset;
+        end = position;
+        batchIndexOffsets = Arrays.copyOf(batchIndexOffsets, batchIndexOffsets.length + 1);
+        batchFirstReplays = Arrays.copyOf(batchFirstReplays, batchFirstReplays.length + 1);
+        batchIndexOffsets[batchIndexOffsets.length - 1] = indexOffset;
+        batchFirstReplays[batchFirstReplays.length - 1] = numReplays;
+        numReplays += replays.size();
+        map();
+    }
+
+    /* Sorts the replays of a batch in one of the orders (replays that tie keep their order) */
+    private static Integer[] sortBatch(List<TetrisReplay> replays, int order) {
+        long[] keys = new long[replays.size()];
+        Integer[] sorted = new Integer[replays.size()];
+        for (int i = 0; i < keys.length; i++) {
+            TetrisReplay replay = replays.get(i);
+            keys[i] = (order == ORDER_GAME_ID) ? replay.getGameId()
+                    : (order == ORDER_LINES) ? replay.getNumLinesCleared() : replay.getDate();
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> Long.compare(keys[a], keys[b]));
+        return sorted;
+    }
+
+    /* Writes out a buffer at a position of the file, returns the number of bytes written */
+    private int write(ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + length - buffer.remaining());
+        }
+        buffer.clear();
+        return length;
+    }
+
+    /**
+     * @return number of replays in the archive
+     */
+    public synchronized int getNumReplays() {
+        return numReplays;
+    }
+
+    //Getters for the index entry of a replay (by its number in the archive, 0 to getNumReplays() - 1)
+
+    public synchronized long getGameId(int replay) {
+        return getLong(entryPosition(replay) + ENTRY_GAME_ID);
+    }
+
+    public synchronized long getSeed(int replay) {
+        return getLong(entryPosition(replay) + ENTRY_SEED);
+    }
+
+    public synchronized long getDate(int replay) {
+        return getLong(entryPosition(replay) + ENTRY_DATE);
+    }
+
+    public synchronized int getNumMoves(int replay) {
+        return getInt(entryPosition(replay) + ENTRY_NUM_MOVES);
+    }
+
+    public synchronized int getNumLinesCleared(int replay) {
+        return getInt(entryPosition(replay) + ENTRY_LINES);
+    }
+
+    public synchronized int getNumTetrisCleared(int replay) {
+        return getInt(entryPosition(replay) + ENTRY_TETRIS);
+    }
+
+    public synchronized int getNumRows(int replay) {
+        return getInt(entryPosition(replay) + ENTRY_ROWS);
+    }
+
+    public synchronized int getNumCols(int replay) {
+        return getInt(entryPosition(replay) + ENTRY_COLS);
+    }
+
+    /**
+     * Reads a whole replay, moves included
+     *
+     * @param replay: number of the replay in the archive
+     * @return the replay
+     */
+    public synchronized TetrisReplay getReplay(int replay) {
+        long entry = entryPosition(replay);
+        int numMoves = getInt(entry + ENTRY_NUM_MOVES);
+        byte[] moves = new byte[(numMoves + 1) >> 1];
+        read(getLong(entry + ENTRY_OFFSET), moves);
+        return new TetrisReplay(getLong(entry + ENTRY_GAME_ID), getLong(entry + ENTRY_SEED),
+                getInt(entry + ENTRY_GENERATOR), getInt(entry + ENTRY_ROWS), getInt(entry + ENTRY_COLS),
+                moves, numMoves, getInt(entry + ENTRY_LINES),
+                getInt(entry + ENTRY_TETRIS), getLong(entry + ENTRY_DATE));
+    }
+
+    /**
+     * Finds a game by its id, with a binary search of every batch's games by id
+     *
+     * @param gameId: id of the game
+     * @return number of the replay in the archive (the first one if the id
+     * is there more than once), or -1 if it isn't there
+     */
+    public synchronized int findGame(long gameId) {
+        for (int batch = 0; batch < batchIndexOffsets.length; batch++) {
+            int rank = lowerBound(batch, ORDER_GAME_ID, gameId);
+            if (rank < batchSize(batch)) {
+                long entry = orderedEntry(batch, ORDER_GAME_ID, rank);
+                if (getLong(entry + ENTRY_GAME_ID) == gameId) {
+                    return replayOf(batch, entry);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the games that cleared a number of lines, with a binary search
+     * of every batch's games by lines cleared
+     *
+     * @param minLines: fewest lines (included)
+     * @param maxLines: most lines (excluded)
+     * @return the numbers of the replays found, in order
+     */
+    public synchronized int[] findByLines(int minLines, int maxLines) {
+        return findRange(ORDER_LINES, minLines, maxLines);
+    }
+
+    /**
+     * Finds the games recorded between two dates, with a binary search of
+     * every batch's games by date
+     *
+     * @param from: earliest date, in milliseconds since the epoch (included)
+     * @param to: latest date, in milliseconds since the epoch (excluded)
+     * @return the numbers of the replays found, in order
+     */
+    public synchronized int[] findByDate(long from, long to) {
+        return findRange(ORDER_DATE, from, to);
+    }
+
+    /* Finds the replays whose key in an order is from or more and less than to */
+    private int[] findRange(int order, long from, long to) {
+        int[] found = new int[16];
+        int numFound = 0;
+        for (int batch = 0; batch < batchIndexOffsets.length; batch++) {
+            int last = lowerBound(batch, order, to);
+            for (int rank = lowerBound(batch, order, from); rank < last; rank++) {
+                if (numFound == found.length) {
+                    found = Arrays.copyOf(found, numFound * 2);
+                }
+                found[numFound++] = replayOf(batch, orderedEntry(batch, order, rank));
+            }
+        }
+        found = Arrays.copyOf(found, numFound);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Finds the replays whose index entry passes a filter, without reading
+     * any moves, ex: archive.select(i -> archive.getNumTetrisCleared(i) >= 4)
+     *
+     * @param filter: tests a replay by its number in the archive
+     * @return the numbers of the replays that passed, in order
+     */
+    public synchronized int[] select(IntPredicate filter) {
+        int[] selected = new int[16];
+        int numSelected = 0;
+        for (int replay = 0; replay < numReplays; replay++) {
+            if (filter.test(replay)) {
+                if (numSelected == selected.length) {
+                    selected = Arrays.copyOf(selected, numSelected * 2);
+                }
+                selected[numSelected++] = replay;
+            }
+        }
+        return Arrays.copyOf(selected, numSelected);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        chunks = new MappedByteBuffer[0];
+        channel.close();
+    }
+
+    /**
+     * Records bot games into an archive (on the board size set by the
+     * tetris.rows and tetris.cols system properties), or looks through one.
+     *
+     * Usage: java TetrisReplayArchive file record [numGames] [seed] [maxShapesPerGame]
+     *        java TetrisReplayArchive file query [minTetris]
+     *        java TetrisReplayArchive file find gameId
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args[0]);
+        String command = (args.length > 1) ? args[1] : "query";
+
+        try (TetrisReplayArchive archive = new TetrisReplayArchive(file)) {
+            long start = System.nanoTime();
+            if (command.equals("record")) {
+                int numGames = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+                long seed = (args.length > 3) ? Long.parseLong(args[3]) : 0L;
+                int maxShapes = (args.length > 4) ? Integer.parseInt(args[4]) : 1000;
+
+                TetrisConfig config = TetrisConfig.fromSystemProperties();
+                TetrisBot bot = new TetrisBot(new TetrisEvaluator());
+                List<TetrisReplay> batch = new ArrayList<>();
+                long firstId = archive.getNumReplays();
+                for (int game = 0; game < numGames; game++) {
+                    TetrisReplayRecorder recorder = new TetrisReplayRecorder(config, seed + game);
+                    while (recorder.getEngine().getNumShapesLocked() < maxShapes && recorder.playShape(bot)) {
+                        //keep playing until the game is lost or the shape limit is reached
+                    }
+                    batch.add(recorder.toReplay(firstId + game, System.currentTimeMillis()));
+                }
+                archive.append(batch);
+                System.out.println("Recorded " + numGames + " games in "
+                        + (System.nanoTime() - start) / 1000000 + " ms, archive has " + archive.getNumReplays());
+            } else if (command.equals("find")) {
+                long gameId = Long.parseLong(args[2]);
+                int replay = archive.findGame(gameId);
+                if (replay < 0) {
+                    System.out.println("No game " + gameId + " in the archive");
+                } else {
+                    System.out.println("Game " + gameId + " is replay " + replay + ": "
+                            + archive.getNumLinesCleared(replay) + " lines, found in "
+                            + (System.nanoTime() - start) / 1000 + " us");
+                }
+            } else {
+                int minTetris = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+                int[] found = archive.select(i -> archive.getNumTetrisCleared(i) >= minTetris);
+                System.out.println(found.length + " of " + archive.getNumReplays() + " games with "
+                        + minTetris + "+ Tetris, found in " + (System.nanoTime() - start) / 1000 + " us");
+                if (found.length > 0) {
+                    //Play the first one again to show it ends the same way
+                    TetrisReplay replay = archive.getReplay(found[0]);
+                    TetrisEngine engine = replay.replay();
+                    System.out.println("Game " + replay.getGameId() + ": " + replay.getNumLinesCleared()
+                            + " lines recorded, " + engine.getNumLinesCleared() + " lines replayed");
+                }
+            }
+        }
+    }
+}
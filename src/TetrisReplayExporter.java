@@ -0,0 +1,328 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * TetrisReplayExporter turns a TetrisReplay into pictures, without a
+ * screen: either an animated GIF or a folder of PNG images, one frame
+ * every few moves.
+ *
+ * The game is replayed on a headless engine as fast as it goes, and every
+ * frame is only a copy of the cells' colors and the falling shape's
+ * location. Frames are drawn (with the same drawing code as TetrisGridView)
+ * on several threads at once, and PNG frames are also written by those
+ * threads. At most a few frames per thread are waiting at any time, so a
+ * long game never fills the memory. GIF frames are drawn straight in the
+ * GIF's palette, leaving only the compression to the (single) GIF writer.
+ *
+ * An exporter exports one replay at a time.
+ *
+ * Usage: java TetrisReplayExporter archiveFile gameId output(.gif or folder) [cellSize] [movesPerFrame] [numThreads]
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisReplayExporter implements TetrisEngineListener {
+
+    //Frames waiting to be drawn or written, per thread
+    private static final int FRAMES_PER_THREAD = 4;
+
+    //Palette of the frames: the background, the lines, then the color of every shape
+    private static final int BACKGROUND_INDEX = 0;
+    private static final int LINES_INDEX = 1;
+    private static final Color[] PALETTE_COLORS = createPaletteColors();
+    private static final IndexColorModel PALETTE = createPalette();
+
+    private final int cellSize;
+    private final int movesPerFrame;
+    private final ExecutorService executor;
+    private final int maxPending;
+
+    //Colors of the cells of the game being exported (index in the palette, 0 for empty)
+    private byte[] colors;
+    private int numRows;
+    private int numCols;
+
+    /**
+     * @param cellSize: width and height of a cell, in pixels
+     * @param movesPerFrame: number of moves between two frames
+     * @param numThreads: number of threads drawing the frames
+     */
+    public TetrisReplayExporter(int cellSize, int movesPerFrame, int numThreads) {
+        this.cellSize = cellSize;
+        this.movesPerFrame = Math.max(1, movesPerFrame);
+        executor = Executors.newFixedThreadPool(numThreads);
+        maxPending = numThreads * FRAMES_PER_THREAD;
+    }
+
+    private static Color[] createPaletteColors() {
+        Color[] colors = new Color[2 + TetrisShapeFactory.NUM_SHAPES];
+        colors[BACKGROUND_INDEX] = Color.WHITE;
+        colors[LINES_INDEX] = Color.BLACK;
+        for (int shapeId = 0; shapeId < TetrisShapeFactory.NUM_SHAPES; shapeId++) {
+            colors[shapeIndex(shapeId)] = TetrisShapeFactory.getShape(shapeId, 0).getShapeColor();
+        }
+        return colors;
+    }
+
+    private static IndexColorModel createPalette() {
+        Color[] colors = PALETTE_COLORS;
+        byte[] r = new byte[colors.length];
+        byte[] g = new byte[colors.length];
+        byte[] b = new byte[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            r[i] = (byte) colors[i].getRed();
+            g[i] = (byte) colors[i].getGreen();
+            b[i] = (byte) colors[i].getBlue();
+        }
+        return new IndexColorModel(4, colors.length, r, g, b);
+    }
+
+    /* Index in the palette of the color of a shape */
+    private static int shapeIndex(int shapeId) {
+        return 2 + shapeId;
+    }
+
+    /**
+     * Exports a replay. The output is an animated GIF if its name ends with
+     * .gif, otherwise a folder of PNG images (frame00000.png, ...).
+     *
+     * @param replay: the game
+     * @param output: the GIF file or the folder
+     * @param frameDelay: time between two frames of the GIF, in milliseconds
+     * @return number of frames exported
+     */
+    public int export(TetrisReplay replay, Path output, int frameDelay) throws IOException, InterruptedException {
+        boolean gif = output.getFileName().toString().toLowerCase().endsWith(".gif");
+        ImageWriter writer = null;
+        ImageOutputStream out = null;
+        if (gif) {
+            writer = ImageIO.getImageWritersByFormatName("gif").next();
+            Files.deleteIfExists(output);
+            out = ImageIO.createImageOutputStream(output.toFile());
+            writer.setOutput(out);
+            writer.prepareWriteSequence(null);
+        } else {
+            Files.createDirectories(output);
+        }
+
+        TetrisEngine engine = replay.createEngine();
+        numRows = engine.getBoard().getNumRows();
+        numCols = engine.getBoard().getNumCols();
+        colors = new byte[numRows * numCols];
+        engine.setListener(this);
+
+        //Frames being drawn, oldest first
+        ArrayDeque<Future<BufferedImage>> pending = new ArrayDeque<>();
+        int numFrames = 0;
+        try {
+            for (int move = 0; move <= replay.getNumMoves(); move++) {
+                if (move == replay.getNumMoves() || move % movesPerFrame == 0) {
+                    if (pending.size() == maxPending) {
+                        writeFrame(pending.poll(), writer, numFrames - maxPending, frameDelay);
+                    }
+                    pending.add(submitFrame(engine, gif ? null : output.resolve(String.format("frame%05d.png", numFrames))));
+                    numFrames++;
+                }
+                if (move < replay.getNumMoves()) {
+                    engine.applyMove(replay.getMove(move));
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeFrame(pending.poll(), writer, numFrames - pending.size() - 1, frameDelay);
+            }
+            if (gif) {
+                writer.endWriteSequence();
+            }
+        } finally {
+            for (Future<BufferedImage> frame : pending) {
+                frame.cancel(false);
+            }
+            engine.setListener(null);
+            if (gif) {
+                out.close();
+                writer.dispose();
+            }
+        }
+        return numFrames;
+    }
+
+    /* Copies the state of the game and has it drawn (and written, for a PNG) on a worker thread */
+    private Future<BufferedImage> submitFrame(TetrisEngine engine, Path png) {
+        byte[] cells = colors.clone();
+        TetrisShape shape = engine.isGameOver() ? null : engine.getFallingShape();
+        int shapeX = engine.getShapeX();
+        int shapeY = engine.getShapeY();
+        return executor.submit(() -> {
+            BufferedImage image = drawFrame(cells, shape, shapeX, shapeY);
+            if (png != null) {
+                ImageIO.write(image, "png", png.toFile());
+                return null;
+            }
+            return image;
+        });
+    }
+
+    /* Waits for a frame to be drawn and adds it to the GIF (if there is one) */
+    private void writeFrame(Future<BufferedImage> frame, ImageWriter writer, int index, int frameDelay)
+            throws IOException, InterruptedException {
+        BufferedImage image;
+        try {
+            image = frame.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Could not export frame " + index, e.getCause());
+        }
+        if (writer == null) {
+            return;
+        }
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), null);
+        String format = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+        IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(Math.max(1, frameDelay / 10)));
+        control.setAttribute("transparentColorIndex", "0");
+        root.appendChild(control);
+
+        //The first frame tells viewers to loop the animation forever
+        if (index == 0) {
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[]{1, 0, 0});
+            IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+            extensions.appendChild(loop);
+            root.appendChild(extensions);
+        }
+        metadata.setFromTree(format, root);
+        writer.writeToSequence(new IIOImage(image, null, metadata), null);
+    }
+
+    /* Draws one frame: the grid lines, the locked cells and the falling shape */
+    private BufferedImage drawFrame(byte[] cells, TetrisShape shape, int shapeX, int shapeY) {
+        BufferedImage image = new BufferedImage(numCols * cellSize + 1, numRows * cellSize + 1,
+                BufferedImage.TYPE_BYTE_INDEXED, PALETTE);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setColor(Color.BLACK);
+        TetrisGridView.drawGridLines(g, 0, 0, cellSize, numRows, numCols);
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0) {
+                TetrisGridView.drawCell(g, i % numCols, i / numCols, 0, 0, cellSize, PALETTE_COLORS[cells[i]]);
+            }
+        }
+        if (shape != null) {
+            int[][] matrix = shape.getShapeMatrix();
+            for (int i = 0; i < matrix.length; i++) {
+                for (int j = 0; j < matrix[i].length; j++) {
+                    if (matrix[i][j] != 0 && shapeY + i >= 0) {
+                        TetrisGridView.drawCell(g, shapeX + j, shapeY + i, 0, 0, cellSize, shape.getShapeColor());
+                    }
+                }
+            }
+        }
+        g.dispose();
+        return image;
+    }
+
+    /** Stops the drawing threads */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public void pieceMoved(TetrisShape shape, int x, int y) {
+    }
+
+    @Override
+    public void shapeLocked(TetrisShape shape, int x, int y) {
+        byte color = (byte) ((shape.getShapeId() >= 0) ? shapeIndex(shape.getShapeId()) : LINES_INDEX);
+        int[][] matrix = shape.getShapeMatrix();
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                int row = y + i;
+                int column = x + j;
+                if (matrix[i][j] != 0 && row >= 0 && row < numRows && column >= 0 && column < numCols) {
+                    colors[row * numCols + column] = color;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void rowCleared(int row) {
+        //Shift the rows above down by one and empty the top row
+        System.arraycopy(colors, 0, colors, numCols, row * numCols);
+        Arrays.fill(colors, 0, numCols, (byte) 0);
+    }
+
+    @Override
+    public void garbageAdded(int count, int holeColumn) {
+        int shift = Math.min(count, numRows) * numCols;
+        System.arraycopy(colors, shift, colors, 0, colors.length - shift);
+        for (int i = colors.length - shift; i < colors.length; i++) {
+            colors[i] = (byte) ((i % numCols == holeColumn) ? 0 : LINES_INDEX);
+        }
+    }
+
+    @Override
+    public void scoreChanged(int linesCleared, int tetrisCleared, int shapesLocked) {
+    }
+
+    @Override
+    public void gameOver() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        //No screen needed: draw offscreen even where there is a display
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        long gameId = Long.parseLong(args[1]);
+        Path output = Paths.get(args[2]);
+        int cellSize = (args.length > 3) ? Integer.parseInt(args[3]) : 16;
+        int movesPerFrame = (args.length > 4) ? Integer.parseInt(args[4]) : 1;
+        int numThreads = (args.length > 5) ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+        TetrisReplay replay;
+        try (TetrisReplayArchive archive = new TetrisReplayArchive(Paths.get(args[0]))) {
+            int index = archive.findGame(gameId);
+            if (index < 0) {
+                System.out.println("No game " + gameId + " in " + args[0]);
+                return;
+            }
+            replay = archive.getReplay(index);
+        }
+
+        TetrisReplayExporter exporter = new TetrisReplayExporter(cellSize, movesPerFrame, numThreads);
+        long start = System.nanoTime();
+        try {
+            int numFrames = exporter.export(replay, output, Constants.AUTO_PLAY_DELAY * movesPerFrame);
+            System.out.println(String.format("Exported %d frames of game %d to %s in %.2f s", numFrames,
+                    gameId, output, (System.nanoTime() - start) / 1e9));
+        } finally {
+            exporter.shutdown();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.Arrays;
+
+/**
+ * TetrisReplayRecorder makes the moves of a headless game on its engine and
+ * keeps them, so the game can be saved as a TetrisReplay once it is over.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisReplayRecorder {
+
+    private final TetrisEngine engine;
+    private final long seed;
+
+    //The moves made so far, two to a byte
+    private byte[] packedMoves = new byte[256];
+    private int numMoves = 0;
+
+    /**
+     * Starts a new game to record
+     *
+     * @param seed: seed of the game's piece sequence
+     */
+    public TetrisReplayRecorder(long seed) {
+        this(TetrisConfig.getDefault(), seed);
+    }
+
+    /**
+     * Starts a new game to record
+     *
+     * @param config: size of the game's board
+     * @param seed: seed of the game's piece sequence
+     */
+    public TetrisReplayRecorder(TetrisConfig config, long seed) {
+        this.seed = seed;
+        engine = new TetrisEngine(config, seed);
+    }
+
+    /**
+     * Makes a move on the engine and records it
+     *
+     * @param move: one of the MOVE_ constants of Constants
+     */
+    public void applyMove(int move) {
+        engine.applyMove(move);
+        if ((numMoves >> 1) == packedMoves.length) {
+            packedMoves = Arrays.copyOf(packedMoves, packedMoves.length * 2);
+        }
+        packedMoves[numMoves >> 1] |= (byte) (move << ((numMoves & 1) << 2));
+        numMoves++;
+    }
+
+    /**
+     * Lets a bot place the falling shape, recording its moves
+     *
+     * @param bot: the bot
+     * @return false once the game is over
+     */
+    public boolean playShape(TetrisBot bot) {
+        if (engine.isGameOver()) {
+            return false;
+        }
+        TetrisPlacement placement = bot.findBestPlacement(engine.getBoard(), engine.getFallingShape(),
+                engine.getShapeX(), engine.getShapeY());
+        if (placement == null) {
+            //Nowhere to go, let the shape lock where it is
+            applyMove(Constants.MOVE_HARD_DROP);
+        } else {
+            for (int i = 0; i < placement.getNumMoves(); i++) {
+                applyMove(placement.getMove(i));
+            }
+        }
+        return !engine.isGameOver();
+    }
+
+    public TetrisEngine getEngine() {
+        return engine;
+    }
+
+    public int getNumMoves() {
+        return numMoves;
+    }
+
+    /**
+     * Saves the game recorded so far
+     *
+     * @param gameId: id to give the game
+     * @param date: when the game was played (milliseconds since the epoch)
+     * @return the replay of the game
+     */
+    public TetrisReplay toReplay(long gameId, long date) {
+        TetrisBoard board = engine.getBoard();
+        return new TetrisReplay(gameId, seed, TetrisReplay.GENERATOR_UNIFORM, board.getNumRows(), board.getNumCols(),
+                Arrays.copyOf(packedMoves, (numMoves + 1) >> 1), numMoves,
+                engine.getNumLinesCleared(), engine.getNumTetrisCleared(), date);
+    }
+}
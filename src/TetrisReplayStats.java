@@ -0,0 +1,275 @@
+/**
+ * TetrisReplayStats adds up statistics over replayed games: lines and
+ * Tetrises per shape, stack heights, the average number of holes as games
+ * go on, how often each shape came up and, if asked for, finesse faults
+ * like TetrisView shows for the game being played (left/right/rotate inputs
+ * made beyond the fewest that would have placed a shape in the same spot,
+ * soft and hard drops being free). Finesse takes a TetrisFinesseSolver
+ * search for every shape, which makes replaying many times slower, so it
+ * is left out unless asked for.
+ *
+ * It listens to the engine a game is replayed on and reads the engine's
+ * own board (whose height and hole counts are kept up to date as shapes
+ * lock), so it never copies a board. One TetrisReplayStats must only be
+ * used by one thread; the stats of several threads are added up with add.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisReplayStats implements TetrisEngineListener {
+
+    //Holes are averaged over every HOLE_PERIOD shapes, the last period takes in the rest of the game
+    public static final int HOLE_PERIOD = 50;
+    public static final int NUM_HOLE_PERIODS = 20;
+
+    private long numGames = 0;
+    private long numGamesOver = 0;
+    private long numMoves = 0;
+    private long numShapes = 0;
+    private long numLines = 0;
+    private long numTetris = 0;
+    private long sumMaxHeights = 0;
+    private int maxHeight = 0;
+    private final long[] shapeCounts = new long[TetrisShapeFactory.NUM_SHAPES];
+    private final long[] holeSums = new long[NUM_HOLE_PERIODS];
+    private final long[] holeSamples = new long[NUM_HOLE_PERIODS];
+    private long numFinesseShapes = 0;
+    private long numFinesseFaults = 0;
+
+    //Whether finesse faults are measured
+    private final boolean measureFinesse;
+
+    //The game being replayed
+    private TetrisEngine engine;
+    private int gameMaxHeight;
+
+    //Finds the fewest inputs for the falling shape (made again for every board size),
+    //and the inputs made for it so far
+    private TetrisFinesseSolver finesseSolver;
+    private int shapeInputs;
+
+    public TetrisReplayStats() {
+        this(false);
+    }
+
+    /**
+     * @param measureFinesse: true to measure finesse faults as well (much slower)
+     */
+    public TetrisReplayStats(boolean measureFinesse) {
+        this.measureFinesse = measureFinesse;
+    }
+
+    /**
+     * Replays a game and adds it to the stats
+     *
+     * @param replay: the game
+     */
+    public void addGame(TetrisReplay replay) {
+        engine = replay.createEngine();
+        gameMaxHeight = 0;
+        if (measureFinesse) {
+            TetrisBoard board = engine.getBoard();
+            if (finesseSolver == null || finesseSolver.getNumRows() != board.getNumRows()
+                    || finesseSolver.getNumCols() != board.getNumCols()) {
+                finesseSolver = new TetrisFinesseSolver(board.getNumRows(), board.getNumCols(), true);
+            }
+            startShape();
+        }
+        engine.setListener(this);
+        int moves = replay.getNumMoves();
+        for (int i = 0; i < moves && !engine.isGameOver(); i++) {
+            int move = replay.getMove(i);
+            if (move != Constants.MOVE_DOWN && move != Constants.MOVE_HARD_DROP) {
+                shapeInputs++;
+            }
+            engine.applyMove(move);
+        }
+        engine.setListener(null);
+
+        numGames++;
+        if (engine.isGameOver()) {
+            numGamesOver++;
+        }
+        numMoves += moves;
+        numShapes += engine.getNumShapesLocked();
+        numLines += engine.getNumLinesCleared();
+        numTetris += engine.getNumTetrisCleared();
+        sumMaxHeights += gameMaxHeight;
+        maxHeight = Math.max(maxHeight, gameMaxHeight);
+        engine = null;
+    }
+
+    /* Finds where the shape that just spawned can go, and how cheaply */
+    private void startShape() {
+        finesseSolver.search(engine.getBoard(), engine.getFallingShape(), engine.getShapeX(), engine.getShapeY());
+        shapeInputs = 0;
+    }
+
+    /**
+     * Adds the stats of other games to these
+     *
+     * @param other: stats of other games
+     */
+    public void add(TetrisReplayStats other) {
+        numGames += other.numGames;
+        numGamesOver += other.numGamesOver;
+        numMoves += other.numMoves;
+        numShapes += other.numShapes;
+        numLines += other.numLines;
+        numTetris += other.numTetris;
+        sumMaxHeights += other.sumMaxHeights;
+        maxHeight = Math.max(maxHeight, other.maxHeight);
+        numFinesseShapes += other.numFinesseShapes;
+        numFinesseFaults += other.numFinesseFaults;
+        for (int i = 0; i < shapeCounts.length; i++) {
+            shapeCounts[i] += other.shapeCounts[i];
+        }
+        for (int i = 0; i < NUM_HOLE_PERIODS; i++) {
+            holeSums[i] += other.holeSums[i];
+            holeSamples[i] += other.holeSamples[i];
+        }
+    }
+
+    @Override
+    public void pieceMoved(TetrisShape shape, int x, int y) {
+    }
+
+    @Override
+    public void shapeLocked(TetrisShape shape, int x, int y) {
+        if (shape.getShapeId() >= 0) {
+            shapeCounts[shape.getShapeId()]++;
+        }
+        if (!measureFinesse) {
+            return;
+        }
+        //A shape that locks where it spawned on top of the stack ends the game, it has no finesse
+        int fewestInputs = finesseSolver.getCost(shape, x, y);
+        if (fewestInputs >= 0) {
+            numFinesseShapes++;
+            numFinesseFaults += Math.max(0, shapeInputs - fewestInputs);
+        }
+    }
+
+    @Override
+    public void rowCleared(int row) {
+    }
+
+    @Override
+    public void garbageAdded(int count, int holeColumn) {
+    }
+
+    @Override
+    public void scoreChanged(int linesCleared, int tetrisCleared, int shapesLocked) {
+        //Called once the rows are cleared, so the board is as the next shape will find it
+        TetrisBoard board = engine.getBoard();
+        gameMaxHeight = Math.max(gameMaxHeight, board.getMaxHeight());
+        int period = Math.min((shapesLocked - 1) / HOLE_PERIOD, NUM_HOLE_PERIODS - 1);
+        holeSums[period] += board.getHoles();
+        holeSamples[period]++;
+        if (measureFinesse) {
+            startShape();
+        }
+    }
+
+    @Override
+    public void gameOver() {
+    }
+
+    public long getNumGames() {
+        return numGames;
+    }
+
+    public long getNumShapes() {
+        return numShapes;
+    }
+
+    public long getNumLines() {
+        return numLines;
+    }
+
+    public long getNumTetris() {
+        return numTetris;
+    }
+
+    /**
+     * @return lines cleared per 100 shapes
+     */
+    public double getLinesPer100Shapes() {
+        return (numShapes == 0) ? 0 : 100.0 * numLines / numShapes;
+    }
+
+    /**
+     * @return share of the lines that were cleared by Tetrises
+     */
+    public double getTetrisRate() {
+        return (numLines == 0) ? 0 : (double) numTetris * Constants.TETRIS / numLines;
+    }
+
+    /**
+     * @return average over the games of the highest the stack got
+     */
+    public double getAverageMaxHeight() {
+        return (numGames == 0) ? 0 : (double) sumMaxHeights / numGames;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * @param period: the period (shapes period * HOLE_PERIOD + 1 to (period + 1) * HOLE_PERIOD)
+     * @return average number of holes after a shape locked in that period
+     */
+    public double getAverageHoles(int period) {
+        return (holeSamples[period] == 0) ? 0 : (double) holeSums[period] / holeSamples[period];
+    }
+
+    /**
+     * @param shapeId: id of the shape (see TetrisShapeFactory)
+     * @return share of the locked shapes that were that shape
+     */
+    public double getShapeShare(int shapeId) {
+        return (numShapes == 0) ? 0 : (double) shapeCounts[shapeId] / numShapes;
+    }
+
+    public long getNumFinesseFaults() {
+        return numFinesseFaults;
+    }
+
+    /**
+     * @return finesse faults per shape (over the shapes that could be measured)
+     */
+    public double getFinesseFaultsPerShape() {
+        return (numFinesseShapes == 0) ? 0 : (double) numFinesseFaults / numFinesseShapes;
+    }
+
+    /**
+     * @return the stats, over several lines
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(numGames).append(" games (").append(numGamesOver).append(" lost), ")
+                .append(numShapes).append(" shapes, ").append(numMoves).append(" moves\n");
+        out.append(String.format("Lines: %d (%.2f per 100 shapes), Tetris: %d (%.1f%% of lines)%n",
+                numLines, getLinesPer100Shapes(), numTetris, 100 * getTetrisRate()));
+        out.append(String.format("Stack height: %.2f on average at its highest, %d at most%n",
+                getAverageMaxHeight(), maxHeight));
+        if (numFinesseShapes > 0) {
+            out.append(String.format("Finesse faults: %d (%.2f per shape)%n", numFinesseFaults,
+                    getFinesseFaultsPerShape()));
+        }
+        out.append("Holes by shapes locked:");
+        for (int period = 0; period < NUM_HOLE_PERIODS; period++) {
+            if (holeSamples[period] > 0) {
+                out.append(String.format(" %d%s:%.2f", period * HOLE_PERIOD + 1,
+                        (period == NUM_HOLE_PERIODS - 1) ? "+" : "", getAverageHoles(period)));
+            }
+        }
+        out.append("\nShapes:");
+        String names = "IOTLJSZ";
+        for (int shapeId = 0; shapeId < shapeCounts.length; shapeId++) {
+            out.append(String.format(" %c:%.1f%%", names.charAt(shapeId), 100 * getShapeShare(shapeId)));
+        }
+        return out.toString();
+    }
+}
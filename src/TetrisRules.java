@@ -0,0 +1,35 @@
+/**
+ * TetrisRules is a headless game played move by move: the rules of
+ * Tetris without a view or a timer. TetrisEngine is the one in the tree;
+ * TetrisDifferentialFuzzer checks any of them against the game itself.
+ *
+ * @author Sabirah Shuaybi
+ */
+public interface TetrisRules {
+
+    /**
+     * Performs one of the MOVE_ constants defined in Constants
+     *
+     * @param move: the move to make
+     */
+    void applyMove(int move);
+
+    /**
+     * Getter for the board. The board must not be modified directly.
+     *
+     * @return the locked cells of the game
+     */
+    TetrisBoard getBoard();
+
+    TetrisShape getFallingShape();
+
+    int getShapeX();
+
+    int getShapeY();
+
+    int getNumLinesCleared();
+
+    int getNumTetrisCleared();
+
+    boolean isGameOver();
+}
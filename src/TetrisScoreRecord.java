@@ -0,0 +1,108 @@
+/**
+ * TetrisScoreRecord is the result of one finished game, as kept by the
+ * TetrisScoreStore: the seed of its piece sequence, the level it was
+ * played at, its score (lines and Tetrises cleared), how long it lasted,
+ * when it ended and where its replay can be found.
+ *
+ * Records are ordered best first: more lines, then more Tetrises, then
+ * the shorter game.
+ *
+ * TetrisScoreRecord is immutable.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisScoreRecord implements Comparable<TetrisScoreRecord> {
+
+    //Level of games played without gravity (ex: by TetrisBotRunner)
+    public static final int NO_LEVEL = -1;
+
+    //Replay id of games that have no replay
+    public static final long NO_REPLAY = -1L;
+
+    private final long seed;
+    private final int level;
+    private final int numLinesCleared;
+    private final int numTetrisCleared;
+    private final long durationMillis;
+    private final long finishedAt;
+    private final long replayId;
+
+    /**
+     * @param seed: seed of the game's piece sequence
+     * @param level: level the game was played at (or NO_LEVEL)
+     * @param numLinesCleared: lines cleared in the game
+     * @param numTetrisCleared: Tetrises cleared in the game
+     * @param durationMillis: how long the game lasted, in milliseconds
+     * @param finishedAt: when the game ended (milliseconds since the epoch)
+     * @param replayId: id of the game's replay (or NO_REPLAY)
+     */
+    public TetrisScoreRecord(long seed, int level, int numLinesCleared, int numTetrisCleared,
+                             long durationMillis, long finishedAt, long replayId) {
+        this.seed = seed;
+        this.level = level;
+        this.numLinesCleared = numLinesCleared;
+        this.numTetrisCleared = numTetrisCleared;
+        this.durationMillis = durationMillis;
+        this.finishedAt = finishedAt;
+        this.replayId = replayId;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getNumLinesCleared() {
+        return numLinesCleared;
+    }
+
+    public int getNumTetrisCleared() {
+        return numTetrisCleared;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getReplayId() {
+        return replayId;
+    }
+
+    /**
+     * Compares a score with this record's, without needing a record for it
+     *
+     * @param lines: lines cleared
+     * @param tetrises: Tetrises cleared
+     * @param duration: duration of the game, in milliseconds
+     * @return a negative number if that score ranks before this record,
+     * a positive number if it ranks after it and 0 if they tie
+     */
+    public int compareScore(int lines, int tetrises, long duration) {
+        if (lines != numLinesCleared) {
+            return (lines > numLinesCleared) ? -1 : 1;
+        }
+        if (tetrises != numTetrisCleared) {
+            return (tetrises > numTetrisCleared) ? -1 : 1;
+        }
+        return Long.compare(duration, durationMillis);
+    }
+
+    @Override
+    public int compareTo(TetrisScoreRecord other) {
+        return other.compareScore(numLinesCleared, numTetrisCleared, durationMillis);
+    }
+
+    @Override
+    public String toString() {
+        return numLinesCleared + " lines, " + numTetrisCleared + " Tetris in "
+                + String.format("%.1f", durationMillis / 1000.0) + " s (level " + level + ", seed " + seed
+                + ((replayId == NO_REPLAY) ? "" : ", replay " + replayId) + ")";
+    }
+}
@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * TetrisScoreStore keeps the results of finished games (TetrisScoreRecords)
+ * in a file, so high scores outlive the game and the application.
+ *
+ * The file is a log that is only ever appended to: a small header followed
+ * by fixed size records, each ending with a CRC32 of its bytes. Appended
+ * records are buffered and written and synced (fsync) to the disk in
+ * batches, or when sync is called, so storing the results of a big bot run
+ * doesn't cost one disk write per game.
+ *
+ * When the store is opened, the whole log is read once to build an index of
+ * the best INDEX_SIZE records of every level, which answers the top scores
+ * queries from memory. If the application stopped in the middle of writing,
+ * the log ends with a partial or damaged record: everything from that record
+ * on is cut off and the store carries on from the last good record.
+ *
+ * All methods are thread safe.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisScoreStore implements AutoCloseable {
+
+    //Number of best records kept in the index for every level
+    public static final int INDEX_SIZE = 1000;
+
+    //Number of records appended between two syncs, unless given otherwise
+    public static final int DEFAULT_SYNC_BATCH = 256;
+
+    private static final int MAGIC = 0x54534353;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    //seed, duration, finish time, replay id, level, lines, Tetrises and the CRC
+    private static final int RECORD_SIZE = 4 * Long.BYTES + 4 * Integer.BYTES;
+
+    //Size of the chunks the log is read in when the store is opened
+    private static final int READ_CHUNK_RECORDS = 1 << 14;
+
+    private final FileChannel channel;
+    private final int syncBatch;
+
+    //Records appended but not written yet
+    private final ByteBuffer writeBuffer;
+    private int numUnsynced = 0;
+
+    private final CRC32 crc = new CRC32();
+
+    //For every level, its best records, best first
+    private final Map<Integer, List<TetrisScoreRecord>> index = new HashMap<>();
+
+    private long numRecords = 0;
+    private long numRecoveredBytes = 0;
+
+    public TetrisScoreStore(Path file) throws IOException {
+        this(file, DEFAULT_SYNC_BATCH);
+    }
+
+    /**
+     * Opens the store in a file (creating it if needed), rebuilds the index
+     * from the log and cuts off a damaged end of the log, if any
+     *
+     * @param file: the log file
+     * @param syncBatch: number of records appended between two syncs
+     */
+    public TetrisScoreStore(Path file, int syncBatch) throws IOException {
+        this.syncBatch = Math.max(1, syncBatch);
+        writeBuffer = ByteBuffer.allocate(this.syncBatch * RECORD_SIZE);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            load();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /* Checks the header (or writes it to a new file) and reads every good record */
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() < HEADER_SIZE) {
+            //A new file, or one that ended before its header was complete
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+            channel.position(HEADER_SIZE);
+            return;
+        }
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a score store: unknown header");
+        }
+
+        ByteBuffer chunk = ByteBuffer.allocate(READ_CHUNK_RECORDS * RECORD_SIZE);
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        boolean damaged = false;
+        while (position + RECORD_SIZE <= size && !damaged) {
+            chunk.clear();
+            while (chunk.hasRemaining() && channel.read(chunk, position + chunk.position()) > 0) {
+                //keep reading until the chunk is full or the end of the file is reached
+            }
+            chunk.flip();
+            while (chunk.remaining() >= RECORD_SIZE) {
+                TetrisScoreRecord record = readRecord(chunk);
+                if (record == null) {
+                    damaged = true;
+                    break;
+                }
+                position += RECORD_SIZE;
+                numRecords++;
+                addToIndex(record);
+            }
+        }
+
+        //Anything after the last good record was cut short by a crash
+        if (position < size) {
+            numRecoveredBytes = size - position;
+            channel.truncate(position);
+            channel.force(true);
+        }
+        channel.position(position);
+    }
+
+    /* Reads the next record from a buffer, or returns null if its CRC doesn't match */
+    private TetrisScoreRecord readRecord(ByteBuffer buffer) {
+        int start = buffer.position();
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, RECORD_SIZE - Integer.BYTES);
+        long seed = buffer.getLong();
+        long duration = buffer.getLong();
+        long finishedAt = buffer.getLong();
+        long replayId = buffer.getLong();
+        int level = buffer.getInt();
+        int lines = buffer.getInt();
+        int tetrises = buffer.getInt();
+        if (buffer.getInt() != (int) crc.getValue()) {
+            return null;
+        }
+        return new TetrisScoreRecord(seed, level, lines, tetrises, duration, finishedAt, replayId);
+    }
+
+    /* Writes a record into a buffer, followed by its CRC */
+    private void writeRecord(ByteBuffer buffer, TetrisScoreRecord record) {
+        int start = buffer.position();
+        buffer.putLong(record.getSeed()).putLong(record.getDurationMillis())
+                .putLong(record.getFinishedAt()).putLong(record.getReplayId())
+                .putInt(record.getLevel()).putInt(record.getNumLinesCleared()).putInt(record.getNumTetrisCleared());
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, RECORD_SIZE - Integer.BYTES);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Adds a record to the index of its level if it is one of the best
+     * INDEX_SIZE records of that level
+     */
+    private void addToIndex(TetrisScoreRecord record) {
+        List<TetrisScoreRecord> best = index.get(record.getLevel());
+        if (best == null) {
+            best = new ArrayList<>();
+            index.put(record.getLevel(), best);
+        }
+        //Most records don't make it in, which only takes one comparison
+        if (best.size() == INDEX_SIZE && best.get(INDEX_SIZE - 1).compareTo(record) <= 0) {
+            return;
+        }
+        //Ties go after the records that were there first
+        int low = 0;
+        int high = best.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (best.get(middle).compareTo(record) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        best.add(low, record);
+        if (best.size() > INDEX_SIZE) {
+            best.remove(INDEX_SIZE);
+        }
+    }
+
+    /**
+     * Appends a record to the log. It is written and synced to the disk
+     * with the rest of its batch, or on the next call to sync.
+     *
+     * @param record: the result of a finished game
+     */
+    public synchronized void append(TetrisScoreRecord record) throws IOException {
+        //The buffer is still full of a batch that failed to be written, try it again first
+        if (writeBuffer.remaining() < RECORD_SIZE) {
+            sync();
+        }
+        writeRecord(writeBuffer, record);
+        numRecords++;
+        numUnsynced++;
+        addToIndex(record);
+        if (numUnsynced >= syncBatch) {
+            sync();
+        }
+    }
+
+    /**
+     * Writes the records appended so far to the log and syncs it to the disk.
+     * If that fails, the records are kept and the next sync tries again from
+     * the first byte that wasn't written, so the log never gets a gap.
+     */
+    public synchronized void sync() throws IOException {
+        if (numUnsynced == 0) {
+            return;
+        }
+        writeBuffer.flip();
+        try {
+            while (writeBuffer.hasRemaining()) {
+                channel.write(writeBuffer);
+            }
+        } finally {
+            //Keep whatever wasn't written, ready for more records
+            writeBuffer.compact();
+        }
+        channel.force(false);
+        numUnsynced = 0;
+    }
+
+    /**
+     * Looks up the best records of a level
+     *
+     * @param level: the level
+     * @param n: number of records wanted (at most INDEX_SIZE are kept)
+     * @return the best records of the level, best first
+     */
+    public synchronized List<TetrisScoreRecord> getTopScores(int level, int n) {
+        List<TetrisScoreRecord> best = index.get(level);
+        if (best == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(best.subList(0, Math.min(n, best.size())));
+    }
+
+    /**
+     * @return the levels that have records, lowest first
+     */
+    public synchronized int[] getLevels() {
+        int[] levels = new int[index.size()];
+        int i = 0;
+        for (int level : index.keySet()) {
+            levels[i++] = level;
+        }
+        Arrays.sort(levels);
+        return levels;
+    }
+
+    /**
+     * @return number of records in the store (including the ones not synced yet)
+     */
+    public synchronized long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * @return number of bytes cut off the end of the log when it was opened
+     * (0 if the log was intact)
+     */
+    public long getNumRecoveredBytes() {
+        return numRecoveredBytes;
+    }
+
+    /** Syncs the records appended so far and closes the file */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Prints the best scores of every level in a store.
+     *
+     * Usage: java TetrisScoreStore [file] [n]
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get((args.length > 0) ? args[0] : Constants.SCORE_FILE);
+        int n = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        long start = System.nanoTime();
+        try (TetrisScoreStore store = new TetrisScoreStore(file)) {
+            System.out.println(store.getNumRecords() + " records loaded in "
+                    + (System.nanoTime() - start) / 1000000 + " ms"
+                    + (store.getNumRecoveredBytes() > 0 ? " (" + store.getNumRecoveredBytes()
+                    + " damaged bytes cut off the end)" : ""));
+            for (int level : store.getLevels()) {
+                System.out.println("Level " + level + ":");
+                for (TetrisScoreRecord record : store.getTopScores(level, n)) {
+                    System.out.println("  " + record);
+                }
+            }
+        }
+    }
+}
@@ -6,6 +6,11 @@ import java.awt.Color;
  * It also holds the information about the current matrix (definition
  * of a shape, presumably the one that is 'falling')
  *
+ * Shapes created by the TetrisShapeFactory also know which of the 7 shapes
+ * they are (shapeId) and how many times they have been rotated clockwise
+ * (rotation, 0 to 3). Rotating such a shape looks up the rotated shape in the
+ * factory instead of building a new matrix.
+ *
  * Note: TetrisShape is an immutable object (Intentional)
  *
  * @author Sabirah Shuaybi
@@ -15,9 +20,44 @@ public class TetrisShape {
     private int[][] shapeMatrix;
     private Color shapeColor;
 
+    //Which of the 7 shapes this is (-1 if not created by the factory)
+    private int shapeId;
+
+    //Number of clockwise rotations away from the shape's spawn orientation
+    private int rotation;
+
+    //For each column of the matrix, the row of its lowest filled space
+    //(-1 if the column is empty). Used to find where the shape lands.
+    private int[] columnBottoms;
+
+    //For each row of the matrix, a bit mask of its filled spaces
+    //(bit i is set if column i is filled). Used for fast collision checks.
+    private long[] rowMasks;
+
+    //Leftmost and rightmost columns of the matrix that contain a filled space
+    private int minColumn;
+    private int maxColumn;
+
     public TetrisShape(int[][] shapeMatrix, Color shapeColor) {
+        this(shapeMatrix, shapeColor, -1, 0);
+    }
+
+    public TetrisShape(int[][] shapeMatrix, Color shapeColor, int shapeId, int rotation) {
         this.shapeMatrix = shapeMatrix;
         this.shapeColor = shapeColor;
+        this.shapeId = shapeId;
+        this.rotation = rotation;
+        columnBottoms = TetrisUtil.computeColumnBottoms(shapeMatrix);
+        rowMasks = TetrisUtil.computeRowMasks(shapeMatrix);
+
+        minColumn = columnBottoms.length;
+        maxColumn = -1;
+        for (int i = 0; i < columnBottoms.length; i++) {
+            if (columnBottoms[i] >= 0) {
+                minColumn = Math.min(minColumn, i);
+                maxColumn = Math.max(maxColumn, i);
+            }
+        }
     }
 
     /**
@@ -33,12 +73,52 @@ public class TetrisShape {
         return shapeColor;
     }
 
+    public int getShapeId() {
+        return shapeId;
+    }
+
+    public int getRotation() {
+        return rotation;
+    }
+
+    /**
+     * Getter for the lowest filled space of every column of the shape
+     *
+     * @return for each column, the row of its lowest 1 (or -1 if empty)
+     */
+    public int[] getColumnBottoms() {
+        return columnBottoms;
+    }
+
+    /**
+     * Getter for the bit masks of the rows of the shape
+     *
+     * @return for each row, the bits of its filled spaces
+     */
+    public long[] getRowMasks() {
+        return rowMasks;
+    }
+
+    /** @return the leftmost column of the matrix that has a filled space */
+    public int getMinColumn() {
+        return minColumn;
+    }
+
+    /** @return the rightmost column of the matrix that has a filled space */
+    public int getMaxColumn() {
+        return maxColumn;
+    }
+
     /**
      * Rotates a shape clock-wise.
      *
      * @return a new TetrisShape that has been rotated clock-wise
      */
     public TetrisShape rotateCW() {
+        //Shapes from the factory have all of their rotations built in advance
+        if (shapeId >= 0) {
+            return TetrisShapeFactory.getShape(shapeId, (rotation + 1) % 4);
+        }
         //Delegate rotation task to TetrisUtil class, which contains
         //the utility function for rotation of a 2D matrix
         return new TetrisShape(TetrisUtil.rotate2DMatrix(this.shapeMatrix), shapeColor);
@@ -49,9 +129,11 @@ public class TetrisShape {
      * @return a new TetrisShape that has been rotated counter-clock-wise
      */
     public TetrisShape rotateCCW() {
+        if (shapeId >= 0) {
+            return TetrisShapeFactory.getShape(shapeId, (rotation + 3) % 4);
+        }
         //Rotating an object clock-wise three times equals
         //one counter-clockwise rotation
         return rotateCW().rotateCW().rotateCW();
     }
 }
-
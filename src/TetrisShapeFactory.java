@@ -1,3 +1,4 @@
+import java.util.Arrays;
 import java.util.Random;
 import java.awt.Color;
 
@@ -12,14 +13,59 @@ import java.awt.Color;
  * Thus, this class enables the creation as well as the randomization of
  * the pieces in the game.
  *
+ * All 4 rotations of every shape are built once, when the class is loaded,
+ * so that rotating a shape during the game is just a table lookup.
+ *
+ * The wall kicks of the Super Rotation System (SRS) are built at the same
+ * time: for every shape, rotation and direction, the list of offsets to try,
+ * in order, when the rotated shape doesn't fit where it is. This game's spawn
+ * orientation of each shape is used as SRS rotation state 0.
+ *
  * @author Sabirah Shuaybi
  */
 public class TetrisShapeFactory {
 
+    //Ids of the 7 shapes (their index in the shapes array)
+    public static final int I_SHAPE = 0;
+    public static final int O_SHAPE = 1;
+    public static final int T_SHAPE = 2;
+    public static final int L_SHAPE = 3;
+    public static final int J_SHAPE = 4;
+    public static final int S_SHAPE = 5;
+    public static final int Z_SHAPE = 6;
+    public static final int NUM_SHAPES = 7;
+
     //A collection of all the different TetrisShapes
     private static TetrisShape[] shapes = {createI(), createO(), createT(),
             createL(), createJ(), createS(), createZ()};
 
+    //Every rotation of every shape: rotations[shapeId][rotation]
+    private static TetrisShape[][] rotations = createRotations();
+
+    //canonicalRotations[shapeId][rotation] is the first rotation of the same shape
+    //that covers exactly the same cells (ex: the O shape looks the same 4 ways)
+    private static int[][] canonicalRotations = findCanonicalRotations();
+
+    //SRS offsets of every rotation state (0, R, 2, L) for the J, L, S, T and Z shapes
+    //and for the I shape, as 5 (x, y) pairs each with y going UP, as they are usually given
+    private static final int[][] JLSTZ_OFFSETS = {
+            {0, 0, 0, 0, 0, 0, 0, 0, 0, 0},
+            {0, 0, 1, 0, 1, -1, 0, 2, 1, 2},
+            {0, 0, 0, 0, 0, 0, 0, 0, 0, 0},
+            {0, 0, -1, 0, -1, -1, 0, 2, -1, 2}};
+    private static final int[][] I_OFFSETS = {
+            {0, 0, -1, 0, 2, 0, -1, 0, 2, 0},
+            {-1, 0, 0, 0, 0, 0, 0, 1, 0, -2},
+            {-1, 1, 1, 1, -2, 1, 1, 0, -2, 0},
+            {0, 1, 0, 1, 0, 1, 0, -1, 0, 2}};
+
+    //The O shape doesn't need to be kicked, it only tries where it is
+    private static final int[] NO_KICKS = {0, 0};
+
+    //kicks[shapeId][rotation][0 for clockwise, 1 for counter-clockwise] holds the
+    //(x, y) offsets to try, in order, as pairs: {x0, y0, x1, y1, ...}
+    private static int[][][][] kicks = createKicks();
+
     /**
      * Each of the 7 methods below is responsible for defining
      * one of the 7 TetrisShapes. ShapeMatrix arrays are represented
@@ -42,7 +88,7 @@ public class TetrisShapeFactory {
         shapeMatrix[0][3] = 1;
 
         Color IColor = new Color(141, 31, 147);
-        return new TetrisShape(shapeMatrix, IColor);
+        return new TetrisShape(shapeMatrix, IColor, I_SHAPE, 0);
     }
     private static TetrisShape createO() {
         int[][] shapeMatrix = new int [2][2];
@@ -52,7 +98,7 @@ public class TetrisShapeFactory {
         shapeMatrix[1][1] = 1;
 
         Color OColor = new Color(27, 166, 29);
-        return new TetrisShape(shapeMatrix, OColor);
+        return new TetrisShape(shapeMatrix, OColor, O_SHAPE, 0);
     }
 
     private static TetrisShape createT() {
@@ -63,7 +109,7 @@ public class TetrisShapeFactory {
         shapeMatrix[1][2] = 1;
 
         Color TColor = new Color(21, 142, 180);
-        return new TetrisShape(shapeMatrix, TColor);
+        return new TetrisShape(shapeMatrix, TColor, T_SHAPE, 0);
     }
 
     private static TetrisShape createL() {
@@ -74,7 +120,7 @@ public class TetrisShapeFactory {
         shapeMatrix[2][1] = 1;
 
         Color LColor = new Color(202, 100, 18);
-        return new TetrisShape(shapeMatrix, LColor);
+        return new TetrisShape(shapeMatrix, LColor, L_SHAPE, 0);
     }
     private static TetrisShape createJ() {
         int[][] shapeMatrix = new int [3][3];
@@ -84,7 +130,7 @@ public class TetrisShapeFactory {
         shapeMatrix[2][1] = 1;
 
         Color JColor = new Color(202, 223, 24);
-        return new TetrisShape(shapeMatrix, JColor);
+        return new TetrisShape(shapeMatrix, JColor, J_SHAPE, 0);
     }
 
     private static TetrisShape createZ() {
@@ -95,7 +141,7 @@ public class TetrisShapeFactory {
         shapeMatrix[1][2] = 1;
 
         Color ZColor = new Color(197, 10, 118);
-        return new TetrisShape(shapeMatrix, ZColor);
+        return new TetrisShape(shapeMatrix, ZColor, Z_SHAPE, 0);
     }
 
     private static TetrisShape createS() {
@@ -106,8 +152,144 @@ public class TetrisShapeFactory {
         shapeMatrix[1][1] = 1;
 
         Color SColor = new Color(198, 21, 13);
-        return new TetrisShape(shapeMatrix, SColor);
+        return new TetrisShape(shapeMatrix, SColor, S_SHAPE, 0);
+    }
+    /**
+     * Builds the 4 rotations of each of the 7 shapes, by repeatedly
+     * rotating the spawn orientation clockwise
+     *
+     * @return table of all the rotations, indexed by [shapeId][rotation]
+     */
+    private static TetrisShape[][] createRotations() {
+        TetrisShape[][] table = new TetrisShape[shapes.length][4];
+        for (int id = 0; id < shapes.length; id++) {
+            table[id][0] = shapes[id];
+            for (int rotation = 1; rotation < 4; rotation++) {
+                int[][] rotated = TetrisUtil.rotate2DMatrix(table[id][rotation - 1].getShapeMatrix());
+                table[id][rotation] = new TetrisShape(rotated, shapes[id].getShapeColor(), id, rotation);
+            }
+        }
+        return table;
     }
+
+    /**
+     * Builds the wall kick tables of every shape from the SRS offsets.
+     * Rotating from state a to state b tries offset[a] - offset[b] for each of
+     * the 5 tests, moved so that the first test leaves the shape where it is
+     * (the rotations here turn the whole matrix, so the first test never kicks).
+     *
+     * @return table of the kicks, indexed by [shapeId][rotation][direction]
+     */
+    private static int[][][][] createKicks() {
+        int[][][][] table = new int[shapes.length][4][2][];
+        for (int id = 0; id < shapes.length; id++) {
+            for (int rotation = 0; rotation < 4; rotation++) {
+                for (int direction = 0; direction < 2; direction++) {
+                    if (id == O_SHAPE) {
+                        table[id][rotation][direction] = NO_KICKS;
+                        continue;
+                    }
+                    int[][] offsets = (id == I_SHAPE) ? I_OFFSETS : JLSTZ_OFFSETS;
+                    int[] from = offsets[rotation];
+                    int[] to = offsets[(direction == 0) ? (rotation + 1) % 4 : (rotation + 3) % 4];
+                    int[] tests = new int[from.length];
+                    for (int i = 0; i < tests.length; i += 2) {
+                        tests[i] = (from[i] - to[i]) - (from[0] - to[0]);
+                        //y goes down on this board
+                        tests[i + 1] = -((from[i + 1] - to[i + 1]) - (from[1] - to[1]));
+                    }
+                    table[id][rotation][direction] = tests;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Finds the rotations that only repeat an earlier rotation of the same
+     * shape, shifted within the matrix. Anyone enumerating placements can
+     * skip these, since they lead to exactly the same boards.
+     */
+    private static int[][] findCanonicalRotations() {
+        int[][] canonical = new int[shapes.length][4];
+        for (int id = 0; id < shapes.length; id++) {
+            for (int rotation = 0; rotation < 4; rotation++) {
+                int earlier = 0;
+                while (!isSameOutline(rotations[id][earlier], rotations[id][rotation])) {
+                    earlier++;
+                }
+                canonical[id][rotation] = earlier;
+            }
+        }
+        return canonical;
+    }
+
+    /* Compares the filled spaces of two shapes, ignoring where they sit in the matrix */
+    private static boolean isSameOutline(TetrisShape a, TetrisShape b) {
+        long[] rowsA = trimmedRows(a);
+        long[] rowsB = trimmedRows(b);
+        return Arrays.equals(rowsA, rowsB);
+    }
+
+    /* Row masks of a shape moved to the top left corner of its matrix */
+    private static long[] trimmedRows(TetrisShape shape) {
+        long[] masks = shape.getRowMasks();
+        int first = 0;
+        while (masks[first] == 0) {
+            first++;
+        }
+        int last = masks.length - 1;
+        while (masks[last] == 0) {
+            last--;
+        }
+        long[] trimmed = new long[last - first + 1];
+        for (int row = first; row <= last; row++) {
+            trimmed[row - first] = masks[row] >>> shape.getMinColumn();
+        }
+        return trimmed;
+    }
+
+    /**
+     * Looks up one rotation of one of the 7 shapes
+     *
+     * @param shapeId: which shape (I_SHAPE, O_SHAPE, ...)
+     * @param rotation: number of clockwise rotations (0 to 3)
+     * @return the rotated shape
+     */
+    public static TetrisShape getShape(int shapeId, int rotation) {
+        return rotations[shapeId][rotation];
+    }
+
+    /**
+     * Finds the first rotation of a shape that covers the same cells
+     * as the rotation passed in (possibly the rotation itself)
+     *
+     * @param shapeId: which shape (I_SHAPE, O_SHAPE, ...)
+     * @param rotation: number of clockwise rotations (0 to 3)
+     * @return the lowest rotation with the same outline
+     */
+    public static int getCanonicalRotation(int shapeId, int rotation) {
+        return canonicalRotations[shapeId][rotation];
+    }
+
+    /**
+     * Looks up the wall kicks to try when rotating a shape: (x, y) offsets
+     * as pairs {x0, y0, x1, y1, ...}, to be tried in order until the rotated
+     * shape fits. The first pair is always (0, 0). The array is shared and
+     * must not be modified.
+     *
+     * @param shapeId: which shape (I_SHAPE, O_SHAPE, ...), or -1 for a shape not made here
+     * @param rotation: number of clockwise rotations of the shape before rotating (0 to 3)
+     * @param clockwise: true when rotating clockwise, false when counter-clockwise
+     * @return the offsets to try
+     */
+    public static int[] getKicks(int shapeId, int rotation, boolean clockwise) {
+        if (shapeId < 0) {
+            return NO_KICKS;
+        }
+        return kicks[shapeId][rotation][clockwise ? 0 : 1];
+    }
+
     /**
      * Randomly picks out and returns one of the 7
      * TetrisShapes
@@ -117,7 +299,19 @@ public class TetrisShapeFactory {
     public static TetrisShape getRandom() {
         //Generate a random integer r between 0 and 6
         Random r = new Random();
-        int randomIndex = r.nextInt(7);
+        return getRandom(r);
+    }
+
+    /**
+     * Picks out one of the 7 TetrisShapes using the random number
+     * generator passed in. Seeding that generator makes the sequence
+     * of shapes reproducible (ex: for headless games played by a bot)
+     *
+     * @param r: the random number generator to draw from
+     * @return a randomly selected TetrisShape
+     */
+    public static TetrisShape getRandom(Random r) {
+        int randomIndex = r.nextInt(NUM_SHAPES);
 
         return shapes[randomIndex];
     }
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+/**
+ * TetrisSparseGrid only stores the rows of the board that have locked
+ * cells, in an index sorted from the top row down. Empty rows cost
+ * nothing, so a board hundreds of thousands of rows tall with a small
+ * stack at the bottom takes about as much memory as its stack.
+ *
+ * Finding a row is a binary search over the stored rows. Removing a row
+ * only renumbers the stored rows above it.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisSparseGrid implements TetrisGrid {
+
+    private final int numRows;
+    private final int numCols;
+    private final int wordsPerRow;
+
+    //The stored rows, sorted by row number: their number, bits, colors and count
+    private int[] rowNumbers = new int[16];
+    private long[][] rowBits = new long[16][];
+    private byte[][] rowColors = new byte[16][];
+    private int[] rowCounts = new int[16];
+    private int numStoredRows = 0;
+
+    private int numFilledCells;
+
+    public TetrisSparseGrid(int numRows, int numCols) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        wordsPerRow = (numCols + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /* Position of a row in the index, or (-insertion point - 1) if it isn't stored */
+    private int find(int row) {
+        return Arrays.binarySearch(rowNumbers, 0, numStoredRows, row);
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumCols() {
+        return numCols;
+    }
+
+    @Override
+    public boolean isFilled(int x, int y) {
+        int index = find(y);
+        return index >= 0 && (rowBits[index][x / Long.SIZE] & (1L << (x % Long.SIZE))) != 0;
+    }
+
+    @Override
+    public int getColor(int x, int y) {
+        int index = find(y);
+        return (index >= 0) ? rowColors[index][x] & 0xFF : 0;
+    }
+
+    @Override
+    public void fill(int x, int y, int color) {
+        int index = find(y);
+        if (index < 0) {
+            index = insert(-index - 1, y);
+        }
+        rowColors[index][x] = (byte) color;
+        long[] bits = rowBits[index];
+        if ((bits[x / Long.SIZE] & (1L << (x % Long.SIZE))) == 0) {
+            bits[x / Long.SIZE] |= 1L << (x % Long.SIZE);
+            rowCounts[index]++;
+            numFilledCells++;
+        }
+    }
+
+    /* Adds an empty row to the index at the given position */
+    private int insert(int index, int row) {
+        if (numStoredRows == rowNumbers.length) {
+            int capacity = rowNumbers.length * 2;
+            rowNumbers = Arrays.copyOf(rowNumbers, capacity);
+            rowBits = Arrays.copyOf(rowBits, capacity);
+            rowColors = Arrays.copyOf(rowColors, capacity);
+            rowCounts = Arrays.copyOf(rowCounts, capacity);
+        }
+        int numAfter = numStoredRows - index;
+        System.arraycopy(rowNumbers, index, rowNumbers, index + 1, numAfter);
+        System.arraycopy(rowBits, index, rowBits, index + 1, numAfter);
+        System.arraycopy(rowColors, index, rowColors, index + 1, numAfter);
+        System.arraycopy(rowCounts, index, rowCounts, index + 1, numAfter);
+        rowNumbers[index] = row;
+        rowBits[index] = new long[wordsPerRow];
+        rowColors[index] = new byte[numCols];
+        rowCounts[index] = 0;
+        numStoredRows++;
+        return index;
+    }
+
+    @Override
+    public boolean isRowFull(int row) {
+        int index = find(row);
+        return index >= 0 && rowCounts[index] == numCols;
+    }
+
+    @Override
+    public boolean isRowEmpty(int row) {
+        return find(row) < 0;
+    }
+
+    @Override
+    public void removeRow(int row) {
+        int index = find(row);
+        int numAbove = (index >= 0) ? index : -index - 1;
+        if (index >= 0) {
+            numFilledCells -= rowCounts[index];
+            int numAfter = numStoredRows - index - 1;
+            System.arraycopy(rowNumbers, index + 1, rowNumbers, index, numAfter);
+            System.arraycopy(rowBits, index + 1, rowBits, index, numAfter);
+            System.arraycopy(rowColors, index + 1, rowColors, index, numAfter);
+            System.arraycopy(rowCounts, index + 1, rowCounts, index, numAfter);
+            numStoredRows--;
+            rowBits[numStoredRows] = null;
+            rowColors[numStoredRows] = null;
+        }
+        //Every row above the removed one moves down by one
+        for (int i = 0; i < numAbove; i++) {
+            rowNumbers[i]++;
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(rowBits, 0, numStoredRows, null);
+        Arrays.fill(rowColors, 0, numStoredRows, null);
+        numStoredRows = 0;
+        numFilledCells = 0;
+    }
+
+    @Override
+    public int getTopRow() {
+        return (numStoredRows > 0) ? rowNumbers[0] : numRows;
+    }
+
+    @Override
+    public int getNumFilledCells() {
+        return numFilledCells;
+    }
+}
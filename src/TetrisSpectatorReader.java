@@ -0,0 +1,271 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Random;
+
+/**
+ * TetrisSpectatorReader rebuilds a game from the stream written by a
+ * TetrisSpectatorWriter: the locked cells, the falling shape and the score
+ * are exactly those of the game being followed, as of the last frame read.
+ *
+ * Usage: java TetrisSpectatorReader [numGames]
+ * writes a stream of random games, with falling shapes partly off the board
+ * on every side, and checks that it reads back to the same games.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisSpectatorReader {
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    //The game as rebuilt so far (the board is created by the keyframe)
+    private TetrisBoard board;
+    private TetrisShape fallingShape;
+    private int shapeX;
+    private int shapeY;
+    private int numLinesCleared;
+    private int numTetrisCleared;
+    private int numShapesLocked;
+    private boolean gameOverFlag = false;
+
+    //Number of frames read
+    private int numFrames = 0;
+
+    /**
+     * @param channel: where the stream is read from
+     */
+    public TetrisSpectatorReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.flip();
+    }
+
+    /**
+     * Reads the next frame and applies its changes
+     *
+     * @return false if the stream has ended
+     */
+    public boolean readFrame() throws IOException {
+        if (!fill(1)) {
+            return false;
+        }
+        //The length is a variable length integer of at most 5 bytes
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (!fill(1)) {
+                throw new IOException("Stream ended in the middle of a frame");
+            }
+            byte b = buffer.get();
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        if (!fill(length)) {
+            throw new IOException("Stream ended in the middle of a frame");
+        }
+
+        int end = buffer.position() + length;
+        while (buffer.position() < end) {
+            readEvent();
+        }
+        numFrames++;
+        return true;
+    }
+
+    /* Applies one event of a frame */
+    private void readEvent() throws IOException {
+        int op = buffer.get();
+        switch (op) {
+            case TetrisSpectatorWriter.OP_KEYFRAME:
+                board = new TetrisBoard((int) getVarLong(), (int) getVarLong());
+                long[] rows = new long[board.getNumRows()];
+                int numNonEmptyRows = (int) getVarLong();
+                for (int i = 0; i < numNonEmptyRows; i++) {
+                    int row = (int) getVarLong();
+                    rows[row] = getVarLong();
+                }
+                board.setRows(rows);
+                readPiece();
+                numLinesCleared = (int) getVarLong();
+                numTetrisCleared = (int) getVarLong();
+                numShapesLocked = (int) getVarLong();
+                gameOverFlag = buffer.get() != 0;
+                break;
+            case TetrisSpectatorWriter.OP_PIECE:
+                readPiece();
+                break;
+            case TetrisSpectatorWriter.OP_LOCK:
+                readPiece();
+                board.place(fallingShape, shapeX, shapeY);
+                break;
+            case TetrisSpectatorWriter.OP_CLEAR:
+                board.removeRow((int) getVarLong());
+                break;
+            case TetrisSpectatorWriter.OP_GARBAGE:
+                int count = (int) getVarLong();
+                long garbage = ((1L << board.getNumCols()) - 1) & ~(1L << getVarLong());
+                for (int i = 0; i < count; i++) {
+                    board.addRowAtBottom(garbage);
+                }
+                break;
+            case TetrisSpectatorWriter.OP_SCORE:
+                numLinesCleared = (int) getVarLong();
+                numTetrisCleared = (int) getVarLong();
+                numShapesLocked = (int) getVarLong();
+                break;
+            case TetrisSpectatorWriter.OP_GAME_OVER:
+                gameOverFlag = true;
+                break;
+            default:
+                throw new IOException("Unknown event: " + op);
+        }
+    }
+
+    /* A shape: its id and rotation in one byte, then its location */
+    private void readPiece() {
+        int idAndRotation = buffer.get();
+        fallingShape = TetrisShapeFactory.getShape(idAndRotation >> 2, idAndRotation & 3);
+        shapeX = unzigzag(getVarLong());
+        shapeY = unzigzag(getVarLong());
+    }
+
+    /* Undoes TetrisSpectatorWriter's zigzag encoding of numbers that can be negative */
+    private static int unzigzag(long zigzag) {
+        return (int) ((zigzag >>> 1) ^ -(zigzag & 1));
+    }
+
+    private long getVarLong() {
+        long value = 0L;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Makes sure the buffer holds at least the given number of unread bytes
+     *
+     * @return false if the stream ended before that
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        if (buffer.capacity() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2));
+            bigger.put(buffer);
+            buffer = bigger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Getter for the board rebuilt so far. It must not be modified.
+     *
+     * @return the locked cells (null until the keyframe is read)
+     */
+    public TetrisBoard getBoard() {
+        return board;
+    }
+
+    public TetrisShape getFallingShape() {
+        return fallingShape;
+    }
+
+    public int getShapeX() {
+        return shapeX;
+    }
+
+    public int getShapeY() {
+        return shapeY;
+    }
+
+    public int getNumLinesCleared() {
+        return numLinesCleared;
+    }
+
+    public int getNumTetrisCleared() {
+        return numTetrisCleared;
+    }
+
+    public int getNumShapesLocked() {
+        return numShapesLocked;
+    }
+
+    public boolean isGameOver() {
+        return gameOverFlag;
+    }
+
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int numGames = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        int maxTicks = 1000;
+        Random random = new Random(0);
+        for (int game = 0; game < numGames; game++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            TetrisSpectatorWriter writer = new TetrisSpectatorWriter(Channels.newChannel(bytes));
+            TetrisEngine engine = new TetrisEngine(game);
+            writer.attach(engine);
+
+            //Every tick sends the falling shape, now and then partly off the board (above it, left or right of it)
+            int[] xs = new int[maxTicks];
+            int[] ys = new int[maxTicks];
+            int numTicks = 0;
+            while (numTicks < maxTicks && !engine.isGameOver()) {
+                engine.applyMove(random.nextInt(Constants.MOVE_HARD_DROP + 1));
+                boolean offBoard = random.nextInt(8) == 0;
+                xs[numTicks] = offBoard ? random.nextInt(16) - 3 : engine.getShapeX();
+                ys[numTicks] = offBoard ? -1 - random.nextInt(3) : engine.getShapeY();
+                writer.pieceMoved(engine.getFallingShape(), xs[numTicks], ys[numTicks]);
+                writer.endTick();
+                numTicks++;
+            }
+
+            TetrisSpectatorReader reader = new TetrisSpectatorReader(
+                    Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+            reader.readFrame();
+            String difference = null;
+            for (int tick = 0; tick < numTicks && difference == null; tick++) {
+                if (!reader.readFrame()) {
+                    difference = "stream, " + tick + " frames long";
+                } else if (reader.getShapeX() != xs[tick] || reader.getShapeY() != ys[tick]) {
+                    difference = "location at tick " + tick + ": (" + reader.getShapeX() + ", "
+                            + reader.getShapeY() + ") instead of (" + xs[tick] + ", " + ys[tick] + ")";
+                }
+            }
+            for (int row = 0; row < engine.getBoard().getNumRows() && difference == null; row++) {
+                if (reader.getBoard().getRow(row) != engine.getBoard().getRow(row)) {
+                    difference = "row " + row;
+                }
+            }
+            if (difference == null && (reader.getNumLinesCleared() != engine.getNumLinesCleared()
+                    || reader.isGameOver() != engine.isGameOver())) {
+                difference = "score";
+            }
+            if (difference != null) {
+                System.out.println("Game " + game + " reads back with a different " + difference);
+                return;
+            }
+        }
+        System.out.println(numGames + " games read back the same");
+    }
+}
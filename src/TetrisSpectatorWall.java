@@ -0,0 +1,245 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * TetrisSpectatorWall shows many live games at once, each as a small grid,
+ * in a single component (ex: every game of a TetrisGameHost).
+ *
+ * All the grids are drawn into one offscreen image. Once a frame, every
+ * game is checked for changes (by its state hash, so a game that didn't
+ * change costs a single comparison) and only the grids of the games that
+ * changed are drawn again, with TetrisGridView's drawing methods. The part
+ * of the component to repaint is then just the area around those grids.
+ *
+ * @author Sabirah Shuaybi
+ */
+@SuppressWarnings("serial")
+public class TetrisSpectatorWall extends JComponent implements ActionListener {
+
+    //Space (in pixels) between two grids
+    private static final int MARGIN = 4;
+
+    private static final Color LOCKED_COLOR = Color.GRAY;
+    private static final Color GAME_OVER_SHADE = new Color(0, 0, 0, 128);
+
+    private final List<TetrisHostedGame> games = new ArrayList<>();
+    private final int cellSize;
+    private final int gridsPerRow;
+
+    //Every grid gets a tile big enough for the largest board on the wall
+    private int tileRows = 0;
+    private int tileCols = 0;
+
+    //State hash of every game when its grid was last drawn,
+    //and whether it has to be drawn no matter what the hash is
+    private long[] drawnStates = new long[16];
+    private boolean[] needsDrawing = new boolean[16];
+
+    private BufferedImage image;
+    private final Timer timer;
+
+    /**
+     * @param gridsPerRow: number of grids side by side
+     * @param cellSize: width and height of a cell, in pixels
+     */
+    public TetrisSpectatorWall(int gridsPerRow, int cellSize) {
+        this.gridsPerRow = gridsPerRow;
+        this.cellSize = cellSize;
+        timer = new Timer(Constants.FRAME_DELAY, this);
+    }
+
+    /**
+     * Adds a game to the wall (call from the event dispatch thread)
+     *
+     * @param game: the game to show
+     */
+    public void addGame(TetrisHostedGame game) {
+        games.add(game);
+        TetrisBoard board = game.getEngine().getBoard();
+        tileRows = Math.max(tileRows, board.getNumRows());
+        tileCols = Math.max(tileCols, board.getNumCols());
+        if (games.size() > drawnStates.length) {
+            drawnStates = Arrays.copyOf(drawnStates, drawnStates.length * 2);
+            needsDrawing = Arrays.copyOf(needsDrawing, needsDrawing.length * 2);
+        }
+        //The image is made again at its new size, with every grid on it
+        image = null;
+        revalidate();
+        repaint();
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    /* Width and height of one grid, including the margin around it */
+    private int getTileWidth() {
+        return tileCols * cellSize + 2 * MARGIN;
+    }
+
+    private int getTileHeight() {
+        return tileRows * cellSize + 2 * MARGIN;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int numRows = (games.size() + gridsPerRow - 1) / gridsPerRow;
+        return new Dimension(Math.min(games.size(), gridsPerRow) * getTileWidth(), numRows * getTileHeight());
+    }
+
+    /** Called by the timer once a frame: draws the games that changed */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        Rectangle dirty = update();
+        if (dirty != null) {
+            repaint(dirty);
+        }
+    }
+
+    /**
+     * Draws the grid of every game that changed since it was last drawn
+     * into the offscreen image
+     *
+     * @return the area of the image that changed (null if nothing did)
+     */
+    public Rectangle update() {
+        if (image == null) {
+            Dimension size = getPreferredSize();
+            image = new BufferedImage(Math.max(1, size.width), Math.max(1, size.height), BufferedImage.TYPE_INT_RGB);
+            Arrays.fill(needsDrawing, true);
+        }
+
+        Rectangle dirty = null;
+        Graphics2D g = image.createGraphics();
+        for (int i = 0; i < games.size(); i++) {
+            TetrisHostedGame game = games.get(i);
+            int x = (i % gridsPerRow) * getTileWidth();
+            int y = (i / gridsPerRow) * getTileHeight();
+            synchronized (game) {
+                TetrisEngine engine = game.getEngine();
+                //Game over changes the look of a grid without changing its hash
+                long state = engine.getStateHash() ^ (engine.isGameOver() ? 1L : 0L);
+                if (!needsDrawing[i] && drawnStates[i] == state) {
+                    continue;
+                }
+                drawnStates[i] = state;
+                needsDrawing[i] = false;
+                drawGrid(g, engine, x + MARGIN, y + MARGIN);
+            }
+            Rectangle tile = new Rectangle(x, y, getTileWidth(), getTileHeight());
+            dirty = (dirty == null) ? tile : dirty.union(tile);
+        }
+        g.dispose();
+        return dirty;
+    }
+
+    /* Draws one game's grid with its top left corner at (x, y) */
+    private void drawGrid(Graphics2D g, TetrisEngine engine, int x, int y) {
+        TetrisBoard board = engine.getBoard();
+        int width = board.getNumCols() * cellSize;
+        int height = board.getNumRows() * cellSize;
+        g.setColor(Color.WHITE);
+        g.fillRect(x, y, width + 1, height + 1);
+        g.setColor(Color.LIGHT_GRAY);
+        TetrisGridView.drawGridLines(g, x, y, cellSize, board.getNumRows(), board.getNumCols());
+        TetrisGridView.drawBoard(g, board, engine.isGameOver() ? null : engine.getFallingShape(),
+                engine.getShapeX(), engine.getShapeY(), x, y, cellSize, LOCKED_COLOR);
+        if (engine.isGameOver()) {
+            g.setColor(GAME_OVER_SHADE);
+            g.fillRect(x, y, width + 1, height + 1);
+        }
+    }
+
+    /**
+     * Getter for the offscreen image the grids are drawn into
+     *
+     * @return the image (null until the first update)
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public void paintComponent(Graphics g) {
+        if (image == null) {
+            update();
+        }
+        g.drawImage(image, 0, 0, null);
+    }
+
+    /**
+     * Shows a wall of hosted games played by a bot.
+     *
+     * Usage: java TetrisSpectatorWall [numGames] [gridsPerRow] [cellSize]
+     */
+    public static void main(String[] args) {
+        int numGames = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        int gridsPerRow = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int cellSize = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+
+        TetrisGameHost host = new TetrisGameHost(2, 8);
+        List<TetrisHostedGame> games = new ArrayList<>();
+        for (int i = 0; i < numGames; i++) {
+            games.add(host.addGame(i, Constants.EASY_LEVEL));
+        }
+
+        SwingUtilities.invokeLater(() -> {
+            TetrisSpectatorWall wall = new TetrisSpectatorWall(gridsPerRow, cellSize);
+            for (TetrisHostedGame game : games) {
+                wall.addGame(game);
+            }
+            JFrame frame = new JFrame("Tetris - " + numGames + " games");
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.add(wall);
+            frame.pack();
+            frame.setVisible(true);
+            wall.start();
+        });
+
+        //Plays every game with a bot, one placement whenever a new shape comes in
+        TetrisBot bot = new TetrisBot(new TetrisEvaluator());
+        int[] planned = new int[numGames];
+        Arrays.fill(planned, -1);
+        while (true) {
+            for (int i = 0; i < numGames; i++) {
+                TetrisHostedGame game = games.get(i);
+                synchronized (game) {
+                    TetrisEngine engine = game.getEngine();
+                    if (engine.isGameOver() || engine.getNumShapesLocked() == planned[i]) {
+                        continue;
+                    }
+                    planned[i] = engine.getNumShapesLocked();
+                    TetrisPlacement placement = bot.findBestPlacement(engine.getBoard(),
+                            engine.getFallingShape(), engine.getShapeX(), engine.getShapeY());
+                    if (placement != null) {
+                        for (int move : placement.getMoves()) {
+                            game.submitMove(move);
+                        }
+                    }
+                }
+            }
+            try {
+                Thread.sleep(Constants.FRAME_DELAY);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * TetrisSpectatorWriter turns the changes a TetrisEngine makes into a
+ * compact stream of bytes for spectators, written to any channel (a file,
+ * a pipe, a socket). A TetrisSpectatorReader at the other end rebuilds the
+ * exact same game from it.
+ *
+ * The stream starts with a keyframe (the whole game as it is when the
+ * writer is attached), then every tick adds a frame with only what changed:
+ * shapes locked, rows cleared, garbage added, and the falling shape and the
+ * score as they are at the end of the tick (a shape that moved three times
+ * in a tick is only sent once). A tick where nothing changed writes nothing.
+ *
+ * A frame is its length followed by its events. Every event is a byte
+ * telling what it is, followed by its numbers as variable length integers
+ * (7 bits per byte), so small numbers take a single byte.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisSpectatorWriter implements TetrisEngineListener {
+
+    public static final int OP_KEYFRAME = 0;
+    public static final int OP_PIECE = 1;
+    public static final int OP_LOCK = 2;
+    public static final int OP_CLEAR = 3;
+    public static final int OP_GARBAGE = 4;
+    public static final int OP_SCORE = 5;
+    public static final int OP_GAME_OVER = 6;
+
+    //Room left at the start of the buffer for the length of a frame
+    private static final int MAX_LENGTH_SIZE = 5;
+
+    private final WritableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+    //Falling shape and score as of the last change, sent at the end of the tick
+    private boolean pieceChanged = false;
+    private TetrisShape shape;
+    private int shapeX;
+    private int shapeY;
+    private boolean scoreChanged = false;
+    private int linesCleared;
+    private int tetrisCleared;
+    private int shapesLocked;
+
+    /**
+     * @param channel: where the stream is written to
+     */
+    public TetrisSpectatorWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        buffer.position(MAX_LENGTH_SIZE);
+    }
+
+    /**
+     * Starts following a game: writes a keyframe of the game as it is now
+     * and listens to its changes from then on
+     *
+     * @param engine: the game to follow
+     */
+    public void attach(TetrisEngine engine) throws IOException {
+        TetrisBoard board = engine.getBoard();
+        int numNonEmptyRows = 0;
+        for (int row = 0; row < board.getNumRows(); row++) {
+            numNonEmptyRows += board.isRowEmpty(row) ? 0 : 1;
+        }
+
+        putOp(OP_KEYFRAME);
+        putVarLong(board.getNumRows());
+        putVarLong(board.getNumCols());
+        putVarLong(numNonEmptyRows);
+        for (int row = 0; row < board.getNumRows(); row++) {
+            if (!board.isRowEmpty(row)) {
+                putVarLong(row);
+                putVarLong(board.getRow(row));
+            }
+        }
+        putPiece(engine.getFallingShape(), engine.getShapeX(), engine.getShapeY());
+        putVarLong(engine.getNumLinesCleared());
+        putVarLong(engine.getNumTetrisCleared());
+        putVarLong(engine.getNumShapesLocked());
+        putOp(engine.isGameOver() ? 1 : 0);
+
+        engine.setListener(this);
+        endTick();
+    }
+
+    @Override
+    public void pieceMoved(TetrisShape shape, int x, int y) {
+        this.shape = shape;
+        shapeX = x;
+        shapeY = y;
+        pieceChanged = true;
+    }
+
+    @Override
+    public void shapeLocked(TetrisShape shape, int x, int y) {
+        putOp(OP_LOCK);
+        putPiece(shape, x, y);
+    }
+
+    @Override
+    public void rowCleared(int row) {
+        putOp(OP_CLEAR);
+        putVarLong(row);
+    }
+
+    @Override
+    public void garbageAdded(int count, int holeColumn) {
+        putOp(OP_GARBAGE);
+        putVarLong(count);
+        putVarLong(holeColumn);
+    }
+
+    @Override
+    public void scoreChanged(int linesCleared, int tetrisCleared, int shapesLocked) {
+        this.linesCleared = linesCleared;
+        this.tetrisCleared = tetrisCleared;
+        this.shapesLocked = shapesLocked;
+        scoreChanged = true;
+    }
+
+    @Override
+    public void gameOver() {
+        putOp(OP_GAME_OVER);
+    }
+
+    /**
+     * Writes the frame of the tick that just ended (if anything changed)
+     */
+    public void endTick() throws IOException {
+        if (pieceChanged) {
+            putOp(OP_PIECE);
+            putPiece(shape, shapeX, shapeY);
+            pieceChanged = false;
+        }
+        if (scoreChanged) {
+            putOp(OP_SCORE);
+            putVarLong(linesCleared);
+            putVarLong(tetrisCleared);
+            putVarLong(shapesLocked);
+            scoreChanged = false;
+        }
+        int length = buffer.position() - MAX_LENGTH_SIZE;
+        if (length == 0) {
+            return;
+        }
+
+        //The length goes right in front of the events
+        int start = MAX_LENGTH_SIZE - getVarLongSize(length);
+        buffer.position(start);
+        putVarLong(length);
+        buffer.position(start);
+        buffer.limit(MAX_LENGTH_SIZE + length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        buffer.position(MAX_LENGTH_SIZE);
+    }
+
+    /* A shape: its id and rotation in one byte, then its location */
+    private void putPiece(TetrisShape shape, int x, int y) {
+        putOp((shape.getShapeId() << 2) | shape.getRotation());
+        //x and y can be negative (the empty columns and rows of a shape can be off the board)
+        putVarLong(zigzag(x));
+        putVarLong(zigzag(y));
+    }
+
+    /* Maps small negative numbers to small positive ones (0, -1, 1, -2 ... to 0, 1, 2, 3 ...) */
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private void putOp(int op) {
+        ensureRoom(1);
+        buffer.put((byte) op);
+    }
+
+    /* Writes a positive number, 7 bits per byte, lowest bits first */
+    private void putVarLong(long value) {
+        ensureRoom(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /* Number of bytes putVarLong writes for a number */
+    private static int getVarLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /* Grows the buffer if it can't take the given number of bytes */
+    private void ensureRoom(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+    }
+}
@@ -6,7 +6,9 @@ import javax.swing.Timer;
  * This class is an encapsulation of the SWING timer. It is used to
  * perform an action at regularly defined time intervals, in this case,
  * making the shape fall (or move down) at a specified speed.
- * The speed of the shape depends on the level of difficulty.
+ * The speed of the shape is dictated by a TetrisGravity curve: it starts
+ * at a speed that depends on the level of difficulty and is retuned,
+ * while the timer keeps running, as the player clears lines.
  *
  * @author Sabirah Shuaybi
  */
@@ -14,10 +16,18 @@ public class TetrisTimer implements ActionListener {
 
     private TetrisController controller;
     private Timer timer;
+    private TetrisGravity gravity;
 
-    public TetrisTimer(TetrisController controller, int level) {
+    //Number of rows the shape falls each time the timer fires (never more than the board has)
+    private int rowsPerTick;
+    private final int numRows;
+
+    public TetrisTimer(TetrisController controller, TetrisGravity gravity, int numRows) {
         this.controller = controller;
-        timer = new Timer(getSpeed(level), this);
+        this.gravity = gravity;
+        this.numRows = numRows;
+        timer = new Timer(gravity.getTimerDelay(gravity.getLevel(0)), this);
+        rowsPerTick = gravity.getRowsPerTick(gravity.getLevel(0), numRows);
 
         //Delay the timer by one second at start of game
         timer.setInitialDelay(Constants.ONE_SECOND);
@@ -25,18 +35,19 @@ public class TetrisTimer implements ActionListener {
     }
 
     /**
-     * Determines the frequency of the timer based on
-     * the level of difficulty passed in
+     * Retunes the running timer to the speed of the level reached
+     * after clearing the given number of lines. The timer is not
+     * restarted; the new delay takes effect from the next tick on.
      *
-     * @return the speed (in milliseconds) of the timer
-     * (in other words,how frequently the timer
-     * will call actionPerformed
+     * @param linesCleared: total number of lines cleared so far
      */
-    private int getSpeed(int level) {
-        switch (level) {
-            case Constants.HARD_LEVEL: return 500;
-            case Constants.MEDIUM_LEVEL: return 1000;
-            default: return 2000;
+    public void updateSpeed(int linesCleared) {
+        int level = gravity.getLevel(linesCleared);
+        rowsPerTick = gravity.getRowsPerTick(level, numRows);
+
+        int delay = gravity.getTimerDelay(level);
+        if (timer.getDelay() != delay) {
+            timer.setDelay(delay);
         }
     }
 
@@ -45,9 +56,18 @@ public class TetrisTimer implements ActionListener {
         timer.stop();
     }
 
+    /* Starts the timer again after it was stopped (ex: to go on with an undone game) */
+    public void start() {
+        timer.start();
+    }
+
     @Override
     public void actionPerformed(ActionEvent e) {
         //System.out.println("Timer fired");
-        controller.moveDown();
+        for (int row = 0; row < rowsPerTick; row++) {
+            //Stop falling for this tick as soon as the shape lands
+            if (!controller.moveDown())
+                break;
+        }
     }
 }
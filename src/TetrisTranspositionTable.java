@@ -0,0 +1,135 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TetrisTranspositionTable remembers what a search found out about a game
+ * state, keyed by the state's Zobrist hash, so that a state reached again
+ * through a different order of moves does not have to be searched twice.
+ *
+ * The table has a fixed number of slots (a power of two) and never grows.
+ * When two states want the same slot, the replacement policy keeps the one
+ * that was searched deeper, unless the stored one is left over from an
+ * earlier search (see newSearch), in which case it is always replaced.
+ *
+ * The table is lock-free and can be shared by any number of threads. Each
+ * slot stores the hash XORed with the data next to the data itself; a slot
+ * that was torn by two threads writing at the same time no longer XORs
+ * back to the hash and simply reads as a miss.
+ *
+ * Data is packed into a long: the score as a float, the depth it was
+ * searched to, a move (or placement index) and the search generation.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisTranspositionTable {
+
+    //Returned by get when the state is not in the table
+    public static final long MISSING = 0L;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    //Incremented for every new search, stored with every entry
+    private volatile int generation = 1;
+
+    /**
+     * @param log2Entries: the table holds 2^log2Entries entries
+     */
+    public TetrisTranspositionTable(int log2Entries) {
+        int numEntries = 1 << log2Entries;
+        slots = new AtomicLongArray(2 * numEntries);
+        mask = numEntries - 1;
+    }
+
+    /**
+     * Looks up a state
+     *
+     * @param hash: Zobrist hash of the state
+     * @return the packed data stored for the state, or MISSING
+     */
+    public long get(long hash) {
+        int index = 2 * (int) (hash & mask);
+        long data = slots.get(index + 1);
+        long check = slots.get(index);
+        if (data == MISSING || (check ^ data) != hash) {
+            return MISSING;
+        }
+        return data;
+    }
+
+    /**
+     * Stores what was found out about a state
+     *
+     * @param hash: Zobrist hash of the state
+     * @param score: the score of the state
+     * @param depth: how deep the state was searched (0 to 255)
+     * @param move: the best move or placement found (0 to 65535)
+     */
+    public void put(long hash, double score, int depth, int move) {
+        int index = 2 * (int) (hash & mask);
+        long old = slots.get(index + 1);
+        if (isFromCurrentSearch(old) && getDepth(old) > depth) {
+            //Keep the deeper result of the current search
+            return;
+        }
+        long data = pack(score, depth, move, generation);
+        slots.set(index + 1, data);
+        slots.set(index, hash ^ data);
+    }
+
+    /**
+     * Marks the start of a new search. Entries of earlier searches stay
+     * readable but are replaced whenever their slot is needed.
+     *
+     * The generation is stored in 8 bits, so after 255 searches it comes
+     * back around; the table is emptied then, or entries of the search that
+     * had the same generation 255 searches ago would pass for current ones.
+     */
+    public void newSearch() {
+        if (generation == 255) {
+            clear();
+            generation = 1;
+        } else {
+            generation++;
+        }
+    }
+
+    /**
+     * @return true if a packed entry was stored during the current search
+     */
+    public boolean isFromCurrentSearch(long data) {
+        return data != MISSING && getGeneration(data) == (generation & 0xFF);
+    }
+
+    /** Empties the table (not while it is being used by other threads) */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, 0L);
+        }
+    }
+
+    /* Packs an entry, making sure it never equals MISSING (the generation is never 0) */
+    private static long pack(double score, int depth, int move, int generation) {
+        long scoreBits = Float.floatToIntBits((float) score) & 0xFFFFFFFFL;
+        return (scoreBits << 32) | ((long) (depth & 0xFF) << 24)
+                | ((long) (move & 0xFFFF) << 8) | (generation & 0xFF);
+    }
+
+    /** @return the score stored in a packed entry */
+    public static double getScore(long data) {
+        return Float.intBitsToFloat((int) (data >>> 32));
+    }
+
+    /** @return the depth stored in a packed entry */
+    public static int getDepth(long data) {
+        return (int) (data >>> 24) & 0xFF;
+    }
+
+    /** @return the move stored in a packed entry */
+    public static int getMove(long data) {
+        return (int) (data >>> 8) & 0xFFFF;
+    }
+
+    private static int getGeneration(long data) {
+        return (int) data & 0xFF;
+    }
+}
@@ -22,6 +22,9 @@ import java.util.Set;
 
 public class TetrisUtil {
 
+    //Sounds can be turned off (ex: for headless games and tests)
+    private static volatile boolean soundEnabled = true;
+
     /**
      * Translates the matrix definition of a TetrisShape
      * (which consists of 1s and 0s) into absolute location
@@ -119,6 +122,56 @@ public class TetrisUtil {
         return rotated;
     }
 
+    /**
+     * Finds the lowest filled space (1) in each column of a
+     * shape matrix. Since the shape matrix is indexed as
+     * [row][column], this scans every column from the bottom up.
+     *
+     * @param matrix: the 2D array definition of a shape
+     * @return for each column, the row of its lowest 1 (or -1 if empty)
+     */
+    public static int[] computeColumnBottoms(int[][] matrix) {
+        int[] bottoms = new int[matrix[0].length];
+        for (int col = 0; col < bottoms.length; col++) {
+            bottoms[col] = -1;
+            for (int row = matrix.length - 1; row >= 0; row--) {
+                if (matrix[row][col] == 1) {
+                    bottoms[col] = row;
+                    break;
+                }
+            }
+        }
+        return bottoms;
+    }
+
+    /**
+     * Packs every row of a shape matrix into the bits of a long
+     * (bit i of a row's mask is set if column i of that row is 1)
+     *
+     * @param matrix: the 2D array definition of a shape
+     * @return one bit mask per row of the matrix
+     */
+    public static long[] computeRowMasks(int[][] matrix) {
+        long[] masks = new long[matrix.length];
+        for (int row = 0; row < matrix.length; row++) {
+            for (int col = 0; col < matrix[row].length; col++) {
+                if (matrix[row][col] == 1) {
+                    masks[row] |= 1L << col;
+                }
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Turns the sound effects on or off, for every game
+     *
+     * @param enabled: false to play no sounds
+     */
+    public static void setSoundEnabled(boolean enabled) {
+        soundEnabled = enabled;
+    }
+
     /**
      * Plays the sound associated with a line being cleared
      */
@@ -154,6 +207,9 @@ public class TetrisUtil {
      * @param soundFile; the audio file to be played
      */
     private static void playSound(String soundFile) {
+        if (!soundEnabled) {
+            return;
+        }
         try {
             File f = new File("./" + soundFile);
             AudioInputStream audioIn = AudioSystem.getAudioInputStream(f.toURI().toURL());
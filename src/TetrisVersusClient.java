@@ -0,0 +1,283 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * TetrisVersusClient is a player of a TetrisVersusServer match on the same
+ * machine. It is a stand-in for a real player's program: it keeps a copy of
+ * every player's board up to date from the server's messages, and it can
+ * send moves, either one at a time or chosen by a TetrisBot.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisVersusClient {
+
+    private final SocketChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(TetrisVersusProtocol.HEADER_SIZE);
+    private final ByteBuffer move = ByteBuffer.allocate(1);
+
+    //Sent by the server when joining
+    private int playerIndex;
+    private int numPlayers;
+    private int numRows;
+    private int numCols;
+
+    //Copy of every player's game, as last told by the server
+    private long[][] rows;
+    private int[] shapeIds;
+    private int[] rotations;
+    private int[] shapeXs;
+    private int[] shapeYs;
+    private int[] linesCleared;
+    private int[] tetrisCleared;
+    private int[] shapesLocked;
+    private int[] levels;
+    private int[] pendingGarbage;
+    private boolean[] gameOver;
+
+    private int tick = -1;
+    private boolean ended = false;
+    private int winner = -1;
+
+    /**
+     * Joins the match of the server on this machine at the given port,
+     * waiting for the server's welcome
+     *
+     * @param port: port of the server
+     */
+    public TetrisVersusClient(int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        channel.socket().setTcpNoDelay(true);
+        if (receive() != TetrisVersusProtocol.MSG_WELCOME) {
+            throw new IOException("Expected a welcome message");
+        }
+    }
+
+    /**
+     * Waits for the next message from the server and applies it
+     *
+     * @return the type of the message (MSG_ constants of TetrisVersusProtocol)
+     */
+    public byte receive() throws IOException {
+        header.clear();
+        readFully(header);
+        int length = header.getInt(0);
+        if (length <= 0 || length > TetrisVersusProtocol.MAX_MESSAGE_SIZE) {
+            throw new IOException("Bad message length: " + length);
+        }
+        ByteBuffer message = ByteBuffer.allocate(length);
+        readFully(message);
+        message.flip();
+
+        byte type = message.get();
+        switch (type) {
+            case TetrisVersusProtocol.MSG_WELCOME: readWelcome(message); break;
+            case TetrisVersusProtocol.MSG_STATE: readState(message); break;
+            case TetrisVersusProtocol.MSG_END:
+                ended = true;
+                winner = message.get();
+                break;
+            default: throw new IOException("Unknown message type: " + type);
+        }
+        return type;
+    }
+
+    /* Reads until the buffer is full */
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private void readWelcome(ByteBuffer message) {
+        playerIndex = message.get();
+        numPlayers = message.get();
+        numRows = message.get();
+        numCols = message.get();
+
+        rows = new long[numPlayers][numRows];
+        shapeIds = new int[numPlayers];
+        rotations = new int[numPlayers];
+        shapeXs = new int[numPlayers];
+        shapeYs = new int[numPlayers];
+        linesCleared = new int[numPlayers];
+        tetrisCleared = new int[numPlayers];
+        shapesLocked = new int[numPlayers];
+        levels = new int[numPlayers];
+        pendingGarbage = new int[numPlayers];
+        gameOver = new boolean[numPlayers];
+        Arrays.fill(shapeIds, -1);
+    }
+
+    private void readState(ByteBuffer message) {
+        tick = message.getInt();
+        int numChanged = message.get();
+        for (int i = 0; i < numChanged; i++) {
+            int player = message.get();
+            int flags = message.get();
+            if ((flags & TetrisVersusProtocol.FLAG_PIECE) != 0) {
+                shapeIds[player] = message.get();
+                rotations[player] = message.get();
+                shapeXs[player] = message.get();
+                shapeYs[player] = message.get();
+            }
+            if ((flags & TetrisVersusProtocol.FLAG_ROWS) != 0) {
+                int numRowsChanged = message.get();
+                for (int j = 0; j < numRowsChanged; j++) {
+                    int row = message.get();
+                    rows[player][row] = TetrisVersusProtocol.getMask(message, numCols);
+                }
+            }
+            if ((flags & TetrisVersusProtocol.FLAG_SCORE) != 0) {
+                linesCleared[player] = message.getInt();
+                tetrisCleared[player] = message.getInt();
+                shapesLocked[player] = message.getInt();
+                levels[player] = message.get();
+                pendingGarbage[player] = message.get();
+            }
+            if ((flags & TetrisVersusProtocol.FLAG_GAME_OVER) != 0) {
+                gameOver[player] = true;
+            }
+        }
+    }
+
+    /**
+     * Sends a move to the server
+     *
+     * @param move: one of the MOVE_ constants defined in Constants
+     */
+    public void sendMove(int move) throws IOException {
+        this.move.clear();
+        this.move.put((byte) move).flip();
+        while (this.move.hasRemaining()) {
+            channel.write(this.move);
+        }
+    }
+
+    /**
+     * Plays the match until it ends: every time a new shape comes in, the
+     * bot picks where it goes and the moves to get there are sent
+     *
+     * @param bot: the bot choosing the placements
+     */
+    public void playWith(TetrisBot bot) {
+        TetrisBoard board = null;
+        int plannedShape = -1;
+        try {
+            while (!ended) {
+                if (receive() != TetrisVersusProtocol.MSG_STATE || gameOver[playerIndex]
+                        || shapesLocked[playerIndex] == plannedShape || shapeIds[playerIndex] < 0) {
+                    continue;
+                }
+                if (board == null) {
+                    board = new TetrisBoard(numRows, numCols);
+                }
+                board.setRows(rows[playerIndex]);
+                TetrisShape shape = TetrisShapeFactory.getShape(shapeIds[playerIndex], rotations[playerIndex]);
+                TetrisPlacement placement = bot.findBestPlacement(board, shape,
+                        shapeXs[playerIndex], shapeYs[playerIndex]);
+                plannedShape = shapesLocked[playerIndex];
+                if (placement != null) {
+                    for (int move : placement.getMoves()) {
+                        sendMove(move);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            close();
+        }
+    }
+
+    /** Leaves the match */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Getter for the copy of a player's board
+     *
+     * @param player: index of the player
+     * @return the bit mask of every row, from the top down
+     */
+    public long[] getRows(int player) {
+        return rows[player];
+    }
+
+    public int getPlayerIndex() {
+        return playerIndex;
+    }
+
+    public int getNumPlayers() {
+        return numPlayers;
+    }
+
+    public int getShapeId(int player) {
+        return shapeIds[player];
+    }
+
+    public int getRotation(int player) {
+        return rotations[player];
+    }
+
+    public int getShapeX(int player) {
+        return shapeXs[player];
+    }
+
+    public int getShapeY(int player) {
+        return shapeYs[player];
+    }
+
+    public int getNumLinesCleared(int player) {
+        return linesCleared[player];
+    }
+
+    public int getNumTetrisCleared(int player) {
+        return tetrisCleared[player];
+    }
+
+    public int getNumShapesLocked(int player) {
+        return shapesLocked[player];
+    }
+
+    public int getLevel(int player) {
+        return levels[player];
+    }
+
+    public int getPendingGarbage(int player) {
+        return pendingGarbage[player];
+    }
+
+    public boolean isGameOver(int player) {
+        return gameOver[player];
+    }
+
+    /**
+     * @return number of the last tick received
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * @return index of the winner once the match has ended (-1 if nobody won)
+     */
+    public int getWinner() {
+        return winner;
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.Random;
+
+/**
+ * TetrisVersusMatch is a game of two or more players against each other.
+ * Every player has their own TetrisHostedGame, and clearing lines sends
+ * garbage rows (full rows with one hole) to the opponents:
+ *
+ *   lines cleared:  1  2  3  4 (Tetris)
+ *   garbage rows:   0  1  2  4
+ *
+ * Garbage is worked out for every shape that clears lines on its own, even
+ * when a player locks several shapes within one tick (ex: two hard drops):
+ * two doubles send two rows, not the four rows of a Tetris. Garbage a player
+ * receives waits until their shape locks, then pushes their stack up. The
+ * last player left standing wins.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisVersusMatch {
+
+    //Garbage rows sent for the number of lines cleared by one shape
+    private static final int[] GARBAGE_FOR_LINES = {0, 0, 1, 2, 4};
+
+    private final TetrisHostedGame[] players;
+
+    //Garbage rows waiting to be added to every player's board
+    private final int[] pendingGarbage;
+
+    //Shapes locked by every player at the last tick, to see what changed
+    private final int[] shapesSeen;
+
+    //Line clears of the player being looked at (see TetrisHostedGame.drainLineClears)
+    private final int[] lineClears = new int[Constants.TETRIS + 1];
+
+    //Picks the column of the hole in garbage rows
+    private final Random holes;
+
+    /**
+     * @param numPlayers: number of players
+     * @param config: size of every player's board
+     * @param seed: seed of the match (every player gets the same shapes)
+     * @param difficulty: EASY_LEVEL, MEDIUM_LEVEL or HARD_LEVEL
+     * @param startTime: time the match starts at, in milliseconds
+     */
+    public TetrisVersusMatch(int numPlayers, TetrisConfig config, long seed, int difficulty, long startTime) {
+        TetrisGravity gravity = TetrisGravity.forDifficulty(difficulty);
+        players = new TetrisHostedGame[numPlayers];
+        for (int i = 0; i < numPlayers; i++) {
+            players[i] = new TetrisHostedGame(i, config, seed, gravity, startTime);
+        }
+        pendingGarbage = new int[numPlayers];
+        shapesSeen = new int[numPlayers];
+        holes = new Random(seed);
+    }
+
+    /**
+     * Advances every player's game to the given time, then sends and
+     * receives garbage
+     *
+     * @param now: current time in milliseconds
+     */
+    public void tick(long now) {
+        for (TetrisHostedGame player : players) {
+            player.tick(now);
+        }
+
+        //Every shape that cleared lines since the last tick sends garbage to everyone else
+        for (int i = 0; i < players.length; i++) {
+            players[i].drainLineClears(lineClears);
+            int garbage = 0;
+            for (int lines = 1; lines <= Constants.TETRIS; lines++) {
+                garbage += lineClears[lines] * GARBAGE_FOR_LINES[lines];
+            }
+            if (garbage > 0) {
+                for (int j = 0; j < players.length; j++) {
+                    if (j != i && !players[j].isGameOver()) {
+                        pendingGarbage[j] += garbage;
+                    }
+                }
+            }
+        }
+
+        //Garbage goes in once the receiving player's shape has locked
+        for (int i = 0; i < players.length; i++) {
+            TetrisHostedGame player = players[i];
+            synchronized (player) {
+                int shapes = player.getNumShapesLocked();
+                if (shapes != shapesSeen[i] && pendingGarbage[i] > 0) {
+                    player.getEngine().addGarbageRows(pendingGarbage[i], holes.nextInt(player.getEngine().getBoard().getNumCols()));
+                    pendingGarbage[i] = 0;
+                }
+                shapesSeen[i] = shapes;
+            }
+        }
+    }
+
+    /**
+     * Queues a move for a player (see TetrisHostedGame.submitMove)
+     *
+     * @param player: index of the player
+     * @param move: one of the MOVE_ constants defined in Constants
+     */
+    public void submitMove(int player, int move) {
+        players[player].submitMove(move);
+    }
+
+    public int getNumPlayers() {
+        return players.length;
+    }
+
+    public TetrisHostedGame getPlayer(int player) {
+        return players[player];
+    }
+
+    public int getPendingGarbage(int player) {
+        return pendingGarbage[player];
+    }
+
+    /**
+     * @return true once at most one player is left standing
+     */
+    public boolean isOver() {
+        int standing = 0;
+        for (TetrisHostedGame player : players) {
+            standing += player.isGameOver() ? 0 : 1;
+        }
+        return standing <= 1;
+    }
+
+    /**
+     * @return index of the last player standing, or -1 if the match isn't
+     * over (or every player lost in the same tick)
+     */
+    public int getWinner() {
+        if (!isOver()) {
+            return -1;
+        }
+        for (int i = 0; i < players.length; i++) {
+            if (!players[i].isGameOver()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
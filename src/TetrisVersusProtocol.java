@@ -0,0 +1,81 @@
+import java.nio.ByteBuffer;
+
+/**
+ * TetrisVersusProtocol holds the message format shared by
+ * TetrisVersusServer and TetrisVersusClient.
+ *
+ * Clients send moves, one byte per move (the MOVE_ constants defined in
+ * Constants). The server sends messages that start with their length (an
+ * int) and their type (a byte):
+ *
+ *   WELCOME: player index, number of players, rows, columns (a byte each)
+ *   STATE:   tick (int), number of players that changed (byte), then for
+ *            every player that changed: its index and a byte of flags,
+ *            followed by the parts the flags announce:
+ *              PIECE:  shape id, rotation, x, y (a byte each)
+ *              ROWS:   number of rows (byte), then for every row its index
+ *                      (byte) and its bit mask (one byte per 8 columns)
+ *              SCORE:  lines, Tetrises, shapes locked (int each), level and
+ *                      garbage waiting (a byte each)
+ *              GAME_OVER: nothing more
+ *   END:     index of the winner (byte, -1 if nobody won)
+ *
+ * Only what changed since the previous STATE message is sent, so a tick
+ * where nothing happened costs a few bytes no matter how many players
+ * there are.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisVersusProtocol {
+
+    public static final byte MSG_WELCOME = 0;
+    public static final byte MSG_STATE = 1;
+    public static final byte MSG_END = 2;
+
+    public static final int FLAG_PIECE = 1;
+    public static final int FLAG_ROWS = 2;
+    public static final int FLAG_SCORE = 4;
+    public static final int FLAG_GAME_OVER = 8;
+
+    //Number of bytes of the length that starts every message
+    public static final int HEADER_SIZE = 4;
+
+    //Largest message a client accepts
+    public static final int MAX_MESSAGE_SIZE = 1 << 20;
+
+    /**
+     * @param numCols: number of columns of the board
+     * @return number of bytes a row's bit mask is sent in
+     */
+    public static int getMaskSize(int numCols) {
+        return (numCols + 7) / 8;
+    }
+
+    /**
+     * Writes the bit mask of a row, lowest columns first
+     *
+     * @param buffer: the buffer to write to
+     * @param mask: the bit mask of the row
+     * @param numCols: number of columns of the board
+     */
+    public static void putMask(ByteBuffer buffer, long mask, int numCols) {
+        for (int i = 0; i < getMaskSize(numCols); i++) {
+            buffer.put((byte) (mask >>> (8 * i)));
+        }
+    }
+
+    /**
+     * Reads a bit mask written by putMask
+     *
+     * @param buffer: the buffer to read from
+     * @param numCols: number of columns of the board
+     * @return the bit mask of the row
+     */
+    public static long getMask(ByteBuffer buffer, int numCols) {
+        long mask = 0L;
+        for (int i = 0; i < getMaskSize(numCols); i++) {
+            mask |= (buffer.get() & 0xFFL) << (8 * i);
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,427 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TetrisVersusServer plays a TetrisVersusMatch for players connected over
+ * the network. It only listens on localhost.
+ *
+ * A single thread does everything with one non-blocking Selector: it
+ * accepts players until the match is full, reads their moves as they come
+ * in, and once a frame ticks the match and sends every player what
+ * changed (see TetrisVersusProtocol). The changes of a tick are encoded
+ * once and the same bytes are sent to every player. A player who can't
+ * keep up with the messages is disconnected rather than slowing down the
+ * others.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisVersusServer implements Runnable {
+
+    //Messages allowed to wait for a slow player before they are disconnected
+    private static final int MAX_QUEUED_MESSAGES = 256;
+
+    //Rows and y coordinates are sent as (signed) bytes
+    public static final int MAX_ROWS = Byte.MAX_VALUE;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final int numPlayers;
+    private final TetrisConfig config;
+    private final long seed;
+    private final int difficulty;
+
+    private final List<Player> players = new ArrayList<>();
+    private TetrisVersusMatch match;
+    private int tick = 0;
+
+    //What the players were last told about every board
+    private long[][] sentRows;
+    private int[] sentPiece;
+    private int[] sentShapes;
+    private int[] sentGarbage;
+    private boolean[] sentGameOver;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(256);
+
+    /**
+     * A connected player and the messages waiting to be sent to them
+     */
+    private static class Player {
+        final int index;
+        final SocketChannel channel;
+        final ArrayDeque<ByteBuffer> outgoing = new ArrayDeque<>();
+
+        Player(int index, SocketChannel channel) {
+            this.index = index;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * @param port: port to listen on (0 to pick any free port, see getPort)
+     * @param numPlayers: number of players the match waits for
+     * @param config: size of the players' boards (rows are sent as bytes, so at most MAX_ROWS)
+     * @param seed: seed of the match
+     * @param difficulty: EASY_LEVEL, MEDIUM_LEVEL or HARD_LEVEL
+     */
+    public TetrisVersusServer(int port, int numPlayers, TetrisConfig config, long seed,
+                              int difficulty) throws IOException {
+        if (config.getNumRows() > MAX_ROWS) {
+            throw new IllegalArgumentException("Versus boards can have at most " + MAX_ROWS + " rows: "
+                    + config.getNumRows());
+        }
+        this.numPlayers = numPlayers;
+        this.config = config;
+        this.seed = seed;
+        this.difficulty = difficulty;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Getter for the match (null until every player has joined)
+     *
+     * @return the match being played
+     */
+    public TetrisVersusMatch getMatch() {
+        return match;
+    }
+
+    /** Serves the match until it is over */
+    @Override
+    public void run() {
+        try {
+            long nextTick = 0;
+            while (match == null || !match.isOver()) {
+                if (match == null) {
+                    selector.select();
+                } else {
+                    selector.select(Math.max(1, nextTick - getTime()));
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        if (key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush((Player) key.attachment());
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                if (match == null && players.size() == numPlayers) {
+                    start();
+                    nextTick = getTime();
+                }
+                if (match != null && getTime() >= nextTick) {
+                    match.tick(getTime());
+                    broadcast(encodeState());
+                    nextTick += Constants.FRAME_DELAY;
+                }
+            }
+            ByteBuffer end = ByteBuffer.allocate(TetrisVersusProtocol.HEADER_SIZE + 2);
+            end.putInt(2).put(TetrisVersusProtocol.MSG_END).put((byte) match.getWinner()).flip();
+            broadcast(end);
+            finishSending();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            close();
+        }
+    }
+
+    /* Milliseconds on the server's clock */
+    private static long getTime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /* Accepts a player, or turns them away if the match is full */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        if (players.size() == numPlayers) {
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        Player player = new Player(players.size(), channel);
+        players.add(player);
+        channel.register(selector, SelectionKey.OP_READ, player);
+
+        ByteBuffer welcome = ByteBuffer.allocate(TetrisVersusProtocol.HEADER_SIZE + 5);
+        welcome.putInt(5).put(TetrisVersusProtocol.MSG_WELCOME).put((byte) player.index)
+                .put((byte) numPlayers).put((byte) config.getNumRows()).put((byte) config.getNumCols()).flip();
+        send(player, welcome);
+    }
+
+    /* Starts the match once every player is there */
+    private void start() {
+        match = new TetrisVersusMatch(numPlayers, config, seed, difficulty, getTime());
+        sentRows = new long[numPlayers][config.getNumRows()];
+        sentPiece = new int[numPlayers];
+        sentShapes = new int[numPlayers];
+        sentGarbage = new int[numPlayers];
+        sentGameOver = new boolean[numPlayers];
+        Arrays.fill(sentPiece, -1);
+        Arrays.fill(sentShapes, -1);
+    }
+
+    /* Reads the moves a player sent */
+    private void read(SelectionKey key) throws IOException {
+        Player player = (Player) key.attachment();
+        readBuffer.clear();
+        int numRead;
+        try {
+            numRead = player.channel.read(readBuffer);
+        } catch (IOException e) {
+            numRead = -1;
+        }
+        if (numRead < 0) {
+            disconnect(player);
+            return;
+        }
+        if (match == null) {
+            return;
+        }
+        for (int i = 0; i < numRead; i++) {
+            int move = readBuffer.get(i);
+            if (move >= 0 && move <= Constants.MOVE_HARD_DROP) {
+                match.submitMove(player.index, move);
+            }
+        }
+    }
+
+    /**
+     * Encodes what changed on every board since the last tick
+     *
+     * @return the STATE message
+     */
+    private ByteBuffer encodeState() {
+        int maskSize = TetrisVersusProtocol.getMaskSize(config.getNumCols());
+        int maxPerPlayer = 2 + 4 + 1 + config.getNumRows() * (1 + maskSize) + 14;
+        ByteBuffer buffer = ByteBuffer.allocate(TetrisVersusProtocol.HEADER_SIZE + 6 + numPlayers * maxPerPlayer);
+        buffer.position(TetrisVersusProtocol.HEADER_SIZE);
+        buffer.put(TetrisVersusProtocol.MSG_STATE).putInt(tick++);
+        int countPosition = buffer.position();
+        buffer.put((byte) 0);
+
+        int numChanged = 0;
+        for (int i = 0; i < numPlayers; i++) {
+            TetrisHostedGame game = match.getPlayer(i);
+            synchronized (game) {
+                if (encodePlayer(buffer, i, game.getEngine(), game.getLevel())) {
+                    numChanged++;
+                }
+            }
+        }
+        buffer.put(countPosition, (byte) numChanged);
+        buffer.putInt(0, buffer.position() - TetrisVersusProtocol.HEADER_SIZE);
+        buffer.flip();
+        return buffer;
+    }
+
+    /* Writes the changes of one player's board, returns false if nothing changed */
+    private boolean encodePlayer(ByteBuffer buffer, int index, TetrisEngine engine, int level) {
+        int start = buffer.position();
+        buffer.put((byte) index).put((byte) 0);
+        int flags = 0;
+
+        TetrisShape shape = engine.getFallingShape();
+        int piece = (shape.getShapeId() << 24) | (shape.getRotation() << 16)
+                | ((engine.getShapeX() & 0xFF) << 8) | (engine.getShapeY() & 0xFF);
+        if (piece != sentPiece[index]) {
+            sentPiece[index] = piece;
+            flags |= TetrisVersusProtocol.FLAG_PIECE;
+            buffer.put((byte) shape.getShapeId()).put((byte) shape.getRotation())
+                    .put((byte) engine.getShapeX()).put((byte) engine.getShapeY());
+        }
+
+        TetrisBoard board = engine.getBoard();
+        long[] sent = sentRows[index];
+        int numRowsChanged = 0;
+        for (int row = 0; row < sent.length; row++) {
+            if (board.getRow(row) != sent[row]) {
+                numRowsChanged++;
+            }
+        }
+        if (numRowsChanged > 0) {
+            flags |= TetrisVersusProtocol.FLAG_ROWS;
+            buffer.put((byte) numRowsChanged);
+            for (int row = 0; row < sent.length; row++) {
+                if (board.getRow(row) != sent[row]) {
+                    sent[row] = board.getRow(row);
+                    buffer.put((byte) row);
+                    TetrisVersusProtocol.putMask(buffer, sent[row], board.getNumCols());
+                }
+            }
+        }
+
+        //The score can only change when a shape locks or garbage is sent
+        int garbage = match.getPendingGarbage(index);
+        if (engine.getNumShapesLocked() != sentShapes[index] || garbage != sentGarbage[index]) {
+            sentShapes[index] = engine.getNumShapesLocked();
+            sentGarbage[index] = garbage;
+            flags |= TetrisVersusProtocol.FLAG_SCORE;
+            buffer.putInt(engine.getNumLinesCleared()).putInt(engine.getNumTetrisCleared())
+                    .putInt(engine.getNumShapesLocked()).put((byte) level)
+                    .put((byte) Math.min(garbage, Byte.MAX_VALUE));
+        }
+
+        if (engine.isGameOver() && !sentGameOver[index]) {
+            sentGameOver[index] = true;
+            flags |= TetrisVersusProtocol.FLAG_GAME_OVER;
+        }
+
+        if (flags == 0) {
+            buffer.position(start);
+            return false;
+        }
+        buffer.put(start + 1, (byte) flags);
+        return true;
+    }
+
+    /* Sends the same message to every player */
+    private void broadcast(ByteBuffer message) throws IOException {
+        for (Player player : new ArrayList<>(players)) {
+            send(player, message.duplicate());
+        }
+    }
+
+    /* Queues a message for a player and sends as much as can be sent right away */
+    private void send(Player player, ByteBuffer message) throws IOException {
+        if (!player.channel.isOpen()) {
+            return;
+        }
+        if (player.outgoing.size() == MAX_QUEUED_MESSAGES) {
+            disconnect(player);
+            return;
+        }
+        player.outgoing.add(message);
+        flush(player);
+    }
+
+    /* Writes queued messages until the connection can't take more */
+    private void flush(Player player) {
+        try {
+            while (!player.outgoing.isEmpty()) {
+                ByteBuffer message = player.outgoing.peek();
+                player.channel.write(message);
+                if (message.hasRemaining()) {
+                    break;
+                }
+                player.outgoing.poll();
+            }
+        } catch (IOException e) {
+            disconnect(player);
+            return;
+        }
+        SelectionKey key = player.channel.keyFor(selector);
+        if (key != null && key.isValid()) {
+            key.interestOps(player.outgoing.isEmpty() ? SelectionKey.OP_READ
+                    : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /* Gives the players a moment to receive the last messages */
+    private void finishSending() throws IOException {
+        long deadline = getTime() + Constants.ONE_SECOND;
+        while (getTime() < deadline && players.stream().anyMatch(p -> !p.outgoing.isEmpty() && p.channel.isOpen())) {
+            selector.select(Constants.FRAME_DELAY);
+            for (Player player : players) {
+                flush(player);
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    /* Closes a player's connection, their game goes on without moves */
+    private void disconnect(Player player) {
+        try {
+            player.channel.close();
+        } catch (IOException e) {
+            //already closed
+        }
+        player.outgoing.clear();
+    }
+
+    /** Closes every connection and stops listening */
+    public void close() {
+        for (Player player : players) {
+            disconnect(player);
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Plays a match between bots connected through loopback clients, on the
+     * board size set by the tetris.rows and tetris.cols system properties.
+     *
+     * Usage: java TetrisVersusServer [numPlayers] [seed]
+     */
+    public static void main(String[] args) throws Exception {
+        int numPlayers = (args.length > 0) ? Integer.parseInt(args[0]) : 2;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 0L;
+
+        TetrisVersusServer server = new TetrisVersusServer(0, numPlayers, TetrisConfig.fromSystemProperties(), seed,
+                Constants.HARD_LEVEL);
+        Thread serverThread = new Thread(server, "TetrisVersusServer");
+        serverThread.start();
+
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < numPlayers; i++) {
+            //Weaker weights for every other player, so the match has a winner
+            double[] weights = new TetrisEvaluator().getWeights();
+            weights[TetrisEvaluator.LINES_CLEARED] *= (i % 2 == 0) ? 1 : -1;
+            TetrisVersusClient client = new TetrisVersusClient(server.getPort());
+            TetrisBot bot = new TetrisBot(new TetrisEvaluator(weights));
+            Thread thread = new Thread(() -> client.playWith(bot), "TetrisVersusClient-" + i);
+            thread.start();
+            clients.add(thread);
+        }
+        for (Thread thread : clients) {
+            thread.join();
+        }
+        serverThread.join();
+
+        TetrisVersusMatch match = server.getMatch();
+        for (int i = 0; i < match.getNumPlayers(); i++) {
+            TetrisHostedGame player = match.getPlayer(i);
+            System.out.println("Player " + i + ": " + player.getNumLinesCleared() + " lines, "
+                    + player.getNumShapesLocked() + " shapes" + (player.isGameOver() ? ", lost" : ""));
+        }
+        System.out.println("Winner: player " + match.getWinner());
+    }
+}
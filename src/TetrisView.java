@@ -16,6 +16,14 @@ import java.awt.event.KeyEvent;
  * In order to handle events associated with the JButton and JComboBox, TetrisView
  * implements the ActionListner interface.
  *
+ * The controller doesn't call the view: it publishes what happened into a
+ * TetrisEventBuffer, which the view drains once a frame (on a SWING timer)
+ * to update its labels and repaint, once per frame at most.
+ *
+ * The player can step back and forth through the versions of the game kept
+ * in the model's history (B and F), which pauses the game, and undo the game
+ * back to the version shown (U).
+ *
  * NOTE: Key Bindings are used INSEAD of the KeyListener interface for key input because
  * I was having trouble implementing the KeyListener on this JPanel class.
  *
@@ -28,15 +36,35 @@ public class TetrisView extends JPanel implements ActionListener {
     private TetrisController controller;
     private TetrisModel model;
 
+    //Computer player, created the first time the player asks for it
+    private TetrisAutoPlayer autoPlayer;
+
+    //Events published by the controller, and the timer that drains them once a frame
+    private TetrisEventBuffer events = new TetrisEventBuffer();
+    private Timer frameTimer = new Timer(Constants.FRAME_DELAY, this);
+
     //The swing components needed for game display
     private JButton newGame;
     private JComboBox pickLevel;
     private JLabel linesCleared;
     private JLabel tetrisCleared;
+    private JLabel levelReached;
+    private JLabel finesseFaults;
     private JLabel gameOverMsg;
 
     private String[] LEVEL_ITEMS = {"Easy", "Medium", "Hard"};
 
+    //Number of the version of the game shown while stepping through its history (-1 while playing)
+    private int shownVersion = -1;
+
+    //Level of the game and when it started (to record its result once it ends)
+    private int level;
+    private long startTime;
+
+    //Set once the result is recorded; undoing out of game over doesn't clear it,
+    //so a game lost again after an undo isn't recorded a second time
+    private boolean gameRecorded = false;
+
     public TetrisView(TetrisModel model, int level, TetrisGUIApplication application) {
         super(new BorderLayout());
         gridView = new TetrisGridView(model);
@@ -45,6 +73,8 @@ public class TetrisView extends JPanel implements ActionListener {
         //call its createNewGame method
         this.application = application;
         this.model = model;
+        this.level = level;
+        startTime = System.currentTimeMillis();
 
         buildPanel();
         setSelectedLevel(pickLevel, level);
@@ -74,6 +104,16 @@ public class TetrisView extends JPanel implements ActionListener {
         actMap.put("RotateCW", new RotateCWAction());
         inMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_X, 0), "RotateCCW");
         actMap.put("RotateCCW", new RotateCCWAction());
+        inMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, 0), "HardDrop");
+        actMap.put("HardDrop", new HardDropAction());
+        inMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_A, 0), "AutoPlay");
+        actMap.put("AutoPlay", new AutoPlayAction());
+        inMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_B, 0), "StepBack");
+        actMap.put("StepBack", new StepBackAction());
+        inMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_F, 0), "StepForward");
+        actMap.put("StepForward", new StepForwardAction());
+        inMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_U, 0), "Undo");
+        actMap.put("Undo", new UndoAction());
     }
 
     /**
@@ -82,7 +122,7 @@ public class TetrisView extends JPanel implements ActionListener {
      */
     private void buildPanel() {
         //Score panel holds the two scoring aspects to Tetris
-        JPanel scorePanel = new JPanel(new GridLayout(4, 1));
+        JPanel scorePanel = new JPanel(new GridLayout(6, 1));
 
         //For spacing purposes
         scorePanel.add(Box.createRigidArea(new Dimension(0, 5)));
@@ -95,6 +135,14 @@ public class TetrisView extends JPanel implements ActionListener {
         tetrisCleared.setHorizontalAlignment(JLabel.CENTER);
         scorePanel.add(tetrisCleared);
 
+        levelReached = new JLabel("Level: 0");
+        levelReached.setHorizontalAlignment(JLabel.CENTER);
+        scorePanel.add(levelReached);
+
+        finesseFaults = new JLabel("Finesse Faults: 0");
+        finesseFaults.setHorizontalAlignment(JLabel.CENTER);
+        scorePanel.add(finesseFaults);
+
         gameOverMsg = new JLabel("");
         gameOverMsg.setHorizontalAlignment(JLabel.CENTER);
         scorePanel.add(gameOverMsg);
@@ -142,6 +190,59 @@ public class TetrisView extends JPanel implements ActionListener {
         this.controller = controller;
     }
 
+    /**
+     * Getter for the buffer the controller publishes its events into
+     *
+     * @return the event buffer of this view
+     */
+    public TetrisEventBuffer getEventBuffer() {
+        return events;
+    }
+
+    /* The frame timer only runs while the view is on screen */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        frameTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        frameTimer.stop();
+        super.removeNotify();
+    }
+
+    /**
+     * Applies every event published since the last frame: each label that
+     * changed is updated once and the view is repainted once
+     */
+    private void drainEvents() {
+        int drained = events.drain();
+        if (drained == 0) {
+            return;
+        }
+        if ((drained & TetrisEventBuffer.LINES_CLEARED) != 0) {
+            displayLinesCleared();
+        }
+        if ((drained & TetrisEventBuffer.TETRIS) != 0) {
+            displayTetrisCleared();
+        }
+        if ((drained & TetrisEventBuffer.LEVEL_CHANGED) != 0) {
+            displayLevel(events.getLevel());
+        }
+        if ((drained & TetrisEventBuffer.FINESSE_RECORDED) != 0) {
+            displayFinesseFaults();
+        }
+        if ((drained & TetrisEventBuffer.GAME_OVER) != 0) {
+            displayGameOverMessage();
+            if (!gameRecorded) {
+                gameRecorded = true;
+                application.recordGame(model, level, System.currentTimeMillis() - startTime);
+            }
+        }
+        repaint();
+    }
+
     /** Updates the number of lines cleared by user */
     public void displayLinesCleared() {
         linesCleared.setText("Lines Cleared: " + model.getNumLinesCleared());
@@ -155,6 +256,48 @@ public class TetrisView extends JPanel implements ActionListener {
         tetrisCleared.setText("Tetris Cleared: " + model.getNumTetrisCleared());
     }
 
+    /**
+     * Updates the level the player has reached
+     * (The level goes up as more lines are cleared)
+     *
+     * @param level: the current level
+     */
+    public void displayLevel(int level) {
+        levelReached.setText("Level: " + level);
+    }
+
+    /**
+     * Updates the finesse faults: the inputs made beyond the fewest that
+     * were needed, in total and per shape locked
+     */
+    public void displayFinesseFaults() {
+        int shapes = model.getNumShapesLocked();
+        double perShape = (shapes == 0) ? 0 : (double) model.getNumFinesseFaults() / shapes;
+        finesseFaults.setText(String.format("Finesse Faults: %d (%.2f per shape)",
+                model.getNumFinesseFaults(), perShape));
+    }
+
+    /**
+     * Shows a version of the game from the model's history, with its score
+     *
+     * @param index: number of the version
+     */
+    private void showVersion(int index) {
+        shownVersion = index;
+        TetrisBoardVersion version = model.getVersion(index);
+        gridView.setShownVersion(version);
+        linesCleared.setText("Lines Cleared: " + version.getNumLinesCleared());
+        tetrisCleared.setText("Tetris Cleared: " + version.getNumTetrisCleared());
+    }
+
+    /* Goes back to showing the game being played */
+    private void stopShowingVersions() {
+        shownVersion = -1;
+        gridView.setShownVersion(null);
+        displayLinesCleared();
+        displayTetrisCleared();
+    }
+
     public void displayGameOverMessage() {
         gameOverMsg.setText("GAME OVER!");
         gameOverMsg.setForeground(Color.red);
@@ -163,6 +306,10 @@ public class TetrisView extends JPanel implements ActionListener {
 
     @Override
     public void actionPerformed(ActionEvent e) {
+        if (e.getSource() == frameTimer) {
+            drainEvents();
+            return;
+        }
         if (controller == null)
             return;
         //Reset to a new game if the new game button is clicked OR a new level is selected
@@ -173,6 +320,10 @@ public class TetrisView extends JPanel implements ActionListener {
 
             //Must stop timer for a fresh timer
             controller.stopTimer();
+            controller.closeEventLog();
+            if (autoPlayer != null) {
+                autoPlayer.stop();
+            }
 
             if(pickLevel.getSelectedItem().toString().equals("Easy")) {
                 application.createNewGame(Constants.EASY_LEVEL);
@@ -199,36 +350,116 @@ public class TetrisView extends JPanel implements ActionListener {
 
     private class DownAction extends AbstractAction {
         public void actionPerformed(ActionEvent e) {
+            if (shownVersion >= 0)
+                return;
             controller.moveDown();
-            repaint();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class HardDropAction extends AbstractAction {
+        public void actionPerformed(ActionEvent e) {
+            if (shownVersion >= 0)
+                return;
+            controller.hardDrop();
+        }
+    }
+
+    /* Toggles the computer player on and off */
+    @SuppressWarnings("serial")
+    private class AutoPlayAction extends AbstractAction {
+        public void actionPerformed(ActionEvent e) {
+            //The computer player needs a TetrisBoard, which large boards don't have
+            if (model.getBoard() == null || shownVersion >= 0) {
+                return;
+            }
+            if (autoPlayer == null) {
+                autoPlayer = new TetrisAutoPlayer(controller, model,
+                        Constants.AUTO_PLAY_DELAY, Constants.AUTO_PLAY_MOVES_PER_TICK);
+            }
+            if (autoPlayer.isRunning()) {
+                autoPlayer.stop();
+            } else {
+                autoPlayer.start();
+            }
+        }
+    }
+
+    /* Steps back one version of the game (pausing the game at the first step) */
+    @SuppressWarnings("serial")
+    private class StepBackAction extends AbstractAction {
+        public void actionPerformed(ActionEvent e) {
+            if (shownVersion < 0) {
+                controller.stopTimer();
+                if (autoPlayer != null) {
+                    autoPlayer.stop();
+                }
+                showVersion(model.getNumVersions() - 1);
+            } else if (shownVersion > 0) {
+                showVersion(shownVersion - 1);
+            }
+        }
+    }
+
+    /* Steps forward one version of the game, back to the game being played after the last one */
+    @SuppressWarnings("serial")
+    private class StepForwardAction extends AbstractAction {
+        public void actionPerformed(ActionEvent e) {
+            if (shownVersion < 0) {
+                return;
+            }
+            if (shownVersion < model.getNumVersions() - 1) {
+                showVersion(shownVersion + 1);
+            } else {
+                stopShowingVersions();
+                controller.startTimer();
+            }
+        }
+    }
+
+    /* Undoes the game back to the version shown, and goes on playing from there */
+    @SuppressWarnings("serial")
+    private class UndoAction extends AbstractAction {
+        public void actionPerformed(ActionEvent e) {
+            if (shownVersion < 0) {
+                return;
+            }
+            int index = shownVersion;
+            stopShowingVersions();
+            controller.restoreVersion(index);
+            gameOverMsg.setText("");
         }
     }
 
     private class LeftAction extends AbstractAction {
         public void actionPerformed(ActionEvent e) {
+            if (shownVersion >= 0)
+                return;
             controller.moveLeft();
-            repaint();
         }
     }
 
     private class RightAction extends AbstractAction {
         public void actionPerformed(ActionEvent e) {
+            if (shownVersion >= 0)
+                return;
             controller.moveRight();
-            repaint();
         }
     }
 
     private class RotateCWAction extends AbstractAction {
         public void actionPerformed(ActionEvent e) {
+            if (shownVersion >= 0)
+                return;
             controller.rotateCW();
-            repaint();
         }
     }
 
     private class RotateCCWAction extends AbstractAction {
         public void actionPerformed(ActionEvent e) {
+            if (shownVersion >= 0)
+                return;
             controller.rotateCCW();
-            repaint();
         }
     }
 
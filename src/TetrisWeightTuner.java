@@ -0,0 +1,315 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * TetrisWeightTuner evolves the weights of the TetrisEvaluator with a
+ * genetic algorithm. Every candidate set of weights plays the same seeded
+ * headless games (TetrisEngine + TetrisBot), and its fitness is the number
+ * of lines it cleared plus a bonus for every Tetris, counted exactly like
+ * TetrisModel.incrementLinesCleared/incrementTetrisCleared count them.
+ * The fittest candidates survive and are crossed and mutated to make up
+ * the next generation.
+ *
+ * Candidates are spread over all the cores. A candidate that can no longer
+ * beat the weakest survivor, even if it maxed out every game it has left,
+ * stops playing early. After every generation the population is written
+ * to a checkpoint file, and a run started with an existing checkpoint
+ * picks up where that one left off.
+ *
+ * Usage: java TetrisWeightTuner [checkpointFile] [generations] [populationSize]
+ *                               [gamesPerCandidate] [maxShapesPerGame] [seed]
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisWeightTuner {
+
+    //Every Tetris counts this many lines on top of the 4 lines it cleared
+    private static final double TETRIS_BONUS = 4.0;
+
+    //Fraction of the population that survives into the next generation
+    private static final double SURVIVAL_RATE = 0.25;
+
+    //Chance and size of a mutation of each weight
+    private static final double MUTATION_RATE = 0.3;
+    private static final double MUTATION_SIZE = 0.2;
+
+    private final int populationSize;
+    private final int gamesPerCandidate;
+    private final int maxShapesPerGame;
+    private final Path checkpoint;
+    private final long seed;
+    private Random random;
+    private final ExecutorService executor;
+
+    private double[][] population;
+    private double[] fitness;
+    private int generation = 0;
+
+    public TetrisWeightTuner(int populationSize, int gamesPerCandidate, int maxShapesPerGame,
+                             Path checkpoint, long seed, int numThreads) {
+        this.populationSize = populationSize;
+        this.gamesPerCandidate = gamesPerCandidate;
+        this.maxShapesPerGame = maxShapesPerGame;
+        this.checkpoint = checkpoint;
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.executor = Executors.newFixedThreadPool(numThreads);
+    }
+
+    /**
+     * Loads the population from the checkpoint file if there is one,
+     * otherwise starts from random mutations of the default weights
+     */
+    public void initialize() throws IOException {
+        if (checkpoint != null && Files.exists(checkpoint)) {
+            loadCheckpoint();
+            return;
+        }
+        double[] defaults = new TetrisEvaluator().getWeights();
+        population = new double[populationSize][];
+        population[0] = defaults;
+        for (int i = 1; i < populationSize; i++) {
+            population[i] = mutate(defaults, 1.0);
+        }
+        fitness = new double[populationSize];
+    }
+
+    /**
+     * Runs one generation: evaluates every candidate, then breeds
+     * the next population from the fittest ones
+     */
+    public void runGeneration() throws IOException, InterruptedException, ExecutionException {
+        //Every candidate of a generation plays the same games, so they are compared fairly
+        long gameSeed = random.nextLong();
+        int numSurvivors = Math.max(2, (int) (populationSize * SURVIVAL_RATE));
+
+        //Evaluate the candidates in order of last generation's fitness, so the strong
+        //ones finish first and set the bar that the others are stopped early against
+        Integer[] order = rankByFitness();
+        Evaluation[] evaluations = new Evaluation[populationSize];
+        SurvivalBar bar = new SurvivalBar(numSurvivors);
+        List<Future<Double>> results = new ArrayList<>();
+        for (int rank = 0; rank < populationSize; rank++) {
+            int candidate = order[rank];
+            evaluations[candidate] = new Evaluation(population[candidate], gameSeed, bar);
+            results.add(executor.submit(evaluations[candidate]));
+        }
+        for (int rank = 0; rank < populationSize; rank++) {
+            fitness[order[rank]] = results.get(rank).get();
+        }
+
+        Integer[] ranked = rankByFitness();
+        generation++;
+        System.out.println("Generation " + generation + ": best " + String.format("%.1f", fitness[ranked[0]])
+                + " lines/game, weights " + Arrays.toString(population[ranked[0]]));
+
+        //The survivors stay as they are, the rest are children of two survivors
+        double[][] next = new double[populationSize][];
+        for (int i = 0; i < numSurvivors; i++) {
+            next[i] = population[ranked[i]];
+        }
+        for (int i = numSurvivors; i < populationSize; i++) {
+            double[] mother = population[ranked[random.nextInt(numSurvivors)]];
+            double[] father = population[ranked[random.nextInt(numSurvivors)]];
+            next[i] = mutate(crossover(mother, father), MUTATION_SIZE);
+        }
+        double[] nextFitness = new double[populationSize];
+        for (int i = 0; i < numSurvivors; i++) {
+            nextFitness[i] = fitness[ranked[i]];
+        }
+        population = next;
+        fitness = nextFitness;
+        saveCheckpoint();
+    }
+
+    /** Stops the worker threads */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /* Indices of the population, fittest first */
+    private Integer[] rankByFitness() {
+        Integer[] order = new Integer[populationSize];
+        for (int i = 0; i < populationSize; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(fitness[b], fitness[a]));
+        return order;
+    }
+
+    /* Picks every weight from either parent */
+    private double[] crossover(double[] mother, double[] father) {
+        double[] child = new double[mother.length];
+        for (int i = 0; i < child.length; i++) {
+            child[i] = random.nextBoolean() ? mother[i] : father[i];
+        }
+        return child;
+    }
+
+    /* Multiplies some of the weights by a random factor close to 1 */
+    private double[] mutate(double[] weights, double size) {
+        double[] mutated = weights.clone();
+        for (int i = 0; i < mutated.length; i++) {
+            if (random.nextDouble() < MUTATION_RATE) {
+                mutated[i] *= 1 + size * random.nextGaussian();
+                //Let a weight that reached 0 come back to life
+                mutated[i] += 0.01 * size * random.nextGaussian();
+            }
+        }
+        return mutated;
+    }
+
+    /**
+     * Writes the population to the checkpoint file. The file is written
+     * next to the old one and then moved over it, so an interrupted run
+     * never leaves a half written checkpoint behind.
+     */
+    private void saveCheckpoint() throws IOException {
+        if (checkpoint == null) {
+            return;
+        }
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write("generation " + generation);
+            out.newLine();
+            for (int i = 0; i < populationSize; i++) {
+                StringBuilder line = new StringBuilder();
+                line.append(fitness[i]);
+                for (double weight : population[i]) {
+                    line.append(' ').append(weight);
+                }
+                out.write(line.toString());
+                out.newLine();
+            }
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /* Reads back a population written by saveCheckpoint */
+    private void loadCheckpoint() throws IOException {
+        List<double[]> loaded = new ArrayList<>();
+        List<Double> loadedFitness = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+            generation = Integer.parseInt(in.readLine().split(" ")[1]);
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                String[] parts = line.split(" ");
+                double[] weights = new double[parts.length - 1];
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] = Double.parseDouble(parts[i + 1]);
+                }
+                loaded.add(weights);
+                loadedFitness.add(Double.parseDouble(parts[0]));
+            }
+        }
+        //The population size of this run wins, cut or pad the loaded population to fit
+        population = new double[populationSize][];
+        fitness = new double[populationSize];
+        for (int i = 0; i < populationSize; i++) {
+            population[i] = (i < loaded.size()) ? loaded.get(i) : mutate(loaded.get(i % loaded.size()), 1.0);
+            fitness[i] = (i < loaded.size()) ? loadedFitness.get(i) : 0.0;
+        }
+        //Don't replay the games of the generations that were already run
+        random = new Random(seed + generation);
+        System.out.println("Resuming from generation " + generation + " (" + checkpoint + ")");
+    }
+
+    /**
+     * The fitness a candidate needs to make it into the survivors. It rises
+     * as candidates finish, and candidates that can't reach it stop early.
+     */
+    private static class SurvivalBar {
+        private final double[] best;
+
+        SurvivalBar(int numSurvivors) {
+            best = new double[numSurvivors];
+        }
+
+        /* Records the fitness of a finished candidate */
+        synchronized void offer(double fitness) {
+            //best is kept sorted from lowest to highest
+            if (fitness <= best[0]) {
+                return;
+            }
+            best[0] = fitness;
+            Arrays.sort(best);
+        }
+
+        /* The fitness of the weakest survivor so far */
+        synchronized double get() {
+            return best[0];
+        }
+    }
+
+    /** Plays the games of one candidate and computes its fitness */
+    private class Evaluation implements Callable<Double> {
+        private final double[] weights;
+        private final long gameSeed;
+        private final SurvivalBar bar;
+
+        Evaluation(double[] weights, long gameSeed, SurvivalBar bar) {
+            this.weights = weights;
+            this.gameSeed = gameSeed;
+            this.bar = bar;
+        }
+
+        @Override
+        public Double call() {
+            TetrisBot bot = new TetrisBot(new TetrisEvaluator(weights));
+            //Best score a single game could possibly reach (every shape fills 4 cells)
+            double maxPerGame = (maxShapesPerGame * 4.0 / Constants.NUM_COLS) * (1 + TETRIS_BONUS / Constants.TETRIS);
+            double total = 0;
+            for (int game = 0; game < gamesPerCandidate; game++) {
+                TetrisEngine engine = new TetrisEngine(gameSeed + game);
+                while (engine.getNumShapesLocked() < maxShapesPerGame && bot.playShape(engine)) {
+                    //play the game out
+                }
+                total += engine.getNumLinesCleared() + TETRIS_BONUS * engine.getNumTetrisCleared();
+
+                //Give up on a candidate that can't make it into the survivors anymore
+                int gamesLeft = gamesPerCandidate - game - 1;
+                if ((total + gamesLeft * maxPerGame) / gamesPerCandidate < bar.get()) {
+                    return total / gamesPerCandidate;
+                }
+            }
+            double fitness = total / gamesPerCandidate;
+            bar.offer(fitness);
+            return fitness;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path checkpoint = Paths.get((args.length > 0) ? args[0] : "tuner_checkpoint.txt");
+        int generations = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int populationSize = (args.length > 2) ? Integer.parseInt(args[2]) : 32;
+        int games = (args.length > 3) ? Integer.parseInt(args[3]) : 8;
+        int maxShapes = (args.length > 4) ? Integer.parseInt(args[4]) : 2000;
+        long seed = (args.length > 5) ? Long.parseLong(args[5]) : 0L;
+
+        TetrisWeightTuner tuner = new TetrisWeightTuner(populationSize, games, maxShapes, checkpoint, seed,
+                Runtime.getRuntime().availableProcessors());
+        try {
+            tuner.initialize();
+            for (int i = 0; i < generations; i++) {
+                tuner.runGeneration();
+            }
+        } finally {
+            tuner.shutdown();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TetrisZobrist holds the random keys used to hash game states
+ * (Zobrist hashing).
+ *
+ * Every cell of the board has its own random 64-bit key, and the hash of
+ * a board is the XOR of the keys of its locked cells. Locking a cell only
+ * takes one XOR to update the hash, and two boards with the same locked
+ * cells always have the same hash, no matter in which order the cells
+ * were locked. The falling shape gets a key of its own for every shape,
+ * rotation and location, so XORing it in gives the hash of the whole state.
+ *
+ * The keys of a whole row are also tabulated 8 columns at a time, so the
+ * hash of a row that moved (after a line clear) costs a few table lookups
+ * instead of one lookup per cell.
+ *
+ * Keys are generated from a fixed seed, so hashes are the same from one
+ * run to the next and can be stored or compared across processes.
+ *
+ * @author Sabirah Shuaybi
+ */
+public class TetrisZobrist {
+
+    private static final long SEED = 0x5EED7E7215L;
+
+    //Columns of a row handled by one lookup table
+    private static final int CHUNK_BITS = 8;
+
+    //Shapes can sit up to one matrix width outside of the board on the left
+    private static final int MAX_SHAPE_SIZE = 4;
+
+    //One set of keys per board size, shared by every board of that size
+    private static final ConcurrentHashMap<Long, TetrisZobrist> instances = new ConcurrentHashMap<>();
+
+    private final int numRows;
+    private final int numCols;
+
+    //rowChunkKeys[row][chunk][bits]: XOR of the keys of the cells set in bits,
+    //for the 8 columns of the row that make up the chunk
+    private final long[][][] rowChunkKeys;
+
+    //pieceKeys[shapeId][rotation][x + MAX_SHAPE_SIZE][y]
+    private final long[][][][] pieceKeys;
+
+    private TetrisZobrist(int numRows, int numCols) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        Random random = new Random(SEED ^ ((long) numRows << 32) ^ numCols);
+
+        int numChunks = (numCols + CHUNK_BITS - 1) / CHUNK_BITS;
+        rowChunkKeys = new long[numRows][numChunks][1 << CHUNK_BITS];
+        for (int row = 0; row < numRows; row++) {
+            for (int chunk = 0; chunk < numChunks; chunk++) {
+                long[] cellKeys = new long[CHUNK_BITS];
+                for (int bit = 0; bit < CHUNK_BITS; bit++) {
+                    cellKeys[bit] = random.nextLong();
+                }
+                long[] table = rowChunkKeys[row][chunk];
+                for (int bits = 1; bits < table.length; bits++) {
+                    //Build each entry from an entry with one bit less
+                    int lowest = Integer.numberOfTrailingZeros(bits);
+                    table[bits] = table[bits & (bits - 1)] ^ cellKeys[lowest];
+                }
+            }
+        }
+
+        pieceKeys = new long[TetrisShapeFactory.NUM_SHAPES][4][numCols + MAX_SHAPE_SIZE][numRows];
+        for (long[][][] shape : pieceKeys) {
+            for (long[][] rotation : shape) {
+                for (long[] column : rotation) {
+                    for (int y = 0; y < column.length; y++) {
+                        column[y] = random.nextLong();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the keys for a board size (the same object for every board of that size)
+     *
+     * @return the keys for boards of that many rows and columns
+     */
+    public static TetrisZobrist forSize(int numRows, int numCols) {
+        Long size = ((long) numRows << 32) | numCols;
+        TetrisZobrist keys = instances.get(size);
+        if (keys == null) {
+            instances.putIfAbsent(size, new TetrisZobrist(numRows, numCols));
+            keys = instances.get(size);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the key of the cell at (x, y)
+     */
+    public long cellKey(int x, int y) {
+        return rowChunkKeys[y][x / CHUNK_BITS][1 << (x % CHUNK_BITS)];
+    }
+
+    /**
+     * Computes the hash contribution of a whole row
+     *
+     * @param y: the row
+     * @param mask: bit mask of the locked cells in the row
+     * @return XOR of the keys of every locked cell in the row
+     */
+    public long rowKey(int y, long mask) {
+        long key = 0L;
+        long[][] chunks = rowChunkKeys[y];
+        for (int chunk = 0; mask != 0; chunk++) {
+            key ^= chunks[chunk][(int) (mask & ((1 << CHUNK_BITS) - 1))];
+            mask >>>= CHUNK_BITS;
+        }
+        return key;
+    }
+
+    /**
+     * Key of the falling shape at a location. Shapes that are not one of
+     * the 7 factory shapes, or that sit somewhere no valid move can put
+     * them, all share the key 0.
+     *
+     * @param shape: the falling shape
+     * @param x: x coordinate of the shape's location
+     * @param y: y coordinate of the shape's location
+     * @return the key of that shape, rotation and location
+     */
+    public long pieceKey(TetrisShape shape, int x, int y) {
+        int shapeId = shape.getShapeId();
+        int column = x + MAX_SHAPE_SIZE;
+        if (shapeId < 0 || column < 0 || column >= numCols + MAX_SHAPE_SIZE || y < 0 || y >= numRows) {
+            return 0L;
+        }
+        return pieceKeys[shapeId][shape.getRotation()][column][y];
+    }
+}